@@ -0,0 +1,204 @@
+import stof.bench.FrontEnd;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+// binds the benchmark FrontEnd interface to the compiler classes in the unnamed package
+public class StofFrontEnd implements FrontEnd {
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    @Override
+    public Object tokenizeLegacy(CharSequence src) {
+        return new Tokenizer(src).tokenize();
+    }
+
+    @Override
+    public Object tokenizeStream(CharSequence src) {
+        return new Tokenizer(src).tokenizeToStream();
+    }
+
+    @Override
+    public Object open(String src) {
+        try {
+            return SourceFile.of(null, src.getBytes(StandardCharsets.UTF_8));
+        } catch (CharacterCodingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Object tokenizeFile(Object source) {
+        return Tokenizer.tokenizeToStream((SourceFile) source);
+    }
+
+    @Override
+    public Object parse(Object tokens) {
+        return new Parser((TokenStream) tokens).parse();
+    }
+
+    @Override
+    public Object parseFlat(Object tokens) {
+        return new Parser((TokenStream) tokens).parseFlat();
+    }
+
+    @Override
+    public long walkTree(Object program) {
+        // an explicit stack, the NESTED_IF corpus is deeper than the thread stack allows
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+        pending.push(program);
+        long total = 0;
+        while (!pending.isEmpty()) {
+            total++;
+            switch (pending.pop()) {
+                case ParseTree.ProgramNode node -> node.classes().forEach(pending::push);
+                case ParseTree.ClassNode node -> node.functions().forEach(pending::push);
+                case ParseTree.FunctionNode node -> {
+                    node.parameters().forEach(pending::push);
+                    pending.push(node.body());
+                }
+                case ParseTree.BlockNode node -> node.statements().forEach(pending::push);
+                case ParseTree.VariableDeclarationNode node -> pushIfPresent(pending, node.initializer());
+                case ParseTree.VariableAssignmentNode node -> pending.push(node.value());
+                case ParseTree.IfNode node -> {
+                    pending.push(node.condition());
+                    pending.push(node.thenBlock());
+                    node.elseIfClauses().forEach(pending::push);
+                    pushIfPresent(pending, node.elseBlock());
+                }
+                case ParseTree.ElseIfNode node -> {
+                    pending.push(node.condition());
+                    pending.push(node.block());
+                }
+                case ParseTree.ForNode node -> {
+                    pushIfPresent(pending, node.initialization());
+                    pushIfPresent(pending, node.condition());
+                    pushIfPresent(pending, node.increment());
+                    pending.push(node.body());
+                }
+                case ParseTree.WhileNode node -> {
+                    pending.push(node.condition());
+                    pending.push(node.body());
+                }
+                case ParseTree.ReturnNode node -> pushIfPresent(pending, node.value());
+                case ParseTree.ExitNode node -> pending.push(node.exitCode());
+                case ParseTree.ExpressionStatementNode node -> pending.push(node.expression());
+                case ParseTree.BinaryOperatorNode node -> {
+                    pending.push(node.left());
+                    pending.push(node.right());
+                }
+                case ParseTree.UnaryOperatorNode node -> pending.push(node.operand());
+                case ParseTree.IntLiteralNode node -> total += node.value();
+                case ParseTree.FunctionCallNode node -> node.arguments().forEach(pending::push);
+                case ParseTree.AssignmentExpressionNode node -> pending.push(node.value());
+                default -> {
+                    // parameters, variables and boolean literals have no children
+                }
+            }
+        }
+        return total;
+    }
+
+    private static void pushIfPresent(ArrayDeque<Object> pending, Object node) {
+        if (node != null) {
+            pending.push(node);
+        }
+    }
+
+    @Override
+    public long walkFlat(Object tree) {
+        // every node of a FlatTree is in the tree, so a full pass is a loop over the arrays
+        FlatTree flat = (FlatTree) tree;
+        long total = 0;
+        for (int node = 0; node < flat.size(); node++) {
+            total += flat.kind(node) == FlatTree.Kind.INT_LITERAL ? 1 + flat.intValue(node) : 1;
+        }
+        return total;
+    }
+
+    @Override
+    public void dump(Object program, Path outputPath) {
+        Parser.writeParseTreeToFile((ParseTree.ProgramNode) program, outputPath.toString());
+    }
+
+    @Override
+    public void dumpJson(Object program, Path outputPath) {
+        try {
+            ParseTreeDumper.dump((ParseTree.ProgramNode) program, outputPath, ParseTreeDumper.Format.JSON);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int runTreeWalker(Object program) {
+        return new TreeWalkInterpreter((ParseTree.ProgramNode) program, DISCARD).run();
+    }
+
+    @Override
+    public Object compileClosures(Object program) {
+        return new ClosureInterpreter((ParseTree.ProgramNode) program, DISCARD);
+    }
+
+    @Override
+    public int runClosures(Object compiled) {
+        return ((ClosureInterpreter) compiled).run();
+    }
+
+    @Override
+    public Object compileBytecode(Object program) {
+        Bytecode.Program bytecode = new BytecodeCompiler((ParseTree.ProgramNode) program).compile();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Bytecode.write(bytecode, out);
+            return Bytecode.read(new ByteArrayInputStream(out.toByteArray()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int runBytecode(Object bytecode) {
+        return new BytecodeVM((Bytecode.Program) bytecode, DISCARD).run();
+    }
+
+    @Override
+    public Object compileJvm(Object program) {
+        return new JvmBackend((ParseTree.ProgramNode) program).loadMain();
+    }
+
+    @Override
+    public int runJvm(Object compiled) {
+        try {
+            return (int) ((MethodHandle) compiled).invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public Object buildIr(Object program, boolean loopPasses, boolean inlining) {
+        ParseTree.ProgramNode tree = (ParseTree.ProgramNode) program;
+        List<IrOptimizer.Pass> passes = new ArrayList<>();
+        if (inlining) {
+            passes.add(new Inliner(new CallGraph(tree)));
+        }
+        passes.addAll((loopPasses ? IrOptimizer.standard() : IrOptimizer.scalar()).passes());
+        return new IrOptimizer(passes).optimize(new IrBuilder(tree).build());
+    }
+
+    @Override
+    public int runIr(Object ir) {
+        return new IrInterpreter((Ir.Program) ir, DISCARD).run();
+    }
+}
@@ -0,0 +1,171 @@
+package stof.bench;
+
+// builds synthetic .stof programs that stress one part of the front end each
+public final class CorpusGenerator {
+    public enum Shape {
+        NESTED_IF,      // if/elif/else chains nested `size` levels deep
+        MANY_FUNCTIONS, // a single class with `size` functions
+        LONG_EXPRESSION, // one declaration whose initializer has `size` binary operators
+        NESTED_PARENS,   // one declaration whose initializer is parenthesized `size` levels deep
+        LOOPS,           // a runnable program whose main() drives `size` rounds of small counting loops
+        HELPERS          // a runnable program whose main() calls small helper functions `size` times
+    }
+
+    private CorpusGenerator() {}
+
+    public static String generate(Shape shape, int size) {
+        return switch (shape) {
+            case NESTED_IF -> nestedIf(size);
+            case MANY_FUNCTIONS -> manyFunctions(size);
+            case LONG_EXPRESSION -> longExpression(size);
+            case NESTED_PARENS -> nestedParens(size);
+            case LOOPS -> loops(size);
+            case HELPERS -> helpers(size);
+        };
+    }
+
+    private static String nestedIf(int depth) {
+        StringBuilder src = new StringBuilder();
+        src.append("class main {\n    int main(int x) {\n        int result = 0;\n");
+        for (int level = 0; level < depth; level++) {
+            indent(src, level + 2).append("if (x > ").append(level).append(") {\n");
+            indent(src, level + 3).append("result = result + ").append(level).append(";\n");
+        }
+        for (int level = depth - 1; level >= 0; level--) {
+            indent(src, level + 2).append("} elif (x < ").append(level).append(") {\n");
+            indent(src, level + 3).append("result = result - 1;\n");
+            indent(src, level + 2).append("} else {\n");
+            indent(src, level + 3).append("result = 0;\n");
+            indent(src, level + 2).append("}\n");
+        }
+        src.append("        return result;\n    }\n}\n");
+        return src.toString();
+    }
+
+    private static String manyFunctions(int count) {
+        StringBuilder src = new StringBuilder();
+        src.append("class main {\n");
+        for (int f = 0; f < count; f++) {
+            src.append("    int function").append(f).append("(int a, int b) {\n")
+                    .append("        int total = a * ").append(f % 7 + 1).append(" + b;\n")
+                    .append("        for (total = 0; total < ").append(f % 100).append("; total++) {\n")
+                    .append("            a = a + total % 3;\n")
+                    .append("        }\n")
+                    .append("        if (a > b) {\n")
+                    .append("            return function").append(Math.max(0, f - 1)).append("(a - 1, b);\n")
+                    .append("        }\n")
+                    .append("        return total;\n")
+                    .append("    }\n\n");
+        }
+        src.append("}\n");
+        return src.toString();
+    }
+
+    private static String longExpression(int operators) {
+        final String[] ops = {" + ", " * ", " - ", " / ", " % ", " > ", " < "};
+        StringBuilder src = new StringBuilder();
+        src.append("class main {\n    int main(int a, int b) {\n        int value = a");
+        for (int i = 0; i < operators; i++) {
+            src.append(ops[i % ops.length]);
+            if (i % 3 == 0) {
+                src.append('(').append(i + 1).append(" + b)");
+            } else {
+                src.append(i % 2 == 0 ? "a" : "b");
+            }
+        }
+        src.append(";\n        return value;\n    }\n}\n");
+        return src.toString();
+    }
+
+    // ((((a + 1) * b - 2) * b - 3) ...), the shape generated code tends to have
+    private static String nestedParens(int depth) {
+        StringBuilder src = new StringBuilder();
+        src.append("class main {\n    int main(int a, int b) {\n        int value = ");
+        src.append("(".repeat(depth)).append('a');
+        for (int level = 0; level < depth; level++) {
+            src.append(level % 2 == 0 ? " + " : " * b - ").append(level + 1).append(')');
+        }
+        src.append(";\n        return value;\n    }\n}\n");
+        return src.toString();
+    }
+
+    // modelled on incrementVariable in stof/main.stof, with enough rounds to keep an interpreter busy
+    private static String loops(int rounds) {
+        return """
+                class main {
+                    int main() {
+                        int total = 0;
+                        int round = 0;
+                        while (round < %d) {
+                            total = total + incrementVariable(round) + sumTo(round %% 16);
+                            round++;
+                        }
+                        return total %% 256;
+                    }
+
+                    int incrementVariable(int i) {
+                        for (i = 0; i < 10; i++) {
+                            i++;
+                        }
+                        return i;
+                    }
+
+                    int sumTo(int n) {
+                        int sum = 0;
+                        for (int k = 0; k < n; k++) {
+                            if (k %% 2 > 0) {
+                                sum = sum + k * 3;
+                            } else {
+                                sum = sum - 1;
+                            }
+                        }
+                        return sum;
+                    }
+                }
+                """.formatted(rounds);
+    }
+
+    // modelled on isNumberOneGreaterThanNumberTwo in stof/main.stof: every round makes four calls to functions of a
+    // line or two
+    private static String helpers(int rounds) {
+        return """
+                class main {
+                    int main() {
+                        int total = 0;
+                        for (int round = 0; round < %d; round++) {
+                            if (isNumberOneGreaterThanNumberTwo(round %% 7, 3)) {
+                                total = total + square(round %% 100);
+                            } else {
+                                total = max(total - 1, clamp(round));
+                            }
+                        }
+                        return total %% 256;
+                    }
+
+                    boolean isNumberOneGreaterThanNumberTwo(int one, int two) {
+                        return one > two;
+                    }
+
+                    int square(int x) {
+                        return x * x;
+                    }
+
+                    int max(int a, int b) {
+                        if (a > b) {
+                            return a;
+                        }
+                        return b;
+                    }
+
+                    int clamp(int x) {
+                        return max(0, x %% 50 - 25);
+                    }
+                }
+                """.formatted(rounds);
+    }
+
+    // indentation is capped so deep nesting doesn't turn the corpus into mostly whitespace
+    private static StringBuilder indent(StringBuilder src, int level) {
+        return src.append("    ".repeat(Math.min(level, 8)));
+    }
+}
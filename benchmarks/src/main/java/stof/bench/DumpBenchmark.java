@@ -0,0 +1,50 @@
+package stof.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// measures ParseTreeDumper's text and json dumps of a pre-parsed tree
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DumpBenchmark {
+    @Param({"NESTED_IF", "MANY_FUNCTIONS", "LONG_EXPRESSION"})
+    public CorpusGenerator.Shape shape;
+
+    // the dump keeps its own stack, the 2000 NESTED_IF case is only bounded by the recursive parser in setup
+    @Param({"200", "2000"})
+    public int size;
+
+    private FrontEnd frontEnd;
+    private Object program;
+    private Path outputPath;
+
+    @Setup
+    public void setup() throws IOException {
+        frontEnd = FrontEnd.load();
+        program = frontEnd.parse(frontEnd.tokenizeStream(CorpusGenerator.generate(shape, size)));
+        outputPath = Files.createTempFile("stof-dump", ".txt");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(outputPath);
+    }
+
+    @Benchmark
+    public void writeParseTree() {
+        frontEnd.dump(program, outputPath);
+    }
+
+    @Benchmark
+    public void writeParseTreeJson() {
+        frontEnd.dumpJson(program, outputPath);
+    }
+}
@@ -0,0 +1,74 @@
+package stof.bench;
+
+import java.nio.file.Path;
+
+// the compiler lives in the unnamed package, which code in a named package cannot reference, and jmh refuses
+// benchmark classes in the unnamed package. this interface is the bridge: StofFrontEnd (unnamed package, same
+// module) implements it and the benchmarks only ever see Object handles for tokens and trees
+public interface FrontEnd {
+    // legacy path: one Token record per lexeme in a Vector
+    Object tokenizeLegacy(CharSequence src);
+
+    // dense path: parallel primitive arrays over the source
+    Object tokenizeStream(CharSequence src);
+
+    // reads src the way the compiler reads a file, as bytes, so an ascii source can be lexed from them
+    Object open(String src);
+
+    // dense path over a source returned by open, ascii sources go through the byte lexer
+    Object tokenizeFile(Object source);
+
+    // parses a token stream produced by tokenizeStream
+    Object parse(Object tokens);
+
+    // parses a token stream produced by tokenizeStream into the flat, struct-of-arrays tree
+    Object parseFlat(Object tokens);
+
+    // a full pass over a tree produced by parse: counts the nodes and sums the int literals
+    long walkTree(Object program);
+
+    // the same pass over a tree produced by parseFlat
+    long walkFlat(Object tree);
+
+    // writes the text dump of a tree produced by parse
+    void dump(Object program, Path outputPath);
+
+    // writes the json dump of a tree produced by parse
+    void dumpJson(Object program, Path outputPath);
+
+    // runs main() by walking the parse tree directly
+    int runTreeWalker(Object program);
+
+    // compiles a parse tree into the closure interpreter's form
+    Object compileClosures(Object program);
+
+    // runs main() of a program returned by compileClosures
+    int runClosures(Object compiled);
+
+    // lowers a parse tree to bytecode, round-tripped through the on-disk format
+    Object compileBytecode(Object program);
+
+    // runs main() of a program returned by compileBytecode on the bytecode vm
+    int runBytecode(Object bytecode);
+
+    // compiles a parse tree to JVM classes, loads them and returns a handle to main()
+    Object compileJvm(Object program);
+
+    // runs main() of a program returned by compileJvm
+    int runJvm(Object compiled);
+
+    // lowers a parse tree to ssa ir and optimizes it, with the loop passes or with the scalar passes only, and with
+    // or without inlining small functions first
+    Object buildIr(Object program, boolean loopPasses, boolean inlining);
+
+    // runs main() of a program returned by buildIr on the ir interpreter
+    int runIr(Object ir);
+
+    static FrontEnd load() {
+        try {
+            return (FrontEnd) Class.forName("StofFrontEnd").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("StofFrontEnd is missing from the benchmark classpath", e);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package stof.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// runs the HELPERS corpus on the ir interpreter after the standard passes, with and without inlining the helpers
+// into main() first
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InliningBenchmark {
+    @Param({"20000"})
+    public int rounds;
+
+    private FrontEnd frontEnd;
+    private Object calls;
+    private Object inlined;
+
+    @Setup
+    public void setup() {
+        frontEnd = FrontEnd.load();
+        Object program = frontEnd.parse(frontEnd.tokenizeStream(CorpusGenerator.generate(CorpusGenerator.Shape.HELPERS, rounds)));
+        calls = frontEnd.buildIr(program, true, false);
+        inlined = frontEnd.buildIr(program, true, true);
+    }
+
+    @Benchmark
+    public int calls() {
+        return frontEnd.runIr(calls);
+    }
+
+    @Benchmark
+    public int inlined() {
+        return frontEnd.runIr(inlined);
+    }
+}
@@ -0,0 +1,58 @@
+package stof.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// runs the LOOPS corpus on the naive tree walker, the closure-compiled interpreter, the bytecode vm and
+// the classes generated by the jvm backend
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterpreterBenchmark {
+    @Param({"10000"})
+    public int rounds;
+
+    private FrontEnd frontEnd;
+    private Object program;
+    private Object compiled;
+    private Object bytecode;
+    private Object jvm;
+
+    @Setup
+    public void setup() {
+        frontEnd = FrontEnd.load();
+        program = frontEnd.parse(frontEnd.tokenizeStream(CorpusGenerator.generate(CorpusGenerator.Shape.LOOPS, rounds)));
+        compiled = frontEnd.compileClosures(program);
+        bytecode = frontEnd.compileBytecode(program);
+        jvm = frontEnd.compileJvm(program);
+    }
+
+    @Benchmark
+    public int treeWalker() {
+        return frontEnd.runTreeWalker(program);
+    }
+
+    @Benchmark
+    public int closures() {
+        return frontEnd.runClosures(compiled);
+    }
+
+    @Benchmark
+    public int compileAndRunClosures() {
+        return frontEnd.runClosures(frontEnd.compileClosures(program));
+    }
+
+    @Benchmark
+    public int bytecodeVm() {
+        return frontEnd.runBytecode(bytecode);
+    }
+
+    @Benchmark
+    public int jvmBackend() {
+        return frontEnd.runJvm(jvm);
+    }
+}
@@ -0,0 +1,46 @@
+package stof.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// runs the LOOPS corpus on the ir interpreter, optimized with the scalar passes only and with the loop passes
+// (unrolling, invariant motion and strength reduction) on top, and measures what running the passes costs
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopOptimizationBenchmark {
+    @Param({"2000"})
+    public int rounds;
+
+    private FrontEnd frontEnd;
+    private Object program;
+    private Object scalar;
+    private Object loops;
+
+    @Setup
+    public void setup() {
+        frontEnd = FrontEnd.load();
+        program = frontEnd.parse(frontEnd.tokenizeStream(CorpusGenerator.generate(CorpusGenerator.Shape.LOOPS, rounds)));
+        scalar = frontEnd.buildIr(program, false, false);
+        loops = frontEnd.buildIr(program, true, false);
+    }
+
+    @Benchmark
+    public int scalarPasses() {
+        return frontEnd.runIr(scalar);
+    }
+
+    @Benchmark
+    public int loopPasses() {
+        return frontEnd.runIr(loops);
+    }
+
+    @Benchmark
+    public Object optimizeWithLoopPasses() {
+        return frontEnd.buildIr(program, true, false);
+    }
+}
@@ -0,0 +1,45 @@
+package stof.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({"NESTED_IF", "MANY_FUNCTIONS", "LONG_EXPRESSION", "NESTED_PARENS"})
+    public CorpusGenerator.Shape shape;
+
+    @Param({"1000"})
+    public int size;
+
+    private FrontEnd frontEnd;
+    private String source;
+    private Object tokens;
+
+    @Setup
+    public void setup() {
+        frontEnd = FrontEnd.load();
+        source = CorpusGenerator.generate(shape, size);
+        tokens = frontEnd.tokenizeStream(source);
+    }
+
+    @Benchmark
+    public Object parse() {
+        return frontEnd.parse(tokens);
+    }
+
+    @Benchmark
+    public Object parseFlat() {
+        return frontEnd.parseFlat(tokens);
+    }
+
+    @Benchmark
+    public Object tokenizeAndParse() {
+        return frontEnd.parse(frontEnd.tokenizeStream(source));
+    }
+}
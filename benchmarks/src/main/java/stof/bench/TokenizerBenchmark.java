@@ -0,0 +1,48 @@
+package stof.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// compares the legacy Vector<Token> path against the dense TokenStream path, and the dense path over a String
+// against the byte lexer the compiler uses for ascii files. the fork adds the vector module so the byte lexer takes its
+// Vector API path. run with `-prof gc` to see the allocation rate per operation
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class TokenizerBenchmark {
+    @Param({"NESTED_IF", "MANY_FUNCTIONS", "LONG_EXPRESSION"})
+    public CorpusGenerator.Shape shape;
+
+    @Param({"1000"})
+    public int size;
+
+    private FrontEnd frontEnd;
+    private String source;
+    private Object file;
+
+    @Setup
+    public void setup() {
+        frontEnd = FrontEnd.load();
+        source = CorpusGenerator.generate(shape, size);
+        file = frontEnd.open(source);
+    }
+
+    @Benchmark
+    public Object legacyVector() {
+        return frontEnd.tokenizeLegacy(source);
+    }
+
+    @Benchmark
+    public Object denseStream() {
+        return frontEnd.tokenizeStream(source);
+    }
+
+    @Benchmark
+    public Object asciiBytes() {
+        return frontEnd.tokenizeFile(file);
+    }
+}
@@ -0,0 +1,46 @@
+package stof.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// one full pass over the same program held as ParseTree records and as a FlatTree. the parse itself, and the memory
+// each form takes (gc.alloc.rate.norm of the two parse benchmarks), are in ParserBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeWalkBenchmark {
+    @Param({"NESTED_IF", "MANY_FUNCTIONS", "LONG_EXPRESSION"})
+    public CorpusGenerator.Shape shape;
+
+    @Param({"1000"})
+    public int size;
+
+    private FrontEnd frontEnd;
+    private Object program;
+    private Object flat;
+
+    @Setup
+    public void setup() {
+        frontEnd = FrontEnd.load();
+        Object tokens = frontEnd.tokenizeStream(CorpusGenerator.generate(shape, size));
+        program = frontEnd.parse(tokens);
+        flat = frontEnd.parseFlat(tokens);
+        if (frontEnd.walkTree(program) != frontEnd.walkFlat(flat)) {
+            throw new IllegalStateException("the two trees differ");
+        }
+    }
+
+    @Benchmark
+    public long records() {
+        return frontEnd.walkTree(program);
+    }
+
+    @Benchmark
+    public long flat() {
+        return frontEnd.walkFlat(flat);
+    }
+}
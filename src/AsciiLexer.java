@@ -0,0 +1,309 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+// lexes an ascii source straight out of its bytes, with the same rules and the same TokenStream as
+// Tokenizer.tokenizeToStream(). the source is classified 64 bytes at a time into bit masks (whitespace, letter or
+// digit, digit), so whitespace runs, identifiers and digit runs end at the lowest set bit of a mask instead of after
+// a test per char. with jdk.incubator.vector loaded (java --add-modules jdk.incubator.vector) a block is classified
+// with 16 to 64 byte wide vector compares, without it by a table lookup per byte
+public final class AsciiLexer {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private static final int BLOCK = 64; // bytes per classified block, one bit each in a long
+
+    // character classes, a bit set per class
+    private static final byte SPACE = 1;
+    private static final byte LETTER = 2;
+    private static final byte DIGIT = 4;
+    private static final byte[] CLASSES = new byte[128];
+
+    // keywords by a perfect hash of (first char, last char, length), checked against the word's bytes on a hit
+    private static final byte[][] KEYWORDS = new byte[32][];
+    private static final Tokenizer.TokenType[] KEYWORD_TYPES = new Tokenizer.TokenType[32];
+
+    static {
+        for (int c = 0; c < 128; c++) {
+            if (Character.isWhitespace(c)) {
+                CLASSES[c] |= SPACE;
+            }
+            if (Character.isAlphabetic(c)) {
+                CLASSES[c] |= LETTER;
+            }
+            if (Character.isDigit(c)) {
+                CLASSES[c] |= DIGIT;
+            }
+        }
+
+        keyword("if", Tokenizer.TokenType.STOF_IF);
+        keyword("int", Tokenizer.TokenType.STOF_INT);
+        keyword("let", Tokenizer.TokenType.STOF_LET);
+        keyword("var", Tokenizer.TokenType.STOF_VAR);
+        keyword("for", Tokenizer.TokenType.STOF_FOR);
+        keyword("true", Tokenizer.TokenType.STOF_BOOLEAN_LITERAL);
+        keyword("exit", Tokenizer.TokenType.STOF_EXIT);
+        keyword("elif", Tokenizer.TokenType.STOF_ELIF);
+        keyword("else", Tokenizer.TokenType.STOF_ELSE);
+        keyword("case", Tokenizer.TokenType.STOF_CASE);
+        keyword("false", Tokenizer.TokenType.STOF_BOOLEAN_LITERAL);
+        keyword("while", Tokenizer.TokenType.STOF_WHILE);
+        keyword("class", Tokenizer.TokenType.STOF_CLASS);
+        keyword("return", Tokenizer.TokenType.STOF_RETURN);
+        keyword("switch", Tokenizer.TokenType.STOF_SWITCH);
+        keyword("boolean", Tokenizer.TokenType.STOF_BOOLEAN);
+    }
+
+    private final CharSequence m_src;
+    private final MemorySegment m_bytes;
+    private final int m_length;
+
+    // the classified block, bit k of a mask is about the byte at m_block + k
+    private int m_block = -BLOCK;
+    private long m_spaces;
+    private long m_words; // letters and digits, what an identifier continues with
+    private long m_digits;
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    private AsciiLexer(CharSequence src, ByteBuffer bytes) {
+        this.m_src = src;
+        this.m_bytes = MemorySegment.ofBuffer(bytes);
+        this.m_length = bytes.remaining();
+    }
+
+    // src is the char view of bytes, which must hold nothing but ascii. the stream's text() reads from src
+    public static TokenStream lex(CharSequence src, ByteBuffer bytes) {
+        return new AsciiLexer(src, bytes).lex();
+    }
+
+    private static void keyword(String word, Tokenizer.TokenType type) {
+        int slot = keywordSlot(word.charAt(0), word.charAt(word.length() - 1), word.length());
+        if (KEYWORDS[slot] != null) {
+            throw new IllegalStateException("keyword hash collision: " + word);
+        }
+        KEYWORDS[slot] = word.getBytes(StandardCharsets.US_ASCII);
+        KEYWORD_TYPES[slot] = type;
+    }
+
+    private static int keywordSlot(int first, int last, int length) {
+        return first * 3 + last * 12 + length & 31;
+    }
+
+    //////////////
+    /// LEXING ///
+    //////////////
+    private TokenStream lex() {
+        int length = m_length;
+        TokenStream tokens = new TokenStream(m_src, length >> 3); // a rough guess, the stream grows as needed
+        int i = 0;
+        while (i < length) {
+            int c = byteAt(i);
+            byte kind = CLASSES[c];
+
+            if ((kind & SPACE) != 0) {
+                i = skipSpaces(i + 1);
+                continue;
+            }
+
+            if ((kind & LETTER) != 0) { // identifier or keyword
+                int start = i;
+                i = skipWord(i + 1);
+                Tokenizer.TokenType type = keywordType(start, i - start);
+                if (type == Tokenizer.TokenType.STOF_IDENTIFIER) {
+                    tokens.addIdentifier(start, i - start, hash(start, i));
+                } else {
+                    tokens.add(type, start, i - start);
+                }
+                continue;
+            }
+
+            if ((kind & DIGIT) != 0) { // int literal
+                int start = i;
+                i = skipDigits(i + 1);
+                tokens.add(Tokenizer.TokenType.STOF_INT_LITERAL, start, i - start);
+                continue;
+            }
+
+            Tokenizer.TokenType type = switch (c) {
+                // basic syntax
+                case '(' -> Tokenizer.TokenType.STOF_OPEN_PARENTHESIS;
+                case ')' -> Tokenizer.TokenType.STOF_CLOSE_PARENTHESIS;
+                case '{' -> Tokenizer.TokenType.STOF_OPEN_CURLY_BRACKET;
+                case '}' -> Tokenizer.TokenType.STOF_CLOSE_CURLY_BRACKET;
+                case '[' -> Tokenizer.TokenType.STOF_OPEN_SQUARE_BRACKET;
+                case ']' -> Tokenizer.TokenType.STOF_CLOSE_SQUARE_BRACKET;
+                case ',' -> Tokenizer.TokenType.STOF_COMMA;
+                case ';' -> Tokenizer.TokenType.STOF_SEMICOLON;
+
+                // operators
+                case '=' -> Tokenizer.TokenType.STOF_EQUALS;
+                case '+' -> i + 1 < length && byteAt(i + 1) == '+' ? Tokenizer.TokenType.STOF_INCREMENT : Tokenizer.TokenType.STOF_PLUS;
+                case '-' -> i + 1 < length && byteAt(i + 1) == '-' ? Tokenizer.TokenType.STOF_DECREMENT : Tokenizer.TokenType.STOF_MINUS;
+                case '*' -> Tokenizer.TokenType.STOF_MULTIPLY;
+                case '/' -> Tokenizer.TokenType.STOF_DIVIDE;
+                case '%' -> Tokenizer.TokenType.STOF_MODULO;
+                case '<' -> Tokenizer.TokenType.STOF_LESS_THAN;
+                case '>' -> Tokenizer.TokenType.STOF_GREATER_THAN;
+
+                // unexpected characters are skipped, same as tokenizeToStream()
+                default -> null;
+            };
+
+            if (type != null) {
+                int width = type == Tokenizer.TokenType.STOF_INCREMENT || type == Tokenizer.TokenType.STOF_DECREMENT ? 2 : 1;
+                tokens.add(type, i, width);
+                i += width;
+            } else {
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private Tokenizer.TokenType keywordType(int start, int length) {
+        if (length > 7) {
+            return Tokenizer.TokenType.STOF_IDENTIFIER; // longer than "boolean"
+        }
+        int slot = keywordSlot(byteAt(start), byteAt(start + length - 1), length);
+        byte[] keyword = KEYWORDS[slot];
+        if (keyword == null || keyword.length != length) {
+            return Tokenizer.TokenType.STOF_IDENTIFIER;
+        }
+        for (int k = 0; k < length; k++) {
+            if (byteAt(start + k) != keyword[k]) {
+                return Tokenizer.TokenType.STOF_IDENTIFIER;
+            }
+        }
+        return KEYWORD_TYPES[slot];
+    }
+
+    // Identifiers.hash, over the bytes rather than through the CharSequence
+    private int hash(int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + byteAt(i);
+        }
+        return hash ^ hash >>> 16;
+    }
+
+    private int byteAt(int index) {
+        return m_bytes.get(ValueLayout.JAVA_BYTE, index);
+    }
+
+    ////////////
+    /// RUNS ///
+    ////////////
+    // each returns the offset of the first byte at or after i outside the run, m_length at the end of the source
+
+    private int skipSpaces(int i) {
+        while (i < m_length) {
+            classify(i);
+            long outside = ~m_spaces >>> (i - m_block);
+            if (outside != 0) {
+                return i + Long.numberOfTrailingZeros(outside);
+            }
+            i = m_block + BLOCK;
+        }
+        return m_length;
+    }
+
+    private int skipWord(int i) {
+        while (i < m_length) {
+            classify(i);
+            long outside = ~m_words >>> (i - m_block);
+            if (outside != 0) {
+                return i + Long.numberOfTrailingZeros(outside);
+            }
+            i = m_block + BLOCK;
+        }
+        return m_length;
+    }
+
+    private int skipDigits(int i) {
+        while (i < m_length) {
+            classify(i);
+            long outside = ~m_digits >>> (i - m_block);
+            if (outside != 0) {
+                return i + Long.numberOfTrailingZeros(outside);
+            }
+            i = m_block + BLOCK;
+        }
+        return m_length;
+    }
+
+    // makes the block holding offset the classified one. blocks are only ever visited in order, so every block is
+    // classified once. bits past the end of the source stay clear, which ends every run there
+    private void classify(int offset) {
+        if (offset - m_block < BLOCK) {
+            return;
+        }
+        int block = offset & -BLOCK;
+        m_block = block;
+        if (VECTORIZED && block + BLOCK <= m_length) {
+            Vectorized.classify(this, block);
+            return;
+        }
+
+        long spaces = 0;
+        long words = 0;
+        long digits = 0;
+        int end = Math.min(block + BLOCK, m_length);
+        for (int i = block; i < end; i++) {
+            byte kind = CLASSES[byteAt(i)];
+            long bit = 1L << (i - block);
+            if ((kind & SPACE) != 0) {
+                spaces |= bit;
+            }
+            if ((kind & (LETTER | DIGIT)) != 0) {
+                words |= bit;
+            }
+            if ((kind & DIGIT) != 0) {
+                digits |= bit;
+            }
+        }
+        m_spaces = spaces;
+        m_words = words;
+        m_digits = digits;
+    }
+
+    ///////////////////////
+    /// UTILITY CLASSES ///
+    ///////////////////////
+    // the only code that touches jdk.incubator.vector, its own class so it is never loaded when the module isn't
+    private static final class Vectorized {
+        private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+        // sets the lexer's masks for the 64 bytes at block, with whichever lane count the cpu has
+        static void classify(AsciiLexer lexer, int block) {
+            long spaces = 0;
+            long words = 0;
+            long digits = 0;
+            for (int lane = 0; lane < BLOCK; lane += SPECIES.length()) {
+                ByteVector chars = ByteVector.fromMemorySegment(SPECIES, lexer.m_bytes, block + lane, ByteOrder.nativeOrder());
+                // ascii only, so unsigned range checks are one subtract and one compare each
+                VectorMask<Byte> digit = chars.sub((byte) '0').compare(VectorOperators.UNSIGNED_LT, (byte) 10);
+                VectorMask<Byte> letter = chars.or((byte) 0x20).sub((byte) 'a').compare(VectorOperators.UNSIGNED_LT, (byte) 26);
+                VectorMask<Byte> space = chars.compare(VectorOperators.EQ, (byte) ' ')
+                        .or(chars.sub((byte) '\t').compare(VectorOperators.UNSIGNED_LT, (byte) 5))       // \t \n \u000B \f \r
+                        .or(chars.sub((byte) 0x1C).compare(VectorOperators.UNSIGNED_LT, (byte) 4));      // the four separators
+                spaces |= space.toLong() << lane;
+                words |= letter.or(digit).toLong() << lane;
+                digits |= digit.toLong() << lane;
+            }
+            lexer.m_spaces = spaces;
+            lexer.m_words = words;
+            lexer.m_digits = digits;
+        }
+    }
+}
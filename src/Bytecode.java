@@ -0,0 +1,178 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+// the compact bytecode format run by BytecodeVM. every function is a flat int[] of opcodes followed by their
+// operands, all values are plain ints (booleans are 0/1). programs can be written to and read back from disk
+public final class Bytecode {
+    private Bytecode() {}
+
+    ///////////////
+    /// OPCODES ///
+    ///////////////
+    // operands are listed after each opcode. the numbering is dense so the VM's switch compiles to a tableswitch
+    public static final int PUSH = 0;                // value
+    public static final int LOAD = 1;                // slot
+    public static final int STORE = 2;               // slot            pops the value
+    public static final int TEE = 3;                 // slot            stores and keeps the value
+    public static final int POP = 4;
+    public static final int ADD = 5;
+    public static final int SUB = 6;
+    public static final int MUL = 7;
+    public static final int DIV = 8;
+    public static final int MOD = 9;
+    public static final int GT = 10;
+    public static final int LT = 11;
+    public static final int GE = 12;
+    public static final int LE = 13;
+    public static final int INC = 14;                // slot, delta     no result, used for `i++;` statements
+    public static final int PRE_INC = 15;            // slot, delta     pushes the new value
+    public static final int POST_INC = 16;           // slot, delta     pushes the old value
+    public static final int JUMP = 17;               // target
+    public static final int JUMP_IF_FALSE = 18;      // target
+    public static final int JUMP_IF_NOT_GT = 19;     // target          fused compare and branch for loop and if tests
+    public static final int JUMP_IF_NOT_LT = 20;     // target
+    public static final int JUMP_IF_NOT_GE = 21;     // target
+    public static final int JUMP_IF_NOT_LE = 22;     // target
+    public static final int CALL = 23;               // function index  arguments are already on the stack
+    public static final int RETURN = 24;
+    public static final int PRINT = 25;              // argument count, bit mask of boolean arguments
+    public static final int EXIT = 26;
+    public static final int LOAD_LOAD = 27;          // slot, slot      two loads in one dispatch
+    public static final int LOAD_PUSH = 28;          // slot, value
+    public static final int JUMP_UNLESS_LOCAL_LT_CONST = 29; // slot, value, target   a fused `i < 10` loop test
+    public static final int JUMP_UNLESS_LOCAL_GT_CONST = 30; // slot, value, target
+    public static final int JUMP_UNLESS_LOCAL_LT_LOCAL = 31; // slot, slot, target
+    public static final int JUMP_UNLESS_LOCAL_GT_LOCAL = 32; // slot, slot, target
+
+    private static final String[] NAMES = {
+            "PUSH", "LOAD", "STORE", "TEE", "POP", "ADD", "SUB", "MUL", "DIV", "MOD", "GT", "LT", "GE", "LE",
+            "INC", "PRE_INC", "POST_INC", "JUMP", "JUMP_IF_FALSE", "JUMP_IF_NOT_GT", "JUMP_IF_NOT_LT",
+            "JUMP_IF_NOT_GE", "JUMP_IF_NOT_LE", "CALL", "RETURN", "PRINT", "EXIT", "LOAD_LOAD", "LOAD_PUSH",
+            "JUMP_UNLESS_LOCAL_LT_CONST", "JUMP_UNLESS_LOCAL_GT_CONST", "JUMP_UNLESS_LOCAL_LT_LOCAL",
+            "JUMP_UNLESS_LOCAL_GT_LOCAL"
+    };
+
+    private static final int[] OPERANDS = {
+            1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            2, 2, 2, 1, 1, 1, 1,
+            1, 1, 1, 0, 2, 0, 2, 2,
+            3, 3, 3, 3
+    };
+
+    public static int operandCount(int opcode) {
+        return OPERANDS[opcode];
+    }
+
+    ///////////////////////
+    /// UTILITY CLASSES ///
+    ///////////////////////
+    // parameters occupy the first slots, localCount includes them. maxStack is the deepest the operand stack
+    // gets inside this function, so the VM only has to check for room once per call
+    public record Function(String name, int parameterCount, int localCount, int maxStack, boolean returnsBoolean, int[] code) {}
+
+    public record Program(List<Function> functions, int mainIndex) {
+        public Function function(int index) {
+            return functions.get(index);
+        }
+    }
+
+    /////////////////////
+    /// SERIALIZATION ///
+    /////////////////////
+    private static final int MAGIC = 0x53544F42; // "STOB"
+    private static final int VERSION = 1;
+
+    public static void write(Program program, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        writeVarInt(data, program.functions().size());
+        writeVarInt(data, program.mainIndex() + 1); // -1 when there is no main()
+        for (Function function : program.functions()) {
+            data.writeUTF(function.name());
+            writeVarInt(data, function.parameterCount());
+            writeVarInt(data, function.localCount());
+            writeVarInt(data, function.maxStack());
+            data.writeBoolean(function.returnsBoolean());
+            writeVarInt(data, function.code().length);
+            for (int word : function.code()) {
+                writeVarInt(data, (word << 1) ^ (word >> 31)); // zigzag, so small negative constants stay small
+            }
+        }
+        data.flush();
+    }
+
+    public static Program read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a Stof bytecode file");
+        }
+        int version = data.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported Stof bytecode version " + version);
+        }
+
+        Function[] functions = new Function[readVarInt(data)];
+        int mainIndex = readVarInt(data) - 1;
+        for (int f = 0; f < functions.length; f++) {
+            String name = data.readUTF();
+            int parameterCount = readVarInt(data);
+            int localCount = readVarInt(data);
+            int maxStack = readVarInt(data);
+            boolean returnsBoolean = data.readBoolean();
+            int[] code = new int[readVarInt(data)];
+            for (int i = 0; i < code.length; i++) {
+                int zigzag = readVarInt(data);
+                code[i] = (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+            functions[f] = new Function(name, parameterCount, localCount, maxStack, returnsBoolean, code);
+        }
+        return new Program(List.of(functions), mainIndex);
+    }
+
+    private static void writeVarInt(DataOutputStream data, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            data.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream data) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = data.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in Stof bytecode");
+    }
+
+    /////////////////
+    /// DEBUGGING ///
+    /////////////////
+    public static String disassemble(Function function) {
+        StringBuilder out = new StringBuilder();
+        out.append(function.name()).append(" (params ").append(function.parameterCount())
+                .append(", locals ").append(function.localCount())
+                .append(", stack ").append(function.maxStack()).append(")\n");
+        int[] code = function.code();
+        int pc = 0;
+        while (pc < code.length) {
+            int opcode = code[pc];
+            out.append(String.format("  %4d  %s", pc, NAMES[opcode]));
+            for (int i = 1; i <= OPERANDS[opcode]; i++) {
+                out.append(' ').append(code[pc + i]);
+            }
+            out.append('\n');
+            pc += 1 + OPERANDS[opcode];
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,399 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// lowers a ParseTree into Bytecode. locals get fixed slots, comparisons that feed a branch become a single fused
+// compare-and-jump, `i++;` statements become INC, and back-to-back loads are merged into one instruction
+public class BytecodeCompiler {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private final Map<String, Integer> m_functionIndexes = new HashMap<>();
+    private final List<ParseTree.FunctionNode> m_functions = new ArrayList<>();
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    public BytecodeCompiler(ParseTree.ProgramNode program) {
+        for (ParseTree.ClassNode classNode : program.classes()) {
+            for (ParseTree.FunctionNode function : classNode.functions()) {
+                if (!m_functionIndexes.containsKey(function.name())) {
+                    m_functionIndexes.put(function.name(), m_functions.size());
+                    m_functions.add(function);
+                }
+            }
+        }
+    }
+
+    public Bytecode.Program compile() {
+        Bytecode.Function[] compiled = new Bytecode.Function[m_functions.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = new FunctionCompiler(m_functions.get(i)).compile();
+        }
+        Integer main = m_functionIndexes.get("main");
+        return new Bytecode.Program(List.of(compiled), main != null && m_functions.get(main).parameters().isEmpty() ? main : -1);
+    }
+
+    private record Local(int slot, boolean isBoolean) {}
+
+    /////////////////
+    /// FUNCTIONS ///
+    /////////////////
+    private final class FunctionCompiler {
+        private final ParseTree.FunctionNode m_function;
+        private final Deque<Map<String, Local>> m_scopes = new ArrayDeque<>();
+        private int m_nextSlot = 0;
+        private int m_maxSlot = 0;
+
+        private int[] m_code = new int[64];
+        private int m_size = 0;
+        private int m_depth = 0;
+        private int m_maxDepth = 0;
+        private int m_lastOp = -1;    // position of the last emitted instruction, for fusing loads
+        private int m_lastLabel = -1; // position of the last jump target, nothing may be fused across it
+
+        FunctionCompiler(ParseTree.FunctionNode function) {
+            this.m_function = function;
+        }
+
+        Bytecode.Function compile() {
+            m_scopes.push(new HashMap<>());
+            for (ParseTree.ParameterNode parameter : m_function.parameters()) {
+                declare(parameter.name(), ClosureInterpreter.isBooleanType(parameter.type()));
+            }
+            block(m_function.body());
+
+            // falling off the end of a function returns 0
+            emit(Bytecode.PUSH, 0);
+            emit(Bytecode.RETURN);
+
+            return new Bytecode.Function(m_function.name(), m_function.parameters().size(), m_maxSlot, m_maxDepth,
+                    ClosureInterpreter.isBooleanType(m_function.returnType()), Arrays.copyOf(m_code, m_size));
+        }
+
+        //////////////
+        /// SCOPES ///
+        //////////////
+        private int declare(String name, boolean isBoolean) {
+            int slot = m_nextSlot++;
+            m_maxSlot = Math.max(m_maxSlot, m_nextSlot);
+            m_scopes.peek().put(name, new Local(slot, isBoolean));
+            return slot;
+        }
+
+        private Local resolve(String name) {
+            for (Map<String, Local> scope : m_scopes) {
+                Local local = scope.get(name);
+                if (local != null) {
+                    return local;
+                }
+            }
+            throw new RuntimeException("Compile error in " + m_function.name() + "(): unknown variable " + name);
+        }
+
+        //////////////////
+        /// STATEMENTS ///
+        //////////////////
+        private void block(ParseTree.BlockNode block) {
+            int firstSlot = m_nextSlot;
+            m_scopes.push(new HashMap<>());
+            for (ParseTree.StatementNode statement : block.statements()) {
+                statement(statement);
+            }
+            m_scopes.pop();
+            m_nextSlot = firstSlot;
+        }
+
+        private void statement(ParseTree.StatementNode statement) {
+            switch (statement) {
+                case ParseTree.VariableDeclarationNode(String type, String name, ParseTree.ExpressionNode initializer) -> {
+                    boolean isBoolean = ClosureInterpreter.isBooleanType(type);
+                    if (initializer != null) {
+                        boolean valueIsBoolean = expression(initializer);
+                        if (!type.equals("STOF_INT") && !type.equals("STOF_BOOLEAN")) {
+                            isBoolean = valueIsBoolean; // var and let take the type of their initializer
+                        }
+                    } else {
+                        emit(Bytecode.PUSH, 0);
+                    }
+                    emit(Bytecode.STORE, declare(name, isBoolean));
+                }
+                case ParseTree.VariableAssignmentNode(String name, ParseTree.ExpressionNode value) -> {
+                    expression(value);
+                    emit(Bytecode.STORE, resolve(name).slot());
+                }
+                case ParseTree.IfNode(ParseTree.ExpressionNode condition, ParseTree.BlockNode thenBlock,
+                                      List<ParseTree.ElseIfNode> elseIfClauses, ParseTree.BlockNode elseBlock) -> {
+                    List<Integer> exits = new ArrayList<>();
+                    int next = branchIfFalse(condition);
+                    block(thenBlock);
+                    if (!elseIfClauses.isEmpty() || elseBlock != null) {
+                        exits.add(jump(Bytecode.JUMP));
+                    }
+                    for (int i = 0; i < elseIfClauses.size(); i++) {
+                        bind(next);
+                        next = branchIfFalse(elseIfClauses.get(i).condition());
+                        block(elseIfClauses.get(i).block());
+                        if (i + 1 < elseIfClauses.size() || elseBlock != null) {
+                            exits.add(jump(Bytecode.JUMP));
+                        }
+                    }
+                    bind(next);
+                    if (elseBlock != null) {
+                        block(elseBlock);
+                    }
+                    for (int exit : exits) {
+                        bind(exit);
+                    }
+                }
+                case ParseTree.ForNode(ParseTree.StatementNode initialization, ParseTree.ExpressionNode condition,
+                                       ParseTree.ExpressionNode increment, ParseTree.BlockNode body) -> {
+                    int firstSlot = m_nextSlot;
+                    m_scopes.push(new HashMap<>());
+                    if (initialization != null) {
+                        statement(initialization);
+                    }
+                    int top = label();
+                    int exit = condition != null ? branchIfFalse(condition) : -1;
+                    block(body);
+                    if (increment != null) {
+                        effect(increment);
+                    }
+                    jumpTo(top);
+                    if (exit >= 0) {
+                        bind(exit);
+                    }
+                    m_scopes.pop();
+                    m_nextSlot = firstSlot;
+                }
+                case ParseTree.WhileNode(ParseTree.ExpressionNode condition, ParseTree.BlockNode body) -> {
+                    int top = label();
+                    int exit = branchIfFalse(condition);
+                    block(body);
+                    jumpTo(top);
+                    bind(exit);
+                }
+                case ParseTree.ReturnNode(ParseTree.ExpressionNode value) -> {
+                    if (value != null) {
+                        expression(value);
+                    } else {
+                        emit(Bytecode.PUSH, 0);
+                    }
+                    emit(Bytecode.RETURN);
+                }
+                case ParseTree.ExitNode(ParseTree.ExpressionNode exitCode) -> {
+                    expression(exitCode);
+                    emit(Bytecode.EXIT);
+                }
+                case ParseTree.ExpressionStatementNode(ParseTree.ExpressionNode expression) -> effect(expression);
+            }
+        }
+
+        // compiles an expression whose value is thrown away
+        private void effect(ParseTree.ExpressionNode expression) {
+            if (expression instanceof ParseTree.UnaryOperatorNode(String operator, ParseTree.VariableNode(String name), boolean ignored)) {
+                emit(Bytecode.INC, resolve(name).slot(), operator.equals("++") ? 1 : -1);
+            } else if (expression instanceof ParseTree.AssignmentExpressionNode(String name, ParseTree.ExpressionNode value)) {
+                expression(value);
+                emit(Bytecode.STORE, resolve(name).slot());
+            } else {
+                expression(expression);
+                emit(Bytecode.POP);
+            }
+        }
+
+        // compiles a condition and returns the position of the jump to patch with the false target
+        private int branchIfFalse(ParseTree.ExpressionNode condition) {
+            if (condition instanceof ParseTree.BinaryOperatorNode(ParseTree.ExpressionNode left, String operator, ParseTree.ExpressionNode right)) {
+                int fused = switch (operator) {
+                    case ">" -> Bytecode.JUMP_IF_NOT_GT;
+                    case "<" -> Bytecode.JUMP_IF_NOT_LT;
+                    case ">=" -> Bytecode.JUMP_IF_NOT_GE;
+                    case "<=" -> Bytecode.JUMP_IF_NOT_LE;
+                    default -> -1;
+                };
+                if (fused >= 0) {
+                    expression(left);
+                    expression(right);
+                    return compareAndJump(fused);
+                }
+            }
+            expression(condition);
+            return jump(Bytecode.JUMP_IF_FALSE);
+        }
+
+        ///////////////////
+        /// EXPRESSIONS ///
+        ///////////////////
+        // emits code that leaves the value on the stack, returns whether it is a boolean
+        private boolean expression(ParseTree.ExpressionNode expression) {
+            switch (expression) {
+                case ParseTree.IntLiteralNode(int value) -> {
+                    emit(Bytecode.PUSH, value);
+                    return false;
+                }
+                case ParseTree.BooleanLiteralNode(boolean value) -> {
+                    emit(Bytecode.PUSH, value ? 1 : 0);
+                    return true;
+                }
+                case ParseTree.VariableNode(String name) -> {
+                    Local local = resolve(name);
+                    emit(Bytecode.LOAD, local.slot());
+                    return local.isBoolean();
+                }
+                case ParseTree.AssignmentExpressionNode(String variableName, ParseTree.ExpressionNode value) -> {
+                    Local local = resolve(variableName);
+                    expression(value);
+                    emit(Bytecode.TEE, local.slot());
+                    return local.isBoolean();
+                }
+                case ParseTree.FunctionCallNode(String functionName, List<ParseTree.ExpressionNode> arguments) -> {
+                    return call(functionName, arguments);
+                }
+                case ParseTree.BinaryOperatorNode(ParseTree.ExpressionNode left, String operator, ParseTree.ExpressionNode right) -> {
+                    expression(left);
+                    expression(right);
+                    int opcode = switch (operator) {
+                        case "+" -> Bytecode.ADD;
+                        case "-" -> Bytecode.SUB;
+                        case "*" -> Bytecode.MUL;
+                        case "/" -> Bytecode.DIV;
+                        case "%" -> Bytecode.MOD;
+                        case ">" -> Bytecode.GT;
+                        case "<" -> Bytecode.LT;
+                        case ">=" -> Bytecode.GE;
+                        case "<=" -> Bytecode.LE;
+                        default -> throw new RuntimeException("Compile error in " + m_function.name() + "(): unknown operator " + operator);
+                    };
+                    emit(opcode);
+                    return opcode >= Bytecode.GT;
+                }
+                case ParseTree.UnaryOperatorNode(String operator, ParseTree.ExpressionNode operand, boolean isPostfix) -> {
+                    if (!(operand instanceof ParseTree.VariableNode(String name))) {
+                        throw new RuntimeException("Compile error in " + m_function.name() + "(): " + operator + " needs a variable");
+                    }
+                    emit(isPostfix ? Bytecode.POST_INC : Bytecode.PRE_INC, resolve(name).slot(), operator.equals("++") ? 1 : -1);
+                    return false;
+                }
+            }
+        }
+
+        private boolean call(String functionName, List<ParseTree.ExpressionNode> arguments) {
+            Integer index = m_functionIndexes.get(functionName);
+            if (index == null && functionName.equals("print")) {
+                int booleanMask = 0;
+                for (int i = 0; i < arguments.size(); i++) {
+                    if (expression(arguments.get(i)) && i < 32) {
+                        booleanMask |= 1 << i;
+                    }
+                }
+                emit(Bytecode.PRINT, arguments.size(), booleanMask);
+                return false;
+            }
+            if (index == null) {
+                throw new RuntimeException("Compile error in " + m_function.name() + "(): unknown function " + functionName + "()");
+            }
+
+            ParseTree.FunctionNode target = m_functions.get(index);
+            if (target.parameters().size() != arguments.size()) {
+                throw new RuntimeException("Compile error in " + m_function.name() + "(): " + functionName + "() expects "
+                        + target.parameters().size() + " arguments");
+            }
+            for (ParseTree.ExpressionNode argument : arguments) {
+                expression(argument);
+            }
+            emit(Bytecode.CALL, index);
+            m_depth -= arguments.size() - 1;
+            return ClosureInterpreter.isBooleanType(target.returnType());
+        }
+
+        ////////////////
+        /// EMITTING ///
+        ////////////////
+        private void emit(int opcode, int... operands) {
+            // merge LOAD + LOAD and LOAD + PUSH into one dispatch, unless something jumps between them
+            if ((opcode == Bytecode.LOAD || opcode == Bytecode.PUSH) && m_lastOp >= 0 && m_lastOp + 2 == m_size
+                    && m_code[m_lastOp] == Bytecode.LOAD && m_lastLabel != m_size) {
+                m_code[m_lastOp] = opcode == Bytecode.LOAD ? Bytecode.LOAD_LOAD : Bytecode.LOAD_PUSH;
+                append(operands[0]);
+                adjustDepth(1);
+                return; // m_lastOp still points at the fused load, a following compare can absorb it
+            }
+
+            m_lastOp = m_size;
+            append(opcode);
+            for (int operand : operands) {
+                append(operand);
+            }
+            adjustDepth(switch (opcode) {
+                case Bytecode.PUSH, Bytecode.LOAD, Bytecode.PRE_INC, Bytecode.POST_INC -> 1;
+                case Bytecode.STORE, Bytecode.POP, Bytecode.RETURN, Bytecode.EXIT, Bytecode.JUMP_IF_FALSE,
+                     Bytecode.ADD, Bytecode.SUB, Bytecode.MUL, Bytecode.DIV, Bytecode.MOD,
+                     Bytecode.GT, Bytecode.LT, Bytecode.GE, Bytecode.LE -> -1;
+                case Bytecode.JUMP_IF_NOT_GT, Bytecode.JUMP_IF_NOT_LT,
+                     Bytecode.JUMP_IF_NOT_GE, Bytecode.JUMP_IF_NOT_LE -> -2;
+                case Bytecode.PRINT -> 1 - operands[0];
+                default -> 0; // CALL is adjusted by the caller, it knows the argument count
+            });
+        }
+
+        private void adjustDepth(int delta) {
+            m_depth += delta;
+            m_maxDepth = Math.max(m_maxDepth, m_depth);
+        }
+
+        private void append(int word) {
+            if (m_size == m_code.length) {
+                m_code = Arrays.copyOf(m_code, m_size * 2);
+            }
+            m_code[m_size++] = word;
+        }
+
+        // emits a forward jump and returns the position of its target operand
+        private int jump(int opcode) {
+            emit(opcode, -1);
+            return m_size - 1;
+        }
+
+        // a comparison of a local against a constant or another local, right after a fused load, collapses into a
+        // single instruction. this is the shape of almost every loop test
+        private int compareAndJump(int opcode) {
+            int load = m_lastOp;
+            if (load >= 0 && load + 3 == m_size && m_lastLabel != m_size
+                    && (opcode == Bytecode.JUMP_IF_NOT_LT || opcode == Bytecode.JUMP_IF_NOT_GT)) {
+                boolean lessThan = opcode == Bytecode.JUMP_IF_NOT_LT;
+                int fused = switch (m_code[load]) {
+                    case Bytecode.LOAD_PUSH -> lessThan ? Bytecode.JUMP_UNLESS_LOCAL_LT_CONST : Bytecode.JUMP_UNLESS_LOCAL_GT_CONST;
+                    case Bytecode.LOAD_LOAD -> lessThan ? Bytecode.JUMP_UNLESS_LOCAL_LT_LOCAL : Bytecode.JUMP_UNLESS_LOCAL_GT_LOCAL;
+                    default -> -1;
+                };
+                if (fused >= 0) {
+                    m_code[load] = fused;
+                    append(-1);
+                    m_depth -= 2; // the two loads never reach the stack
+                    m_lastOp = -1;
+                    return m_size - 1;
+                }
+            }
+            return jump(opcode);
+        }
+
+        private void jumpTo(int target) {
+            emit(Bytecode.JUMP, target);
+        }
+
+        // points a forward jump at the current position
+        private void bind(int operand) {
+            m_code[operand] = label();
+        }
+
+        private int label() {
+            m_lastLabel = m_size;
+            return m_size;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+import java.io.PrintStream;
+import java.util.Arrays;
+
+// stack machine for Bytecode programs. all frames live in one int[]: a frame is the callee's locals followed by
+// its operand stack, and the arguments a caller pushes become the callee's first locals in place. return
+// addresses go into a preallocated frame pool of parallel int arrays, so a call allocates nothing
+public class BytecodeVM {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private static final int MAX_CALL_DEPTH = 10_000;
+
+    private final Bytecode.Program m_program;
+    private final int[][] m_code;
+    private final PrintStream m_out;
+
+    private int[] m_stack = new int[1024];
+    private final int[] m_returnFunction = new int[MAX_CALL_DEPTH];
+    private final int[] m_returnPc = new int[MAX_CALL_DEPTH];
+    private final int[] m_returnBase = new int[MAX_CALL_DEPTH];
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    public BytecodeVM(Bytecode.Program program, PrintStream out) {
+        this.m_program = program;
+        this.m_code = new int[program.functions().size()][];
+        for (int i = 0; i < m_code.length; i++) {
+            m_code[i] = program.function(i).code();
+        }
+        this.m_out = out;
+    }
+
+    ///////////////
+    /// RUNNING ///
+    ///////////////
+    // runs main() and returns its result as the exit code
+    public int run() {
+        if (m_program.mainIndex() < 0) {
+            throw new RuntimeException("Runtime error: no main() function");
+        }
+
+        int function = m_program.mainIndex();
+        int[] code = m_code[function];
+        int[] stack = ensureRoom(0, function);
+        int base = 0;
+        int sp = m_program.function(function).localCount();
+        int pc = 0;
+        int depth = 0;
+
+        while (true) {
+            switch (code[pc]) {
+                case Bytecode.PUSH -> {
+                    stack[sp++] = code[pc + 1];
+                    pc += 2;
+                }
+                case Bytecode.LOAD -> {
+                    stack[sp++] = stack[base + code[pc + 1]];
+                    pc += 2;
+                }
+                case Bytecode.STORE -> {
+                    stack[base + code[pc + 1]] = stack[--sp];
+                    pc += 2;
+                }
+                case Bytecode.TEE -> {
+                    stack[base + code[pc + 1]] = stack[sp - 1];
+                    pc += 2;
+                }
+                case Bytecode.POP -> {
+                    sp--;
+                    pc++;
+                }
+                case Bytecode.ADD -> {
+                    sp--;
+                    stack[sp - 1] += stack[sp];
+                    pc++;
+                }
+                case Bytecode.SUB -> {
+                    sp--;
+                    stack[sp - 1] -= stack[sp];
+                    pc++;
+                }
+                case Bytecode.MUL -> {
+                    sp--;
+                    stack[sp - 1] *= stack[sp];
+                    pc++;
+                }
+                case Bytecode.DIV -> {
+                    sp--;
+                    stack[sp - 1] /= divisor(stack[sp]);
+                    pc++;
+                }
+                case Bytecode.MOD -> {
+                    sp--;
+                    stack[sp - 1] %= divisor(stack[sp]);
+                    pc++;
+                }
+                case Bytecode.GT -> {
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] > stack[sp] ? 1 : 0;
+                    pc++;
+                }
+                case Bytecode.LT -> {
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] < stack[sp] ? 1 : 0;
+                    pc++;
+                }
+                case Bytecode.GE -> {
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] >= stack[sp] ? 1 : 0;
+                    pc++;
+                }
+                case Bytecode.LE -> {
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] <= stack[sp] ? 1 : 0;
+                    pc++;
+                }
+                case Bytecode.INC -> {
+                    stack[base + code[pc + 1]] += code[pc + 2];
+                    pc += 3;
+                }
+                case Bytecode.PRE_INC -> {
+                    stack[sp++] = stack[base + code[pc + 1]] += code[pc + 2];
+                    pc += 3;
+                }
+                case Bytecode.POST_INC -> {
+                    int slot = base + code[pc + 1];
+                    stack[sp++] = stack[slot];
+                    stack[slot] += code[pc + 2];
+                    pc += 3;
+                }
+                case Bytecode.JUMP -> pc = code[pc + 1];
+                case Bytecode.JUMP_IF_FALSE -> pc = stack[--sp] == 0 ? code[pc + 1] : pc + 2;
+                case Bytecode.JUMP_IF_NOT_GT -> {
+                    sp -= 2;
+                    pc = stack[sp] > stack[sp + 1] ? pc + 2 : code[pc + 1];
+                }
+                case Bytecode.JUMP_IF_NOT_LT -> {
+                    sp -= 2;
+                    pc = stack[sp] < stack[sp + 1] ? pc + 2 : code[pc + 1];
+                }
+                case Bytecode.JUMP_IF_NOT_GE -> {
+                    sp -= 2;
+                    pc = stack[sp] >= stack[sp + 1] ? pc + 2 : code[pc + 1];
+                }
+                case Bytecode.JUMP_IF_NOT_LE -> {
+                    sp -= 2;
+                    pc = stack[sp] <= stack[sp + 1] ? pc + 2 : code[pc + 1];
+                }
+                case Bytecode.LOAD_LOAD -> {
+                    stack[sp] = stack[base + code[pc + 1]];
+                    stack[sp + 1] = stack[base + code[pc + 2]];
+                    sp += 2;
+                    pc += 3;
+                }
+                case Bytecode.LOAD_PUSH -> {
+                    stack[sp] = stack[base + code[pc + 1]];
+                    stack[sp + 1] = code[pc + 2];
+                    sp += 2;
+                    pc += 3;
+                }
+                case Bytecode.JUMP_UNLESS_LOCAL_LT_CONST ->
+                        pc = stack[base + code[pc + 1]] < code[pc + 2] ? pc + 4 : code[pc + 3];
+                case Bytecode.JUMP_UNLESS_LOCAL_GT_CONST ->
+                        pc = stack[base + code[pc + 1]] > code[pc + 2] ? pc + 4 : code[pc + 3];
+                case Bytecode.JUMP_UNLESS_LOCAL_LT_LOCAL ->
+                        pc = stack[base + code[pc + 1]] < stack[base + code[pc + 2]] ? pc + 4 : code[pc + 3];
+                case Bytecode.JUMP_UNLESS_LOCAL_GT_LOCAL ->
+                        pc = stack[base + code[pc + 1]] > stack[base + code[pc + 2]] ? pc + 4 : code[pc + 3];
+                case Bytecode.CALL -> {
+                    if (depth == MAX_CALL_DEPTH) {
+                        throw new RuntimeException("Runtime error: stack overflow");
+                    }
+                    int callee = code[pc + 1];
+                    Bytecode.Function target = m_program.function(callee);
+                    m_returnFunction[depth] = function;
+                    m_returnPc[depth] = pc + 2;
+                    m_returnBase[depth] = base;
+                    depth++;
+
+                    // the arguments on top of the stack are the callee's first locals
+                    base = sp - target.parameterCount();
+                    stack = ensureRoom(base, callee);
+                    sp = base + target.localCount();
+                    function = callee;
+                    code = m_code[callee];
+                    pc = 0;
+                }
+                case Bytecode.RETURN -> {
+                    int result = stack[sp - 1];
+                    if (depth == 0) {
+                        return result;
+                    }
+                    depth--;
+                    stack[base] = result; // the result replaces the arguments in the caller's operand stack
+                    sp = base + 1;
+                    function = m_returnFunction[depth];
+                    code = m_code[function];
+                    pc = m_returnPc[depth];
+                    base = m_returnBase[depth];
+                }
+                case Bytecode.PRINT -> {
+                    int count = code[pc + 1];
+                    sp -= count;
+                    print(stack, sp, count, code[pc + 2]);
+                    stack[sp++] = 0;
+                    pc += 3;
+                }
+                case Bytecode.EXIT -> {
+                    return stack[sp - 1];
+                }
+                default -> throw new RuntimeException("Runtime error: bad opcode " + code[pc] + " at " + pc);
+            }
+        }
+    }
+
+    // makes sure a frame for the function fits at base, growing the shared stack if it doesn't
+    private int[] ensureRoom(int base, int function) {
+        Bytecode.Function target = m_program.function(function);
+        int needed = base + target.localCount() + target.maxStack() + 1;
+        if (needed > m_stack.length) {
+            m_stack = Arrays.copyOf(m_stack, Math.max(needed, m_stack.length * 2));
+        }
+        return m_stack;
+    }
+
+    private static int divisor(int value) {
+        if (value == 0) {
+            throw new RuntimeException("Runtime error: division by zero");
+        }
+        return value;
+    }
+
+    private void print(int[] stack, int from, int count, int booleanMask) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                line.append(", ");
+            }
+            if (i < 32 && (booleanMask & (1 << i)) != 0) {
+                line.append(stack[from + i] != 0);
+            } else {
+                line.append(stack[from + i]);
+            }
+        }
+        m_out.println(count == 1 ? line : "[" + line + "]");
+    }
+}
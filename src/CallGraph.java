@@ -0,0 +1,289 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// which function calls which. calls resolve by name the way every backend does it: the first function with that name
+// anywhere in the program wins, and print() is built in. recursion comes from Tarjan's strongly connected components,
+// a function is recursive when it calls itself or sits in a cycle. functions are keyed by name throughout, hashing a
+// FunctionNode record would hash its whole body
+public class CallGraph {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private final Map<String, ParseTree.FunctionNode> m_functions = new LinkedHashMap<>();
+    private final Map<String, List<Call>> m_calls = new HashMap<>();
+    private final Map<String, List<ParseTree.FunctionNode>> m_callers = new HashMap<>();
+    private final List<Call> m_unresolved = new ArrayList<>();
+    private final List<List<ParseTree.FunctionNode>> m_components = new ArrayList<>();
+    private final Set<String> m_recursive = new HashSet<>();
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    public CallGraph(ParseTree.ProgramNode program) {
+        for (ParseTree.ClassNode classNode : program.classes()) {
+            for (ParseTree.FunctionNode function : classNode.functions()) {
+                m_functions.putIfAbsent(function.name(), function);
+            }
+        }
+        for (ParseTree.FunctionNode function : m_functions.values()) {
+            m_calls.put(function.name(), new ArrayList<>());
+            m_callers.put(function.name(), new ArrayList<>());
+        }
+        for (ParseTree.FunctionNode function : m_functions.values()) {
+            new CallCollector(function).block(function.body());
+        }
+        findComponents();
+    }
+
+    // the graph of a single class, calls to functions outside it count as unresolved
+    public static CallGraph of(ParseTree.ClassNode classNode) {
+        return new CallGraph(new ParseTree.ProgramNode(List.of(classNode)));
+    }
+
+    ///////////////////////
+    /// UTILITY CLASSES ///
+    ///////////////////////
+    // one call site. callee is null when no function has that name
+    public record Call(ParseTree.FunctionNode caller, ParseTree.FunctionCallNode site, ParseTree.FunctionNode callee) {}
+
+    ///////////////
+    /// QUERIES ///
+    ///////////////
+    public List<ParseTree.FunctionNode> functions() {
+        return List.copyOf(m_functions.values());
+    }
+
+    // the function a call to name runs, null for print() and unknown names
+    public ParseTree.FunctionNode resolve(String name) {
+        return m_functions.get(name);
+    }
+
+    // every call site in the function's body in source order, print() included
+    public List<Call> calls(ParseTree.FunctionNode caller) {
+        return List.copyOf(m_calls.getOrDefault(caller.name(), List.of()));
+    }
+
+    // each callee once, in the order of their first call
+    public List<ParseTree.FunctionNode> callees(ParseTree.FunctionNode caller) {
+        Map<String, ParseTree.FunctionNode> callees = new LinkedHashMap<>();
+        for (Call call : m_calls.getOrDefault(caller.name(), List.of())) {
+            if (call.callee() != null) {
+                callees.putIfAbsent(call.callee().name(), call.callee());
+            }
+        }
+        return List.copyOf(callees.values());
+    }
+
+    // each caller once, in source order
+    public List<ParseTree.FunctionNode> callers(ParseTree.FunctionNode callee) {
+        return List.copyOf(m_callers.getOrDefault(callee.name(), List.of()));
+    }
+
+    // calls to names no function has, other than print()
+    public List<Call> unresolved() {
+        return List.copyOf(m_unresolved);
+    }
+
+    public boolean isRecursive(ParseTree.FunctionNode function) {
+        return isRecursive(function.name());
+    }
+
+    public boolean isRecursive(String name) {
+        return m_recursive.contains(name);
+    }
+
+    // the strongly connected components, every component after the ones it calls into
+    public List<List<ParseTree.FunctionNode>> components() {
+        return List.copyOf(m_components);
+    }
+
+    // every function after its callees, except where recursion makes that impossible
+    public List<ParseTree.FunctionNode> bottomUp() {
+        List<ParseTree.FunctionNode> order = new ArrayList<>();
+        for (List<ParseTree.FunctionNode> component : m_components) {
+            order.addAll(component);
+        }
+        return order;
+    }
+
+    // the functions a call to root can end up running, root first
+    public List<ParseTree.FunctionNode> reachableFrom(ParseTree.FunctionNode root) {
+        List<ParseTree.FunctionNode> reached = new ArrayList<>();
+        Deque<ParseTree.FunctionNode> work = new ArrayDeque<>();
+        work.add(root);
+        Set<String> seen = new HashSet<>();
+        seen.add(root.name());
+        while (!work.isEmpty()) {
+            ParseTree.FunctionNode function = work.poll();
+            reached.add(function);
+            for (ParseTree.FunctionNode callee : callees(function)) {
+                if (seen.add(callee.name())) {
+                    work.add(callee);
+                }
+            }
+        }
+        return reached;
+    }
+
+    ////////////////////////
+    /// COLLECTING CALLS ///
+    ////////////////////////
+    private final class CallCollector {
+        private final ParseTree.FunctionNode m_caller;
+        private final Set<String> m_seenCallees = new HashSet<>();
+
+        CallCollector(ParseTree.FunctionNode caller) {
+            this.m_caller = caller;
+        }
+
+        void block(ParseTree.BlockNode block) {
+            if (block == null) {
+                return;
+            }
+            for (ParseTree.StatementNode statement : block.statements()) {
+                statement(statement);
+            }
+        }
+
+        private void statement(ParseTree.StatementNode statement) {
+            switch (statement) {
+                case ParseTree.VariableDeclarationNode declaration -> expression(declaration.initializer());
+                case ParseTree.VariableAssignmentNode assignment -> expression(assignment.value());
+                case ParseTree.IfNode ifNode -> {
+                    expression(ifNode.condition());
+                    block(ifNode.thenBlock());
+                    for (ParseTree.ElseIfNode elseIf : ifNode.elseIfClauses()) {
+                        expression(elseIf.condition());
+                        block(elseIf.block());
+                    }
+                    block(ifNode.elseBlock());
+                }
+                case ParseTree.ForNode forNode -> {
+                    if (forNode.initialization() != null) {
+                        statement(forNode.initialization());
+                    }
+                    expression(forNode.condition());
+                    expression(forNode.increment());
+                    block(forNode.body());
+                }
+                case ParseTree.WhileNode whileNode -> {
+                    expression(whileNode.condition());
+                    block(whileNode.body());
+                }
+                case ParseTree.ReturnNode returnNode -> expression(returnNode.value());
+                case ParseTree.ExitNode exitNode -> expression(exitNode.exitCode());
+                case ParseTree.ExpressionStatementNode expressionStatement -> expression(expressionStatement.expression());
+            }
+        }
+
+        private void expression(ParseTree.ExpressionNode expression) {
+            switch (expression) {
+                case null -> {}
+                case ParseTree.FunctionCallNode call -> {
+                    ParseTree.FunctionNode callee = m_functions.get(call.functionName());
+                    m_calls.get(m_caller.name()).add(new Call(m_caller, call, callee));
+                    if (callee == null && !call.functionName().equals("print")) {
+                        m_unresolved.add(new Call(m_caller, call, null));
+                    }
+                    if (callee != null && m_seenCallees.add(callee.name())) {
+                        m_callers.get(callee.name()).add(m_caller);
+                    }
+                    for (ParseTree.ExpressionNode argument : call.arguments()) {
+                        expression(argument);
+                    }
+                }
+                case ParseTree.BinaryOperatorNode binary -> {
+                    expression(binary.left());
+                    expression(binary.right());
+                }
+                case ParseTree.UnaryOperatorNode unary -> expression(unary.operand());
+                case ParseTree.AssignmentExpressionNode assignment -> expression(assignment.value());
+                case ParseTree.VariableNode ignored -> {}
+                case ParseTree.IntLiteralNode ignored -> {}
+                case ParseTree.BooleanLiteralNode ignored -> {}
+            }
+        }
+    }
+
+    /////////////////
+    /// RECURSION ///
+    /////////////////
+    // Tarjan's algorithm with an explicit stack, a long chain of calls would overflow a recursive one. components
+    // come out callees first
+    private void findComponents() {
+        List<String> names = new ArrayList<>(m_functions.keySet());
+        Map<String, Integer> index = new HashMap<>();
+        Map<String, Integer> lowLink = new HashMap<>();
+        Deque<String> stack = new ArrayDeque<>();
+        Set<String> onStack = new HashSet<>();
+
+        for (String root : names) {
+            if (index.containsKey(root)) {
+                continue;
+            }
+            Deque<String> path = new ArrayDeque<>();
+            Deque<Integer> nextCall = new ArrayDeque<>();
+            visit(root, index, lowLink, stack, onStack);
+            path.push(root);
+            nextCall.push(0);
+            while (!path.isEmpty()) {
+                String name = path.peek();
+                int next = nextCall.pop();
+                List<Call> calls = m_calls.get(name);
+                if (next < calls.size()) {
+                    nextCall.push(next + 1);
+                    ParseTree.FunctionNode callee = calls.get(next).callee();
+                    if (callee == null) {
+                        continue;
+                    }
+                    if (callee.name().equals(name)) {
+                        m_recursive.add(name);
+                    }
+                    if (!index.containsKey(callee.name())) {
+                        visit(callee.name(), index, lowLink, stack, onStack);
+                        path.push(callee.name());
+                        nextCall.push(0);
+                    } else if (onStack.contains(callee.name())) {
+                        lowLink.put(name, Math.min(lowLink.get(name), index.get(callee.name())));
+                    }
+                    continue;
+                }
+
+                path.pop();
+                if (!path.isEmpty()) {
+                    String parent = path.peek();
+                    lowLink.put(parent, Math.min(lowLink.get(parent), lowLink.get(name)));
+                }
+                if (lowLink.get(name).equals(index.get(name))) {
+                    List<ParseTree.FunctionNode> component = new ArrayList<>();
+                    String member;
+                    do {
+                        member = stack.pop();
+                        onStack.remove(member);
+                        component.add(m_functions.get(member));
+                    } while (!member.equals(name));
+                    if (component.size() > 1) {
+                        for (ParseTree.FunctionNode function : component) {
+                            m_recursive.add(function.name());
+                        }
+                    }
+                    m_components.add(component.reversed());
+                }
+            }
+        }
+    }
+
+    private static void visit(String name, Map<String, Integer> index, Map<String, Integer> lowLink, Deque<String> stack, Set<String> onStack) {
+        index.put(name, index.size());
+        lowLink.put(name, index.get(name));
+        stack.push(name);
+        onStack.add(name);
+    }
+}
@@ -0,0 +1,153 @@
+import java.util.HashMap;
+import java.util.Map;
+
+// tidies the control-flow graph after other passes: removes phis that only ever see one value, lets empty blocks
+// that just jump on be skipped, and merges a block into its predecessor when that is the only way in
+public class CfgSimplification implements IrOptimizer.Pass {
+    @Override
+    public String name() {
+        return "cfg-simplification";
+    }
+
+    @Override
+    public int run(Ir.Function function) {
+        int changes = removeTrivialPhis(function);
+        changes += skipEmptyBlocks(function);
+        changes += mergeBlocks(function);
+        if (changes > 0) {
+            function.renumberBlocks();
+        }
+        return changes;
+    }
+
+    // a phi whose operands are all one value (or the phi itself) is that value
+    static int removeTrivialPhis(Ir.Function function) {
+        Map<Ir.Value, Ir.Value> replaced = new HashMap<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Ir.Block block : function.blocks) {
+                for (Ir.Value phi : block.instructions) {
+                    if (phi.op != Ir.Op.PHI) {
+                        break;
+                    }
+                    if (replaced.containsKey(phi)) {
+                        continue;
+                    }
+                    Ir.Value same = trivialValue(phi, replaced);
+                    if (same != null) {
+                        replaced.put(phi, same);
+                        changed = true;
+                    }
+                }
+            }
+        }
+        if (replaced.isEmpty()) {
+            return 0;
+        }
+        function.replaceAllUses(replaced);
+        for (Ir.Block block : function.blocks) {
+            block.instructions.removeIf(replaced::containsKey);
+        }
+        return replaced.size();
+    }
+
+    private static Ir.Value trivialValue(Ir.Value phi, Map<Ir.Value, Ir.Value> replaced) {
+        Ir.Value same = null;
+        for (Ir.Value operand : phi.operands) {
+            Ir.Value replacement = replaced.get(operand);
+            while (replacement != null) {
+                operand = replacement;
+                replacement = replaced.get(operand);
+            }
+            if (operand == same || operand == phi) {
+                continue;
+            }
+            if (same != null) {
+                return null;
+            }
+            same = operand;
+        }
+        return same;
+    }
+
+    // an empty block that only jumps on is taken out of the path. when the target has phis this is only done for
+    // a block with a single predecessor that isn't already a predecessor of the target, so every phi operand keeps
+    // exactly one incoming edge
+    private static int skipEmptyBlocks(Ir.Function function) {
+        int changes = 0;
+        for (int i = 1; i < function.blocks.size(); i++) {
+            Ir.Block empty = function.blocks.get(i);
+            Ir.Block target = empty.target;
+            if (!empty.instructions.isEmpty() || empty.terminator != Ir.Op.JUMP || target == empty) {
+                continue;
+            }
+
+            boolean targetHasPhis = !target.instructions.isEmpty() && target.instructions.getFirst().op == Ir.Op.PHI;
+            if (targetHasPhis) {
+                if (empty.predecessors.size() != 1 || target.predecessors.contains(empty.predecessors.getFirst())) {
+                    continue;
+                }
+                Ir.Block predecessor = empty.predecessors.getFirst();
+                predecessor.replaceSuccessor(empty, target);
+                target.predecessors.set(target.predecessors.indexOf(empty), predecessor);
+            } else {
+                target.predecessors.remove(empty);
+                for (Ir.Block predecessor : empty.predecessors) {
+                    predecessor.replaceSuccessor(empty, target);
+                    if (predecessor.terminator == Ir.Op.BRANCH && predecessor.target == predecessor.otherwise) {
+                        predecessor.terminator = Ir.Op.JUMP;
+                        predecessor.value = null;
+                        predecessor.otherwise = null;
+                    }
+                    if (!target.predecessors.contains(predecessor)) {
+                        target.predecessors.add(predecessor);
+                    }
+                }
+            }
+            function.blocks.remove(i--);
+            changes++;
+        }
+        return changes;
+    }
+
+    // a block whose only predecessor jumps straight to it is appended to that predecessor
+    private static int mergeBlocks(Ir.Function function) {
+        int changes = 0;
+        for (int i = 1; i < function.blocks.size(); i++) {
+            Ir.Block block = function.blocks.get(i);
+            if (block.predecessors.size() != 1) {
+                continue;
+            }
+            Ir.Block predecessor = block.predecessors.getFirst();
+            if (predecessor == block || predecessor.terminator != Ir.Op.JUMP) {
+                continue;
+            }
+
+            // with a single predecessor every phi is trivial
+            Map<Ir.Value, Ir.Value> phis = new HashMap<>();
+            for (Ir.Value value : block.instructions) {
+                if (value.op == Ir.Op.PHI) {
+                    phis.put(value, value.operands[0]);
+                }
+            }
+            block.instructions.removeIf(phis::containsKey);
+            function.replaceAllUses(phis);
+
+            for (Ir.Value value : block.instructions) {
+                value.block = predecessor;
+            }
+            predecessor.instructions.addAll(block.instructions);
+            predecessor.terminator = block.terminator;
+            predecessor.value = block.value;
+            predecessor.target = block.target;
+            predecessor.otherwise = block.otherwise;
+            for (Ir.Block successor : block.successors()) {
+                successor.predecessors.replaceAll(p -> p == block ? predecessor : p);
+            }
+            function.blocks.remove(i--);
+            changes++;
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,456 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// runs a Stof program by first compiling every ParseTree node into a tree of closures. all the decisions the
+// TreeWalkInterpreter makes again on every visit happen once here: variables are slots in an int[] frame, taken
+// from the SemanticAnalyzer's model, operators are picked once instead of switching on the operator string, and
+// calls point straight at the compiled callee. booleans live in the frame as 0/1, their static type is only kept
+// around for print(). with a Profiler every statement and call is compiled with its hooks, without one there are none
+public class ClosureInterpreter {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private final Map<String, CompiledFunction> m_functions = new HashMap<>();
+    private final IdentityHashMap<ParseTree.FunctionNode, CompiledFunction> m_compiled = new IdentityHashMap<>();
+    private final SemanticModel m_model;
+    private final PrintStream m_out;
+    private final Profiler m_profiler; // null when the run isn't profiled
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    public ClosureInterpreter(ParseTree.ProgramNode program, PrintStream out) {
+        this(program, out, null);
+    }
+
+    public ClosureInterpreter(ParseTree.ProgramNode program, PrintStream out, Profiler profiler) {
+        this.m_out = out;
+        this.m_profiler = profiler;
+        this.m_model = SemanticAnalyzer.analyze(program).requireNoErrors();
+
+        // declare every function first so calls can be bound while the bodies compile
+        List<ParseTree.FunctionNode> functions = new ArrayList<>();
+        for (ParseTree.ClassNode classNode : program.classes()) {
+            for (ParseTree.FunctionNode function : classNode.functions()) {
+                if (!m_functions.containsKey(function.name())) {
+                    CompiledFunction compiled = new CompiledFunction(function);
+                    compiled.profilerId = profiler != null ? profiler.function(function) : -1;
+                    m_functions.put(function.name(), compiled);
+                    m_compiled.put(function, compiled);
+                    functions.add(function);
+                }
+            }
+        }
+        for (ParseTree.FunctionNode function : functions) {
+            new FunctionCompiler(m_compiled.get(function)).compile(function);
+        }
+    }
+
+    ///////////////////////
+    /// UTILITY CLASSES ///
+    ///////////////////////
+    // an expression, evaluated against the current frame. booleans come back as 0 or 1
+    @FunctionalInterface
+    interface Expr {
+        int eval(int[] frame);
+    }
+
+    // a statement. returns true when a return statement ran, the value is left in frame[0]
+    @FunctionalInterface
+    interface Stmt {
+        boolean exec(int[] frame);
+    }
+
+    // thrown by exit(code). it never needs a stack trace, and is never serialized
+    @SuppressWarnings("serial")
+    public static final class ExitSignal extends RuntimeException {
+        private final int m_code;
+
+        public ExitSignal(int code) {
+            super(null, null, false, false);
+            this.m_code = code;
+        }
+
+        public int code() {
+            return m_code;
+        }
+    }
+
+    static final class CompiledFunction {
+        final String name;
+        final int parameterCount;
+        final boolean returnsBoolean;
+        int frameSize; // slot 0 is the return value, parameters start at slot 1
+        int profilerId; // the Profiler id of its entry statement
+        Stmt body;
+
+        CompiledFunction(ParseTree.FunctionNode function) {
+            this.name = function.name();
+            this.parameterCount = function.parameters().size();
+            this.returnsBoolean = isBooleanType(function.returnType());
+        }
+    }
+
+    // an expression closure together with its static type
+    private record Typed(Expr expr, boolean isBoolean) {}
+
+    ///////////////
+    /// RUNNING ///
+    ///////////////
+    // runs main() and returns its result as the exit code
+    public int run() {
+        CompiledFunction main = m_functions.get("main");
+        if (main == null || main.parameterCount != 0) {
+            throw new RuntimeException("Runtime error: no main() function");
+        }
+        try {
+            int[] frame = new int[main.frameSize];
+            if (m_profiler != null) {
+                m_profiler.start();
+                m_profiler.enter(main.profilerId);
+            }
+            main.body.exec(frame);
+            return frame[0];
+        } catch (ExitSignal exit) {
+            return exit.code();
+        } catch (StackOverflowError e) {
+            throw new RuntimeException("Runtime error: stack overflow");
+        } finally {
+            if (m_profiler != null) {
+                m_profiler.finish();
+            }
+        }
+    }
+
+    static boolean isBooleanType(String type) {
+        return type.equals("STOF_BOOLEAN");
+    }
+
+    /////////////////
+    /// COMPILING ///
+    /////////////////
+    // compiles one function body. slots and call targets come from the semantic model, which has already checked
+    // the program, so nothing here can fail on a name
+    private final class FunctionCompiler {
+        private final CompiledFunction m_target;
+        private int m_enclosing; // the profiler's id of the statement being compiled, its statements nest in it. 0 for none
+
+        FunctionCompiler(CompiledFunction target) {
+            this.m_target = target;
+        }
+
+        void compile(ParseTree.FunctionNode function) {
+            m_target.body = block(function.body());
+            m_target.frameSize = m_model.frameSize(function);
+        }
+
+        private SemanticModel.Symbol symbol(ParseTree.VariableNode variable) {
+            return m_model.symbol(variable);
+        }
+
+        //////////////////
+        /// STATEMENTS ///
+        //////////////////
+        private Stmt block(ParseTree.BlockNode block) {
+            if (m_profiler != null) {
+                return profiledBlock(block);
+            }
+            Stmt[] statements = new Stmt[block.statements().size()];
+            for (int i = 0; i < statements.length; i++) {
+                statements[i] = statement(block.statements().get(i));
+            }
+
+            return switch (statements.length) {
+                case 0 -> frame -> false;
+                case 1 -> statements[0];
+                case 2 -> {
+                    Stmt first = statements[0];
+                    Stmt second = statements[1];
+                    yield frame -> first.exec(frame) || second.exec(frame);
+                }
+                default -> frame -> {
+                    for (Stmt statement : statements) {
+                        if (statement.exec(frame)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                };
+            };
+        }
+
+        private Stmt statement(ParseTree.StatementNode statement) {
+            return switch (statement) {
+                case ParseTree.VariableDeclarationNode declaration -> {
+                    Typed value = declaration.initializer() != null ? expression(declaration.initializer()) : null;
+                    int slot = m_model.symbol(declaration).slot();
+                    if (value == null) {
+                        yield frame -> {
+                            frame[slot] = 0;
+                            return false;
+                        };
+                    }
+                    Expr init = value.expr();
+                    yield frame -> {
+                        frame[slot] = init.eval(frame);
+                        return false;
+                    };
+                }
+                case ParseTree.VariableAssignmentNode assignment -> {
+                    Expr store = store(m_model.symbol(assignment).slot(), expression(assignment.value()).expr());
+                    yield frame -> {
+                        store.eval(frame);
+                        return false;
+                    };
+                }
+                case ParseTree.IfNode(ParseTree.ExpressionNode condition, ParseTree.BlockNode thenBlock,
+                                      List<ParseTree.ElseIfNode> elseIfClauses, ParseTree.BlockNode elseBlock) -> {
+                    // build the chain back to front so every elif is just a nested if/else
+                    Stmt otherwise = elseBlock != null ? block(elseBlock) : null;
+                    for (int i = elseIfClauses.size() - 1; i >= 0; i--) {
+                        ParseTree.ElseIfNode elif = elseIfClauses.get(i);
+                        otherwise = ifElse(expression(elif.condition()).expr(), block(elif.block()), otherwise);
+                    }
+                    yield ifElse(expression(condition).expr(), block(thenBlock), otherwise);
+                }
+                case ParseTree.ForNode(ParseTree.StatementNode initialization, ParseTree.ExpressionNode condition,
+                                       ParseTree.ExpressionNode increment, ParseTree.BlockNode body) -> {
+                    Stmt init = initialization != null ? statement(initialization) : frame -> false;
+                    Expr test = condition != null ? expression(condition).expr() : frame -> 1;
+                    Expr step = increment != null ? expression(increment).expr() : frame -> 0;
+                    Stmt loop = block(body);
+                    yield frame -> {
+                        init.exec(frame);
+                        while (test.eval(frame) != 0) {
+                            if (loop.exec(frame)) {
+                                return true;
+                            }
+                            step.eval(frame);
+                        }
+                        return false;
+                    };
+                }
+                case ParseTree.WhileNode(ParseTree.ExpressionNode condition, ParseTree.BlockNode body) -> {
+                    Expr test = expression(condition).expr();
+                    Stmt loop = block(body);
+                    yield frame -> {
+                        while (test.eval(frame) != 0) {
+                            if (loop.exec(frame)) {
+                                return true;
+                            }
+                        }
+                        return false;
+                    };
+                }
+                case ParseTree.ReturnNode(ParseTree.ExpressionNode value) -> {
+                    Expr result = value != null ? expression(value).expr() : frame -> 0;
+                    yield frame -> {
+                        frame[0] = result.eval(frame);
+                        return true;
+                    };
+                }
+                case ParseTree.ExitNode(ParseTree.ExpressionNode exitCode) -> {
+                    Expr code = expression(exitCode).expr();
+                    yield frame -> {
+                        throw new ExitSignal(code.eval(frame));
+                    };
+                }
+                case ParseTree.ExpressionStatementNode(ParseTree.ExpressionNode expression) -> {
+                    Expr expr = expression(expression).expr();
+                    yield frame -> {
+                        expr.eval(frame);
+                        return false;
+                    };
+                }
+            };
+        }
+
+        // a block that tells the profiler every statement it starts. the statements nested in one are registered
+        // while it compiles, so they know which statement they are in
+        private Stmt profiledBlock(ParseTree.BlockNode block) {
+            Profiler profiler = m_profiler;
+            Stmt[] statements = new Stmt[block.statements().size()];
+            int[] ids = new int[statements.length];
+            int enclosing = m_enclosing;
+            for (int i = 0; i < statements.length; i++) {
+                ParseTree.StatementNode statement = block.statements().get(i);
+                ids[i] = m_profiler.statement(m_target.profilerId, enclosing, statement);
+                m_enclosing = ids[i];
+                statements[i] = statement(statement);
+            }
+            m_enclosing = enclosing;
+
+            return switch (statements.length) {
+                case 0 -> frame -> false;
+                case 1 -> {
+                    Stmt only = statements[0];
+                    int id = ids[0];
+                    yield frame -> {
+                        profiler.at(id);
+                        return only.exec(frame);
+                    };
+                }
+                case 2 -> {
+                    Stmt first = statements[0];
+                    Stmt second = statements[1];
+                    int firstId = ids[0];
+                    int secondId = ids[1];
+                    yield frame -> {
+                        profiler.at(firstId);
+                        if (first.exec(frame)) {
+                            return true;
+                        }
+                        profiler.at(secondId);
+                        return second.exec(frame);
+                    };
+                }
+                default -> frame -> {
+                    for (int i = 0; i < statements.length; i++) {
+                        profiler.at(ids[i]);
+                        if (statements[i].exec(frame)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                };
+            };
+        }
+
+        private static Stmt ifElse(Expr condition, Stmt then, Stmt otherwise) {
+            if (otherwise == null) {
+                return frame -> condition.eval(frame) != 0 && then.exec(frame);
+            }
+            return frame -> condition.eval(frame) != 0 ? then.exec(frame) : otherwise.exec(frame);
+        }
+
+        ///////////////////
+        /// EXPRESSIONS ///
+        ///////////////////
+        private Typed expression(ParseTree.ExpressionNode expression) {
+            return switch (expression) {
+                case ParseTree.IntLiteralNode(int value) -> new Typed(frame -> value, false);
+                case ParseTree.BooleanLiteralNode(boolean value) -> {
+                    int bit = value ? 1 : 0;
+                    yield new Typed(frame -> bit, true);
+                }
+                case ParseTree.VariableNode variable -> {
+                    SemanticModel.Symbol symbol = symbol(variable);
+                    int slot = symbol.slot();
+                    yield new Typed(frame -> frame[slot], symbol.type() == SemanticModel.Type.BOOLEAN);
+                }
+                case ParseTree.AssignmentExpressionNode assignment -> {
+                    SemanticModel.Symbol symbol = m_model.symbol(assignment);
+                    yield new Typed(store(symbol.slot(), expression(assignment.value()).expr()), symbol.type() == SemanticModel.Type.BOOLEAN);
+                }
+                case ParseTree.FunctionCallNode call -> call(call);
+                case ParseTree.BinaryOperatorNode(ParseTree.ExpressionNode left, String operator, ParseTree.ExpressionNode right) ->
+                        binary(expression(left).expr(), operator, expression(right).expr());
+                case ParseTree.UnaryOperatorNode(String operator, ParseTree.ExpressionNode operand, boolean isPostfix) -> {
+                    int slot = symbol((ParseTree.VariableNode) operand).slot();
+                    int delta = operator.equals("++") ? 1 : -1;
+                    yield new Typed(isPostfix
+                            ? frame -> (frame[slot] += delta) - delta
+                            : frame -> frame[slot] += delta, false);
+                }
+            };
+        }
+
+        private static Expr store(int slot, Expr value) {
+            return frame -> frame[slot] = value.eval(frame);
+        }
+
+        // picks the operator once, at compile time
+        private Typed binary(Expr l, String operator, Expr r) {
+            return switch (operator) {
+                case "+" -> new Typed(frame -> l.eval(frame) + r.eval(frame), false);
+                case "-" -> new Typed(frame -> l.eval(frame) - r.eval(frame), false);
+                case "*" -> new Typed(frame -> l.eval(frame) * r.eval(frame), false);
+                case "/" -> new Typed(frame -> {
+                    int left = l.eval(frame);
+                    int right = r.eval(frame);
+                    if (right == 0) {
+                        throw new RuntimeException("Runtime error: division by zero");
+                    }
+                    return left / right;
+                }, false);
+                case "%" -> new Typed(frame -> {
+                    int left = l.eval(frame);
+                    int right = r.eval(frame);
+                    if (right == 0) {
+                        throw new RuntimeException("Runtime error: division by zero");
+                    }
+                    return left % right;
+                }, false);
+                case ">" -> new Typed(frame -> l.eval(frame) > r.eval(frame) ? 1 : 0, true);
+                case "<" -> new Typed(frame -> l.eval(frame) < r.eval(frame) ? 1 : 0, true);
+                case ">=" -> new Typed(frame -> l.eval(frame) >= r.eval(frame) ? 1 : 0, true);
+                case "<=" -> new Typed(frame -> l.eval(frame) <= r.eval(frame) ? 1 : 0, true);
+                default -> throw new RuntimeException("Compile error in " + m_target.name + "(): unknown operator " + operator);
+            };
+        }
+
+        private Typed call(ParseTree.FunctionCallNode call) {
+            Typed[] args = new Typed[call.arguments().size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = expression(call.arguments().get(i));
+            }
+
+            ParseTree.FunctionNode function = m_model.target(call);
+            if (function == null) {
+                return print(args);
+            }
+            CompiledFunction target = m_compiled.get(function);
+
+            Expr[] values = new Expr[args.length];
+            for (int i = 0; i < args.length; i++) {
+                values[i] = args[i].expr();
+            }
+            // the callee's frame size is only known once its body is compiled, so it is read at call time
+            if (m_profiler != null) {
+                Profiler profiler = m_profiler;
+                return new Typed(frame -> {
+                    int[] callee = new int[target.frameSize];
+                    for (int i = 0; i < values.length; i++) {
+                        callee[i + 1] = values[i].eval(frame);
+                    }
+                    // an exception always ends the run, so the calls it unwinds are left to Profiler.finish()
+                    profiler.enter(target.profilerId);
+                    target.body.exec(callee);
+                    profiler.exit();
+                    return callee[0];
+                }, target.returnsBoolean);
+            }
+            return new Typed(frame -> {
+                int[] callee = new int[target.frameSize];
+                for (int i = 0; i < values.length; i++) {
+                    callee[i + 1] = values[i].eval(frame);
+                }
+                target.body.exec(callee);
+                return callee[0];
+            }, target.returnsBoolean);
+        }
+
+        private Typed print(Typed[] args) {
+            return new Typed(frame -> {
+                StringBuilder line = new StringBuilder();
+                for (int i = 0; i < args.length; i++) {
+                    if (i > 0) {
+                        line.append(", ");
+                    }
+                    int value = args[i].expr().eval(frame);
+                    if (args[i].isBoolean()) {
+                        line.append(value != 0);
+                    } else {
+                        line.append(value);
+                    }
+                }
+                m_out.println(args.length == 1 ? line : "[" + line + "]");
+                return 0;
+            }, false);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// an on-disk cache of compiled artifacts. an entry is keyed by the sha-256 of what it was compiled from (the kind of
+// artifact, the cache format and the file's source text), so an unchanged file maps to the same entry on every run
+// and any edit misses. each entry is one file: a small header followed by the artifact's bytes. the cache is kept
+// under a size limit by evicting the least recently used entries, recency survives between runs as the entry file's
+// modification time, which every hit bumps
+public final class CompileCache {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private static final int MAGIC = 0x53544643; // "STFC"
+    private static final int FORMAT_VERSION = 1; // bump when an artifact's encoding changes, old entries then never hit
+    private static final String SUFFIX = ".entry";
+    private static final int HEADER_BYTES = 12; // magic, format version and length, an int each
+    private static final String PARTIAL_PREFIX = "partial";
+    private static final String PARTIAL_SUFFIX = ".tmp";
+
+    private final Path m_directory;
+    private final long m_maxBytes;
+    private final LinkedHashMap<String, Long> m_entries = new LinkedHashMap<>(16, 0.75f, true); // key to size, oldest first
+    private long m_totalBytes;
+    private int m_hits;
+    private int m_misses;
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    private CompileCache(Path directory, long maxBytes) {
+        this.m_directory = directory;
+        this.m_maxBytes = maxBytes;
+    }
+
+    // opens the cache in directory, creating it when needed, and rebuilds the lru order from the entries' timestamps.
+    // the partial entries of runs that died halfway through a put are deleted. one a run still writes then fails to
+    // move into place, which put takes as a failed write
+    public static CompileCache open(Path directory, long maxBytes) throws IOException {
+        Files.createDirectories(directory);
+        CompileCache cache = new CompileCache(directory, maxBytes);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PARTIAL_PREFIX + "*" + PARTIAL_SUFFIX)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+        record Entry(String key, long size, FileTime lastUsed) {}
+        List<Entry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                entries.add(new Entry(name.substring(0, name.length() - SUFFIX.length()), Files.size(file), Files.getLastModifiedTime(file)));
+            }
+        }
+        entries.sort(Comparator.comparing(Entry::lastUsed));
+        for (Entry entry : entries) {
+            cache.m_entries.put(entry.key(), entry.size());
+            cache.m_totalBytes += entry.size();
+        }
+        cache.deleteEntryFiles(cache.evict());
+        return cache;
+    }
+
+    ////////////
+    /// KEYS ///
+    ////////////
+    // the key of the artifact of this kind compiled from content. content is encoded to utf-8 a chunk at a time
+    // straight into the digest, never copied whole. malformed chars are replaced like String.getBytes does, so the key
+    // is the digest of the same bytes
+    public static String key(String kind, CharSequence content) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every jdk has sha-256
+        }
+        digest.update((kind + "\0" + FORMAT_VERSION + "\0").getBytes(StandardCharsets.UTF_8));
+
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.wrap(content);
+        ByteBuffer chunk = ByteBuffer.allocate(8192);
+        CoderResult result;
+        do {
+            result = encoder.encode(chars, chunk, true);
+            digest.update(chunk.flip());
+            chunk.clear();
+        } while (result.isOverflow());
+        do {
+            result = encoder.flush(chunk);
+            digest.update(chunk.flip());
+            chunk.clear();
+        } while (result.isOverflow());
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    ///////////////
+    /// ENTRIES ///
+    ///////////////
+    // the cached bytes of key, null on a miss. an entry that can't be read is dropped and counts as a miss. only the
+    // index is looked at with the lock held, the entry file is read without it, so parallel compiles read at once.
+    // an entry evicted or replaced meanwhile is either gone, a miss, or replaced whole by the atomic move in put
+    public byte[] get(String key) {
+        synchronized (this) {
+            if (m_entries.get(key) == null) { // get, not containsKey, moves the entry to the back of the lru order
+                m_misses++;
+                return null;
+            }
+        }
+        Path file = entryFile(key);
+        byte[] bytes;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("not a cache entry");
+            }
+            // the length is checked against the file, so a corrupted one can't make it allocate more than is there
+            int length = in.readInt();
+            if (length < 0 || length > Files.size(file) - HEADER_BYTES) {
+                throw new IOException("cache entry length " + length + " doesn't fit the file");
+            }
+            bytes = new byte[length];
+            in.readFully(bytes);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            remove(key);
+            synchronized (this) {
+                m_misses++;
+            }
+            return null;
+        }
+        synchronized (this) {
+            m_hits++;
+        }
+        return bytes;
+    }
+
+    // stores bytes under key, then evicts the least recently used entries until the cache fits its limit again.
+    // a failed write only means the next run misses, so it isn't reported. the entry is written without the lock,
+    // which only covers putting it in the index and picking what to evict
+    public void put(String key, byte[] bytes) {
+        Path file = entryFile(key);
+        try {
+            // written to a temporary file first, so a run that dies halfway never leaves a truncated entry behind
+            Path temporary = Files.createTempFile(m_directory, PARTIAL_PREFIX, PARTIAL_SUFFIX);
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temporary))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            remove(key);
+            return;
+        }
+        long size = HEADER_BYTES + bytes.length;
+        List<String> evicted;
+        synchronized (this) {
+            Long previous = m_entries.put(key, size);
+            m_totalBytes += size - (previous != null ? previous : 0);
+            evicted = evict();
+        }
+        deleteEntryFiles(evicted);
+    }
+
+    // takes the least recently used entries out of the index until the cache fits its limit, returns their keys.
+    // called with the lock held, the files are deleted after it is released
+    private List<String> evict() {
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> oldest = m_entries.entrySet().iterator();
+        while (m_totalBytes > m_maxBytes && oldest.hasNext()) {
+            Map.Entry<String, Long> entry = oldest.next();
+            m_totalBytes -= entry.getValue();
+            oldest.remove();
+            evicted.add(entry.getKey());
+        }
+        return evicted;
+    }
+
+    private void remove(String key) {
+        synchronized (this) {
+            Long size = m_entries.remove(key);
+            if (size != null) {
+                m_totalBytes -= size;
+            }
+        }
+        deleteEntryFiles(List.of(key));
+    }
+
+    // an entry put again between leaving the index and its file being deleted loses its file, its next get then
+    // misses and drops it from the index too
+    private void deleteEntryFiles(List<String> keys) {
+        for (String key : keys) {
+            try {
+                Files.deleteIfExists(entryFile(key));
+            } catch (IOException e) {
+                // already gone from the index, it is overwritten or evicted again by a later run
+            }
+        }
+    }
+
+    private Path entryFile(String key) {
+        return m_directory.resolve(key + SUFFIX);
+    }
+
+    //////////////////
+    /// STATISTICS ///
+    //////////////////
+    public synchronized int hits() {
+        return m_hits;
+    }
+
+    public synchronized int misses() {
+        return m_misses;
+    }
+
+    public synchronized long totalBytes() {
+        return m_totalBytes;
+    }
+
+    public synchronized String report() {
+        return "compile cache: " + m_hits + (m_hits == 1 ? " hit, " : " hits, ") + m_misses + (m_misses == 1 ? " miss" : " misses")
+                + ", " + m_entries.size() + " entries, " + m_totalBytes + " bytes";
+    }
+}
@@ -0,0 +1,90 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.List;
+
+// the thin client of a CompileServer: sends a command line and the directory it was given in, and copies the
+// server's response to out as it arrives. nothing is sent unless the socket and the server behind it belong to the
+// user the client runs as
+public final class CompileClient {
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    private CompileClient() {}
+
+    ///////////////
+    /// COMPILE ///
+    ///////////////
+    // false when no server is listening on socket, nothing has been sent then
+    public static boolean compile(Path socket, List<String> arguments, Path workingDirectory, OutputStream out) throws IOException {
+        StringBuilder request = new StringBuilder(CompileServer.PROTOCOL).append('\n');
+        request.append(workingDirectory.toAbsolutePath()).append('\n');
+        for (String argument : arguments) {
+            if (argument.isEmpty() || argument.indexOf('\n') >= 0 || argument.indexOf('\r') >= 0) {
+                throw new IOException("Can't send the argument \"" + argument + "\" to the compile server");
+            }
+            request.append(argument).append('\n');
+        }
+        request.append('\n');
+
+        // a socket in a directory someone else can write to, or that someone else created, could be anybody's
+        UserPrincipal user = CompileServer.currentUser();
+        if (Files.notExists(socket, LinkOption.NOFOLLOW_LINKS)) {
+            return false;
+        }
+        CompileServer.checkPrivate(socket.toAbsolutePath().getParent(), user);
+        if (!Files.getOwner(socket, LinkOption.NOFOLLOW_LINKS).equals(user)) {
+            throw new IOException(socket + " doesn't belong to " + user.getName() + ", not sending it the request");
+        }
+
+        SocketChannel channel = connect(socket);
+        if (channel == null) {
+            return false;
+        }
+        try (channel) {
+            UserPrincipal server = CompileServer.peer(channel);
+            if (!server.equals(user)) {
+                throw new IOException("The compile server on " + socket + " runs as " + server.getName() + ", not sending it the request");
+            }
+            Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+            writer.write(request.toString());
+            writer.flush();
+            channel.shutdownOutput();
+            InputStream in = Channels.newInputStream(channel);
+            in.transferTo(out);
+            out.flush();
+        }
+        return true;
+    }
+
+    public static boolean isListening(Path socket) {
+        SocketChannel channel = connect(socket);
+        if (channel == null) {
+            return false;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // it was listening a moment ago
+        }
+        return true;
+    }
+
+    // null when there's no socket file or nobody accepts on it
+    private static SocketChannel connect(Path socket) {
+        try {
+            return SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
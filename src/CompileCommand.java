@@ -0,0 +1,350 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// one run of the compiler over a command line's options and files, what Main does for its arguments and the
+// CompileServer for every request. everything it reports goes to out and relative paths are resolved against
+// workingDirectory, so the server can run it for clients sitting in other directories
+public final class CompileCommand {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private final CompileDriver m_driver;
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    public CompileCommand(CompileDriver driver) {
+        this.m_driver = driver;
+    }
+
+    ///////////////
+    /// RUNNING ///
+    ///////////////
+    public void run(List<String> commandLine, Path workingDirectory, PrintStream out) {
+        List<String> arguments = new ArrayList<>(commandLine);
+        boolean statsText = arguments.remove("--stats");
+        Path statsJson = null; // the json goes to a file of its own, so what reads it doesn't have to pick it out of the rest
+        int statsJsonOption = arguments.indexOf("--stats-json");
+        if (statsJsonOption >= 0) {
+            if (statsJsonOption + 1 == arguments.size()) {
+                out.println("--stats-json needs the file to write the stats to");
+                return;
+            }
+            statsJson = workingDirectory.resolve(arguments.remove(statsJsonOption + 1));
+            arguments.remove(statsJsonOption);
+        }
+
+        CompileStats stats = statsText || statsJson != null ? new CompileStats() : null;
+        run(arguments, workingDirectory, out, stats);
+        if (stats != null) {
+            stats.finish();
+            if (statsText) {
+                out.print(stats.report());
+            }
+            if (statsJson != null) {
+                try {
+                    Files.writeString(statsJson, stats.toJson());
+                } catch (IOException e) {
+                    out.println("An error has occurred: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void run(List<String> arguments, Path workingDirectory, PrintStream out, CompileStats stats) {
+        boolean watch = arguments.remove("--watch");
+        boolean check = arguments.remove("--check");
+        boolean emitTree = arguments.remove("--emit-tree");
+        boolean profile = arguments.remove("--profile");
+        boolean profileTimed = arguments.remove("--profile-timed");
+        boolean run = arguments.remove("--run") || profile || profileTimed;
+        boolean vm = arguments.remove("--vm");
+        boolean emitBytecode = arguments.remove("--emit-bytecode");
+        boolean jvm = arguments.remove("--jvm");
+        boolean emitClasses = arguments.remove("--emit-classes");
+        boolean nativeBinary = arguments.remove("--native");
+        boolean emitAssembly = arguments.remove("--emit-asm");
+        boolean ir = arguments.remove("--ir");
+        boolean emitIr = arguments.remove("--emit-ir");
+        boolean optimize = arguments.remove("--optimize");
+        boolean json = arguments.remove("--json");
+        boolean noCache = arguments.remove("--no-cache");
+        boolean dumpParseTree = !(check || emitTree || run || vm || emitBytecode || jvm || emitClasses || nativeBinary || emitAssembly || ir || emitIr);
+
+        List<Path> sources;
+        try {
+            sources = CompileDriver.collectSources(workingDirectory, arguments.isEmpty() ? List.of("stof/main.stof") : arguments);
+        } catch (IOException e) {
+            out.println("An error has occurred: " + e.getMessage());
+            return;
+        }
+
+        // watch mode keeps the last parse tree of every file and only re-parses the functions that change
+        if (watch) {
+            try {
+                new WatchMode(sources).run();
+            } catch (IOException | InterruptedException e) {
+                out.println("An error has occurred: " + e.getMessage());
+            }
+            return;
+        }
+
+        // bytecode and the parse tree dump are cached per file, a file that hasn't changed since the last run is
+        // loaded from the cache instead of being parsed and compiled again. only a program that checks out is compiled
+        // to bytecode, one that doesn't fails with its first semantic error
+        if ((vm || emitBytecode) && !check && !emitTree && !run || dumpParseTree) {
+            CompileCache cache = noCache ? null : openCache(workingDirectory, out);
+            List<CompileDriver.Artifact> artifacts;
+            if (dumpParseTree) {
+                // TODO: delete this, this is for testing purposes only
+                // write each parseTree to a txt (or with --json a json) file next to its source for debugging purposes
+                ParseTreeDumper.Format format = json ? ParseTreeDumper.Format.JSON : ParseTreeDumper.Format.TEXT;
+                artifacts = m_driver.compile(sources, cache, json ? "parse-tree-json" : "parse-tree",
+                        (unit, bytes) -> ParseTreeDumper.dump(unit.program(), new OutputStreamWriter(bytes, StandardCharsets.UTF_8), format), stats);
+            } else {
+                artifacts = m_driver.compile(sources, cache, "bytecode", (unit, bytes) -> {
+                    SemanticAnalyzer.analyze(unit.program()).requireNoErrors();
+                    Bytecode.write(new BytecodeCompiler(unit.program()).compile(), bytes);
+                }, stats);
+            }
+
+            for (CompileDriver.Artifact artifact : artifacts) {
+                artifact.diagnostics().forEach(out::println);
+            }
+            for (CompileDriver.Artifact artifact : artifacts) {
+                if (artifact.succeeded()) {
+                    Path path = artifact.path();
+                    String sourceFileName = path.getFileName().toString().replace(".stof", "");
+                    try {
+                        if (dumpParseTree) {
+                            write(path, path.resolveSibling(sourceFileName + (json ? "_parse_tree.json" : "_parse_tree.txt")), artifact.bytes(), stats);
+                        }
+                        if (emitBytecode) {
+                            write(path, path.resolveSibling(sourceFileName + ".stob"), artifact.bytes(), stats);
+                        }
+                        if (vm) {
+                            Bytecode.Program program = Bytecode.read(new ByteArrayInputStream(artifact.bytes()));
+                            int exitCode = new BytecodeVM(program, out).run();
+                            out.println(path + ": exited with " + exitCode);
+                        }
+                    } catch (IOException e) {
+                        out.println(path + ": An error has occurred: " + e.getMessage());
+                    } catch (RuntimeException e) {
+                        out.println(path + ": " + e.getMessage());
+                    }
+                }
+            }
+            if (cache != null) {
+                out.println(cache.report());
+            }
+            return;
+        }
+
+        // read, tokenize and parse every file in parallel, or read its tree back from the cache. units come back in
+        // the same order as sources
+        CompileCache cache = noCache ? null : openCache(workingDirectory, out);
+        List<CompileDriver.CompilationUnit> units = m_driver.compile(sources, cache, stats);
+
+        // diagnostics are printed in source order so the output is the same on every run
+        for (CompileDriver.CompilationUnit unit : units) {
+            unit.diagnostics().forEach(out::println);
+        }
+        if (cache != null) {
+            out.println(cache.report());
+        }
+
+        // resolve names and check types of every program in parallel, errors are printed in source order. every other
+        // option below checks a program the same way before doing anything with it (the closure interpreter behind
+        // --run does it itself), a program that doesn't check out reports its first error and is skipped
+        if (check) {
+            List<Checked> checked = m_driver.map(units, CompileCommand::check);
+            for (int i = 0; i < units.size(); i++) {
+                Path path = units.get(i).path();
+                SemanticModel model = checked.get(i).model();
+                if (checked.get(i).failure() != null) {
+                    out.println(checked.get(i).failure());
+                } else if (model != null && model.hasErrors()) {
+                    model.errors().forEach(error -> out.println(path + ": " + error));
+                } else if (model != null) {
+                    out.println(path + ": no errors");
+                }
+            }
+            return;
+        }
+
+        // write every parse tree next to its source in the binary form other tools can read back without parsing
+        if (emitTree) {
+            for (CompileDriver.CompilationUnit unit : units) {
+                if (unit.succeeded()) {
+                    String sourceFileName = unit.path().getFileName().toString().replace(".stof", "");
+                    try {
+                        SemanticAnalyzer.analyze(unit.program()).requireNoErrors();
+                        write(unit.path(), unit.path().resolveSibling(sourceFileName + ".stpt"), ParseTreeBinary.toBytes(unit.program()), stats);
+                    } catch (IOException e) {
+                        out.println(unit.path() + ": An error has occurred: " + e.getMessage());
+                    } catch (RuntimeException e) {
+                        out.println(unit.path() + ": " + e.getMessage());
+                    }
+                }
+            }
+            return;
+        }
+
+        // run every program through the closure-compiled interpreter. a profiled run parses the file again to keep
+        // where its statements are, then prints the hottest functions and statements and writes every sampled stack
+        // next to the source in collapsed form, <name>.collapsed, for a flame graph
+        if (run) {
+            for (CompileDriver.CompilationUnit unit : units) {
+                if (unit.succeeded()) {
+                    try {
+                        if (profile || profileTimed) {
+                            SourcePositions positions = new SourcePositions(unit.source());
+                            ParseTree.ProgramNode program = new Parser(Tokenizer.tokenizeToStream(unit.source())).parse(positions);
+                            Profiler profiler = new Profiler(positions, Profiler.DEFAULT_INTERVAL_NANOS, profileTimed);
+                            int exitCode = new ClosureInterpreter(program, out, profiler).run();
+                            out.println(unit.path() + ": exited with " + exitCode);
+                            out.print(unit.path() + ": profile\n" + profiler.summary(10));
+                            String sourceFileName = unit.path().getFileName().toString().replace(".stof", "");
+                            write(unit.path(), unit.path().resolveSibling(sourceFileName + ".collapsed"),
+                                    profiler.collapsedStacks().getBytes(StandardCharsets.UTF_8), stats);
+                        } else {
+                            int exitCode = new ClosureInterpreter(unit.program(), out).run();
+                            out.println(unit.path() + ": exited with " + exitCode);
+                        }
+                    } catch (IOException e) {
+                        out.println(unit.path() + ": An error has occurred: " + e.getMessage());
+                    } catch (RuntimeException e) {
+                        out.println(unit.path() + ": " + e.getMessage());
+                    } catch (StackOverflowError | OutOfMemoryError e) {
+                        out.println(CompileDriver.failure(unit.path(), e));
+                    }
+                }
+            }
+            return;
+        }
+
+        // compile every program to JVM classes, then write them to a <name>_classes directory and/or run them here
+        if (jvm || emitClasses) {
+            for (CompileDriver.CompilationUnit unit : units) {
+                if (unit.succeeded()) {
+                    try {
+                        SemanticAnalyzer.analyze(unit.program()).requireNoErrors();
+                        JvmBackend backend = new JvmBackend(unit.program());
+                        if (emitClasses) {
+                            String sourceFileName = unit.path().getFileName().toString().replace(".stof", "");
+                            backend.writeClasses(unit.path().resolveSibling(sourceFileName + "_classes"));
+                        }
+                        if (jvm) {
+                            int exitCode = backend.run();
+                            out.println(unit.path() + ": exited with " + exitCode);
+                        }
+                    } catch (IOException e) {
+                        out.println(unit.path() + ": An error has occurred: " + e.getMessage());
+                    } catch (RuntimeException e) {
+                        out.println(unit.path() + ": " + e.getMessage());
+                    } catch (StackOverflowError | OutOfMemoryError e) {
+                        out.println(CompileDriver.failure(unit.path(), e));
+                    }
+                }
+            }
+            return;
+        }
+
+        // lower every program to ssa form, optionally optimize it, then write a text listing next to the source and/or run it
+        if (ir || emitIr) {
+            for (CompileDriver.CompilationUnit unit : units) {
+                if (unit.succeeded()) {
+                    try {
+                        SemanticAnalyzer.analyze(unit.program()).requireNoErrors();
+                        Ir.Program program = new IrBuilder(unit.program()).build();
+                        if (optimize) {
+                            IrOptimizer optimizer = IrOptimizer.standard(new CallGraph(unit.program()));
+                            optimizer.optimize(program);
+                            out.print(unit.path() + ": optimization passes\n" + optimizer.report());
+                        }
+                        if (emitIr) {
+                            String sourceFileName = unit.path().getFileName().toString().replace(".stof", "");
+                            Files.writeString(unit.path().resolveSibling(sourceFileName + ".ir"), Ir.print(program));
+                        }
+                        if (ir) {
+                            int exitCode = new IrInterpreter(program, out).run();
+                            out.println(unit.path() + ": exited with " + exitCode);
+                        }
+                    } catch (IOException e) {
+                        out.println(unit.path() + ": An error has occurred: " + e.getMessage());
+                    } catch (RuntimeException e) {
+                        out.println(unit.path() + ": " + e.getMessage());
+                    } catch (StackOverflowError | OutOfMemoryError e) {
+                        out.println(CompileDriver.failure(unit.path(), e));
+                    }
+                }
+            }
+            return;
+        }
+
+        // compile every program to x86-64 assembly next to the source, and with --native link it into an executable
+        if (nativeBinary || emitAssembly) {
+            for (CompileDriver.CompilationUnit unit : units) {
+                if (unit.succeeded()) {
+                    try {
+                        SemanticAnalyzer.analyze(unit.program()).requireNoErrors();
+                        String sourceFileName = unit.path().getFileName().toString().replace(".stof", "");
+                        Path assemblyPath = unit.path().resolveSibling(sourceFileName + ".s");
+                        Files.writeString(assemblyPath, new X86Backend(unit.program()).compile());
+                        if (nativeBinary) {
+                            X86Backend.assemble(assemblyPath, unit.path().resolveSibling(sourceFileName));
+                        }
+                    } catch (IOException | InterruptedException e) {
+                        out.println(unit.path() + ": An error has occurred: " + e.getMessage());
+                    } catch (RuntimeException e) {
+                        out.println(unit.path() + ": " + e.getMessage());
+                    } catch (StackOverflowError | OutOfMemoryError e) {
+                        out.println(CompileDriver.failure(unit.path(), e));
+                    }
+                }
+            }
+            return;
+        }
+    }
+
+    // a unit's semantic model, or the diagnostic of a check that failed outright. both are null for a unit that didn't parse
+    private record Checked(SemanticModel model, CompileDriver.Diagnostic failure) {}
+
+    private static Checked check(CompileDriver.CompilationUnit unit) {
+        if (!unit.succeeded()) {
+            return new Checked(null, null);
+        }
+        try {
+            return new Checked(SemanticAnalyzer.analyze(unit.program()), null);
+        } catch (RuntimeException | StackOverflowError | OutOfMemoryError e) {
+            return new Checked(null, CompileDriver.failure(unit.path(), e));
+        }
+    }
+
+    // writes what was compiled from source to file, measured as the source's write phase
+    private static void write(Path source, Path file, byte[] bytes, CompileStats stats) throws IOException {
+        CompileStats.Measurement write = CompileStats.start(stats, source, CompileStats.Phase.WRITE);
+        try {
+            Files.write(file, bytes);
+        } finally {
+            write.end(bytes.length);
+        }
+    }
+
+    // the cache lives in .stofcache under the working directory. without one every file is simply compiled
+    private static CompileCache openCache(Path workingDirectory, PrintStream out) {
+        try {
+            return CompileCache.open(workingDirectory.resolve(".stofcache"), 64L * 1024 * 1024);
+        } catch (IOException e) {
+            out.println("An error has occurred: " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,392 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+// compiles many .stof files at once. every file is read, tokenized and parsed as its own task on a fork-join pool,
+// and later stages can fan out again per ClassNode or per FunctionNode. results always come back in input order,
+// so diagnostics print the same way no matter which thread finished first
+public class CompileDriver implements AutoCloseable {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private final ForkJoinPool m_pool;
+    private final Map<String, ParseTree.ProgramNode> m_trees; // source key to its tree, least recently used first. null when trees aren't kept
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    public CompileDriver() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public CompileDriver(int parallelism) {
+        this(parallelism, 0);
+    }
+
+    // a driver that outlives one run (the CompileServer's) keeps the parse trees of the last keptTrees sources it
+    // compiled, so compiling an unchanged file again neither parses it nor decodes its tree from the CompileCache
+    public CompileDriver(int parallelism, int keptTrees) {
+        this.m_pool = new ForkJoinPool(parallelism);
+        this.m_trees = keptTrees > 0 ? new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ParseTree.ProgramNode> eldest) {
+                return size() > keptTrees;
+            }
+        } : null;
+    }
+
+    ///////////////////////
+    /// UTILITY CLASSES ///
+    ///////////////////////
+    // line and column are 1-based, 0 when the diagnostic isn't about a place in the file
+    public record Diagnostic(Path file, int line, int column, String message) {
+        public Diagnostic(Path file, String message) {
+            this(file, 0, 0, message);
+        }
+
+        @Override
+        public String toString() {
+            return line > 0 ? file + ":" + line + ":" + column + ": " + message : file + ": " + message;
+        }
+    }
+
+    // the result of compiling one file. program is null when the file couldn't be read, and only holds what did
+    // parse when the file has syntax errors, diagnostics lists every one of them
+    public record CompilationUnit(SourceFile source, Path path, ParseTree.ProgramNode program, List<Diagnostic> diagnostics) {
+        public boolean succeeded() {
+            return program != null && diagnostics.isEmpty();
+        }
+    }
+
+    // one file compiled through the CompileCache. bytes is null when the file failed, its diagnostics say why
+    public record Artifact(Path path, byte[] bytes, boolean cached, List<Diagnostic> diagnostics) {
+        public boolean succeeded() {
+            return bytes != null;
+        }
+    }
+
+    // a function together with the class and file it belongs to, the unit of work for per-function fan out
+    public record FunctionTask(CompilationUnit unit, ParseTree.ClassNode classNode, ParseTree.FunctionNode function) {}
+
+    ////////////////////////
+    /// SOURCE DISCOVERY ///
+    ////////////////////////
+    // expands directories into the .stof files they contain. directory contents are sorted so runs are repeatable
+    public static List<Path> collectSources(List<String> arguments) throws IOException {
+        return collectSources(Path.of(""), arguments);
+    }
+
+    // like collectSources(arguments), with relative arguments resolved against workingDirectory
+    public static List<Path> collectSources(Path workingDirectory, List<String> arguments) throws IOException {
+        List<Path> sources = new ArrayList<>();
+        for (String argument : arguments) {
+            Path path = workingDirectory.resolve(argument);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> walk = Files.walk(path)) {
+                    walk.filter(p -> Files.isRegularFile(p) && p.toString().endsWith(".stof"))
+                            .sorted()
+                            .forEach(sources::add);
+                }
+            } else {
+                sources.add(path);
+            }
+        }
+        return sources;
+    }
+
+    ///////////////////
+    /// COMPILATION ///
+    ///////////////////
+    public List<CompilationUnit> compile(List<Path> files) {
+        return compile(files, null);
+    }
+
+    // like compile(files), but parse trees are kept in cache in their binary form. a file that hasn't changed since
+    // its tree was cached is read back from it instead of being tokenized and parsed
+    public List<CompilationUnit> compile(List<Path> files, CompileCache cache) {
+        return compile(files, cache, null);
+    }
+
+    // like compile(files, cache), with every phase measured into stats, which may be null
+    public List<CompilationUnit> compile(List<Path> files, CompileCache cache, CompileStats stats) {
+        return map(files, path -> compileFile(path, cache, stats));
+    }
+
+    // a file that fails in a way no phase reports becomes a unit with just that diagnostic, the other files go on
+    private CompilationUnit compileFile(Path path, CompileCache cache, CompileStats stats) {
+        CompileStats.FileMeasurement file = CompileStats.startFile(stats, path);
+        try {
+            return compileFile(path, cache, stats, file);
+        } catch (RuntimeException | StackOverflowError | OutOfMemoryError e) {
+            file.end(false, false);
+            return new CompilationUnit(null, path, null, List.of(failure(path, e)));
+        }
+    }
+
+    private CompilationUnit compileFile(Path path, CompileCache cache, CompileStats stats, CompileStats.FileMeasurement file) {
+        SourceFile source;
+        try {
+            source = read(path, stats);
+        } catch (IOException e) {
+            file.end(false, false);
+            return new CompilationUnit(null, path, null, List.of(new Diagnostic(path, "An error has occurred: " + e.getMessage())));
+        }
+
+        String key = cache != null || m_trees != null ? CompileCache.key("parse-tree-binary", source.content()) : null;
+        ParseTree.ProgramNode kept = keptTree(key);
+        if (kept != null) {
+            file.end(true, true);
+            return new CompilationUnit(source, path, kept, List.of());
+        }
+        ParseTree.ProgramNode cached = cache != null ? loadTree(path, cache, key, stats) : null;
+        if (cached != null) {
+            keepTree(key, cached);
+            file.end(true, true);
+            return new CompilationUnit(source, path, cached, List.of());
+        }
+
+        Parser parser = tokenize(path, source, stats);
+        ParseTree.ProgramNode program = parse(path, parser, stats);
+        if (parser.hasErrors()) {
+            file.end(false, false);
+            return new CompilationUnit(source, path, program, syntaxErrors(path, parser));
+        }
+        if (cache != null) {
+            cache.put(key, ParseTreeBinary.toBytes(program));
+        }
+        keepTree(key, program);
+        file.end(false, true);
+        return new CompilationUnit(source, path, program, List.of());
+    }
+
+    private static SourceFile read(Path path, CompileStats stats) throws IOException {
+        CompileStats.Measurement read = CompileStats.start(stats, path, CompileStats.Phase.READ);
+        SourceFile source = null;
+        try {
+            source = SourceFile.open(path);
+            return source;
+        } finally {
+            read.end(source != null ? source.byteSize() : 0);
+        }
+    }
+
+    // the tree cached for key, null on a miss
+    private static ParseTree.ProgramNode loadTree(Path path, CompileCache cache, String key, CompileStats stats) {
+        CompileStats.Measurement load = CompileStats.start(stats, path, CompileStats.Phase.CACHE);
+        byte[] cached = cache.get(key);
+        ParseTree.ProgramNode program = null;
+        if (cached != null) {
+            try {
+                program = ParseTreeBinary.read(cached);
+            } catch (IOException | RuntimeException e) {
+                // an entry from an older compiler, parse the file like on a miss
+            }
+        }
+        load.end(program != null ? cached.length : 0);
+        return program;
+    }
+
+    // a parser over the tokens of source
+    private static Parser tokenize(Path path, SourceFile source, CompileStats stats) {
+        CompileStats.Measurement tokenize = CompileStats.start(stats, path, CompileStats.Phase.TOKENIZE);
+        TokenStream tokens = Tokenizer.tokenizeToStream(source);
+        tokenize.end(tokens.size());
+        return new Parser(tokens);
+    }
+
+    private static ParseTree.ProgramNode parse(Path path, Parser parser, CompileStats stats) {
+        CompileStats.Measurement parse = CompileStats.start(stats, path, CompileStats.Phase.PARSE);
+        ParseTree.ProgramNode program = parser.parse();
+        parse.end(parser.nodeCount());
+        return program;
+    }
+
+    private static List<Diagnostic> syntaxErrors(Path path, Parser parser) {
+        List<Diagnostic> diagnostics = new ArrayList<>(parser.errors().size());
+        for (Parser.SyntaxError error : parser.errors()) {
+            diagnostics.add(new Diagnostic(path, error.line(), error.column(), "Parse error: " + error.message()));
+        }
+        return diagnostics;
+    }
+
+    // compiles every file to one artifact of the given kind, cache may be null. a file whose source hasn't changed since its artifact was
+    // cached isn't tokenized or parsed at all, the others are parsed and handed to backend, and what backend writes
+    // is cached for the next run. a RuntimeException from backend becomes the file's diagnostic
+    public List<Artifact> compile(List<Path> files, CompileCache cache, String kind, ArtifactBackend backend) {
+        return compile(files, cache, kind, backend, null);
+    }
+
+    // like compile(files, cache, kind, backend), with every phase measured into stats, which may be null
+    public List<Artifact> compile(List<Path> files, CompileCache cache, String kind, ArtifactBackend backend, CompileStats stats) {
+        return map(files, path -> compileArtifact(path, cache, kind, backend, stats));
+    }
+
+    @FunctionalInterface
+    public interface ArtifactBackend {
+        void compile(CompilationUnit unit, OutputStream out) throws IOException;
+    }
+
+    private Artifact compileArtifact(Path path, CompileCache cache, String kind, ArtifactBackend backend, CompileStats stats) {
+        CompileStats.FileMeasurement file = CompileStats.startFile(stats, path);
+        try {
+            return compileArtifact(path, cache, kind, backend, stats, file);
+        } catch (RuntimeException | StackOverflowError | OutOfMemoryError e) {
+            file.end(false, false);
+            return new Artifact(path, null, false, List.of(failure(path, e)));
+        }
+    }
+
+    private Artifact compileArtifact(Path path, CompileCache cache, String kind, ArtifactBackend backend, CompileStats stats,
+                                     CompileStats.FileMeasurement file) {
+        SourceFile source;
+        try {
+            source = read(path, stats);
+        } catch (IOException e) {
+            file.end(false, false);
+            return new Artifact(path, null, false, List.of(new Diagnostic(path, "An error has occurred: " + e.getMessage())));
+        }
+
+        String key = cache != null ? CompileCache.key(kind, source.content()) : null;
+        if (cache != null) {
+            CompileStats.Measurement load = CompileStats.start(stats, path, CompileStats.Phase.CACHE);
+            byte[] cached = cache.get(key);
+            load.end(cached != null ? cached.length : 0);
+            if (cached != null) {
+                file.end(true, true);
+                return new Artifact(path, cached, true, List.of());
+            }
+        }
+
+        String treeKey = m_trees != null ? CompileCache.key("parse-tree-binary", source.content()) : null;
+        ParseTree.ProgramNode program = keptTree(treeKey);
+        if (program == null) {
+            Parser parser = tokenize(path, source, stats);
+            program = parse(path, parser, stats);
+            if (parser.hasErrors()) {
+                file.end(false, false);
+                return new Artifact(path, null, false, syntaxErrors(path, parser));
+            }
+            keepTree(treeKey, program);
+        }
+        CompileStats.Measurement compile = CompileStats.start(stats, path, CompileStats.Phase.BACKEND);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            backend.compile(new CompilationUnit(source, path, program, List.of()), out);
+            byte[] bytes = out.toByteArray();
+            compile.end(bytes.length);
+            if (cache != null) {
+                cache.put(key, bytes);
+            }
+            file.end(false, true);
+            return new Artifact(path, bytes, false, List.of());
+        } catch (IOException e) {
+            compile.end(0);
+            file.end(false, false);
+            return new Artifact(path, null, false, List.of(new Diagnostic(path, "An error has occurred: " + e.getMessage())));
+        } catch (RuntimeException e) {
+            compile.end(0);
+            file.end(false, false);
+            return new Artifact(path, null, false, List.of(failure(path, e)));
+        }
+    }
+
+    // what a file that failed with e reports. a program nested deeper than the thread stack or too big for the heap
+    // fails only itself, so every phase that works on one file at a time catches those too and reports them here
+    public static Diagnostic failure(Path path, Throwable e) {
+        return switch (e) {
+            case StackOverflowError ignored -> new Diagnostic(path, "Nested too deeply to compile");
+            case OutOfMemoryError ignored -> new Diagnostic(path, "Too large to compile in the available memory");
+            default -> new Diagnostic(path, "An error has occurred: " + (e.getMessage() != null ? e.getMessage() : e.toString()));
+        };
+    }
+
+    // the tree the driver kept for the source with this key, null when it keeps none for it. only trees without
+    // syntax errors are kept
+    private ParseTree.ProgramNode keptTree(String key) {
+        if (m_trees == null || key == null) {
+            return null;
+        }
+        synchronized (m_trees) {
+            return m_trees.get(key);
+        }
+    }
+
+    private void keepTree(String key, ParseTree.ProgramNode program) {
+        if (m_trees != null) {
+            synchronized (m_trees) {
+                m_trees.put(key, program);
+            }
+        }
+    }
+
+    ///////////////
+    /// FAN OUT ///
+    ///////////////
+    // runs work for every class of every successfully parsed unit, results in source order
+    public <R> List<R> forEachClass(List<CompilationUnit> units, BiFunction<CompilationUnit, ParseTree.ClassNode, R> work) {
+        List<ClassTask> tasks = new ArrayList<>();
+        for (CompilationUnit unit : units) {
+            if (unit.succeeded()) {
+                for (ParseTree.ClassNode classNode : unit.program().classes()) {
+                    tasks.add(new ClassTask(unit, classNode));
+                }
+            }
+        }
+        return map(tasks, task -> work.apply(task.unit(), task.classNode()));
+    }
+
+    // runs work for every function of every class, results in source order
+    public <R> List<R> forEachFunction(List<CompilationUnit> units, Function<FunctionTask, R> work) {
+        List<FunctionTask> tasks = new ArrayList<>();
+        for (CompilationUnit unit : units) {
+            if (unit.succeeded()) {
+                for (ParseTree.ClassNode classNode : unit.program().classes()) {
+                    for (ParseTree.FunctionNode function : classNode.functions()) {
+                        tasks.add(new FunctionTask(unit, classNode, function));
+                    }
+                }
+            }
+        }
+        return map(tasks, work);
+    }
+
+    private record ClassTask(CompilationUnit unit, ParseTree.ClassNode classNode) {}
+
+    // submits one task per input and collects the results in input order
+    public <T, R> List<R> map(List<T> inputs, Function<T, R> work) {
+        List<Future<R>> futures = new ArrayList<>(inputs.size());
+        for (T input : inputs) {
+            futures.add(m_pool.submit(() -> work.apply(input)));
+        }
+
+        List<R> results = new ArrayList<>(inputs.size());
+        for (Future<R> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Compilation interrupted", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public void close() {
+        m_pool.close();
+    }
+}
@@ -0,0 +1,264 @@
+import jdk.net.ExtendedSocketOptions;
+import jdk.net.UnixDomainPrincipal;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// the resident compiler. it listens on a unix domain socket and runs a CompileCommand for every client on its own
+// virtual thread, all of them on one CompileDriver. a compile through the server skips what every fresh jvm pays
+// again, loading the compiler's classes and running the tokenizer and parser interpreted until the jit has caught up,
+// and the driver keeps the parse trees of the sources it has seen, so an unchanged file isn't even read back from
+// the compile cache.
+//
+// the protocol is plain text, so anything that can write to a unix socket is a client. a request is the line
+// "stofc 1", then the client's working directory on its own line, then one command line argument per line and an
+// empty line. the response is what Main prints for those arguments, after which the server closes the connection.
+// relative paths are resolved against the client's directory, so paths in the response are absolute.
+//
+// a request can make the server read and write files as its user, so only that user may reach it: the socket sits
+// in a directory nobody else can write to, it is readable and writable by its owner only, and a connection from a
+// process of another user is closed unanswered. CompileClient makes the same checks the other way round before it
+// sends anything
+public final class CompileServer implements AutoCloseable {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    static final String PROTOCOL = "stofc 1";
+    private static final int KEPT_TREES = 4096;
+    private static final int MAX_IDENTIFIERS = 1 << 18; // past this many names the identifier pool is cleared
+
+    // the client the current thread is compiling for. System.out is swapped for a stream that writes to it, so what
+    // a --jvm program prints goes back to the client that ran it
+    private static final ThreadLocal<PrintStream> CLIENT = new ThreadLocal<>();
+
+    private final Path m_socket;
+    private final UserPrincipal m_user;
+    private final ServerSocketChannel m_channel;
+    private final CompileDriver m_driver;
+    private final CompileCommand m_command;
+    private final ReentrantReadWriteLock m_compiles = new ReentrantReadWriteLock(); // read locked by every running compile
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    private CompileServer(Path socket, UserPrincipal user, ServerSocketChannel channel) {
+        this.m_socket = socket;
+        this.m_user = user;
+        this.m_channel = channel;
+        this.m_driver = new CompileDriver(Runtime.getRuntime().availableProcessors(), KEPT_TREES);
+        this.m_command = new CompileCommand(m_driver);
+    }
+
+    // binds a server to socket. a socket file left behind by a server that died is replaced, but one a server is
+    // still listening on isn't. the default socket's directory is created owner-only when it doesn't exist yet
+    public static CompileServer open(Path socket) throws IOException {
+        UserPrincipal user = currentUser();
+        Path directory = socket.toAbsolutePath().getParent();
+        if (directory.equals(defaultSocket().getParent()) && Files.notExists(directory, LinkOption.NOFOLLOW_LINKS)) {
+            try {
+                Files.createDirectory(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } catch (FileAlreadyExistsException e) {
+                // made at the same moment by another server, checked below like any other
+            }
+        }
+        checkPrivate(directory, user);
+
+        if (Files.exists(socket, LinkOption.NOFOLLOW_LINKS)) {
+            if (CompileClient.isListening(socket)) {
+                throw new IOException("A compile server is already listening on " + socket);
+            }
+            Files.delete(socket);
+        }
+        ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.bind(UnixDomainSocketAddress.of(socket));
+            Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new CompileServer(socket, user, channel);
+    }
+
+    // a directory of the user's own: $XDG_RUNTIME_DIR, which the session makes owner-only, or else stofc-<user> in the
+    // temp directory. a socket straight in a shared /tmp could be taken over by another user's listener
+    public static Path defaultSocket() {
+        String runtimeDirectory = System.getenv("XDG_RUNTIME_DIR");
+        Path directory = runtimeDirectory != null && !runtimeDirectory.isEmpty()
+                ? Path.of(runtimeDirectory)
+                : Path.of(System.getProperty("java.io.tmpdir"), "stofc-" + System.getProperty("user.name"));
+        return directory.resolve("stofc.sock");
+    }
+
+    // the directory of a socket has to be a real directory, not a link, that belongs to user and that nobody else can
+    // write to, otherwise someone else could put their own socket in its place
+    static void checkPrivate(Path directory, UserPrincipal user) throws IOException {
+        PosixFileAttributes attributes = Files.readAttributes(directory, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (!attributes.isDirectory() || !attributes.owner().equals(user)
+                || attributes.permissions().contains(PosixFilePermission.GROUP_WRITE)
+                || attributes.permissions().contains(PosixFilePermission.OTHERS_WRITE)) {
+            throw new IOException(directory + " isn't a directory only " + user.getName() + " can write to, it can't hold a compile server socket");
+        }
+    }
+
+    static UserPrincipal currentUser() throws IOException {
+        return FileSystems.getDefault().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+    }
+
+    // the user the process on the other end of channel runs as
+    static UserPrincipal peer(SocketChannel channel) throws IOException {
+        UnixDomainPrincipal peer = channel.getOption(ExtendedSocketOptions.SO_PEERCRED);
+        return peer.user();
+    }
+
+    ///////////////
+    /// SERVING ///
+    ///////////////
+    // accepts clients until the server is closed, the socket file is removed when the process exits
+    public void run() throws IOException {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(new ClientOutput(console), true, StandardCharsets.UTF_8));
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+        console.println("Compile server listening on " + m_socket);
+
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (true) {
+                SocketChannel client;
+                try {
+                    client = m_channel.accept();
+                } catch (ClosedChannelException e) {
+                    return;
+                }
+                clients.execute(() -> serve(client));
+            }
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    private void serve(SocketChannel client) {
+        try {
+            if (!peer(client).equals(m_user)) {
+                client.close();
+                return;
+            }
+        } catch (IOException e) {
+            return;
+        }
+
+        // closing out closes the channel, in is only closed after it
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+             PrintStream out = new PrintStream(new BufferedOutputStream(Channels.newOutputStream(client)), false, StandardCharsets.UTF_8)) {
+            String header = in.readLine();
+            String workingDirectory = in.readLine();
+            if (!PROTOCOL.equals(header) || workingDirectory == null) {
+                out.println("Not a compile request, expected \"" + PROTOCOL + "\", the working directory and the arguments");
+                return;
+            }
+            List<String> arguments = new ArrayList<>();
+            for (String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine()) {
+                arguments.add(line);
+            }
+            if (arguments.contains("--watch")) {
+                out.println("--watch can't run in the compile server, run it without --client");
+                return;
+            }
+
+            CLIENT.set(out);
+            m_compiles.readLock().lock();
+            try {
+                m_command.run(arguments, Path.of(workingDirectory), out);
+            } catch (RuntimeException e) {
+                out.println("An error has occurred: " + e);
+            } finally {
+                m_compiles.readLock().unlock();
+                System.out.flush();
+                CLIENT.remove();
+            }
+            forgetIdentifiers();
+        } catch (IOException e) {
+            // the client went away, nobody is left to tell
+        }
+    }
+
+    // Identifiers.GLOBAL keeps every name any client's files ever used, so a server that runs for weeks would grow
+    // without bound. once it holds more than MAX_IDENTIFIERS names it is cleared, at a moment no compile is running
+    // that could hold one of its ids. the kept trees hold their names themselves and survive it
+    private void forgetIdentifiers() {
+        if (Identifiers.GLOBAL.size() > MAX_IDENTIFIERS && m_compiles.writeLock().tryLock()) {
+            try {
+                Identifiers.GLOBAL.clear();
+            } finally {
+                m_compiles.writeLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            m_channel.close();
+            Files.deleteIfExists(m_socket);
+        } catch (IOException e) {
+            // the process is going away, a stale socket file is replaced by the next server
+        }
+        m_driver.close();
+    }
+
+    ///////////////////////
+    /// UTILITY CLASSES ///
+    ///////////////////////
+    // what System.out writes while the server runs, sent to the current thread's client or else to the console
+    private static final class ClientOutput extends OutputStream {
+        private final PrintStream m_console;
+
+        private ClientOutput(PrintStream console) {
+            this.m_console = console;
+        }
+
+        @Override
+        public void write(int b) {
+            target().write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            target().write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() {
+            target().flush();
+        }
+
+        private PrintStream target() {
+            PrintStream client = CLIENT.get();
+            return client != null ? client : m_console;
+        }
+    }
+}
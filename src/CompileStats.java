@@ -0,0 +1,247 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Locale;
+
+// where the time of a compile goes. every phase the compiler runs on a file is measured as a stofc.CompilePhase jfr
+// event, and every file as a stofc.CompileFile event, so a flight recording shows them per file next to gc and jit
+// activity. with --stats the same measurements are summed per phase into a CompileStats and reported at the end of
+// the run, as text or json. a measurement nobody asked for is an event jfr never enabled and a null CompileStats,
+// which costs a few branches, so the instrumentation stays in every build
+public final class CompileStats {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final long m_startNanos = System.nanoTime();
+    private long m_wallNanos = -1;
+    private int m_files;
+    private int m_cachedFiles;
+    private final long[] m_runs = new long[Phase.values().length];
+    private final long[] m_nanos = new long[Phase.values().length];
+    private final long[] m_allocatedBytes = new long[Phase.values().length];
+    private final long[] m_amounts = new long[Phase.values().length];
+
+    ///////////////////////
+    /// UTILITY CLASSES ///
+    ///////////////////////
+    // every phase counts one amount of what it did, in its unit
+    public enum Phase {
+        READ("bytes read"),
+        TOKENIZE("tokens"),
+        PARSE("nodes"),
+        CACHE("bytes loaded"), // reading a file's tree or artifact back from the CompileCache
+        BACKEND("bytes produced"), // a parse tree dump or bytecode, what goes into the CompileCache
+        WRITE("bytes written");
+
+        private final String m_unit;
+
+        Phase(String unit) {
+            this.m_unit = unit;
+        }
+
+        public String unit() {
+            return m_unit;
+        }
+
+        public String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    @Name("stofc.CompilePhase")
+    @Label("Compile Phase")
+    @Category({"Stof", "Compiler"})
+    @Description("One phase of the compiler on one source file")
+    @StackTrace(false)
+    static final class PhaseEvent extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Phase")
+        String phase;
+
+        @Label("Amount")
+        @Description("What the phase did, in its unit: bytes read, tokens, nodes, bytes loaded, produced or written")
+        long amount;
+
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+    }
+
+    @Name("stofc.CompileFile")
+    @Label("Compile File")
+    @Category({"Stof", "Compiler"})
+    @Description("Compiling one source file, from reading it to its tree or artifact")
+    @StackTrace(false)
+    static final class FileEvent extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Cached")
+        @Description("Whether the result came from the compile cache or the compiler's kept trees")
+        boolean cached;
+
+        @Label("Succeeded")
+        boolean succeeded;
+    }
+
+    // one phase on one file, from start() to end()
+    static final class Measurement {
+        private final CompileStats m_stats;
+        private final Path m_file;
+        private final Phase m_phase;
+        private final PhaseEvent m_event = new PhaseEvent();
+        private final long m_startNanos;
+        private final long m_startAllocated; // -1 when allocations aren't measured
+
+        private Measurement(CompileStats stats, Path file, Phase phase) {
+            this.m_stats = stats;
+            this.m_file = file;
+            this.m_phase = phase;
+            this.m_startNanos = stats != null ? System.nanoTime() : 0;
+            this.m_startAllocated = stats != null || m_event.isEnabled() ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+            m_event.begin();
+        }
+
+        void end(long amount) {
+            m_event.end();
+            long allocated = m_startAllocated >= 0 ? Math.max(0, THREADS.getCurrentThreadAllocatedBytes() - m_startAllocated) : 0;
+            if (m_stats != null) {
+                m_stats.add(m_phase, System.nanoTime() - m_startNanos, allocated, amount);
+            }
+            if (m_event.shouldCommit()) {
+                m_event.file = m_file.toString();
+                m_event.phase = m_phase.label();
+                m_event.amount = amount;
+                m_event.allocated = allocated;
+                m_event.commit();
+            }
+        }
+    }
+
+    // one file, from startFile() to end()
+    static final class FileMeasurement {
+        private final CompileStats m_stats;
+        private final Path m_file;
+        private final FileEvent m_event = new FileEvent();
+
+        private FileMeasurement(CompileStats stats, Path file) {
+            this.m_stats = stats;
+            this.m_file = file;
+            m_event.begin();
+        }
+
+        void end(boolean cached, boolean succeeded) {
+            m_event.end();
+            if (m_stats != null) {
+                m_stats.addFile(cached);
+            }
+            if (m_event.shouldCommit()) {
+                m_event.file = m_file.toString();
+                m_event.cached = cached;
+                m_event.succeeded = succeeded;
+                m_event.commit();
+            }
+        }
+    }
+
+    ////////////////////
+    /// MEASUREMENTS ///
+    ////////////////////
+    // starts measuring phase on file, stats is null when the run isn't collecting --stats. the phase must end on the
+    // thread it started on, allocations are counted per thread
+    static Measurement start(CompileStats stats, Path file, Phase phase) {
+        return new Measurement(stats, file, phase);
+    }
+
+    static FileMeasurement startFile(CompileStats stats, Path file) {
+        return new FileMeasurement(stats, file);
+    }
+
+    private synchronized void add(Phase phase, long nanos, long allocatedBytes, long amount) {
+        m_runs[phase.ordinal()]++;
+        m_nanos[phase.ordinal()] += nanos;
+        m_allocatedBytes[phase.ordinal()] += allocatedBytes;
+        m_amounts[phase.ordinal()] += amount;
+    }
+
+    private synchronized void addFile(boolean cached) {
+        m_files++;
+        if (cached) {
+            m_cachedFiles++;
+        }
+    }
+
+    // stops the run's clock, the reports show the time until then as the wall time
+    public synchronized void finish() {
+        m_wallNanos = System.nanoTime() - m_startNanos;
+    }
+
+    ///////////////
+    /// RESULTS ///
+    ///////////////
+    public synchronized long amount(Phase phase) {
+        return m_amounts[phase.ordinal()];
+    }
+
+    public synchronized long nanos(Phase phase) {
+        return m_nanos[phase.ordinal()];
+    }
+
+    public synchronized long allocatedBytes(Phase phase) {
+        return m_allocatedBytes[phase.ordinal()];
+    }
+
+    // phase times are summed over every thread, so with files compiled in parallel they add up to more than the wall time
+    public synchronized String report() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "compile stats: %d %s (%d cached), %.2f ms%n",
+                m_files, m_files == 1 ? "file" : "files", m_cachedFiles, wallNanos() / 1e6));
+        out.append(String.format(Locale.ROOT, "  %-9s %6s %11s %13s  %s%n", "phase", "runs", "time", "allocated", "amount"));
+        for (Phase phase : Phase.values()) {
+            int i = phase.ordinal();
+            if (m_runs[i] > 0) {
+                out.append(String.format(Locale.ROOT, "  %-9s %6d %8.2f ms %10.1f KB  %d %s%n",
+                        phase.label(), m_runs[i], m_nanos[i] / 1e6, m_allocatedBytes[i] / 1024.0, m_amounts[i], phase.unit()));
+            }
+        }
+        return out.toString();
+    }
+
+    // the same numbers as report() for dashboards, times in nanoseconds
+    public synchronized String toJson() {
+        StringBuilder out = new StringBuilder();
+        out.append("{\"wallNanos\": ").append(wallNanos())
+                .append(", \"files\": ").append(m_files)
+                .append(", \"cachedFiles\": ").append(m_cachedFiles)
+                .append(", \"bytesRead\": ").append(m_amounts[Phase.READ.ordinal()])
+                .append(", \"tokens\": ").append(m_amounts[Phase.TOKENIZE.ordinal()])
+                .append(", \"nodes\": ").append(m_amounts[Phase.PARSE.ordinal()])
+                .append(", \"bytesWritten\": ").append(m_amounts[Phase.WRITE.ordinal()])
+                .append(", \"phases\": {");
+        for (Phase phase : Phase.values()) {
+            int i = phase.ordinal();
+            out.append(i == 0 ? "" : ", ").append('"').append(phase.label()).append("\": {")
+                    .append("\"runs\": ").append(m_runs[i])
+                    .append(", \"nanos\": ").append(m_nanos[i])
+                    .append(", \"allocatedBytes\": ").append(m_allocatedBytes[i])
+                    .append(", \"amount\": ").append(m_amounts[i])
+                    .append('}');
+        }
+        return out.append("}}\n").toString();
+    }
+
+    private long wallNanos() {
+        return m_wallNanos >= 0 ? m_wallNanos : System.nanoTime() - m_startNanos;
+    }
+}
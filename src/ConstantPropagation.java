@@ -0,0 +1,268 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// sparse conditional constant propagation (Wegman and Zadeck). every value starts out unknown and only becomes a
+// constant or varying once a path that can actually run reaches it, so a branch on a constant only marks one side
+// executable, and a loop whose condition is already false on entry never marks its body. afterwards constant
+// values are folded in place, branches on constants become jumps and the blocks nothing can reach are removed
+public class ConstantPropagation implements IrOptimizer.Pass {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private static final byte UNKNOWN = 0;
+    private static final byte CONSTANT = 1;
+    private static final byte VARYING = 2;
+
+    @Override
+    public String name() {
+        return "constant-propagation";
+    }
+
+    private record Edge(Ir.Block from, Ir.Block to) {}
+
+    @Override
+    public int run(Ir.Function function) {
+        Solver solver = new Solver(function);
+        solver.solve();
+        return solver.rewrite();
+    }
+
+    ///////////////
+    /// SOLVING ///
+    ///////////////
+    private static final class Solver {
+        private final Ir.Function m_function;
+        private final byte[] m_state;
+        private final int[] m_values;
+        private final List<List<Ir.Value>> m_users = new ArrayList<>();          // by value id
+        private final List<List<Ir.Block>> m_terminatorUsers = new ArrayList<>(); // by value id
+
+        private final Set<Ir.Block> m_executable = new HashSet<>();
+        private final Set<Edge> m_executableEdges = new HashSet<>();
+        private final Deque<Edge> m_flowWork = new ArrayDeque<>();
+        private final Deque<Ir.Value> m_valueWork = new ArrayDeque<>();
+
+        Solver(Ir.Function function) {
+            this.m_function = function;
+            this.m_state = new byte[function.valueCount()];
+            this.m_values = new int[function.valueCount()];
+            for (int i = 0; i < function.valueCount(); i++) {
+                m_users.add(new ArrayList<>(2));
+                m_terminatorUsers.add(new ArrayList<>(1));
+            }
+            for (Ir.Block block : function.blocks) {
+                for (Ir.Value value : block.instructions) {
+                    for (Ir.Value operand : value.operands) {
+                        m_users.get(operand.id).add(value);
+                    }
+                }
+                if (block.value != null) {
+                    m_terminatorUsers.get(block.value.id).add(block);
+                }
+            }
+        }
+
+        void solve() {
+            m_flowWork.add(new Edge(null, m_function.entry()));
+            while (!m_flowWork.isEmpty() || !m_valueWork.isEmpty()) {
+                while (!m_flowWork.isEmpty()) {
+                    Edge edge = m_flowWork.poll();
+                    if (!m_executableEdges.add(edge)) {
+                        continue;
+                    }
+                    Ir.Block block = edge.to();
+                    boolean first = m_executable.add(block);
+                    for (Ir.Value value : block.instructions) {
+                        if (value.op == Ir.Op.PHI) {
+                            visitPhi(value);
+                        } else if (first) {
+                            visit(value);
+                        }
+                    }
+                    if (first) {
+                        visitTerminator(block);
+                    }
+                }
+                while (!m_valueWork.isEmpty()) {
+                    Ir.Value value = m_valueWork.poll();
+                    for (Ir.Value user : m_users.get(value.id)) {
+                        if (m_executable.contains(user.block)) {
+                            if (user.op == Ir.Op.PHI) {
+                                visitPhi(user);
+                            } else {
+                                visit(user);
+                            }
+                        }
+                    }
+                    for (Ir.Block block : m_terminatorUsers.get(value.id)) {
+                        if (m_executable.contains(block)) {
+                            visitTerminator(block);
+                        }
+                    }
+                }
+            }
+        }
+
+        // a phi only meets the operands whose incoming edge can run
+        private void visitPhi(Ir.Value phi) {
+            byte state = UNKNOWN;
+            int constant = 0;
+            for (int i = 0; i < phi.operands.length; i++) {
+                if (!m_executableEdges.contains(new Edge(phi.block.predecessors.get(i), phi.block))) {
+                    continue;
+                }
+                Ir.Value operand = phi.operands[i];
+                byte operandState = m_state[operand.id];
+                if (operandState == VARYING) {
+                    state = VARYING;
+                    break;
+                }
+                if (operandState == CONSTANT) {
+                    if (state == UNKNOWN) {
+                        state = CONSTANT;
+                        constant = m_values[operand.id];
+                    } else if (m_values[operand.id] != constant) {
+                        state = VARYING;
+                        break;
+                    }
+                }
+            }
+            update(phi, state, constant);
+        }
+
+        private void visit(Ir.Value value) {
+            switch (value.op) {
+                case CONST -> update(value, CONSTANT, value.constant);
+                case PARAM, CALL, PRINT -> update(value, VARYING, 0);
+                default -> {
+                    if (!value.op.isBinary()) {
+                        update(value, VARYING, 0);
+                        return;
+                    }
+                    byte left = m_state[value.operands[0].id];
+                    byte right = m_state[value.operands[1].id];
+                    if (left == VARYING || right == VARYING) {
+                        update(value, VARYING, 0);
+                    } else if (left == CONSTANT && right == CONSTANT) {
+                        Integer folded = fold(value.op, m_values[value.operands[0].id], m_values[value.operands[1].id]);
+                        if (folded == null) {
+                            update(value, VARYING, 0); // x / 0 has to stay and fail at run time
+                        } else {
+                            update(value, CONSTANT, folded);
+                        }
+                    }
+                }
+            }
+        }
+
+        private void visitTerminator(Ir.Block block) {
+            switch (block.terminator) {
+                case JUMP -> m_flowWork.add(new Edge(block, block.target));
+                case BRANCH -> {
+                    byte state = m_state[block.value.id];
+                    if (state == VARYING || state == CONSTANT && m_values[block.value.id] != 0) {
+                        m_flowWork.add(new Edge(block, block.target));
+                    }
+                    if (state == VARYING || state == CONSTANT && m_values[block.value.id] == 0) {
+                        m_flowWork.add(new Edge(block, block.otherwise));
+                    }
+                }
+                default -> {}
+            }
+        }
+
+        // values only ever move from unknown to constant to varying, which is what makes the solver terminate
+        private void update(Ir.Value value, byte state, int constant) {
+            byte old = m_state[value.id];
+            if (state == CONSTANT && old == CONSTANT && m_values[value.id] != constant) {
+                state = VARYING;
+            }
+            if (state <= old) {
+                return;
+            }
+            m_state[value.id] = state;
+            m_values[value.id] = constant;
+            m_valueWork.add(value);
+        }
+
+        /////////////////
+        /// REWRITING ///
+        /////////////////
+        int rewrite() {
+            int changes = 0;
+            for (Ir.Block block : m_function.blocks) {
+                if (!m_executable.contains(block)) {
+                    continue;
+                }
+                boolean foldedPhi = false;
+                for (Ir.Value value : block.instructions) {
+                    if (m_state[value.id] == CONSTANT && value.op != Ir.Op.CONST) {
+                        foldedPhi |= value.op == Ir.Op.PHI;
+                        value.makeConstant(m_values[value.id]);
+                        changes++;
+                    }
+                }
+                if (foldedPhi) {
+                    // phis have to stay at the head of the block
+                    List<Ir.Value> phis = new ArrayList<>();
+                    List<Ir.Value> rest = new ArrayList<>();
+                    for (Ir.Value value : block.instructions) {
+                        (value.op == Ir.Op.PHI ? phis : rest).add(value);
+                    }
+                    block.instructions.clear();
+                    block.instructions.addAll(phis);
+                    block.instructions.addAll(rest);
+                }
+            }
+
+            for (Ir.Block block : m_function.blocks) {
+                if (m_executable.contains(block) && block.terminator == Ir.Op.BRANCH && m_state[block.value.id] == CONSTANT) {
+                    boolean taken = m_values[block.value.id] != 0;
+                    Ir.Block target = taken ? block.target : block.otherwise;
+                    Ir.Block dropped = taken ? block.otherwise : block.target;
+                    if (dropped != target) {
+                        dropped.removePredecessor(block);
+                    }
+                    block.terminator = Ir.Op.JUMP;
+                    block.target = target;
+                    block.otherwise = null;
+                    block.value = null;
+                    changes++;
+                }
+            }
+
+            for (Ir.Block block : m_function.blocks) {
+                if (!m_executable.contains(block)) {
+                    for (Ir.Block successor : block.successors()) {
+                        successor.removePredecessor(block);
+                    }
+                    changes++;
+                }
+            }
+            if (m_function.blocks.removeIf(block -> !m_executable.contains(block))) {
+                m_function.renumberBlocks();
+            }
+            return changes;
+        }
+    }
+
+    // folds with java's int semantics. returns null for a zero divisor
+    static Integer fold(Ir.Op op, int left, int right) {
+        return switch (op) {
+            case ADD -> left + right;
+            case SUB -> left - right;
+            case MUL -> left * right;
+            case DIV -> right == 0 ? null : left / right;
+            case MOD -> right == 0 ? null : left % right;
+            case GT -> left > right ? 1 : 0;
+            case LT -> left < right ? 1 : 0;
+            case GE -> left >= right ? 1 : 0;
+            case LE -> left <= right ? 1 : 0;
+            default -> null;
+        };
+    }
+}
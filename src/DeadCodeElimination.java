@@ -0,0 +1,53 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// removes values nothing depends on. terminators, calls, prints and divisions that could still fail on a zero
+// divisor are the roots, everything they use is live, the rest goes
+public class DeadCodeElimination implements IrOptimizer.Pass {
+    @Override
+    public String name() {
+        return "dead-code-elimination";
+    }
+
+    @Override
+    public int run(Ir.Function function) {
+        boolean[] live = new boolean[function.valueCount()];
+        Deque<Ir.Value> work = new ArrayDeque<>();
+        for (Ir.Block block : function.blocks) {
+            for (Ir.Value value : block.instructions) {
+                if (isRoot(value) && !live[value.id]) {
+                    live[value.id] = true;
+                    work.add(value);
+                }
+            }
+            if (block.value != null && !live[block.value.id]) {
+                live[block.value.id] = true;
+                work.add(block.value);
+            }
+        }
+        while (!work.isEmpty()) {
+            for (Ir.Value operand : work.poll().operands) {
+                if (!live[operand.id]) {
+                    live[operand.id] = true;
+                    work.add(operand);
+                }
+            }
+        }
+
+        int removed = 0;
+        for (Ir.Block block : function.blocks) {
+            int before = block.instructions.size();
+            block.instructions.removeIf(value -> !live[value.id]);
+            removed += before - block.instructions.size();
+        }
+        return removed;
+    }
+
+    private static boolean isRoot(Ir.Value value) {
+        return switch (value.op) {
+            case CALL, PRINT -> true;
+            case DIV, MOD -> !value.operands[1].isConstant() || value.operands[1].constant == 0;
+            default -> false;
+        };
+    }
+}
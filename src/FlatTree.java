@@ -0,0 +1,514 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// a parse tree laid out as a struct of arrays instead of one record per node. a node is an index into parallel
+// arrays: its kind, a type byte (a TokenType ordinal, the declared type or the operator), an int slot (a name's
+// Identifiers id, a literal, or flags) and the index of its next sibling. nodes are in pre-order, so the root is node
+// 0 and a node's first child, when the kind byte says it has children, is the node right after it. there are no
+// object headers, no child lists and no Strings, ten bytes a node, and a pass over the tree walks a few dense arrays
+// front to back. Parser.parseFlat builds it directly
+public final class FlatTree {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    public static final int NONE = -1;
+
+    // the flags in a FOR node's value, which of its optional parts it has. the parts it has are its first children
+    public static final int HAS_INITIALIZATION = 1;
+    public static final int HAS_CONDITION = 2;
+    public static final int HAS_INCREMENT = 4;
+
+    private static final int PARENT = 0x80; // set in the kind byte of a node with children
+    private static final int LAST = 0x40;   // set in the kind byte of a last child while building
+    private static final int KIND = 0x1F;
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final Tokenizer.TokenType[] TYPES = Tokenizer.TokenType.values();
+
+    private final byte[] m_kinds;
+    private final byte[] m_types;
+    private final int[] m_values;
+    private final int[] m_nextSiblings;
+
+    // what each kind keeps in its type and value, and its children in order. the kinds match the ParseTree records
+    public enum Kind {
+        PROGRAM,                // classes
+        CLASS,                  // value name, functions
+        FUNCTION,               // type return type, value name, parameters then body
+        PARAMETER,              // type, value name
+        BLOCK,                  // statements
+        VARIABLE_DECLARATION,   // type, value name, initializer if any
+        VARIABLE_ASSIGNMENT,    // value name, value
+        IF,                     // condition, then block, else-ifs, else block if any
+        ELSE_IF,                // condition, block
+        FOR,                    // value HAS_ flags, the parts it has, then body
+        WHILE,                  // condition, body
+        RETURN,                 // value if any
+        EXIT,                   // exit code
+        EXPRESSION_STATEMENT,   // expression
+        VARIABLE,               // value name
+        BINARY_OPERATOR,        // type operator, left, right
+        UNARY_OPERATOR,         // type operator, value 1 when postfix, operand
+        INT_LITERAL,            // value
+        BOOLEAN_LITERAL,        // value 1 or 0
+        FUNCTION_CALL,          // value name, arguments
+        ASSIGNMENT_EXPRESSION   // value name, value
+    }
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    private FlatTree(byte[] kinds, byte[] types, int[] values, int[] nextSiblings) {
+        this.m_kinds = kinds;
+        this.m_types = types;
+        this.m_values = values;
+        this.m_nextSiblings = nextSiblings;
+    }
+
+    /////////////
+    /// NODES ///
+    /////////////
+    // the number of nodes, the valid indices are 0 until size()
+    public int size() {
+        return m_kinds.length;
+    }
+
+    // the PROGRAM node
+    public int root() {
+        return 0;
+    }
+
+    public Kind kind(int node) {
+        return KINDS[m_kinds[node] & KIND];
+    }
+
+    public int firstChild(int node) {
+        return (m_kinds[node] & PARENT) != 0 ? node + 1 : NONE;
+    }
+
+    public int nextSibling(int node) {
+        return m_nextSiblings[node];
+    }
+
+    public int childCount(int node) {
+        int count = 0;
+        for (int child = firstChild(node); child != NONE; child = m_nextSiblings[child]) {
+            count++;
+        }
+        return count;
+    }
+
+    // the index-th child, NONE when there are fewer children
+    public int child(int node, int index) {
+        int child = firstChild(node);
+        while (child != NONE && index-- > 0) {
+            child = m_nextSiblings[child];
+        }
+        return child;
+    }
+
+    // the raw int slot, see Kind
+    public int value(int node) {
+        return m_values[node];
+    }
+
+    // the name of a class, function, parameter, variable or call
+    public String name(int node) {
+        return Identifiers.GLOBAL.name(m_values[node]);
+    }
+
+    // the declared type of a function, parameter or variable declaration
+    public Tokenizer.TokenType type(int node) {
+        return TYPES[m_types[node]];
+    }
+
+    // the operator of a BINARY_OPERATOR or UNARY_OPERATOR
+    public String operator(int node) {
+        return Parser.operatorText(m_types[node]);
+    }
+
+    public boolean isPostfix(int node) {
+        return m_values[node] != 0;
+    }
+
+    public int intValue(int node) {
+        return m_values[node];
+    }
+
+    public boolean booleanValue(int node) {
+        return m_values[node] != 0;
+    }
+
+    ////////////////
+    /// VISITING ///
+    ////////////////
+    // one method per kind, the flat counterpart of switching over the sealed ParseTree.Node hierarchy
+    public interface Visitor<R> {
+        R visitProgram(int node);
+
+        R visitClass(int node);
+
+        R visitFunction(int node);
+
+        R visitParameter(int node);
+
+        R visitBlock(int node);
+
+        R visitVariableDeclaration(int node);
+
+        R visitVariableAssignment(int node);
+
+        R visitIf(int node);
+
+        R visitElseIf(int node);
+
+        R visitFor(int node);
+
+        R visitWhile(int node);
+
+        R visitReturn(int node);
+
+        R visitExit(int node);
+
+        R visitExpressionStatement(int node);
+
+        R visitVariable(int node);
+
+        R visitBinaryOperator(int node);
+
+        R visitUnaryOperator(int node);
+
+        R visitIntLiteral(int node);
+
+        R visitBooleanLiteral(int node);
+
+        R visitFunctionCall(int node);
+
+        R visitAssignmentExpression(int node);
+    }
+
+    public <R> R accept(int node, Visitor<R> visitor) {
+        return switch (KINDS[m_kinds[node] & KIND]) {
+            case PROGRAM -> visitor.visitProgram(node);
+            case CLASS -> visitor.visitClass(node);
+            case FUNCTION -> visitor.visitFunction(node);
+            case PARAMETER -> visitor.visitParameter(node);
+            case BLOCK -> visitor.visitBlock(node);
+            case VARIABLE_DECLARATION -> visitor.visitVariableDeclaration(node);
+            case VARIABLE_ASSIGNMENT -> visitor.visitVariableAssignment(node);
+            case IF -> visitor.visitIf(node);
+            case ELSE_IF -> visitor.visitElseIf(node);
+            case FOR -> visitor.visitFor(node);
+            case WHILE -> visitor.visitWhile(node);
+            case RETURN -> visitor.visitReturn(node);
+            case EXIT -> visitor.visitExit(node);
+            case EXPRESSION_STATEMENT -> visitor.visitExpressionStatement(node);
+            case VARIABLE -> visitor.visitVariable(node);
+            case BINARY_OPERATOR -> visitor.visitBinaryOperator(node);
+            case UNARY_OPERATOR -> visitor.visitUnaryOperator(node);
+            case INT_LITERAL -> visitor.visitIntLiteral(node);
+            case BOOLEAN_LITERAL -> visitor.visitBooleanLiteral(node);
+            case FUNCTION_CALL -> visitor.visitFunctionCall(node);
+            case ASSIGNMENT_EXPRESSION -> visitor.visitAssignmentExpression(node);
+        };
+    }
+
+    //////////////////
+    /// CONVERSION ///
+    //////////////////
+    // the same tree as ParseTree records. every node comes before its children, so one pass over the arrays from the
+    // back builds every node from children that are already built, without recursion
+    public ParseTree.ProgramNode toProgramNode() {
+        Object[] built = new Object[m_kinds.length];
+        for (int node = m_kinds.length - 1; node >= 0; node--) {
+            int first = firstChild(node);
+            int value = m_values[node];
+            built[node] = switch (KINDS[m_kinds[node] & KIND]) {
+                case PROGRAM -> new ParseTree.ProgramNode(children(built, first));
+                case CLASS -> new ParseTree.ClassNode(name(node), children(built, first));
+                case FUNCTION -> {
+                    List<ParseTree.ParameterNode> parameters = new ArrayList<>();
+                    int child = first;
+                    for (; m_nextSiblings[child] != NONE; child = m_nextSiblings[child]) {
+                        parameters.add((ParseTree.ParameterNode) built[child]);
+                    }
+                    yield new ParseTree.FunctionNode(type(node).toString(), name(node), parameters, (ParseTree.BlockNode) built[child]);
+                }
+                case PARAMETER -> new ParseTree.ParameterNode(type(node).toString(), name(node));
+                case BLOCK -> new ParseTree.BlockNode(children(built, first));
+                case VARIABLE_DECLARATION -> new ParseTree.VariableDeclarationNode(type(node).toString(), name(node),
+                        first != NONE ? (ParseTree.ExpressionNode) built[first] : null);
+                case VARIABLE_ASSIGNMENT -> new ParseTree.VariableAssignmentNode(name(node), (ParseTree.ExpressionNode) built[first]);
+                case IF -> {
+                    int thenBlock = m_nextSiblings[first];
+                    List<ParseTree.ElseIfNode> elseIfClauses = new ArrayList<>();
+                    int child = m_nextSiblings[thenBlock];
+                    for (; child != NONE && (m_kinds[child] & KIND) == Kind.ELSE_IF.ordinal(); child = m_nextSiblings[child]) {
+                        elseIfClauses.add((ParseTree.ElseIfNode) built[child]);
+                    }
+                    yield new ParseTree.IfNode((ParseTree.ExpressionNode) built[first], (ParseTree.BlockNode) built[thenBlock],
+                            elseIfClauses, child != NONE ? (ParseTree.BlockNode) built[child] : null);
+                }
+                case ELSE_IF -> new ParseTree.ElseIfNode((ParseTree.ExpressionNode) built[first], (ParseTree.BlockNode) built[m_nextSiblings[first]]);
+                case FOR -> {
+                    int child = first;
+                    ParseTree.StatementNode initialization = null;
+                    ParseTree.ExpressionNode condition = null;
+                    ParseTree.ExpressionNode increment = null;
+                    if ((value & HAS_INITIALIZATION) != 0) {
+                        initialization = (ParseTree.StatementNode) built[child];
+                        child = m_nextSiblings[child];
+                    }
+                    if ((value & HAS_CONDITION) != 0) {
+                        condition = (ParseTree.ExpressionNode) built[child];
+                        child = m_nextSiblings[child];
+                    }
+                    if ((value & HAS_INCREMENT) != 0) {
+                        increment = (ParseTree.ExpressionNode) built[child];
+                        child = m_nextSiblings[child];
+                    }
+                    yield new ParseTree.ForNode(initialization, condition, increment, (ParseTree.BlockNode) built[child]);
+                }
+                case WHILE -> new ParseTree.WhileNode((ParseTree.ExpressionNode) built[first], (ParseTree.BlockNode) built[m_nextSiblings[first]]);
+                case RETURN -> new ParseTree.ReturnNode(first != NONE ? (ParseTree.ExpressionNode) built[first] : null);
+                case EXIT -> new ParseTree.ExitNode((ParseTree.ExpressionNode) built[first]);
+                case EXPRESSION_STATEMENT -> new ParseTree.ExpressionStatementNode((ParseTree.ExpressionNode) built[first]);
+                case VARIABLE -> new ParseTree.VariableNode(name(node));
+                case BINARY_OPERATOR -> new ParseTree.BinaryOperatorNode((ParseTree.ExpressionNode) built[first], operator(node),
+                        (ParseTree.ExpressionNode) built[m_nextSiblings[first]]);
+                case UNARY_OPERATOR -> new ParseTree.UnaryOperatorNode(operator(node), (ParseTree.ExpressionNode) built[first], value != 0);
+                case INT_LITERAL -> new ParseTree.IntLiteralNode(value);
+                case BOOLEAN_LITERAL -> new ParseTree.BooleanLiteralNode(value != 0);
+                case FUNCTION_CALL -> new ParseTree.FunctionCallNode(name(node), children(built, first));
+                case ASSIGNMENT_EXPRESSION -> new ParseTree.AssignmentExpressionNode(name(node), (ParseTree.ExpressionNode) built[first]);
+            };
+            // a built child is only needed by its parent, which is built now
+            for (int child = first; child != NONE; child = m_nextSiblings[child]) {
+                built[child] = null;
+            }
+        }
+        return (ParseTree.ProgramNode) built[0];
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<T> children(Object[] built, int first) {
+        List<T> children = new ArrayList<>();
+        for (int child = first; child != NONE; child = m_nextSiblings[child]) {
+            children.add((T) built[child]);
+        }
+        return children;
+    }
+
+    ////////////////
+    /// BUILDING ///
+    ////////////////
+    // what Parser.parseFlat builds with. the parser finishes a node after its children, so the builder appends nodes
+    // in post-order: a node's children are the nodes on top of the stack. linking them records each child's parent
+    // and where it starts inside its parent's subtree, and build() turns that into the pre-order layout, leaving out
+    // the nodes error recovery dropped
+    static final class Builder implements Parser.TreeBuilder {
+        private final TokenStream m_tokens;
+        private final byte[] m_kinds;
+        private final byte[] m_types;
+        private final int[] m_values;
+        private final int[] m_parents;
+        private final int[] m_offsets; // how far into its parent's subtree a node starts in pre-order
+        private final int[] m_sizes;   // the number of nodes in each node's subtree
+        private int m_size;
+        private int[] m_stack = new int[64];
+        private int m_depth;
+
+        Builder(TokenStream tokens) {
+            // the parser never backtracks and every node but the program consumes a token of its own, so the token
+            // count bounds the node count and the arrays never grow
+            int capacity = tokens.size() + 1;
+            this.m_tokens = tokens;
+            this.m_kinds = new byte[capacity];
+            this.m_types = new byte[capacity];
+            this.m_values = new int[capacity];
+            this.m_parents = new int[capacity];
+            this.m_offsets = new int[capacity];
+            this.m_sizes = new int[capacity];
+        }
+
+        // the finished tree. parents were built after their children, so one pass backwards over the nodes reaches
+        // every parent before its children and places each node at its parent's position plus its offset
+        FlatTree build() {
+            int root = m_stack[m_depth - 1];
+            int count = m_sizes[root];
+            byte[] kinds = new byte[count];
+            byte[] types = new byte[count];
+            int[] values = new int[count];
+            int[] nextSiblings = new int[count];
+            int[] positions = m_offsets; // reused, a node's offset is only read before its position is written
+            positions[root] = 0;
+            kinds[0] = m_kinds[root];
+            values[0] = m_values[root];
+            nextSiblings[0] = NONE;
+            for (int node = root - 1; node >= 0; node--) {
+                int parent = m_parents[node];
+                if (parent == NONE || positions[parent] == NONE) {
+                    positions[node] = NONE; // not in the tree
+                    continue;
+                }
+                int position = positions[parent] + m_offsets[node];
+                positions[node] = position;
+                kinds[position] = (byte) (m_kinds[node] & ~LAST);
+                types[position] = m_types[node];
+                values[position] = m_values[node];
+                nextSiblings[position] = (m_kinds[node] & LAST) != 0 ? NONE : position + m_sizes[node];
+            }
+            return new FlatTree(kinds, types, values, nextSiblings);
+        }
+
+        @Override
+        public int depth() {
+            return m_depth;
+        }
+
+        @Override
+        public void truncate(int depth) {
+            m_depth = depth;
+        }
+
+        @Override
+        public void program(int classCount) {
+            node(Kind.PROGRAM, 0, 0, classCount);
+        }
+
+        @Override
+        public void classDeclaration(int nameToken, int functionCount) {
+            node(Kind.CLASS, 0, m_tokens.identifier(nameToken), functionCount);
+        }
+
+        @Override
+        public void function(int returnTypeToken, int nameToken, int parameterCount) {
+            node(Kind.FUNCTION, m_tokens.typeOrdinal(returnTypeToken), m_tokens.identifier(nameToken), parameterCount + 1);
+        }
+
+        @Override
+        public void parameter(int typeToken, int nameToken) {
+            node(Kind.PARAMETER, m_tokens.typeOrdinal(typeToken), m_tokens.identifier(nameToken), 0);
+        }
+
+        @Override
+        public void block(int statementCount) {
+            node(Kind.BLOCK, 0, 0, statementCount);
+        }
+
+        @Override
+        public void variableDeclaration(int typeToken, int nameToken, boolean initialized) {
+            node(Kind.VARIABLE_DECLARATION, m_tokens.typeOrdinal(typeToken), m_tokens.identifier(nameToken), initialized ? 1 : 0);
+        }
+
+        @Override
+        public void ifStatement(int elseIfCount, boolean hasElse) {
+            node(Kind.IF, 0, 0, 2 + elseIfCount + (hasElse ? 1 : 0));
+        }
+
+        @Override
+        public void elseIf() {
+            node(Kind.ELSE_IF, 0, 0, 2);
+        }
+
+        @Override
+        public void forStatement(boolean hasInitialization, boolean hasCondition, boolean hasIncrement) {
+            int flags = (hasInitialization ? HAS_INITIALIZATION : 0) | (hasCondition ? HAS_CONDITION : 0) | (hasIncrement ? HAS_INCREMENT : 0);
+            node(Kind.FOR, 0, flags, Integer.bitCount(flags) + 1);
+        }
+
+        @Override
+        public void whileStatement() {
+            node(Kind.WHILE, 0, 0, 2);
+        }
+
+        @Override
+        public void returnStatement(boolean hasValue) {
+            node(Kind.RETURN, 0, 0, hasValue ? 1 : 0);
+        }
+
+        @Override
+        public void expressionStatement() {
+            node(Kind.EXPRESSION_STATEMENT, 0, 0, 1);
+        }
+
+        @Override
+        public void intLiteral(int token) {
+            node(Kind.INT_LITERAL, 0, m_tokens.intValue(token), 0);
+        }
+
+        @Override
+        public void booleanLiteral(int token) {
+            node(Kind.BOOLEAN_LITERAL, 0, m_tokens.booleanValue(token) ? 1 : 0, 0);
+        }
+
+        @Override
+        public void variable(int token) {
+            node(Kind.VARIABLE, 0, m_tokens.identifier(token), 0);
+        }
+
+        @Override
+        public void call(int nameToken, int argumentCount) {
+            node(Kind.FUNCTION_CALL, 0, m_tokens.identifier(nameToken), argumentCount);
+        }
+
+        @Override
+        public void unary(int operatorToken, boolean postfix) {
+            node(Kind.UNARY_OPERATOR, m_tokens.typeOrdinal(operatorToken), postfix ? 1 : 0, 1);
+        }
+
+        @Override
+        public void binary(int operatorToken) {
+            node(Kind.BINARY_OPERATOR, m_tokens.typeOrdinal(operatorToken), 0, 2);
+        }
+
+        @Override
+        public boolean assignment() {
+            int target = m_stack[m_depth - 2];
+            if ((m_kinds[target] & KIND) == Kind.VARIABLE.ordinal()) {
+                // the target node stays in the arrays unlinked, its name moves into the assignment
+                int value = m_stack[--m_depth];
+                m_stack[m_depth - 1] = value;
+                node(Kind.ASSIGNMENT_EXPRESSION, 0, m_values[target], 1);
+                return true;
+            }
+            m_stack[m_depth - 2] = m_stack[m_depth - 1];
+            m_depth--;
+            return false;
+        }
+
+        @Override
+        public void startsAt(int token) {
+            // a flat tree keeps no source positions
+        }
+
+        // appends a node whose children are the top childCount nodes on the stack and pushes it in their place
+        private void node(Kind kind, int type, int value, int childCount) {
+            int node = m_size++;
+            m_kinds[node] = (byte) (kind.ordinal() | (childCount > 0 ? PARENT : 0));
+            m_types[node] = (byte) type;
+            m_values[node] = value;
+            m_parents[node] = NONE;
+
+            int base = m_depth - childCount;
+            int size = 1;
+            for (int i = base; i < m_depth; i++) {
+                int child = m_stack[i];
+                m_parents[child] = node;
+                m_offsets[child] = size;
+                size += m_sizes[child];
+            }
+            m_sizes[node] = size;
+            if (childCount > 0) {
+                m_kinds[m_stack[m_depth - 1]] |= LAST;
+            }
+
+            if (base == m_stack.length) {
+                m_stack = Arrays.copyOf(m_stack, base * 2);
+            }
+            m_stack[base] = node;
+            m_depth = base + 1;
+        }
+    }
+}
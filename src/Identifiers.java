@@ -0,0 +1,170 @@
+import java.util.Arrays;
+
+// the identifier pool. every distinct name gets one canonical String and a small int id, handed out in the order
+// names are first seen, so the parse trees of every file share one String per name and later phases can compare
+// names as ints. GLOBAL is the pool the whole front end shares. files are parsed and checked in parallel, so a name
+// that is already in the pool is found without a lock, only adding a name takes one. TokenStream keeps a small cache
+// in front of it and only comes here the first time a file uses a name. ids are never reused, the pool only forgets
+// its names all at once, when a process that outlives them clears it
+public final class Identifiers {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    public static final Identifiers GLOBAL = new Identifiers();
+
+    private volatile String[] m_names = new String[256];
+    private volatile int[] m_table = new int[512]; // open addressing, id + 1 per slot, 0 when empty
+    private int m_size; // only touched with the lock held
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    private Identifiers() {}
+
+    ///////////////
+    /// POOLING ///
+    ///////////////
+    public int intern(CharSequence name) {
+        return intern(name, 0, name.length());
+    }
+
+    // the id of the name at src[start, end), without building a String unless the name is new
+    public int intern(CharSequence src, int start, int end) {
+        return intern(src, start, end, hash(src, start, end));
+    }
+
+    // for lexers that hashed the name as they scanned it, hash must be hash(src, start, end)
+    int intern(CharSequence src, int start, int end, int hash) {
+        int found = lookup(src, start, end, hash);
+        if (found >= 0) {
+            return found;
+        }
+        synchronized (this) {
+            int mask = m_table.length - 1;
+            for (int slot = hash & mask; ; slot = slot + 1 & mask) {
+                int id = m_table[slot] - 1;
+                if (id < 0) {
+                    return add(src.subSequence(start, end).toString(), slot);
+                }
+                if (matches(m_names[id], src, start, end)) {
+                    return id;
+                }
+            }
+        }
+    }
+
+    // the canonical String of an id
+    public String name(int id) {
+        return m_names[id];
+    }
+
+    // the id of a name that has already been interned, -1 when it hasn't
+    public int find(CharSequence name) {
+        int hash = hash(name, 0, name.length());
+        int found = lookup(name, 0, name.length(), hash);
+        if (found >= 0) {
+            return found;
+        }
+        synchronized (this) {
+            int mask = m_table.length - 1;
+            for (int slot = hash & mask; m_table[slot] != 0; slot = slot + 1 & mask) {
+                int id = m_table[slot] - 1;
+                if (matches(m_names[id], name, 0, name.length())) {
+                    return id;
+                }
+            }
+            return -1;
+        }
+    }
+
+    // the id of a name without taking the lock, -1 for a miss. a slot is written after the name it points to, but for
+    // a thread that doesn't hold the lock nothing orders the two, so a slot whose name it can't see yet is a miss too
+    // and the caller looks again with the lock. a resized table is only published once it is complete
+    private int lookup(CharSequence src, int start, int end, int hash) {
+        int[] table = m_table;
+        String[] names = m_names;
+        int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = slot + 1 & mask) {
+            int id = table[slot] - 1;
+            if (id < 0 || id >= names.length || names[id] == null) {
+                return -1;
+            }
+            if (matches(names[id], src, start, end)) {
+                return id;
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (this) {
+            return m_size;
+        }
+    }
+
+    // forgets every name, the ids handed out so far mean nothing afterwards. parse trees hold the names themselves and
+    // stay valid, but nothing may be lexing or hold a TokenStream, FlatTree or SymbolTable while it runs
+    public void clear() {
+        synchronized (this) {
+            m_table = new int[512];
+            m_names = new String[256];
+            m_size = 0;
+        }
+    }
+
+    // a name hashes the same whether it is a slice of the source or a String of its own. the sum is String.hashCode's,
+    // so a whole String hands back the one it has cached
+    static int hash(CharSequence src, int start, int end) {
+        int hash = 0;
+        if (start == 0 && src instanceof String name && end == name.length()) {
+            hash = name.hashCode();
+        } else {
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + src.charAt(i);
+            }
+        }
+        return hash ^ hash >>> 16;
+    }
+
+    static boolean matches(String name, CharSequence src, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        if (name == src) {
+            return true; // the names in parse trees are the pool's own Strings
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != src.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // called with the lock held
+    private int add(String name, int slot) {
+        int id = m_size++;
+        String[] names = m_names;
+        if (id == names.length) {
+            names = Arrays.copyOf(names, id * 2);
+        }
+        names[id] = name;
+        m_names = names; // the volatile write publishes the name to name() on other threads
+        m_table[slot] = id + 1;
+
+        // keep the table at most half full
+        if (m_size * 2 > m_table.length) {
+            int[] table = new int[m_table.length * 2];
+            int mask = table.length - 1;
+            for (int i = 0; i < m_size; i++) {
+                String existing = names[i];
+                int at = hash(existing, 0, existing.length()) & mask;
+                while (table[at] != 0) {
+                    at = at + 1 & mask;
+                }
+                table[at] = i + 1;
+            }
+            m_table = table;
+        }
+        return id;
+    }
+}
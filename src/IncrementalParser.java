@@ -0,0 +1,198 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// keeps the last parse of one file around so an edit that stays inside a single function body only re-lexes and
+// re-parses that function. function regions are found by brace-balancing the token stream after every full parse
+// and are shifted as edits come in. anything that can't be pinned to one function falls back to a full parse
+public class IncrementalParser {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private String m_source;
+    private ParseTree.ProgramNode m_program;
+    private List<FunctionRegion> m_regions;
+
+    ///////////////////////
+    /// UTILITY CLASSES ///
+    ///////////////////////
+    // char range [start, end) of one function, from its return type up to and including its closing '}'
+    private static final class FunctionRegion {
+        final int classIndex;
+        final int functionIndex;
+        int start;
+        int end;
+
+        FunctionRegion(int classIndex, int functionIndex, int start, int end) {
+            this.classIndex = classIndex;
+            this.functionIndex = functionIndex;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    // what an update did. reparsedFunction is null after a full parse or when the source didn't change. errors holds
+    // the syntax errors of a source that didn't parse, program is then still the last good one
+    public record Update(ParseTree.ProgramNode program, boolean incremental, String reparsedFunction, List<Parser.SyntaxError> errors) {}
+
+    ///////////////
+    /// PARSING ///
+    ///////////////
+    public ParseTree.ProgramNode program() {
+        return m_program;
+    }
+
+    // parses a new version of the source. on syntax errors the previous good state is kept, so the next edit is
+    // still diffed against it
+    public Update update(String source) {
+        if (m_program != null) {
+            Update update = tryIncremental(source);
+            if (update != null) {
+                return update;
+            }
+        }
+        return parseFully(source);
+    }
+
+    private Update parseFully(String source) {
+        TokenStream tokens = new Tokenizer(source).tokenizeToStream();
+        Parser parser = new Parser(tokens);
+        ParseTree.ProgramNode program = parser.parse();
+        if (parser.hasErrors()) {
+            return new Update(m_program, false, null, parser.errors());
+        }
+        List<FunctionRegion> regions = findFunctionRegions(tokens);
+        if (!matchesTree(regions, program)) {
+            regions = null; // the brace scan disagrees with the parser, so only full parses are safe for this file
+        }
+
+        m_source = source;
+        m_program = program;
+        m_regions = regions;
+        return new Update(program, false, null, List.of());
+    }
+
+    private Update tryIncremental(String source) {
+        if (m_regions == null || m_regions.isEmpty()) {
+            return null;
+        }
+
+        // the edit is whatever lies between the common prefix and the common suffix of the two versions
+        int oldLength = m_source.length();
+        int newLength = source.length();
+        int prefix = 0;
+        int maxPrefix = Math.min(oldLength, newLength);
+        while (prefix < maxPrefix && m_source.charAt(prefix) == source.charAt(prefix)) {
+            prefix++;
+        }
+        if (prefix == oldLength && prefix == newLength) {
+            return new Update(m_program, true, null, List.of()); // nothing changed
+        }
+        int suffix = 0;
+        int maxSuffix = maxPrefix - prefix;
+        while (suffix < maxSuffix && m_source.charAt(oldLength - 1 - suffix) == source.charAt(newLength - 1 - suffix)) {
+            suffix++;
+        }
+        int editEnd = oldLength - suffix; // end of the replaced range in old coordinates
+
+        int index = regionContaining(prefix);
+        if (index < 0) {
+            return null;
+        }
+        FunctionRegion region = m_regions.get(index);
+        if (editEnd > region.end) {
+            return null; // the edit spills into the next function or the class body
+        }
+
+        // re-lex and re-parse only the edited function
+        int delta = newLength - oldLength;
+        int newEnd = region.end + delta;
+        TokenStream tokens = new Tokenizer(source.subSequence(region.start, newEnd)).tokenizeToStream();
+        ParseTree.FunctionNode function = new Parser(tokens).parseSingleFunction();
+        if (function == null) {
+            return null; // let the full parse report the errors, with offsets into the whole file
+        }
+
+        // splice the new function into a copy of its class, every other class is shared with the old tree
+        List<ParseTree.ClassNode> classes = new ArrayList<>(m_program.classes());
+        ParseTree.ClassNode oldClass = classes.get(region.classIndex);
+        List<ParseTree.FunctionNode> functions = new ArrayList<>(oldClass.functions());
+        functions.set(region.functionIndex, function);
+        classes.set(region.classIndex, new ParseTree.ClassNode(oldClass.name(), functions));
+
+        region.end = newEnd;
+        for (int i = index + 1; i < m_regions.size(); i++) {
+            m_regions.get(i).start += delta;
+            m_regions.get(i).end += delta;
+        }
+        m_source = source;
+        m_program = new ParseTree.ProgramNode(classes);
+        return new Update(m_program, true, function.name(), List.of());
+    }
+
+    // binary search for the region whose [start, end] holds the offset
+    private int regionContaining(int offset) {
+        int low = 0;
+        int high = m_regions.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            FunctionRegion region = m_regions.get(mid);
+            if (offset < region.start) {
+                high = mid - 1;
+            } else if (offset > region.end) {
+                low = mid + 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    ///////////////////////
+    /// REGION SCANNING ///
+    ///////////////////////
+    // walks `class name { ... }` blocks and splits each class body into brace-balanced function regions
+    private static List<FunctionRegion> findFunctionRegions(TokenStream tokens) {
+        List<FunctionRegion> regions = new ArrayList<>();
+        int classIndex = -1;
+        int i = 0;
+        while (i < tokens.size()) {
+            if (tokens.type(i) != Tokenizer.TokenType.STOF_CLASS
+                    || i + 2 >= tokens.size()
+                    || tokens.type(i + 2) != Tokenizer.TokenType.STOF_OPEN_CURLY_BRACKET) {
+                i++; // the parser skips anything outside a class as well
+                continue;
+            }
+            classIndex++;
+            i += 3;
+
+            int functionIndex = 0;
+            while (i < tokens.size() && tokens.type(i) != Tokenizer.TokenType.STOF_CLOSE_CURLY_BRACKET) {
+                int first = i;
+                int depth = 0;
+                while (i < tokens.size()) {
+                    Tokenizer.TokenType type = tokens.type(i++);
+                    if (type == Tokenizer.TokenType.STOF_OPEN_CURLY_BRACKET) {
+                        depth++;
+                    } else if (type == Tokenizer.TokenType.STOF_CLOSE_CURLY_BRACKET && --depth == 0) {
+                        break;
+                    }
+                }
+                regions.add(new FunctionRegion(classIndex, functionIndex++, tokens.start(first), tokens.end(i - 1)));
+            }
+            i++; // class '}'
+        }
+        return regions;
+    }
+
+    private static boolean matchesTree(List<FunctionRegion> regions, ParseTree.ProgramNode program) {
+        int next = 0;
+        for (int c = 0; c < program.classes().size(); c++) {
+            for (int f = 0; f < program.classes().get(c).functions().size(); f++, next++) {
+                if (next >= regions.size() || regions.get(next).classIndex != c || regions.get(next).functionIndex != f) {
+                    return false;
+                }
+            }
+        }
+        return next == regions.size();
+    }
+}
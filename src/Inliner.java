@@ -0,0 +1,164 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// replaces calls to small functions with a copy of the callee's body. the call's block is split in two, the copy
+// goes in between with its parameters mapped to the call's arguments, and every return jumps to the second half,
+// through a phi when there is more than one. recursive functions are never inlined, which is what keeps inlining
+// the copy's own calls from going on forever, and a caller stops taking more once it has grown past a limit
+public class Inliner implements IrOptimizer.Pass {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private static final int MAX_CALLEE_INSTRUCTIONS = 40;
+    private static final int MAX_CALLER_INSTRUCTIONS = 4000;
+
+    private final CallGraph m_callGraph;
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    public Inliner(CallGraph callGraph) {
+        this.m_callGraph = callGraph;
+    }
+
+    @Override
+    public String name() {
+        return "inlining";
+    }
+
+    @Override
+    public int run(Ir.Function function) {
+        int changes = 0;
+        // the second half of a split block comes later in the list, so calls after an inlined one are still seen
+        for (int b = 0; b < function.blocks.size(); b++) {
+            Ir.Block block = function.blocks.get(b);
+            for (int i = 0; i < block.instructions.size(); i++) {
+                Ir.Value value = block.instructions.get(i);
+                if (value.op == Ir.Op.CALL && shouldInline(function, value.callee)) {
+                    inline(function, block, i);
+                    changes++;
+                    break;
+                }
+            }
+        }
+        if (changes > 0) {
+            function.renumberBlocks();
+        }
+        return changes;
+    }
+
+    private boolean shouldInline(Ir.Function caller, Ir.Function callee) {
+        if (callee == caller || m_callGraph.isRecursive(callee.name) || !callee.entry().predecessors.isEmpty()) {
+            return false;
+        }
+        int size = callee.instructionCount();
+        if (size > MAX_CALLEE_INSTRUCTIONS || caller.instructionCount() + size > MAX_CALLER_INSTRUCTIONS) {
+            return false;
+        }
+        for (Ir.Block block : callee.blocks) {
+            if (block.terminator == Ir.Op.RETURN) {
+                return true;
+            }
+        }
+        return false; // it always exits, the rest of the caller's block would have nowhere to come from
+    }
+
+    private static void inline(Ir.Function caller, Ir.Block block, int index) {
+        Ir.Value call = block.instructions.get(index);
+        Ir.Function callee = call.callee;
+        int position = caller.blocks.indexOf(block);
+
+        // everything after the call moves to the second half, which takes over the block's terminator
+        Ir.Block rest = caller.newBlock();
+        List<Ir.Value> after = block.instructions.subList(index + 1, block.instructions.size());
+        for (Ir.Value value : after) {
+            value.block = rest;
+        }
+        rest.instructions.addAll(after);
+        after.clear();
+        block.instructions.remove(index);
+        rest.terminator = block.terminator;
+        rest.value = block.value;
+        rest.target = block.target;
+        rest.otherwise = block.otherwise;
+        for (Ir.Block successor : rest.successors()) {
+            successor.predecessors.replaceAll(p -> p == block ? rest : p);
+        }
+
+        Map<Ir.Value, Ir.Value> values = new HashMap<>();
+        Map<Ir.Block, Ir.Block> blocks = new HashMap<>();
+        List<Ir.Block> copies = new ArrayList<>();
+        for (Ir.Block original : callee.blocks) {
+            Ir.Block copy = caller.newBlock();
+            blocks.put(original, copy);
+            copies.add(copy);
+        }
+        List<Ir.Value> cloned = new ArrayList<>();
+        for (Ir.Block original : callee.blocks) {
+            Ir.Block copy = blocks.get(original);
+            for (Ir.Value value : original.instructions) {
+                if (value.op == Ir.Op.PARAM) {
+                    values.put(value, call.operands[value.constant]);
+                    continue;
+                }
+                Ir.Value clone = caller.newValue(value.op, value.type, value.operands.clone());
+                clone.constant = value.constant;
+                clone.callee = value.callee;
+                clone.block = copy;
+                copy.instructions.add(clone);
+                values.put(value, clone);
+                cloned.add(clone);
+            }
+        }
+        // a phi at a loop header uses a value defined further down, so operands are mapped once every clone exists
+        for (Ir.Value clone : cloned) {
+            for (int i = 0; i < clone.operands.length; i++) {
+                clone.operands[i] = values.get(clone.operands[i]);
+            }
+        }
+
+        List<Ir.Block> returning = new ArrayList<>();
+        List<Ir.Value> results = new ArrayList<>();
+        for (Ir.Block original : callee.blocks) {
+            Ir.Block copy = blocks.get(original);
+            for (Ir.Block predecessor : original.predecessors) {
+                copy.predecessors.add(blocks.get(predecessor));
+            }
+            Ir.Value value = original.value == null ? null : values.get(original.value);
+            if (original.terminator == Ir.Op.RETURN) {
+                copy.terminator = Ir.Op.JUMP;
+                copy.target = rest;
+                rest.predecessors.add(copy);
+                returning.add(copy);
+                results.add(value);
+            } else {
+                copy.terminator = original.terminator;
+                copy.value = value;
+                copy.target = blocks.get(original.target);
+                copy.otherwise = blocks.get(original.otherwise);
+            }
+        }
+
+        block.terminator = Ir.Op.JUMP;
+        block.value = null;
+        block.target = blocks.get(callee.entry());
+        block.otherwise = null;
+        block.target.predecessors.add(block);
+
+        Ir.Value result = results.getFirst();
+        if (results.size() > 1) {
+            result = caller.newValue(Ir.Op.PHI, callee.returnType, results.toArray(new Ir.Value[0]));
+            result.block = rest;
+            rest.instructions.addFirst(result);
+        }
+        caller.replaceAllUses(Map.of(call, result));
+
+        // copies and the second half go right after the block, in the callee's order
+        caller.blocks.removeAll(copies);
+        caller.blocks.remove(rest);
+        caller.blocks.addAll(position + 1, copies);
+        caller.blocks.add(position + 1 + copies.size(), rest);
+    }
+}
@@ -0,0 +1,303 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// typed SSA intermediate representation. every function is a control-flow graph of basic blocks, every value is
+// defined exactly once, operations are an enum and values carry a primitive type, so passes and code generators
+// never have to look at strings again. IrBuilder lowers ParseTree functions into this form
+public final class Ir {
+    private Ir() {}
+
+    /////////////
+    /// TYPES ///
+    /////////////
+    public enum Type {
+        INT, BOOLEAN;
+
+        public static Type of(String stofType) {
+            return ClosureInterpreter.isBooleanType(stofType) ? BOOLEAN : INT;
+        }
+
+        @Override
+        public String toString() {
+            return this == INT ? "int" : "boolean";
+        }
+    }
+
+    public enum Op {
+        CONST, PARAM, PHI,
+        ADD, SUB, MUL, DIV, MOD,
+        GT, LT, GE, LE,
+        CALL, PRINT,
+
+        // terminators, they end a block and are stored on it rather than in its instruction list
+        JUMP, BRANCH, RETURN, EXIT;
+
+        public final String mnemonic = name().toLowerCase();
+
+        public boolean isBinary() {
+            return ordinal() >= ADD.ordinal() && ordinal() <= LE.ordinal();
+        }
+
+        public boolean isComparison() {
+            return ordinal() >= GT.ordinal() && ordinal() <= LE.ordinal();
+        }
+
+        // values that must stay even when nothing uses them. div and mod can fail on a zero divisor
+        public boolean hasSideEffects() {
+            return this == CALL || this == PRINT || this == DIV || this == MOD;
+        }
+
+        public static Op binary(String operator) {
+            return switch (operator) {
+                case "+" -> ADD;
+                case "-" -> SUB;
+                case "*" -> MUL;
+                case "/" -> DIV;
+                case "%" -> MOD;
+                case ">" -> GT;
+                case "<" -> LT;
+                case ">=" -> GE;
+                case "<=" -> LE;
+                default -> null;
+            };
+        }
+    }
+
+    //////////////
+    /// VALUES ///
+    //////////////
+    // one instruction and the value it defines. PRINT and CALL always define a value, print's is 0
+    public static final class Value {
+        public Op op;
+        public Type type;
+        public int id;
+        public int constant;       // CONST: the value, PARAM: the parameter index
+        public Value[] operands;   // PHI: one per predecessor of its block, in the same order
+        public Function callee;    // CALL
+        public Block block;
+
+        Value(Op op, Type type, int id, Value... operands) {
+            this.op = op;
+            this.type = type;
+            this.id = id;
+            this.operands = operands;
+        }
+
+        public boolean isConstant() {
+            return op == Op.CONST;
+        }
+
+        // turns this value into a constant in place, so none of its uses have to change
+        public void makeConstant(int value) {
+            op = Op.CONST;
+            constant = value;
+            operands = new Value[0];
+            callee = null;
+        }
+
+        @Override
+        public String toString() {
+            return "v" + id;
+        }
+    }
+
+    //////////////
+    /// BLOCKS ///
+    //////////////
+    public static final class Block {
+        public int id;
+        public final List<Value> instructions = new ArrayList<>(); // phis come first
+        public final List<Block> predecessors = new ArrayList<>();
+
+        // the terminator. JUMP uses target, BRANCH jumps to target when value is true and to otherwise when it
+        // is false, RETURN and EXIT use value
+        public Op terminator;
+        public Value value;
+        public Block target;
+        public Block otherwise;
+
+        Block(int id) {
+            this.id = id;
+        }
+
+        public List<Block> successors() {
+            if (terminator == Op.JUMP) {
+                return List.of(target);
+            }
+            if (terminator == Op.BRANCH) {
+                return target == otherwise ? List.of(target) : List.of(target, otherwise);
+            }
+            return List.of();
+        }
+
+        // points the terminator at another block instead of old. the predecessor lists are left to the caller
+        public void replaceSuccessor(Block old, Block replacement) {
+            if (target == old) {
+                target = replacement;
+            }
+            if (otherwise == old) {
+                otherwise = replacement;
+            }
+        }
+
+        // unhooks a predecessor together with the matching operand of every phi
+        public void removePredecessor(Block predecessor) {
+            int index = predecessors.indexOf(predecessor);
+            if (index < 0) {
+                return;
+            }
+            predecessors.remove(index);
+            for (Value phi : instructions) {
+                if (phi.op != Op.PHI) {
+                    break;
+                }
+                Value[] operands = new Value[phi.operands.length - 1];
+                System.arraycopy(phi.operands, 0, operands, 0, index);
+                System.arraycopy(phi.operands, index + 1, operands, index, operands.length - index);
+                phi.operands = operands;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "b" + id;
+        }
+    }
+
+    /////////////////
+    /// FUNCTIONS ///
+    /////////////////
+    public static final class Function {
+        public final String name;
+        public final Type returnType;
+        public final List<Type> parameterTypes;
+        public final List<Block> blocks = new ArrayList<>(); // the entry block is first
+        private int m_nextValue = 0;
+        private int m_nextBlock = 0;
+
+        Function(String name, Type returnType, List<Type> parameterTypes) {
+            this.name = name;
+            this.returnType = returnType;
+            this.parameterTypes = parameterTypes;
+        }
+
+        public Block entry() {
+            return blocks.getFirst();
+        }
+
+        public Block newBlock() {
+            Block block = new Block(m_nextBlock++);
+            blocks.add(block);
+            return block;
+        }
+
+        // a value that is not placed in any block yet
+        public Value newValue(Op op, Type type, Value... operands) {
+            return new Value(op, type, m_nextValue++, operands);
+        }
+
+        // one past the highest value id, so interpreters and passes can index arrays by id
+        public int valueCount() {
+            return m_nextValue;
+        }
+
+        // renumbers blocks in their list order after passes have removed some
+        public void renumberBlocks() {
+            for (int i = 0; i < blocks.size(); i++) {
+                blocks.get(i).id = i;
+            }
+            m_nextBlock = blocks.size();
+        }
+
+        // makes every operand and terminator that uses a key use its value instead, following chains of replacements
+        public void replaceAllUses(Map<Value, Value> replacements) {
+            if (replacements.isEmpty()) {
+                return;
+            }
+            for (Block block : blocks) {
+                for (Value value : block.instructions) {
+                    for (int i = 0; i < value.operands.length; i++) {
+                        value.operands[i] = replaced(value.operands[i], replacements);
+                    }
+                }
+                if (block.value != null) {
+                    block.value = replaced(block.value, replacements);
+                }
+            }
+        }
+
+        private static Value replaced(Value value, Map<Value, Value> replacements) {
+            Value replacement = replacements.get(value);
+            while (replacement != null) {
+                value = replacement;
+                replacement = replacements.get(value);
+            }
+            return value;
+        }
+
+        public int instructionCount() {
+            int count = 0;
+            for (Block block : blocks) {
+                count += block.instructions.size() + 1;
+            }
+            return count;
+        }
+    }
+
+    // main is null when the program has no `main()` without parameters
+    public record Program(List<Function> functions, Function main) {}
+
+    /////////////////
+    /// DEBUGGING ///
+    /////////////////
+    public static String print(Program program) {
+        StringBuilder out = new StringBuilder();
+        for (Function function : program.functions()) {
+            out.append(print(function)).append('\n');
+        }
+        return out.toString();
+    }
+
+    public static String print(Function function) {
+        StringBuilder out = new StringBuilder();
+        out.append(function.returnType).append(' ').append(function.name).append('(');
+        for (int i = 0; i < function.parameterTypes.size(); i++) {
+            out.append(i > 0 ? ", " : "").append(function.parameterTypes.get(i));
+        }
+        out.append(")\n");
+
+        for (Block block : function.blocks) {
+            out.append(block).append(':');
+            if (!block.predecessors.isEmpty()) {
+                out.append("    ; preds ").append(join(block.predecessors));
+            }
+            out.append('\n');
+            for (Value value : block.instructions) {
+                out.append("    ").append(value).append(": ").append(value.type).append(" = ").append(value.op.mnemonic);
+                switch (value.op) {
+                    case CONST, PARAM -> out.append(' ').append(value.constant);
+                    case CALL -> out.append(' ').append(value.callee.name).append('(').append(join(List.of(value.operands))).append(')');
+                    default -> out.append(' ').append(join(List.of(value.operands)));
+                }
+                out.append('\n');
+            }
+            out.append("    ").append(block.terminator.mnemonic);
+            switch (block.terminator) {
+                case JUMP -> out.append(' ').append(block.target);
+                case BRANCH -> out.append(' ').append(block.value).append(", ").append(block.target).append(", ").append(block.otherwise);
+                default -> out.append(' ').append(block.value);
+            }
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    private static String join(List<?> items) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < items.size(); i++) {
+            out.append(i > 0 ? ", " : "").append(items.get(i));
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,493 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// lowers ParseTree functions into Ir. SSA form is built on the fly while walking the tree (Braun et al., "Simple
+// and Efficient Construction of Static Single Assignment Form"): every local is a variable number, reads look the
+// current definition up per block and only place a phi where control flow actually merges
+public class IrBuilder {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private final Map<String, Ir.Function> m_functions = new LinkedHashMap<>();
+    private final Map<Ir.Function, ParseTree.FunctionNode> m_nodes = new HashMap<>();
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    public IrBuilder(ParseTree.ProgramNode program) {
+        for (ParseTree.ClassNode classNode : program.classes()) {
+            for (ParseTree.FunctionNode function : classNode.functions()) {
+                if (!m_functions.containsKey(function.name())) {
+                    List<Ir.Type> parameterTypes = new ArrayList<>();
+                    for (ParseTree.ParameterNode parameter : function.parameters()) {
+                        parameterTypes.add(Ir.Type.of(parameter.type()));
+                    }
+                    Ir.Function target = new Ir.Function(function.name(), Ir.Type.of(function.returnType()), List.copyOf(parameterTypes));
+                    m_functions.put(function.name(), target);
+                    m_nodes.put(target, function);
+                }
+            }
+        }
+    }
+
+    public Ir.Program build() {
+        for (Ir.Function function : m_functions.values()) {
+            new FunctionBuilder(m_nodes.get(function), function).build();
+        }
+        Ir.Function main = m_functions.get("main");
+        return new Ir.Program(List.copyOf(m_functions.values()), main != null && main.parameterTypes.isEmpty() ? main : null);
+    }
+
+    /////////////////
+    /// FUNCTIONS ///
+    /////////////////
+    private final class FunctionBuilder {
+        private final ParseTree.FunctionNode m_node;
+        private final Ir.Function m_function;
+        private Ir.Block m_current;
+
+        // locals are numbered in declaration order, the scopes map names to those numbers
+        private final Deque<Map<String, Integer>> m_scopes = new ArrayDeque<>();
+        private final List<Ir.Type> m_variableTypes = new ArrayList<>();
+
+        // the ssa construction state: current definition of every variable per block (indexed by block id),
+        // blocks whose predecessors are all known, and phis placed in blocks that weren't yet
+        private final List<Ir.Value[]> m_definitions = new ArrayList<>();
+        private final Set<Ir.Block> m_sealed = new HashSet<>();
+        private final Map<Ir.Block, Map<Integer, Ir.Value>> m_incompletePhis = new HashMap<>();
+        private final Map<Ir.Value, Ir.Value> m_replaced = new IdentityHashMap<>(); // trivial phi -> its value
+        private Ir.Value m_undefined;
+
+        FunctionBuilder(ParseTree.FunctionNode node, Ir.Function function) {
+            this.m_node = node;
+            this.m_function = function;
+        }
+
+        void build() {
+            m_current = m_function.newBlock();
+            m_sealed.add(m_current);
+            m_scopes.push(new HashMap<>());
+            for (int i = 0; i < m_node.parameters().size(); i++) {
+                ParseTree.ParameterNode parameter = m_node.parameters().get(i);
+                Ir.Value value = append(m_function.newValue(Ir.Op.PARAM, m_function.parameterTypes.get(i)));
+                value.constant = i;
+                write(declare(parameter.name(), value.type), m_current, value);
+            }
+            block(m_node.body());
+
+            // falling off the end of a function returns 0
+            if (m_current.terminator == null) {
+                terminate(Ir.Op.RETURN, constant(m_function.returnType, 0));
+            }
+            cleanUp();
+        }
+
+        //////////////
+        /// SCOPES ///
+        //////////////
+        private int declare(String name, Ir.Type type) {
+            int variable = m_variableTypes.size();
+            m_variableTypes.add(type);
+            m_scopes.peek().put(name, variable);
+            return variable;
+        }
+
+        private int resolve(String name) {
+            for (Map<String, Integer> scope : m_scopes) {
+                Integer variable = scope.get(name);
+                if (variable != null) {
+                    return variable;
+                }
+            }
+            throw new RuntimeException("Compile error in " + m_node.name() + "(): unknown variable " + name);
+        }
+
+        ////////////////////////
+        /// SSA CONSTRUCTION ///
+        ////////////////////////
+        private void write(int variable, Ir.Block block, Ir.Value value) {
+            while (m_definitions.size() <= block.id) {
+                m_definitions.add(new Ir.Value[0]);
+            }
+            Ir.Value[] definitions = m_definitions.get(block.id);
+            if (variable >= definitions.length) {
+                definitions = Arrays.copyOf(definitions, Math.max(variable + 1, definitions.length * 2));
+                m_definitions.set(block.id, definitions);
+            }
+            definitions[variable] = value;
+        }
+
+        private Ir.Value read(int variable, Ir.Block block) {
+            if (block.id < m_definitions.size()) {
+                Ir.Value[] definitions = m_definitions.get(block.id);
+                if (variable < definitions.length && definitions[variable] != null) {
+                    return resolve(definitions[variable]);
+                }
+            }
+            return readRecursive(variable, block);
+        }
+
+        private Ir.Value readRecursive(int variable, Ir.Block block) {
+            Ir.Value value;
+            if (!m_sealed.contains(block)) {
+                // more predecessors may still come, so place an empty phi and fill it in when the block is sealed
+                value = phi(block, variable);
+                m_incompletePhis.computeIfAbsent(block, ignored -> new LinkedHashMap<>()).put(variable, value);
+            } else if (block.predecessors.isEmpty()) {
+                value = undefined(); // only happens in code that can never run
+            } else if (block.predecessors.size() == 1) {
+                value = read(variable, block.predecessors.getFirst());
+            } else {
+                // write the phi first so a loop back to this block finds it instead of recursing forever
+                value = phi(block, variable);
+                write(variable, block, value);
+                value = addPhiOperands(variable, value);
+            }
+            write(variable, block, value);
+            return value;
+        }
+
+        private Ir.Value phi(Ir.Block block, int variable) {
+            Ir.Value phi = m_function.newValue(Ir.Op.PHI, m_variableTypes.get(variable));
+            phi.block = block;
+            int index = 0;
+            while (index < block.instructions.size() && block.instructions.get(index).op == Ir.Op.PHI) {
+                index++;
+            }
+            block.instructions.add(index, phi);
+            return phi;
+        }
+
+        private Ir.Value addPhiOperands(int variable, Ir.Value phi) {
+            Ir.Value[] operands = new Ir.Value[phi.block.predecessors.size()];
+            for (int i = 0; i < operands.length; i++) {
+                operands[i] = read(variable, phi.block.predecessors.get(i));
+            }
+            phi.operands = operands;
+            return removeIfTrivial(phi);
+        }
+
+        // a phi whose operands are all the same value (or the phi itself) is just that value
+        private Ir.Value removeIfTrivial(Ir.Value phi) {
+            Ir.Value same = null;
+            for (Ir.Value operand : phi.operands) {
+                operand = resolve(operand);
+                if (operand == same || operand == phi) {
+                    continue;
+                }
+                if (same != null) {
+                    return phi;
+                }
+                same = operand;
+            }
+            if (same == null) {
+                same = undefined();
+            }
+            m_replaced.put(phi, same);
+            return same;
+        }
+
+        private Ir.Value resolve(Ir.Value value) {
+            Ir.Value replacement = m_replaced.get(value);
+            while (replacement != null) {
+                value = replacement;
+                replacement = m_replaced.get(value);
+            }
+            return value;
+        }
+
+        private void seal(Ir.Block block) {
+            Map<Integer, Ir.Value> incomplete = m_incompletePhis.remove(block);
+            m_sealed.add(block);
+            if (incomplete != null) {
+                for (Map.Entry<Integer, Ir.Value> entry : incomplete.entrySet()) {
+                    addPhiOperands(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        private Ir.Value undefined() {
+            if (m_undefined == null) {
+                m_undefined = m_function.newValue(Ir.Op.CONST, Ir.Type.INT);
+                m_undefined.block = m_function.entry();
+                m_function.entry().instructions.addFirst(m_undefined);
+            }
+            return m_undefined;
+        }
+
+        //////////////////
+        /// STATEMENTS ///
+        //////////////////
+        private void block(ParseTree.BlockNode block) {
+            m_scopes.push(new HashMap<>());
+            for (ParseTree.StatementNode statement : block.statements()) {
+                statement(statement);
+            }
+            m_scopes.pop();
+        }
+
+        private void statement(ParseTree.StatementNode statement) {
+            switch (statement) {
+                case ParseTree.VariableDeclarationNode(String type, String name, ParseTree.ExpressionNode initializer) -> {
+                    Ir.Value value = initializer != null ? expression(initializer) : constant(Ir.Type.of(type), 0);
+                    Ir.Type declared = type.equals("STOF_INT") || type.equals("STOF_BOOLEAN")
+                            ? Ir.Type.of(type)
+                            : value.type; // var and let take the type of their initializer
+                    write(declare(name, declared), m_current, value);
+                }
+                case ParseTree.VariableAssignmentNode(String name, ParseTree.ExpressionNode value) ->
+                        write(resolve(name), m_current, expression(value));
+                case ParseTree.IfNode(ParseTree.ExpressionNode condition, ParseTree.BlockNode thenBlock,
+                                      List<ParseTree.ElseIfNode> elseIfClauses, ParseTree.BlockNode elseBlock) -> {
+                    Ir.Block end = m_function.newBlock();
+                    branchInto(condition, thenBlock, end);
+                    for (ParseTree.ElseIfNode elif : elseIfClauses) {
+                        branchInto(elif.condition(), elif.block(), end);
+                    }
+                    if (elseBlock != null) {
+                        block(elseBlock);
+                    }
+                    jump(end);
+                    seal(end);
+                    m_current = end;
+                }
+                case ParseTree.ForNode(ParseTree.StatementNode initialization, ParseTree.ExpressionNode condition,
+                                       ParseTree.ExpressionNode increment, ParseTree.BlockNode body) -> {
+                    m_scopes.push(new HashMap<>());
+                    if (initialization != null) {
+                        statement(initialization);
+                    }
+                    loop(condition, body, increment);
+                    m_scopes.pop();
+                }
+                case ParseTree.WhileNode(ParseTree.ExpressionNode condition, ParseTree.BlockNode body) ->
+                        loop(condition, body, null);
+                case ParseTree.ReturnNode(ParseTree.ExpressionNode value) ->
+                        terminate(Ir.Op.RETURN, value != null ? expression(value) : constant(m_function.returnType, 0));
+                case ParseTree.ExitNode(ParseTree.ExpressionNode exitCode) -> terminate(Ir.Op.EXIT, expression(exitCode));
+                case ParseTree.ExpressionStatementNode(ParseTree.ExpressionNode expression) -> expression(expression);
+            }
+        }
+
+        // `if (condition) { body }` that jumps to end afterwards. leaves the current block at the false side
+        private void branchInto(ParseTree.ExpressionNode condition, ParseTree.BlockNode body, Ir.Block end) {
+            Ir.Value value = expression(condition);
+            Ir.Block then = m_function.newBlock();
+            Ir.Block otherwise = m_function.newBlock();
+            branch(value, then, otherwise);
+            seal(then);
+            seal(otherwise);
+
+            m_current = then;
+            block(body);
+            jump(end);
+            m_current = otherwise;
+        }
+
+        // the header is sealed last, once the back edge from the end of the body is known
+        private void loop(ParseTree.ExpressionNode condition, ParseTree.BlockNode body, ParseTree.ExpressionNode increment) {
+            Ir.Block header = m_function.newBlock();
+            jump(header);
+            m_current = header;
+
+            Ir.Block bodyBlock = m_function.newBlock();
+            Ir.Block exit = m_function.newBlock();
+            if (condition != null) {
+                branch(expression(condition), bodyBlock, exit);
+            } else {
+                jump(bodyBlock);
+            }
+            seal(bodyBlock);
+            seal(exit);
+
+            m_current = bodyBlock;
+            block(body);
+            if (increment != null) {
+                expression(increment);
+            }
+            jump(header);
+            seal(header);
+            m_current = exit;
+        }
+
+        private void jump(Ir.Block target) {
+            if (m_current.terminator != null) {
+                return;
+            }
+            m_current.terminator = Ir.Op.JUMP;
+            m_current.target = target;
+            target.predecessors.add(m_current);
+        }
+
+        private void branch(Ir.Value condition, Ir.Block then, Ir.Block otherwise) {
+            m_current.terminator = Ir.Op.BRANCH;
+            m_current.value = condition;
+            m_current.target = then;
+            m_current.otherwise = otherwise;
+            then.predecessors.add(m_current);
+            otherwise.predecessors.add(m_current);
+        }
+
+        // ends the current block. whatever follows a return or exit lands in a fresh block nothing jumps to
+        private void terminate(Ir.Op terminator, Ir.Value value) {
+            m_current.terminator = terminator;
+            m_current.value = value;
+            m_current = m_function.newBlock();
+            m_sealed.add(m_current);
+        }
+
+        ///////////////////
+        /// EXPRESSIONS ///
+        ///////////////////
+        private Ir.Value expression(ParseTree.ExpressionNode expression) {
+            return switch (expression) {
+                case ParseTree.IntLiteralNode(int value) -> constant(Ir.Type.INT, value);
+                case ParseTree.BooleanLiteralNode(boolean value) -> constant(Ir.Type.BOOLEAN, value ? 1 : 0);
+                case ParseTree.VariableNode(String name) -> read(resolve(name), m_current);
+                case ParseTree.AssignmentExpressionNode(String variableName, ParseTree.ExpressionNode value) -> {
+                    Ir.Value result = expression(value);
+                    write(resolve(variableName), m_current, result);
+                    yield result;
+                }
+                case ParseTree.FunctionCallNode(String functionName, List<ParseTree.ExpressionNode> arguments) ->
+                        call(functionName, arguments);
+                case ParseTree.BinaryOperatorNode(ParseTree.ExpressionNode left, String operator, ParseTree.ExpressionNode right) -> {
+                    Ir.Op op = Ir.Op.binary(operator);
+                    if (op == null) {
+                        throw new RuntimeException("Compile error in " + m_node.name() + "(): unknown operator " + operator);
+                    }
+                    Ir.Value l = expression(left);
+                    Ir.Value r = expression(right);
+                    yield append(m_function.newValue(op, op.isComparison() ? Ir.Type.BOOLEAN : Ir.Type.INT, l, r));
+                }
+                case ParseTree.UnaryOperatorNode(String operator, ParseTree.ExpressionNode operand, boolean isPostfix) -> {
+                    if (!(operand instanceof ParseTree.VariableNode(String name))) {
+                        throw new RuntimeException("Compile error in " + m_node.name() + "(): " + operator + " needs a variable");
+                    }
+                    int variable = resolve(name);
+                    Ir.Value old = read(variable, m_current);
+                    Ir.Value updated = append(m_function.newValue(operator.equals("++") ? Ir.Op.ADD : Ir.Op.SUB, Ir.Type.INT,
+                            old, constant(Ir.Type.INT, 1)));
+                    write(variable, m_current, updated);
+                    yield isPostfix ? old : updated;
+                }
+            };
+        }
+
+        private Ir.Value call(String functionName, List<ParseTree.ExpressionNode> arguments) {
+            Ir.Function target = m_functions.get(functionName);
+            if (target == null && !functionName.equals("print")) {
+                throw new RuntimeException("Compile error in " + m_node.name() + "(): unknown function " + functionName + "()");
+            }
+            if (target != null && target.parameterTypes.size() != arguments.size()) {
+                throw new RuntimeException("Compile error in " + m_node.name() + "(): " + functionName + "() expects "
+                        + target.parameterTypes.size() + " arguments");
+            }
+
+            Ir.Value[] values = new Ir.Value[arguments.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = expression(arguments.get(i));
+            }
+            if (target == null) {
+                return append(m_function.newValue(Ir.Op.PRINT, Ir.Type.INT, values));
+            }
+            Ir.Value call = m_function.newValue(Ir.Op.CALL, target.returnType, values);
+            call.callee = target;
+            return append(call);
+        }
+
+        private Ir.Value constant(Ir.Type type, int value) {
+            Ir.Value constant = m_function.newValue(Ir.Op.CONST, type);
+            constant.constant = value;
+            return append(constant);
+        }
+
+        private Ir.Value append(Ir.Value value) {
+            value.block = m_current;
+            m_current.instructions.add(value);
+            return value;
+        }
+
+        ////////////////
+        /// CLEAN UP ///
+        ////////////////
+        // drops the blocks that can never run, removes the phis that became trivial once their operands from
+        // those blocks were gone, points every use at the final values and puts the blocks in reverse postorder
+        private void cleanUp() {
+            List<Ir.Block> order = reversePostorder();
+            Set<Ir.Block> reachable = new HashSet<>(order);
+            for (Ir.Block block : m_function.blocks) {
+                if (!reachable.contains(block)) {
+                    for (Ir.Block successor : block.successors()) {
+                        successor.removePredecessor(block);
+                    }
+                }
+            }
+
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (Ir.Block block : order) {
+                    for (Ir.Value value : block.instructions) {
+                        if (value.op == Ir.Op.PHI && !m_replaced.containsKey(value) && removeIfTrivial(value) != value) {
+                            changed = true;
+                        }
+                    }
+                }
+            }
+
+            for (Ir.Block block : order) {
+                block.instructions.removeIf(value -> value.op == Ir.Op.PHI && m_replaced.containsKey(value));
+                for (Ir.Value value : block.instructions) {
+                    for (int i = 0; i < value.operands.length; i++) {
+                        value.operands[i] = resolve(value.operands[i]);
+                    }
+                }
+                if (block.value != null) {
+                    block.value = resolve(block.value);
+                }
+            }
+
+            m_function.blocks.clear();
+            m_function.blocks.addAll(order);
+            m_function.renumberBlocks();
+        }
+
+        private List<Ir.Block> reversePostorder() {
+            List<Ir.Block> postorder = new ArrayList<>();
+            Set<Ir.Block> visited = new HashSet<>();
+            Deque<Ir.Block> stack = new ArrayDeque<>();
+            Deque<Integer> next = new ArrayDeque<>(); // index of the next successor to visit, per stack entry
+            stack.push(m_function.entry());
+            next.push(0);
+            visited.add(m_function.entry());
+            while (!stack.isEmpty()) {
+                Ir.Block block = stack.peek();
+                int index = next.pop();
+                List<Ir.Block> successors = block.successors();
+                if (index < successors.size()) {
+                    next.push(index + 1);
+                    // the false side is visited first, so the true side comes first in the final order
+                    Ir.Block successor = successors.get(successors.size() - 1 - index);
+                    if (visited.add(successor)) {
+                        stack.push(successor);
+                        next.push(0);
+                    }
+                } else {
+                    stack.pop();
+                    postorder.add(block);
+                }
+            }
+            return postorder.reversed();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import java.io.PrintStream;
+import java.util.List;
+
+// runs Ir programs directly. it is the reference for the ssa form: whatever IrBuilder and the optimization passes
+// produce has to print and return exactly what the other interpreters do for the same program
+public class IrInterpreter {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private final Ir.Program m_program;
+    private final PrintStream m_out;
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    public IrInterpreter(Ir.Program program, PrintStream out) {
+        this.m_program = program;
+        this.m_out = out;
+    }
+
+    ///////////////
+    /// RUNNING ///
+    ///////////////
+    // runs main() and returns its result as the exit code
+    public int run() {
+        if (m_program.main() == null) {
+            throw new RuntimeException("Runtime error: no main() function");
+        }
+        try {
+            return call(m_program.main(), new int[0]);
+        } catch (ClosureInterpreter.ExitSignal exit) {
+            return exit.code();
+        } catch (StackOverflowError e) {
+            throw new RuntimeException("Runtime error: stack overflow");
+        }
+    }
+
+    private int call(Ir.Function function, int[] arguments) {
+        int[] values = new int[function.valueCount()];
+        Ir.Block previous = null;
+        Ir.Block block = function.entry();
+        while (true) {
+            List<Ir.Value> instructions = block.instructions;
+            int first = 0;
+
+            // the phis of a block read their operands for the edge just taken, all before any of them is written
+            if (!instructions.isEmpty() && instructions.getFirst().op == Ir.Op.PHI) {
+                int edge = block.predecessors.indexOf(previous);
+                while (first < instructions.size() && instructions.get(first).op == Ir.Op.PHI) {
+                    first++;
+                }
+                int[] incoming = new int[first];
+                for (int i = 0; i < first; i++) {
+                    incoming[i] = values[instructions.get(i).operands[edge].id];
+                }
+                for (int i = 0; i < first; i++) {
+                    values[instructions.get(i).id] = incoming[i];
+                }
+            }
+
+            for (int i = first; i < instructions.size(); i++) {
+                Ir.Value value = instructions.get(i);
+                values[value.id] = evaluate(value, values, arguments);
+            }
+
+            previous = block;
+            switch (block.terminator) {
+                case JUMP -> block = block.target;
+                case BRANCH -> block = values[block.value.id] != 0 ? block.target : block.otherwise;
+                case RETURN -> {
+                    return values[block.value.id];
+                }
+                case EXIT -> throw new ClosureInterpreter.ExitSignal(values[block.value.id]);
+                default -> throw new RuntimeException("Runtime error: bad terminator " + block.terminator + " in " + function.name);
+            }
+        }
+    }
+
+    private int evaluate(Ir.Value value, int[] values, int[] arguments) {
+        Ir.Value[] operands = value.operands;
+        return switch (value.op) {
+            case CONST -> value.constant;
+            case PARAM -> arguments[value.constant];
+            case ADD -> values[operands[0].id] + values[operands[1].id];
+            case SUB -> values[operands[0].id] - values[operands[1].id];
+            case MUL -> values[operands[0].id] * values[operands[1].id];
+            case DIV -> values[operands[0].id] / divisor(values[operands[1].id]);
+            case MOD -> values[operands[0].id] % divisor(values[operands[1].id]);
+            case GT -> values[operands[0].id] > values[operands[1].id] ? 1 : 0;
+            case LT -> values[operands[0].id] < values[operands[1].id] ? 1 : 0;
+            case GE -> values[operands[0].id] >= values[operands[1].id] ? 1 : 0;
+            case LE -> values[operands[0].id] <= values[operands[1].id] ? 1 : 0;
+            case CALL -> {
+                int[] callArguments = new int[operands.length];
+                for (int i = 0; i < operands.length; i++) {
+                    callArguments[i] = values[operands[i].id];
+                }
+                yield call(value.callee, callArguments);
+            }
+            case PRINT -> {
+                print(operands, values);
+                yield 0;
+            }
+            default -> throw new RuntimeException("Runtime error: " + value.op + " is not an instruction");
+        };
+    }
+
+    private static int divisor(int value) {
+        if (value == 0) {
+            throw new RuntimeException("Runtime error: division by zero");
+        }
+        return value;
+    }
+
+    private void print(Ir.Value[] operands, int[] values) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < operands.length; i++) {
+            if (i > 0) {
+                line.append(", ");
+            }
+            int value = values[operands[i].id];
+            if (operands[i].type == Ir.Type.BOOLEAN) {
+                line.append(value != 0);
+            } else {
+                line.append(value);
+            }
+        }
+        m_out.println(operands.length == 1 ? line : "[" + line + "]");
+    }
+}
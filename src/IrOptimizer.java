@@ -0,0 +1,195 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// runs optimization passes over an Ir.Program and keeps statistics per pass. the passes repeat in rounds until
+// none of them changes anything, since folding a branch often opens up more folding and dead code behind it
+public class IrOptimizer {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private static final int MAX_ROUNDS = 8;
+
+    private final List<Pass> m_passes;
+    private final Map<String, Statistics> m_statistics = new LinkedHashMap<>();
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    public IrOptimizer(List<Pass> passes) {
+        this.m_passes = List.copyOf(passes);
+        for (Pass pass : m_passes) {
+            m_statistics.put(pass.name(), new Statistics(pass.name()));
+        }
+    }
+
+    // the standard pipeline. unrolling comes before invariant motion, so the constants it hoists out of a loop it is
+    // about to unroll don't have to be copied into every iteration first
+    public static IrOptimizer standard() {
+        return new IrOptimizer(List.of(new ConstantPropagation(), new CfgSimplification(), new LoopUnrolling(),
+                new LoopInvariantCodeMotion(), new StrengthReduction(), new DeadCodeElimination()));
+    }
+
+    // the standard pipeline with calls to small non-recursive functions inlined first
+    public static IrOptimizer standard(CallGraph callGraph) {
+        List<Pass> passes = new ArrayList<>();
+        passes.add(new Inliner(callGraph));
+        passes.addAll(standard().passes());
+        return new IrOptimizer(passes);
+    }
+
+    // constant propagation, cfg clean up and dead code only, without the loop passes
+    public static IrOptimizer scalar() {
+        return new IrOptimizer(List.of(new ConstantPropagation(), new CfgSimplification(), new DeadCodeElimination()));
+    }
+
+    ///////////////////////
+    /// UTILITY CLASSES ///
+    ///////////////////////
+    public interface Pass {
+        String name();
+
+        // transforms the function in place and returns how many changes it made, 0 when it left it alone
+        int run(Ir.Function function);
+    }
+
+    // totals for one pass over every function and round it ran in
+    public static final class Statistics {
+        private final String m_name;
+        private int m_runs;
+        private int m_changes;
+        private int m_removedInstructions;
+        private long m_nanos;
+
+        Statistics(String name) {
+            this.m_name = name;
+        }
+
+        public String name() {
+            return m_name;
+        }
+
+        public int runs() {
+            return m_runs;
+        }
+
+        public int changes() {
+            return m_changes;
+        }
+
+        // can be negative for passes that grow code, like inlining
+        public int removedInstructions() {
+            return m_removedInstructions;
+        }
+
+        public long nanos() {
+            return m_nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-24s %6d changes %6d instructions removed %9.3f ms", m_name, m_changes,
+                    m_removedInstructions, m_nanos / 1_000_000.0);
+        }
+    }
+
+    //////////////////
+    /// OPTIMIZING ///
+    //////////////////
+    public Ir.Program optimize(Ir.Program program) {
+        for (Ir.Function function : calleesFirst(program)) {
+            optimize(function);
+        }
+        return program;
+    }
+
+    // a callee is optimized before its callers, so inlining copies the optimized body. recursion is cut wherever the
+    // walk comes back to a function it is still in
+    private static List<Ir.Function> calleesFirst(Ir.Program program) {
+        List<Ir.Function> order = new ArrayList<>();
+        Set<Ir.Function> visited = new HashSet<>();
+        Deque<Ir.Function> path = new ArrayDeque<>();
+        Deque<Iterator<Ir.Function>> remaining = new ArrayDeque<>();
+        for (Ir.Function root : program.functions()) {
+            if (!visited.add(root)) {
+                continue;
+            }
+            path.push(root);
+            remaining.push(callees(root).iterator());
+            while (!path.isEmpty()) {
+                if (remaining.peek().hasNext()) {
+                    Ir.Function callee = remaining.peek().next();
+                    if (visited.add(callee)) {
+                        path.push(callee);
+                        remaining.push(callees(callee).iterator());
+                    }
+                } else {
+                    order.add(path.pop());
+                    remaining.pop();
+                }
+            }
+        }
+        return order;
+    }
+
+    private static List<Ir.Function> callees(Ir.Function function) {
+        List<Ir.Function> callees = new ArrayList<>();
+        for (Ir.Block block : function.blocks) {
+            for (Ir.Value value : block.instructions) {
+                if (value.op == Ir.Op.CALL) {
+                    callees.add(value.callee);
+                }
+            }
+        }
+        return callees;
+    }
+
+    public void optimize(Ir.Function function) {
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            int changes = 0;
+            for (Pass pass : m_passes) {
+                changes += run(pass, function);
+            }
+            if (changes == 0) {
+                return;
+            }
+        }
+    }
+
+    private int run(Pass pass, Ir.Function function) {
+        int before = function.instructionCount();
+        long start = System.nanoTime();
+        int changes = pass.run(function);
+        long elapsed = System.nanoTime() - start;
+
+        Statistics statistics = m_statistics.get(pass.name());
+        statistics.m_runs++;
+        statistics.m_changes += changes;
+        statistics.m_removedInstructions += before - function.instructionCount();
+        statistics.m_nanos += elapsed;
+        return changes;
+    }
+
+    public List<Pass> passes() {
+        return m_passes;
+    }
+
+    public List<Statistics> statistics() {
+        return new ArrayList<>(m_statistics.values());
+    }
+
+    // one line per pass, in pipeline order
+    public String report() {
+        StringBuilder out = new StringBuilder();
+        for (Statistics statistics : m_statistics.values()) {
+            out.append(statistics).append('\n');
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,530 @@
+import java.io.IOException;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.Label;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// compiles every ParseTree.ClassNode into a real JVM class with the java.lang.classfile api. stof functions
+// become static methods, int and boolean stay primitives, so HotSpot JIT-compiles stof code like any java code.
+// the classes can be written to disk as .class files or loaded straight into this JVM. exit(code) throws the
+// program's exit signal, a small class generated next to the others, so a program run in this JVM ends only itself;
+// just the java entry point of a class written to disk turns it into System.exit
+public class JvmBackend {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private static final ClassDesc CD_SYSTEM = ClassDesc.of("java.lang.System");
+    private static final ClassDesc CD_PRINT_STREAM = ClassDesc.of("java.io.PrintStream");
+    private static final ClassDesc CD_STRING_BUILDER = ClassDesc.of("java.lang.StringBuilder");
+    private static final String EXIT_SIGNAL = "stof$ExitSignal"; // '$' can't be part of a stof class name
+    private static final ClassDesc CD_EXIT_SIGNAL = ClassDesc.of(EXIT_SIGNAL);
+    private static final MethodTypeDesc MTD_EXIT = MethodTypeDesc.of(ConstantDescs.CD_void, ConstantDescs.CD_int);
+
+    private final ParseTree.ProgramNode m_program;
+    private final Map<String, Target> m_functions = new HashMap<>(); // every callable function by name
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    public JvmBackend(ParseTree.ProgramNode program) {
+        this.m_program = program;
+        for (ParseTree.ClassNode classNode : program.classes()) {
+            for (ParseTree.FunctionNode function : classNode.functions()) {
+                m_functions.putIfAbsent(function.name(), new Target(ClassDesc.of(classNode.name()), function));
+            }
+        }
+    }
+
+    ///////////////////////
+    /// UTILITY CLASSES ///
+    ///////////////////////
+    // the class that owns a function, so calls can be emitted as invokestatic on it
+    private record Target(ClassDesc owner, ParseTree.FunctionNode function) {
+        MethodTypeDesc descriptor() {
+            return methodDescriptor(function);
+        }
+    }
+
+    private record Local(int slot, boolean isBoolean) {}
+
+    // defines the generated classes of one program together, so calls between them resolve to each other. they are
+    // looked up here before the parent, which is the compiler's own loader: a stof class named Parser or Main has to
+    // be the program's class, not the compiler's
+    private static final class StofClassLoader extends ClassLoader {
+        private final Map<String, byte[]> m_classes;
+
+        StofClassLoader(Map<String, byte[]> classes) {
+            super(JvmBackend.class.getClassLoader());
+            this.m_classes = classes;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!m_classes.containsKey(name)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    loaded = findClass(name);
+                }
+                if (resolve) {
+                    resolveClass(loaded);
+                }
+                return loaded;
+            }
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = m_classes.get(name);
+            if (bytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /////////////////
+    /// COMPILING ///
+    /////////////////
+    // returns the class file bytes of every stof class and of the exit signal, keyed by class name
+    public Map<String, byte[]> compile() {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        for (ParseTree.ClassNode classNode : m_program.classes()) {
+            classes.put(classNode.name(), compileClass(classNode));
+        }
+        classes.put(EXIT_SIGNAL, compileExitSignal());
+        return classes;
+    }
+
+    public void writeClasses(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        for (Map.Entry<String, byte[]> entry : compile().entrySet()) {
+            Files.write(directory.resolve(entry.getKey() + ".class"), entry.getValue());
+        }
+    }
+
+    // loads the generated classes into this JVM and returns a handle to the static `int main()`. a program that
+    // calls exit(code) returns code from it
+    public MethodHandle loadMain() {
+        Target main = m_functions.get("main");
+        if (main == null || !main.function().parameters().isEmpty()) {
+            throw new RuntimeException("Runtime error: no main() function");
+        }
+        try {
+            StofClassLoader loader = new StofClassLoader(compile());
+            Class<?> owner = loader.loadClass(main.owner().displayName());
+            Class<? extends Throwable> exitSignal = loader.loadClass(EXIT_SIGNAL).asSubclass(Throwable.class);
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            return MethodHandles.catchException(lookup.findStatic(owner, "main", MethodType.methodType(int.class)),
+                    exitSignal, lookup.findGetter(exitSignal, "code", int.class));
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Could not load generated class: " + e.getMessage(), e);
+        }
+    }
+
+    // runs main() in this JVM and returns its result as the exit code
+    public int run() {
+        MethodHandle main = loadMain();
+        try {
+            return (int) main.invokeExact();
+        } catch (ArithmeticException e) {
+            throw new RuntimeException("Runtime error: division by zero");
+        } catch (StackOverflowError e) {
+            throw new RuntimeException("Runtime error: stack overflow");
+        } catch (Throwable e) {
+            throw new RuntimeException("Runtime error: " + e, e);
+        }
+    }
+
+    private byte[] compileClass(ParseTree.ClassNode classNode) {
+        ClassDesc self = ClassDesc.of(classNode.name());
+        return ClassFile.of().build(self, classBuilder -> {
+            classBuilder.withFlags(ClassFile.ACC_PUBLIC | ClassFile.ACC_FINAL | ClassFile.ACC_SUPER);
+            for (ParseTree.FunctionNode function : classNode.functions()) {
+                classBuilder.withMethodBody(function.name(), methodDescriptor(function),
+                        ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC,
+                        code -> new FunctionCompiler(function, code).compile());
+            }
+
+            // a class with `int main()` also gets a java entry point, so `java -cp <dir> main` runs the program
+            if (m_functions.get("main") != null && m_functions.get("main").owner().equals(self)
+                    && m_functions.get("main").function().parameters().isEmpty()) {
+                classBuilder.withMethodBody("main", MethodTypeDesc.of(ConstantDescs.CD_void, ConstantDescs.CD_String.arrayType()),
+                        ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, code -> {
+                            // here, and only here, the program owns its process: main()'s result or the code given
+                            // to exit() ends the JVM like a native binary would
+                            Label start = code.newLabel();
+                            Label end = code.newLabel();
+                            Label exited = code.newLabel();
+                            code.labelBinding(start);
+                            code.invokestatic(self, "main", MethodTypeDesc.of(ConstantDescs.CD_int));
+                            code.labelBinding(end);
+                            code.invokestatic(CD_SYSTEM, "exit", MTD_EXIT);
+                            code.return_();
+                            code.labelBinding(exited);
+                            code.getfield(CD_EXIT_SIGNAL, "code", ConstantDescs.CD_int);
+                            code.invokestatic(CD_SYSTEM, "exit", MTD_EXIT);
+                            code.return_();
+                            code.exceptionCatch(start, end, exited, CD_EXIT_SIGNAL);
+                        });
+            }
+        });
+    }
+
+    // public final class stof$ExitSignal extends RuntimeException, with a public final int code and a static
+    // exit(int) that throws one. like ClosureInterpreter.ExitSignal it has no stack trace
+    private static byte[] compileExitSignal() {
+        ClassDesc runtimeException = ClassDesc.of("java.lang.RuntimeException");
+        return ClassFile.of().build(CD_EXIT_SIGNAL, classBuilder -> {
+            classBuilder.withFlags(ClassFile.ACC_PUBLIC | ClassFile.ACC_FINAL | ClassFile.ACC_SUPER);
+            classBuilder.withSuperclass(runtimeException);
+            classBuilder.withField("code", ConstantDescs.CD_int, ClassFile.ACC_PUBLIC | ClassFile.ACC_FINAL);
+            classBuilder.withMethodBody(ConstantDescs.INIT_NAME, MTD_EXIT, ClassFile.ACC_PRIVATE, code -> {
+                code.aload(0);
+                code.aconst_null();
+                code.aconst_null();
+                code.iconst_0();
+                code.iconst_0();
+                code.invokespecial(runtimeException, ConstantDescs.INIT_NAME, MethodTypeDesc.of(ConstantDescs.CD_void,
+                        ConstantDescs.CD_String, ClassDesc.of("java.lang.Throwable"), ConstantDescs.CD_boolean, ConstantDescs.CD_boolean));
+                code.aload(0);
+                code.iload(1);
+                code.putfield(CD_EXIT_SIGNAL, "code", ConstantDescs.CD_int);
+                code.return_();
+            });
+            classBuilder.withMethodBody("exit", MTD_EXIT, ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, code -> {
+                code.new_(CD_EXIT_SIGNAL);
+                code.dup();
+                code.iload(0);
+                code.invokespecial(CD_EXIT_SIGNAL, ConstantDescs.INIT_NAME, MTD_EXIT);
+                code.athrow();
+            });
+        });
+    }
+
+    private static MethodTypeDesc methodDescriptor(ParseTree.FunctionNode function) {
+        ClassDesc[] parameters = new ClassDesc[function.parameters().size()];
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] = typeDesc(function.parameters().get(i).type());
+        }
+        return MethodTypeDesc.of(typeDesc(function.returnType()), parameters);
+    }
+
+    private static ClassDesc typeDesc(String type) {
+        return ClosureInterpreter.isBooleanType(type) ? ConstantDescs.CD_boolean : ConstantDescs.CD_int;
+    }
+
+    /////////////////
+    /// FUNCTIONS ///
+    /////////////////
+    private final class FunctionCompiler {
+        private final ParseTree.FunctionNode m_function;
+        private final CodeBuilder m_code;
+        private final Deque<Map<String, Local>> m_scopes = new ArrayDeque<>();
+        private int m_nextSlot = 0;
+
+        FunctionCompiler(ParseTree.FunctionNode function, CodeBuilder code) {
+            this.m_function = function;
+            this.m_code = code;
+        }
+
+        void compile() {
+            m_scopes.push(new HashMap<>());
+            for (ParseTree.ParameterNode parameter : m_function.parameters()) {
+                declare(parameter.name(), ClosureInterpreter.isBooleanType(parameter.type()));
+            }
+            block(m_function.body());
+
+            // falling off the end of a function returns 0
+            m_code.iconst_0();
+            m_code.ireturn();
+        }
+
+        private int declare(String name, boolean isBoolean) {
+            int slot = m_nextSlot++;
+            m_scopes.peek().put(name, new Local(slot, isBoolean));
+            return slot;
+        }
+
+        private Local resolve(String name) {
+            for (Map<String, Local> scope : m_scopes) {
+                Local local = scope.get(name);
+                if (local != null) {
+                    return local;
+                }
+            }
+            throw new RuntimeException("Compile error in " + m_function.name() + "(): unknown variable " + name);
+        }
+
+        //////////////////
+        /// STATEMENTS ///
+        //////////////////
+        private void block(ParseTree.BlockNode block) {
+            int firstSlot = m_nextSlot;
+            m_scopes.push(new HashMap<>());
+            for (ParseTree.StatementNode statement : block.statements()) {
+                statement(statement);
+            }
+            m_scopes.pop();
+            m_nextSlot = firstSlot;
+        }
+
+        private void statement(ParseTree.StatementNode statement) {
+            switch (statement) {
+                case ParseTree.VariableDeclarationNode(String type, String name, ParseTree.ExpressionNode initializer) -> {
+                    boolean isBoolean = ClosureInterpreter.isBooleanType(type);
+                    if (initializer != null) {
+                        boolean valueIsBoolean = expression(initializer);
+                        if (!type.equals("STOF_INT") && !type.equals("STOF_BOOLEAN")) {
+                            isBoolean = valueIsBoolean; // var and let take the type of their initializer
+                        }
+                    } else {
+                        m_code.iconst_0();
+                    }
+                    m_code.istore(declare(name, isBoolean));
+                }
+                case ParseTree.VariableAssignmentNode(String name, ParseTree.ExpressionNode value) -> {
+                    expression(value);
+                    m_code.istore(resolve(name).slot());
+                }
+                case ParseTree.IfNode(ParseTree.ExpressionNode condition, ParseTree.BlockNode thenBlock,
+                                      List<ParseTree.ElseIfNode> elseIfClauses, ParseTree.BlockNode elseBlock) -> {
+                    Label end = m_code.newLabel();
+                    Label next = m_code.newLabel();
+                    branchIfFalse(condition, next);
+                    block(thenBlock);
+                    m_code.goto_(end);
+                    for (ParseTree.ElseIfNode elif : elseIfClauses) {
+                        m_code.labelBinding(next);
+                        next = m_code.newLabel();
+                        branchIfFalse(elif.condition(), next);
+                        block(elif.block());
+                        m_code.goto_(end);
+                    }
+                    m_code.labelBinding(next);
+                    if (elseBlock != null) {
+                        block(elseBlock);
+                    }
+                    m_code.labelBinding(end);
+                }
+                case ParseTree.ForNode(ParseTree.StatementNode initialization, ParseTree.ExpressionNode condition,
+                                       ParseTree.ExpressionNode increment, ParseTree.BlockNode body) -> {
+                    int firstSlot = m_nextSlot;
+                    m_scopes.push(new HashMap<>());
+                    if (initialization != null) {
+                        statement(initialization);
+                    }
+                    Label top = m_code.newBoundLabel();
+                    Label exit = m_code.newLabel();
+                    if (condition != null) {
+                        branchIfFalse(condition, exit);
+                    }
+                    block(body);
+                    if (increment != null) {
+                        effect(increment);
+                    }
+                    m_code.goto_(top);
+                    m_code.labelBinding(exit);
+                    m_scopes.pop();
+                    m_nextSlot = firstSlot;
+                }
+                case ParseTree.WhileNode(ParseTree.ExpressionNode condition, ParseTree.BlockNode body) -> {
+                    Label top = m_code.newBoundLabel();
+                    Label exit = m_code.newLabel();
+                    branchIfFalse(condition, exit);
+                    block(body);
+                    m_code.goto_(top);
+                    m_code.labelBinding(exit);
+                }
+                case ParseTree.ReturnNode(ParseTree.ExpressionNode value) -> {
+                    if (value != null) {
+                        expression(value);
+                    } else {
+                        m_code.iconst_0();
+                    }
+                    m_code.ireturn();
+                }
+                case ParseTree.ExitNode(ParseTree.ExpressionNode exitCode) -> {
+                    // throws the exit signal, which main()'s caller turns into the exit code
+                    expression(exitCode);
+                    m_code.invokestatic(CD_EXIT_SIGNAL, "exit", MTD_EXIT);
+                }
+                case ParseTree.ExpressionStatementNode(ParseTree.ExpressionNode expression) -> effect(expression);
+            }
+        }
+
+        // compiles an expression whose value is thrown away
+        private void effect(ParseTree.ExpressionNode expression) {
+            if (expression instanceof ParseTree.UnaryOperatorNode(String operator, ParseTree.VariableNode(String name), boolean ignored)) {
+                m_code.iinc(resolve(name).slot(), operator.equals("++") ? 1 : -1);
+            } else if (expression instanceof ParseTree.AssignmentExpressionNode(String name, ParseTree.ExpressionNode value)) {
+                expression(value);
+                m_code.istore(resolve(name).slot());
+            } else {
+                expression(expression);
+                m_code.pop();
+            }
+        }
+
+        // jumps to target when the condition is false. comparisons compile straight to an inverted if_icmp
+        private void branchIfFalse(ParseTree.ExpressionNode condition, Label target) {
+            if (condition instanceof ParseTree.BinaryOperatorNode(ParseTree.ExpressionNode left, String operator, ParseTree.ExpressionNode right)
+                    && isComparison(operator)) {
+                expression(left);
+                expression(right);
+                switch (operator) {
+                    case ">" -> m_code.if_icmple(target);
+                    case "<" -> m_code.if_icmpge(target);
+                    case ">=" -> m_code.if_icmplt(target);
+                    default -> m_code.if_icmpgt(target); // "<="
+                }
+                return;
+            }
+            expression(condition);
+            m_code.ifeq(target);
+        }
+
+        private static boolean isComparison(String operator) {
+            return operator.equals(">") || operator.equals("<") || operator.equals(">=") || operator.equals("<=");
+        }
+
+        ///////////////////
+        /// EXPRESSIONS ///
+        ///////////////////
+        // leaves the value on the operand stack, returns whether it is a boolean
+        private boolean expression(ParseTree.ExpressionNode expression) {
+            switch (expression) {
+                case ParseTree.IntLiteralNode(int value) -> {
+                    m_code.loadConstant(value);
+                    return false;
+                }
+                case ParseTree.BooleanLiteralNode(boolean value) -> {
+                    m_code.loadConstant(value ? 1 : 0);
+                    return true;
+                }
+                case ParseTree.VariableNode(String name) -> {
+                    Local local = resolve(name);
+                    m_code.iload(local.slot());
+                    return local.isBoolean();
+                }
+                case ParseTree.AssignmentExpressionNode(String variableName, ParseTree.ExpressionNode value) -> {
+                    Local local = resolve(variableName);
+                    expression(value);
+                    m_code.dup();
+                    m_code.istore(local.slot());
+                    return local.isBoolean();
+                }
+                case ParseTree.FunctionCallNode(String functionName, List<ParseTree.ExpressionNode> arguments) -> {
+                    return call(functionName, arguments);
+                }
+                case ParseTree.BinaryOperatorNode(ParseTree.ExpressionNode left, String operator, ParseTree.ExpressionNode right) -> {
+                    if (isComparison(operator)) {
+                        Label isFalse = m_code.newLabel();
+                        Label end = m_code.newLabel();
+                        branchIfFalse(expression, isFalse);
+                        m_code.iconst_1();
+                        m_code.goto_(end);
+                        m_code.labelBinding(isFalse);
+                        m_code.iconst_0();
+                        m_code.labelBinding(end);
+                        return true;
+                    }
+                    expression(left);
+                    expression(right);
+                    switch (operator) {
+                        case "+" -> m_code.iadd();
+                        case "-" -> m_code.isub();
+                        case "*" -> m_code.imul();
+                        case "/" -> m_code.idiv();
+                        case "%" -> m_code.irem();
+                        default -> throw new RuntimeException("Compile error in " + m_function.name() + "(): unknown operator " + operator);
+                    }
+                    return false;
+                }
+                case ParseTree.UnaryOperatorNode(String operator, ParseTree.ExpressionNode operand, boolean isPostfix) -> {
+                    if (!(operand instanceof ParseTree.VariableNode(String name))) {
+                        throw new RuntimeException("Compile error in " + m_function.name() + "(): " + operator + " needs a variable");
+                    }
+                    int slot = resolve(name).slot();
+                    int delta = operator.equals("++") ? 1 : -1;
+                    if (isPostfix) {
+                        m_code.iload(slot);
+                        m_code.iinc(slot, delta);
+                    } else {
+                        m_code.iinc(slot, delta);
+                        m_code.iload(slot);
+                    }
+                    return false;
+                }
+            }
+        }
+
+        private boolean call(String functionName, List<ParseTree.ExpressionNode> arguments) {
+            Target target = m_functions.get(functionName);
+            if (target == null && functionName.equals("print")) {
+                print(arguments);
+                return false;
+            }
+            if (target == null) {
+                throw new RuntimeException("Compile error in " + m_function.name() + "(): unknown function " + functionName + "()");
+            }
+            if (target.function().parameters().size() != arguments.size()) {
+                throw new RuntimeException("Compile error in " + m_function.name() + "(): " + functionName + "() expects "
+                        + target.function().parameters().size() + " arguments");
+            }
+
+            for (ParseTree.ExpressionNode argument : arguments) {
+                expression(argument);
+            }
+            m_code.invokestatic(target.owner(), functionName, target.descriptor());
+            return ClosureInterpreter.isBooleanType(target.function().returnType());
+        }
+
+        // print(x) becomes System.out.println, several arguments print as "[a, b]" like the interpreters do.
+        // the call itself evaluates to 0
+        private void print(List<ParseTree.ExpressionNode> arguments) {
+            m_code.getstatic(CD_SYSTEM, "out", CD_PRINT_STREAM);
+            if (arguments.size() == 1) {
+                boolean isBoolean = expression(arguments.getFirst());
+                m_code.invokevirtual(CD_PRINT_STREAM, "println",
+                        MethodTypeDesc.of(ConstantDescs.CD_void, isBoolean ? ConstantDescs.CD_boolean : ConstantDescs.CD_int));
+            } else {
+                m_code.new_(CD_STRING_BUILDER);
+                m_code.dup();
+                m_code.invokespecial(CD_STRING_BUILDER, ConstantDescs.INIT_NAME, ConstantDescs.MTD_void);
+                appendString("[");
+                for (int i = 0; i < arguments.size(); i++) {
+                    if (i > 0) {
+                        appendString(", ");
+                    }
+                    boolean isBoolean = expression(arguments.get(i));
+                    m_code.invokevirtual(CD_STRING_BUILDER, "append",
+                            MethodTypeDesc.of(CD_STRING_BUILDER, isBoolean ? ConstantDescs.CD_boolean : ConstantDescs.CD_int));
+                }
+                appendString("]");
+                m_code.invokevirtual(CD_PRINT_STREAM, "println", MethodTypeDesc.of(ConstantDescs.CD_void, ConstantDescs.CD_Object));
+            }
+            m_code.iconst_0();
+        }
+
+        private void appendString(String text) {
+            m_code.loadConstant(text);
+            m_code.invokevirtual(CD_STRING_BUILDER, "append", MethodTypeDesc.of(CD_STRING_BUILDER, ConstantDescs.CD_String));
+        }
+    }
+}
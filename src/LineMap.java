@@ -0,0 +1,42 @@
+import java.util.Arrays;
+
+// turns char offsets into 1-based lines and columns. the start of every line is found in one pass over the text,
+// after which an offset is a binary search. SourceFile keeps one for reporting positions in its file, and the Parser
+// builds one over its tokens' source for the first syntax error
+public final class LineMap {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private final int[] m_lineStarts;
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    public LineMap(CharSequence text) {
+        int[] starts = new int[64];
+        int count = 1; // line 1 starts at offset 0
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                }
+                starts[count++] = i + 1;
+            }
+        }
+        this.m_lineStarts = Arrays.copyOf(starts, count);
+    }
+
+    /////////////////
+    /// POSITIONS ///
+    /////////////////
+    // 1-based line number of a char offset
+    public int line(int offset) {
+        int index = Arrays.binarySearch(m_lineStarts, offset);
+        return (index >= 0 ? index : -index - 2) + 1;
+    }
+
+    // 1-based column of a char offset
+    public int column(int offset) {
+        return offset - m_lineStarts[line(offset) - 1] + 1;
+    }
+}
@@ -0,0 +1,292 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// finds the natural loops of an Ir.Function: dominators (Cooper, Harvey and Kennedy's iterative algorithm), back
+// edges to a dominating header, the blocks of every loop and its induction variables. the loop passes recompute
+// this after every change they make, it is cheap next to what they save
+public final class LoopAnalysis {
+    private LoopAnalysis() {}
+
+    ///////////////////////
+    /// UTILITY CLASSES ///
+    ///////////////////////
+    // blocks holds the header too. latches are the blocks that jump back to the header
+    public record Loop(Ir.Block header, Set<Ir.Block> blocks, List<Ir.Block> latches) {
+        public boolean contains(Ir.Value value) {
+            return blocks.contains(value.block);
+        }
+
+        // the single block outside the loop that jumps to the header, null when there isn't exactly one
+        public Ir.Block preheader() {
+            Ir.Block preheader = null;
+            for (Ir.Block predecessor : header.predecessors) {
+                if (blocks.contains(predecessor)) {
+                    continue;
+                }
+                if (preheader != null || predecessor.terminator != Ir.Op.JUMP) {
+                    return null;
+                }
+                preheader = predecessor;
+            }
+            return preheader;
+        }
+    }
+
+    // a header phi that starts at init and changes by a constant step every time around the loop, like `i` in
+    // `for (i = 0; i < n; i++)`. step is the sum of every ++, --, + c and - c on the way back to the header
+    public record InductionVariable(Ir.Value phi, Ir.Value init, int step) {}
+
+    /////////////
+    /// LOOPS ///
+    /////////////
+    // innermost loops come first
+    public static List<Loop> find(Ir.Function function) {
+        List<Ir.Block> order = reversePostorder(function);
+        Map<Ir.Block, Ir.Block> dominators = dominators(order);
+
+        Map<Ir.Block, List<Ir.Block>> latches = new LinkedHashMap<>();
+        for (Ir.Block block : order) {
+            for (Ir.Block successor : block.successors()) {
+                if (dominates(successor, block, dominators)) {
+                    latches.computeIfAbsent(successor, ignored -> new ArrayList<>()).add(block);
+                }
+            }
+        }
+
+        List<Loop> loops = new ArrayList<>();
+        for (Map.Entry<Ir.Block, List<Ir.Block>> entry : latches.entrySet()) {
+            Ir.Block header = entry.getKey();
+            Set<Ir.Block> blocks = new HashSet<>();
+            blocks.add(header);
+            Deque<Ir.Block> work = new ArrayDeque<>(entry.getValue());
+            while (!work.isEmpty()) {
+                Ir.Block block = work.poll();
+                if (blocks.add(block)) {
+                    work.addAll(block.predecessors);
+                }
+            }
+            loops.add(new Loop(header, blocks, List.copyOf(entry.getValue())));
+        }
+        loops.sort(Comparator.comparingInt(loop -> loop.blocks().size()));
+        return loops;
+    }
+
+    // gives the loop a preheader if it has none: a new block that all outside predecessors jump to and that jumps
+    // on to the header. header phi operands from those predecessors move into phis in the new block
+    public static Ir.Block ensurePreheader(Ir.Function function, Loop loop) {
+        Ir.Block existing = loop.preheader();
+        if (existing != null) {
+            return existing;
+        }
+
+        Ir.Block header = loop.header();
+        Ir.Block preheader = function.newBlock();
+        function.blocks.remove(preheader); // listed right before the header so printed ir still reads top down
+        function.blocks.add(function.blocks.indexOf(header), preheader);
+        List<Integer> outside = new ArrayList<>();
+        for (int i = 0; i < header.predecessors.size(); i++) {
+            if (!loop.blocks().contains(header.predecessors.get(i))) {
+                outside.add(i);
+            }
+        }
+
+        for (Ir.Value phi : header.instructions) {
+            if (phi.op != Ir.Op.PHI) {
+                break;
+            }
+            Ir.Value[] incoming = new Ir.Value[outside.size()];
+            for (int i = 0; i < incoming.length; i++) {
+                incoming[i] = phi.operands[outside.get(i)];
+            }
+            Ir.Value merged = function.newValue(Ir.Op.PHI, phi.type, incoming);
+            merged.block = preheader;
+            preheader.instructions.add(merged);
+
+            List<Ir.Value> operands = new ArrayList<>();
+            for (int i = 0; i < phi.operands.length; i++) {
+                if (!outside.contains(i)) {
+                    operands.add(phi.operands[i]);
+                }
+            }
+            operands.add(merged);
+            phi.operands = operands.toArray(new Ir.Value[0]);
+        }
+
+        List<Ir.Block> inside = new ArrayList<>();
+        for (int i = 0; i < header.predecessors.size(); i++) {
+            Ir.Block predecessor = header.predecessors.get(i);
+            if (outside.contains(i)) {
+                predecessor.replaceSuccessor(header, preheader);
+                preheader.predecessors.add(predecessor);
+            } else {
+                inside.add(predecessor);
+            }
+        }
+        header.predecessors.clear();
+        header.predecessors.addAll(inside);
+        header.predecessors.add(preheader);
+
+        preheader.terminator = Ir.Op.JUMP;
+        preheader.target = header;
+        CfgSimplification.removeTrivialPhis(function); // a single outside predecessor leaves trivial phis behind
+        function.renumberBlocks();
+        return preheader;
+    }
+
+    ///////////////////////////
+    /// INDUCTION VARIABLES ///
+    ///////////////////////////
+    // only for loops with a preheader and a single latch, the shape for and while loops lower to
+    public static List<InductionVariable> inductionVariables(Loop loop) {
+        Ir.Block preheader = loop.preheader();
+        if (preheader == null || loop.latches().size() != 1 || loop.header().predecessors.size() != 2) {
+            return List.of();
+        }
+        int entry = loop.header().predecessors.indexOf(preheader);
+        int back = 1 - entry;
+
+        List<InductionVariable> variables = new ArrayList<>();
+        for (Ir.Value phi : loop.header().instructions) {
+            if (phi.op != Ir.Op.PHI) {
+                break;
+            }
+            Integer step = step(phi.operands[back], phi);
+            if (step != null) {
+                variables.add(new InductionVariable(phi, phi.operands[entry], step));
+            }
+        }
+        return variables;
+    }
+
+    // follows a chain of `x + c` and `x - c` from value down to the phi, null when it doesn't end there
+    private static Integer step(Ir.Value value, Ir.Value phi) {
+        int step = 0;
+        while (value != phi) {
+            if (value.op != Ir.Op.ADD && value.op != Ir.Op.SUB) {
+                return null;
+            }
+            Ir.Value left = value.operands[0];
+            Ir.Value right = value.operands[1];
+            if (right.isConstant()) {
+                step += value.op == Ir.Op.ADD ? right.constant : -right.constant;
+                value = left;
+            } else if (left.isConstant() && value.op == Ir.Op.ADD) {
+                step += left.constant;
+                value = right;
+            } else {
+                return null;
+            }
+        }
+        return step;
+    }
+
+    public static InductionVariable inductionVariable(List<InductionVariable> variables, Ir.Value phi) {
+        for (InductionVariable variable : variables) {
+            if (variable.phi() == phi) {
+                return variable;
+            }
+        }
+        return null;
+    }
+
+    //////////////////
+    /// DOMINATORS ///
+    //////////////////
+    public static List<Ir.Block> reversePostorder(Ir.Function function) {
+        List<Ir.Block> postorder = new ArrayList<>();
+        Set<Ir.Block> visited = new HashSet<>();
+        Deque<Ir.Block> stack = new ArrayDeque<>();
+        Deque<Integer> next = new ArrayDeque<>();
+        stack.push(function.entry());
+        next.push(0);
+        visited.add(function.entry());
+        while (!stack.isEmpty()) {
+            Ir.Block block = stack.peek();
+            int index = next.pop();
+            List<Ir.Block> successors = block.successors();
+            if (index < successors.size()) {
+                next.push(index + 1);
+                Ir.Block successor = successors.get(successors.size() - 1 - index);
+                if (visited.add(successor)) {
+                    stack.push(successor);
+                    next.push(0);
+                }
+            } else {
+                stack.pop();
+                postorder.add(block);
+            }
+        }
+        return postorder.reversed();
+    }
+
+    // immediate dominator of every reachable block, the entry block maps to itself
+    public static Map<Ir.Block, Ir.Block> dominators(List<Ir.Block> reversePostorder) {
+        Map<Ir.Block, Integer> index = new HashMap<>();
+        for (int i = 0; i < reversePostorder.size(); i++) {
+            index.put(reversePostorder.get(i), i);
+        }
+        int[] idom = new int[reversePostorder.size()];
+        Arrays.fill(idom, -1);
+        idom[0] = 0;
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 1; i < idom.length; i++) {
+                int dominator = -1;
+                for (Ir.Block predecessor : reversePostorder.get(i).predecessors) {
+                    Integer p = index.get(predecessor);
+                    if (p == null || idom[p] == -1) {
+                        continue; // unreachable, or not processed yet
+                    }
+                    dominator = dominator == -1 ? p : intersect(p, dominator, idom);
+                }
+                if (idom[i] != dominator) {
+                    idom[i] = dominator;
+                    changed = true;
+                }
+            }
+        }
+
+        Map<Ir.Block, Ir.Block> dominators = new HashMap<>();
+        for (int i = 0; i < idom.length; i++) {
+            dominators.put(reversePostorder.get(i), reversePostorder.get(idom[i]));
+        }
+        return dominators;
+    }
+
+    private static int intersect(int a, int b, int[] idom) {
+        while (a != b) {
+            while (a > b) {
+                a = idom[a];
+            }
+            while (b > a) {
+                b = idom[b];
+            }
+        }
+        return a;
+    }
+
+    public static boolean dominates(Ir.Block dominator, Ir.Block block, Map<Ir.Block, Ir.Block> dominators) {
+        Ir.Block current = block;
+        while (true) {
+            if (current == dominator) {
+                return true;
+            }
+            Ir.Block next = dominators.get(current);
+            if (next == null || next == current) {
+                return false;
+            }
+            current = next;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// moves values that compute the same thing on every iteration out of the loop and into its preheader: constants,
+// and arithmetic and comparisons on values from outside the loop. inner loops go first so an invariant can move out
+// one loop at a time. calls, prints and divisions that could still fail stay put, hoisting those would change when
+// or whether they happen
+public class LoopInvariantCodeMotion implements IrOptimizer.Pass {
+    @Override
+    public String name() {
+        return "loop-invariant-motion";
+    }
+
+    @Override
+    public int run(Ir.Function function) {
+        int changes = 0;
+        // hoisting can add a preheader, which changes the outer loops, so the loops are found again every time
+        for (int index = 0; ; index++) {
+            List<LoopAnalysis.Loop> loops = LoopAnalysis.find(function);
+            if (index >= loops.size()) {
+                break;
+            }
+            changes += hoist(function, loops.get(index));
+        }
+        return changes;
+    }
+
+    private static int hoist(Ir.Function function, LoopAnalysis.Loop loop) {
+        Set<Ir.Value> invariant = new LinkedHashSet<>();
+        // in reverse postorder definitions come before their uses, except around the back edge
+        for (Ir.Block block : LoopAnalysis.reversePostorder(function)) {
+            if (!loop.blocks().contains(block)) {
+                continue;
+            }
+            for (Ir.Value value : block.instructions) {
+                if (isHoistable(value) && isInvariant(value, loop, invariant)) {
+                    invariant.add(value);
+                }
+            }
+        }
+        if (invariant.isEmpty()) {
+            return 0;
+        }
+
+        // only now, so a loop with nothing to hoist doesn't grow a preheader the next cleanup removes again
+        Ir.Block preheader = LoopAnalysis.ensurePreheader(function, loop);
+        for (Ir.Value value : invariant) {
+            value.block.instructions.remove(value);
+            value.block = preheader;
+            preheader.instructions.add(value);
+        }
+        return invariant.size();
+    }
+
+    private static boolean isInvariant(Ir.Value value, LoopAnalysis.Loop loop, Set<Ir.Value> invariant) {
+        for (Ir.Value operand : value.operands) {
+            if (loop.contains(operand) && !invariant.contains(operand)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isHoistable(Ir.Value value) {
+        return switch (value.op) {
+            case CONST, ADD, SUB, MUL, GT, LT, GE, LE -> true;
+            case DIV, MOD -> value.operands[1].isConstant() && value.operands[1].constant != 0;
+            default -> false;
+        };
+    }
+}
@@ -0,0 +1,239 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// fully unrolls small loops whose trip count is known at compile time, like `for (i = 0; i < 4; i++)`: the loop is
+// peeled once per iteration in front of itself. the loop itself stays behind, but its condition is false on entry
+// now, and since every copy of the induction variable is a constant, constant propagation folds the copies' branches
+// and removes the loop on the next round
+public class LoopUnrolling implements IrOptimizer.Pass {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private static final int MAX_TRIPS = 16;
+    private static final int MAX_UNROLLED_INSTRUCTIONS = 160;
+
+    @Override
+    public String name() {
+        return "loop-unrolling";
+    }
+
+    @Override
+    public int run(Ir.Function function) {
+        int changes = 0;
+        for (int index = 0; ; index++) {
+            List<LoopAnalysis.Loop> loops = LoopAnalysis.find(function);
+            if (index >= loops.size()) {
+                break;
+            }
+            changes += unroll(function, loops.get(index));
+        }
+        return changes;
+    }
+
+    private static int unroll(Ir.Function function, LoopAnalysis.Loop loop) {
+        Ir.Block exit = exit(loop);
+        int trips = exit == null ? -1 : tripCount(loop);
+        if (trips <= 0) {
+            return 0;
+        }
+        int size = 0;
+        for (Ir.Block block : loop.blocks()) {
+            size += block.instructions.size();
+        }
+        if (size * trips > MAX_UNROLLED_INSTRUCTIONS) {
+            return 0;
+        }
+
+        List<Ir.Block> order = new ArrayList<>();
+        for (Ir.Block block : LoopAnalysis.reversePostorder(function)) {
+            if (loop.blocks().contains(block)) {
+                order.add(block);
+            }
+        }
+        exitPhis(function, loop, exit);
+        Ir.Block preheader = loop.preheader();
+        for (int trip = 0; trip < trips; trip++) {
+            preheader = peel(function, loop, order, preheader, exit);
+        }
+
+        // the copies were added at the end, put them back in control-flow order
+        List<Ir.Block> blocks = LoopAnalysis.reversePostorder(function);
+        function.blocks.clear();
+        function.blocks.addAll(blocks);
+        function.renumberBlocks();
+        return trips;
+    }
+
+    // the only block the loop leaves to, which has to be the header's other successor and have no other way in
+    private static Ir.Block exit(LoopAnalysis.Loop loop) {
+        Ir.Block header = loop.header();
+        if (loop.preheader() == null || loop.latches().size() != 1 || header.predecessors.size() != 2
+                || header.terminator != Ir.Op.BRANCH) {
+            return null;
+        }
+        Ir.Block exit = loop.blocks().contains(header.target) ? header.otherwise : header.target;
+        if (loop.blocks().contains(exit) || exit.predecessors.size() != 1) {
+            return null;
+        }
+        for (Ir.Block block : loop.blocks()) {
+            for (Ir.Block successor : block.successors()) {
+                if (!loop.blocks().contains(successor) && successor != exit) {
+                    return null;
+                }
+            }
+        }
+        return exit;
+    }
+
+    // runs the header's comparison on a constant induction variable, -1 when the count isn't known or too high
+    private static int tripCount(LoopAnalysis.Loop loop) {
+        Ir.Block header = loop.header();
+        Ir.Value condition = header.value;
+        if (!condition.op.isComparison() || condition.block != header) {
+            return -1;
+        }
+        List<LoopAnalysis.InductionVariable> variables = LoopAnalysis.inductionVariables(loop);
+        int side = LoopAnalysis.inductionVariable(variables, condition.operands[0]) != null ? 0 : 1;
+        LoopAnalysis.InductionVariable variable = LoopAnalysis.inductionVariable(variables, condition.operands[side]);
+        Ir.Value bound = condition.operands[1 - side];
+        if (variable == null || !variable.init().isConstant() || !bound.isConstant() || variable.step() == 0) {
+            return -1;
+        }
+
+        boolean staysOnTrue = loop.blocks().contains(header.target);
+        int current = variable.init().constant;
+        for (int trips = 0; trips <= MAX_TRIPS; trips++) {
+            int result = side == 0
+                    ? ConstantPropagation.fold(condition.op, current, bound.constant)
+                    : ConstantPropagation.fold(condition.op, bound.constant, current);
+            if ((result != 0) != staysOnTrue) {
+                return trips;
+            }
+            current += variable.step();
+        }
+        return -1;
+    }
+
+    // routes every use of a header value after the loop through a phi in the exit block, which each peeled copy
+    // then adds its own operand to
+    private static void exitPhis(Ir.Function function, LoopAnalysis.Loop loop, Ir.Block exit) {
+        Ir.Block header = loop.header();
+        Map<Ir.Value, Ir.Value> phis = new HashMap<>();
+        List<Ir.Value> added = new ArrayList<>();
+        for (Ir.Block block : function.blocks) {
+            if (loop.blocks().contains(block)) {
+                continue;
+            }
+            for (Ir.Value value : block.instructions) {
+                if (block == exit && value.op == Ir.Op.PHI) {
+                    continue; // already one operand per predecessor
+                }
+                for (int i = 0; i < value.operands.length; i++) {
+                    if (value.operands[i].block == header) {
+                        value.operands[i] = exitPhi(function, value.operands[i], exit, phis, added);
+                    }
+                }
+            }
+            if (block.value != null && block.value.block == header) {
+                block.value = exitPhi(function, block.value, exit, phis, added);
+            }
+        }
+        int firstNonPhi = 0;
+        while (firstNonPhi < exit.instructions.size() && exit.instructions.get(firstNonPhi).op == Ir.Op.PHI) {
+            firstNonPhi++;
+        }
+        exit.instructions.addAll(firstNonPhi, added);
+    }
+
+    private static Ir.Value exitPhi(Ir.Function function, Ir.Value value, Ir.Block exit, Map<Ir.Value, Ir.Value> phis, List<Ir.Value> added) {
+        return phis.computeIfAbsent(value, ignored -> {
+            Ir.Value phi = function.newValue(Ir.Op.PHI, value.type, value);
+            phi.block = exit;
+            added.add(phi);
+            return phi;
+        });
+    }
+
+    // copies one iteration in between the preheader and the header. returns the copy of the latch, which is where
+    // the loop is entered from now
+    private static Ir.Block peel(Ir.Function function, LoopAnalysis.Loop loop, List<Ir.Block> order, Ir.Block preheader, Ir.Block exit) {
+        Ir.Block header = loop.header();
+        Ir.Block latch = loop.latches().getFirst();
+        int entry = header.predecessors.indexOf(preheader);
+
+        Map<Ir.Value, Ir.Value> values = new HashMap<>();
+        Map<Ir.Block, Ir.Block> blocks = new HashMap<>();
+        for (Ir.Value phi : header.instructions) {
+            if (phi.op != Ir.Op.PHI) {
+                break;
+            }
+            values.put(phi, phi.operands[entry]);
+        }
+        for (Ir.Block block : order) {
+            blocks.put(block, function.newBlock());
+        }
+
+        List<Ir.Value> copies = new ArrayList<>();
+        for (Ir.Block block : order) {
+            Ir.Block copy = blocks.get(block);
+            for (Ir.Value value : block.instructions) {
+                if (block == header && value.op == Ir.Op.PHI) {
+                    continue;
+                }
+                Ir.Value cloned = function.newValue(value.op, value.type, value.operands.clone());
+                cloned.constant = value.constant;
+                cloned.callee = value.callee;
+                cloned.block = copy;
+                copy.instructions.add(cloned);
+                values.put(value, cloned);
+                copies.add(cloned);
+            }
+        }
+        // phis in the body can use values defined further down, so operands are only mapped once all exist
+        for (Ir.Value copy : copies) {
+            for (int i = 0; i < copy.operands.length; i++) {
+                copy.operands[i] = values.getOrDefault(copy.operands[i], copy.operands[i]);
+            }
+        }
+
+        for (Ir.Block block : order) {
+            Ir.Block copy = blocks.get(block);
+            copy.terminator = block.terminator;
+            copy.value = block.value == null ? null : values.getOrDefault(block.value, block.value);
+            copy.target = block.target == header ? header : blocks.getOrDefault(block.target, block.target);
+            copy.otherwise = block.otherwise == header ? header : blocks.getOrDefault(block.otherwise, block.otherwise);
+            if (block != header) {
+                for (Ir.Block predecessor : block.predecessors) {
+                    copy.predecessors.add(blocks.get(predecessor));
+                }
+            }
+        }
+
+        Ir.Block first = blocks.get(header);
+        preheader.replaceSuccessor(header, first);
+        first.predecessors.add(preheader);
+        header.predecessors.set(entry, blocks.get(latch));
+        for (Ir.Value phi : header.instructions) {
+            if (phi.op != Ir.Op.PHI) {
+                break;
+            }
+            Ir.Value back = phi.operands[1 - entry];
+            phi.operands[entry] = values.getOrDefault(back, back);
+        }
+
+        exit.predecessors.add(first);
+        for (Ir.Value phi : exit.instructions) {
+            if (phi.op != Ir.Op.PHI) {
+                break;
+            }
+            Ir.Value[] operands = new Ir.Value[phi.operands.length + 1];
+            System.arraycopy(phi.operands, 0, operands, 0, phi.operands.length);
+            Ir.Value fromHeader = phi.operands[exit.predecessors.indexOf(header)];
+            operands[phi.operands.length] = values.getOrDefault(fromHeader, fromHeader);
+            phi.operands = operands;
+        }
+        return blocks.get(latch);
+    }
+}
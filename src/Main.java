@@ -1,40 +1,44 @@
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.Scanner;
-import java.util.Vector;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 // main entry point for the Stof Compiler
-void main() {
-    File sourceCode = new File("stof/main.stof"); // grab the source code
-    StringBuilder fileString = new StringBuilder(); // initialize a string builder to store the .stof file as a string
+// usage: Main [--watch | --check | --emit-tree | --run | --profile | --profile-timed | --vm | --emit-bytecode | --jvm | --emit-classes | --native | --emit-asm | --ir | --emit-ir] [--optimize] [--json] [--no-cache] [--stats] [--stats-json file] [file.stof | directory]...   (defaults to stof/main.stof)
+//        Main --server [--socket path]                       keeps a compiler running, see CompileServer
+//        Main --client [--socket path] [options] [files]...  compiles through it, or here when no server is running
+void main(String[] args) {
+    List<String> arguments = new ArrayList<>(List.of(args));
+    boolean server = arguments.remove("--server");
+    boolean client = arguments.remove("--client");
+    Path socket = CompileServer.defaultSocket();
+    int socketOption = arguments.indexOf("--socket");
+    if (socketOption >= 0 && socketOption + 1 < arguments.size()) {
+        socket = Path.of(arguments.remove(socketOption + 1));
+        arguments.remove(socketOption);
+    }
 
-    // go through each line of the .stof file and append it to the string
-    try (Scanner reader = new Scanner(sourceCode)) {
-        while (reader.hasNextLine()) {
-            String data = reader.nextLine();
-            fileString.append(data).append("\n");
+    if (server) {
+        try (CompileServer compileServer = CompileServer.open(socket)) {
+            compileServer.run();
+        } catch (IOException e) {
+            System.out.println("An error has occurred: " + e.getMessage());
         }
-    } catch (FileNotFoundException e) {
-        System.out.println("An error has occurred: " + e.getMessage());
         return;
     }
+    if (client) {
+        try {
+            if (CompileClient.compile(socket, arguments, Path.of(""), System.out)) {
+                return;
+            }
+            System.err.println("No compile server is listening on " + socket + ", compiling in this process");
+        } catch (IOException e) {
+            System.out.println("An error has occurred: " + e.getMessage());
+            return;
+        }
+    }
 
-    // tokenize the source code. this assigns a keyword for every single word within the original source code
-    Tokenizer tokenizer = new Tokenizer(fileString.toString());
-    Vector<Tokenizer.Token> tokens = tokenizer.tokenize();
-
-    // parse the tokens returned from the Tokenizer class
-    Parser parser = new Parser(tokens);
-    try {
-        ParseTree.ProgramNode program = parser.parse(); // contains the entire Stof program
-
-        // TODO: delete this, this is for testing purposes only
-        // write parseTree to a txt file for debugging purposes
-        String sourceFileName = sourceCode.getName().replace(".stof", "");
-        String outputPath = "stof/" + sourceFileName + "_parse_tree.txt";
-        parser.writeParseTreeToFile(program, outputPath);
-    } catch (RuntimeException e) {
-        System.out.println("Parse error: " + e.getMessage());
-        e.printStackTrace();
+    try (CompileDriver driver = new CompileDriver()) {
+        new CompileCommand(driver).run(arguments, Path.of(""), System.out);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,621 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// a compact binary form of a ParseTree.ProgramNode that reads back into the same tree, for handing parse trees
+// between processes and tools without parsing again. every string (names, types, operators) is stored once in a
+// string table up front and referred to by index. then come the classes, and for each function its signature
+// followed by its body as a pre-order stream of node tags, one byte per node followed by that node's own fields
+// as varints and then its children. absent children (an if without else, a for without condition) are a NONE tag.
+// every body is prefixed with its length, so the Reader can find a function without decoding the ones before it
+// and only builds a body the first time it is asked for. bodies are written and read with explicit stacks, so how
+// deeply a tree nests isn't limited by the thread stack
+public final class ParseTreeBinary {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private static final int MAGIC = 0x53545054; // "STPT"
+    private static final int VERSION = 1;
+
+    // node tags
+    private static final int NONE = 0;
+    private static final int BLOCK = 1;               // statement count, statements
+    private static final int VARIABLE_DECLARATION = 2; // type, name, initializer
+    private static final int VARIABLE_ASSIGNMENT = 3;  // name, value
+    private static final int IF = 4;                  // else-if count, condition, then block, (condition, block)..., else block
+    private static final int FOR = 5;                 // initialization, condition, increment, body
+    private static final int WHILE = 6;               // condition, body
+    private static final int RETURN = 7;              // value
+    private static final int EXIT = 8;                // exit code
+    private static final int EXPRESSION_STATEMENT = 9; // expression
+    private static final int VARIABLE = 10;           // name
+    private static final int BINARY_OPERATOR = 11;    // operator, left, right
+    private static final int PREFIX_OPERATOR = 12;    // operator, operand
+    private static final int POSTFIX_OPERATOR = 13;   // operator, operand
+    private static final int INT_LITERAL = 14;        // zigzag value
+    private static final int TRUE = 15;
+    private static final int FALSE = 16;
+    private static final int FUNCTION_CALL = 17;      // name, argument count, arguments
+    private static final int ASSIGNMENT_EXPRESSION = 18; // name, value
+
+    // what a node in the stream is read or written as, which decides the tags it may have
+    private static final byte BLOCK_SLOT = 0;
+    private static final byte STATEMENT_SLOT = 1;
+    private static final byte EXPRESSION_SLOT = 2;
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    private ParseTreeBinary() {}
+
+    ///////////////
+    /// WRITING ///
+    ///////////////
+    public static void write(ParseTree.ProgramNode program, OutputStream out) throws IOException {
+        // the body is written first so the string table is complete by the time the header goes out
+        Encoder body = new Encoder();
+        body.varInt(program.classes().size());
+        for (ParseTree.ClassNode classNode : program.classes()) {
+            body.string(classNode.name());
+            body.varInt(classNode.functions().size());
+            for (ParseTree.FunctionNode function : classNode.functions()) {
+                body.string(function.returnType());
+                body.string(function.name());
+                body.varInt(function.parameters().size());
+                for (ParseTree.ParameterNode parameter : function.parameters()) {
+                    body.string(parameter.type());
+                    body.string(parameter.name());
+                }
+                Encoder functionBody = new Encoder(body.m_strings);
+                functionBody.body(function.body());
+                body.varInt(functionBody.m_out.size());
+                functionBody.m_out.writeTo(body.m_out);
+            }
+        }
+
+        Encoder header = new Encoder();
+        header.m_out.write(new byte[] {(byte) (MAGIC >>> 24), (byte) (MAGIC >>> 16), (byte) (MAGIC >>> 8), (byte) MAGIC, VERSION});
+        header.varInt(body.m_strings.size());
+        for (String string : body.m_strings.keySet()) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            header.varInt(bytes.length);
+            header.m_out.write(bytes);
+        }
+        header.m_out.writeTo(out);
+        body.m_out.writeTo(out);
+        out.flush();
+    }
+
+    public static byte[] toBytes(ParseTree.ProgramNode program) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            write(program, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // a ByteArrayOutputStream doesn't throw
+        }
+        return out.toByteArray();
+    }
+
+    private static final class Encoder {
+        private final ByteArrayOutputStream m_out = new ByteArrayOutputStream();
+        private final Map<String, Integer> m_strings; // insertion ordered, the index is the position in the table
+        private Object[] m_nodes = new Object[64];
+        private byte[] m_slots = new byte[64];
+        private int m_depth;
+
+        Encoder() {
+            this(new LinkedHashMap<>());
+        }
+
+        Encoder(Map<String, Integer> strings) {
+            this.m_strings = strings;
+        }
+
+        void varInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                m_out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            m_out.write(value);
+        }
+
+        void string(String string) {
+            Integer index = m_strings.putIfAbsent(string, m_strings.size());
+            varInt(index != null ? index : m_strings.size() - 1);
+        }
+
+        // writes a body with an explicit stack instead of recursion, so a tree nested thousands of levels deep encodes
+        // like any other. a node's tag and own fields go out when it is popped, then its children are pushed in
+        // reverse so they pop in order
+        void body(ParseTree.BlockNode block) {
+            push(BLOCK_SLOT, block);
+            while (m_depth > 0) {
+                m_depth--;
+                Object node = m_nodes[m_depth];
+                m_nodes[m_depth] = null;
+                switch (m_slots[m_depth]) {
+                    case BLOCK_SLOT -> block((ParseTree.BlockNode) node);
+                    case STATEMENT_SLOT -> statement((ParseTree.StatementNode) node);
+                    default -> expression((ParseTree.ExpressionNode) node);
+                }
+            }
+        }
+
+        private void push(byte slot, Object node) {
+            if (m_depth == m_nodes.length) {
+                m_nodes = Arrays.copyOf(m_nodes, m_depth * 2);
+                m_slots = Arrays.copyOf(m_slots, m_depth * 2);
+            }
+            m_nodes[m_depth] = node;
+            m_slots[m_depth] = slot;
+            m_depth++;
+        }
+
+        private void block(ParseTree.BlockNode block) {
+            if (block == null) {
+                m_out.write(NONE);
+                return;
+            }
+            m_out.write(BLOCK);
+            varInt(block.statements().size());
+            for (int i = block.statements().size() - 1; i >= 0; i--) {
+                push(STATEMENT_SLOT, block.statements().get(i));
+            }
+        }
+
+        private void statement(ParseTree.StatementNode statement) {
+            switch (statement) {
+                case null -> m_out.write(NONE);
+                case ParseTree.VariableDeclarationNode declaration -> {
+                    m_out.write(VARIABLE_DECLARATION);
+                    string(declaration.type());
+                    string(declaration.name());
+                    push(EXPRESSION_SLOT, declaration.initializer());
+                }
+                case ParseTree.VariableAssignmentNode assignment -> {
+                    m_out.write(VARIABLE_ASSIGNMENT);
+                    string(assignment.name());
+                    push(EXPRESSION_SLOT, assignment.value());
+                }
+                case ParseTree.IfNode ifNode -> {
+                    m_out.write(IF);
+                    varInt(ifNode.elseIfClauses().size());
+                    push(BLOCK_SLOT, ifNode.elseBlock());
+                    for (int i = ifNode.elseIfClauses().size() - 1; i >= 0; i--) {
+                        push(BLOCK_SLOT, ifNode.elseIfClauses().get(i).block());
+                        push(EXPRESSION_SLOT, ifNode.elseIfClauses().get(i).condition());
+                    }
+                    push(BLOCK_SLOT, ifNode.thenBlock());
+                    push(EXPRESSION_SLOT, ifNode.condition());
+                }
+                case ParseTree.ForNode forNode -> {
+                    m_out.write(FOR);
+                    push(BLOCK_SLOT, forNode.body());
+                    push(EXPRESSION_SLOT, forNode.increment());
+                    push(EXPRESSION_SLOT, forNode.condition());
+                    push(STATEMENT_SLOT, forNode.initialization());
+                }
+                case ParseTree.WhileNode whileNode -> {
+                    m_out.write(WHILE);
+                    push(BLOCK_SLOT, whileNode.body());
+                    push(EXPRESSION_SLOT, whileNode.condition());
+                }
+                case ParseTree.ReturnNode returnNode -> {
+                    m_out.write(RETURN);
+                    push(EXPRESSION_SLOT, returnNode.value());
+                }
+                case ParseTree.ExitNode exitNode -> {
+                    m_out.write(EXIT);
+                    push(EXPRESSION_SLOT, exitNode.exitCode());
+                }
+                case ParseTree.ExpressionStatementNode expressionStatement -> {
+                    m_out.write(EXPRESSION_STATEMENT);
+                    push(EXPRESSION_SLOT, expressionStatement.expression());
+                }
+            }
+        }
+
+        private void expression(ParseTree.ExpressionNode expression) {
+            switch (expression) {
+                case null -> m_out.write(NONE);
+                case ParseTree.VariableNode variable -> {
+                    m_out.write(VARIABLE);
+                    string(variable.name());
+                }
+                case ParseTree.BinaryOperatorNode binary -> {
+                    m_out.write(BINARY_OPERATOR);
+                    string(binary.operator());
+                    push(EXPRESSION_SLOT, binary.right());
+                    push(EXPRESSION_SLOT, binary.left());
+                }
+                case ParseTree.UnaryOperatorNode unary -> {
+                    m_out.write(unary.isPostfix() ? POSTFIX_OPERATOR : PREFIX_OPERATOR);
+                    string(unary.operator());
+                    push(EXPRESSION_SLOT, unary.operand());
+                }
+                case ParseTree.IntLiteralNode literal -> {
+                    m_out.write(INT_LITERAL);
+                    varInt((literal.value() << 1) ^ (literal.value() >> 31)); // zigzag, like the bytecode
+                }
+                case ParseTree.BooleanLiteralNode literal -> m_out.write(literal.value() ? TRUE : FALSE);
+                case ParseTree.FunctionCallNode call -> {
+                    m_out.write(FUNCTION_CALL);
+                    string(call.functionName());
+                    varInt(call.arguments().size());
+                    for (int i = call.arguments().size() - 1; i >= 0; i--) {
+                        push(EXPRESSION_SLOT, call.arguments().get(i));
+                    }
+                }
+                case ParseTree.AssignmentExpressionNode assignment -> {
+                    m_out.write(ASSIGNMENT_EXPRESSION);
+                    string(assignment.variableName());
+                    push(EXPRESSION_SLOT, assignment.value());
+                }
+            }
+        }
+    }
+
+    ///////////////
+    /// READING ///
+    ///////////////
+    public static ParseTree.ProgramNode read(byte[] bytes) throws IOException {
+        return new Reader(ByteBuffer.wrap(bytes)).program();
+    }
+
+    // maps the file instead of reading it, function bodies are only decoded when they are asked for
+    public static Reader open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Reader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    // the decoded string table and the signature of every function, with the bodies left where they are in the buffer
+    public static final class Reader {
+        private final ByteBuffer m_buffer;
+        private final String[] m_strings;
+        private final List<ClassEntry> m_classes = new ArrayList<>();
+
+        private record ClassEntry(String name, List<FunctionEntry> functions) {}
+
+        private static final class FunctionEntry {
+            private final String returnType;
+            private final String name;
+            private final List<ParseTree.ParameterNode> parameters;
+            private final int bodyStart;
+            private ParseTree.FunctionNode function; // built on first use
+
+            FunctionEntry(String returnType, String name, List<ParseTree.ParameterNode> parameters, int bodyStart) {
+                this.returnType = returnType;
+                this.name = name;
+                this.parameters = parameters;
+                this.bodyStart = bodyStart;
+            }
+        }
+
+        Reader(ByteBuffer buffer) throws IOException {
+            this.m_buffer = buffer;
+            try {
+                if (buffer.getInt(0) != MAGIC) {
+                    throw new IOException("Not a Stof parse tree file");
+                }
+                int version = buffer.get(4) & 0xFF;
+                if (version != VERSION) {
+                    throw new IOException("Unsupported Stof parse tree version " + version);
+                }
+                int[] position = {5};
+                m_strings = new String[varInt(position)];
+                for (int i = 0; i < m_strings.length; i++) {
+                    byte[] bytes = new byte[varInt(position)];
+                    buffer.get(position[0], bytes);
+                    position[0] += bytes.length;
+                    m_strings[i] = new String(bytes, StandardCharsets.UTF_8);
+                }
+
+                int classCount = varInt(position);
+                for (int c = 0; c < classCount; c++) {
+                    String className = string(position);
+                    List<FunctionEntry> functions = new ArrayList<>();
+                    int functionCount = varInt(position);
+                    for (int f = 0; f < functionCount; f++) {
+                        String returnType = string(position);
+                        String name = string(position);
+                        ParseTree.ParameterNode[] parameters = new ParseTree.ParameterNode[varInt(position)];
+                        for (int p = 0; p < parameters.length; p++) {
+                            parameters[p] = new ParseTree.ParameterNode(string(position), string(position));
+                        }
+                        int bodyLength = varInt(position);
+                        functions.add(new FunctionEntry(returnType, name, List.of(parameters), position[0]));
+                        position[0] += bodyLength;
+                    }
+                    m_classes.add(new ClassEntry(className, functions));
+                }
+            } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+                throw new IOException("Truncated Stof parse tree file");
+            }
+        }
+
+        public int classCount() {
+            return m_classes.size();
+        }
+
+        public String className(int classIndex) {
+            return m_classes.get(classIndex).name();
+        }
+
+        public List<String> functionNames(int classIndex) {
+            return m_classes.get(classIndex).functions().stream().map(entry -> entry.name).toList();
+        }
+
+        // decodes just this function's body, the first time it is asked for
+        public synchronized ParseTree.FunctionNode function(int classIndex, int functionIndex) {
+            FunctionEntry entry = m_classes.get(classIndex).functions().get(functionIndex);
+            if (entry.function == null) {
+                try {
+                    ParseTree.BlockNode body = new Decoder(entry.bodyStart).block();
+                    entry.function = new ParseTree.FunctionNode(entry.returnType, entry.name, entry.parameters, body);
+                } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+                    throw new RuntimeException("Malformed Stof parse tree: body of " + entry.name + "() is truncated");
+                }
+            }
+            return entry.function;
+        }
+
+        // the whole tree, every body decoded
+        public ParseTree.ProgramNode program() {
+            ParseTree.ClassNode[] classes = new ParseTree.ClassNode[m_classes.size()];
+            for (int c = 0; c < classes.length; c++) {
+                ParseTree.FunctionNode[] functions = new ParseTree.FunctionNode[m_classes.get(c).functions().size()];
+                for (int f = 0; f < functions.length; f++) {
+                    functions[f] = function(c, f);
+                }
+                classes[c] = new ParseTree.ClassNode(className(c), List.of(functions));
+            }
+            return new ParseTree.ProgramNode(List.of(classes));
+        }
+
+        private int varInt(int[] position) {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = m_buffer.get(position[0]++) & 0xFF;
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new RuntimeException("Malformed varint in Stof parse tree");
+        }
+
+        private String string(int[] position) {
+            return m_strings[varInt(position)];
+        }
+
+        private static final Object PENDING = new Object(); // a node whose children are still being decoded
+
+        // decodes one body from its offset in the buffer, reading absolute positions so bodies can decode concurrently
+        private final class Decoder {
+            private final int[] m_position;
+
+            // the pending nodes: tag, the count read with it (statements, else-ifs, arguments), children done and
+            // expected, where their values start on the value stack, and the strings read with it
+            private int[] m_tags = new int[64];
+            private int[] m_counts = new int[64];
+            private int[] m_childIndex = new int[64];
+            private int[] m_childCounts = new int[64];
+            private int[] m_valueBases = new int[64];
+            private String[] m_firstStrings = new String[64];
+            private String[] m_secondStrings = new String[64];
+            private int m_depth;
+            private Object[] m_values = new Object[64];
+            private int m_valueCount;
+
+            Decoder(int start) {
+                this.m_position = new int[] {start};
+            }
+
+            private int tag() {
+                return m_buffer.get(m_position[0]++);
+            }
+
+            private int varInt() {
+                return Reader.this.varInt(m_position);
+            }
+
+            private String string() {
+                return Reader.this.string(m_position);
+            }
+
+            // decodes the body with an explicit stack instead of recursion. a node with children becomes a pending
+            // entry that counts its children as they complete, the completed ones wait on a value stack, and once
+            // the last one is in the node is built from them and handed to the entry below
+            ParseTree.BlockNode block() {
+                Object value = node(BLOCK_SLOT);
+                while (true) {
+                    if (value != PENDING) {
+                        if (m_depth == 0) {
+                            return (ParseTree.BlockNode) value;
+                        }
+                        pushValue(value);
+                        int top = m_depth - 1;
+                        if (++m_childIndex[top] == m_childCounts[top]) {
+                            m_depth--;
+                            value = build(top);
+                            continue;
+                        }
+                    }
+                    int top = m_depth - 1;
+                    value = node(slot(m_tags[top], m_childIndex[top], m_counts[top]));
+                }
+            }
+
+            // reads one node's tag and own fields. a node without children is returned built, one with children is
+            // pushed and PENDING returned
+            private Object node(byte slot) {
+                int tag = tag();
+                if (tag == NONE) {
+                    return null;
+                }
+                if (!fits(slot, tag)) {
+                    if (slot == BLOCK_SLOT) {
+                        expectTag(tag, BLOCK);
+                    }
+                    throw new RuntimeException("Malformed Stof parse tree: unexpected tag " + tag + " for "
+                            + (slot == STATEMENT_SLOT ? "a statement" : "an expression"));
+                }
+                switch (tag) {
+                    case VARIABLE -> {
+                        return new ParseTree.VariableNode(string());
+                    }
+                    case INT_LITERAL -> {
+                        int zigzag = varInt();
+                        return new ParseTree.IntLiteralNode((zigzag >>> 1) ^ -(zigzag & 1));
+                    }
+                    case TRUE -> {
+                        return new ParseTree.BooleanLiteralNode(true);
+                    }
+                    case FALSE -> {
+                        return new ParseTree.BooleanLiteralNode(false);
+                    }
+                    default -> {}
+                }
+
+                String first = null;
+                String second = null;
+                int count = 0;
+                switch (tag) {
+                    case BLOCK, IF -> count = varInt();
+                    case VARIABLE_DECLARATION -> {
+                        first = string();
+                        second = string();
+                    }
+                    case VARIABLE_ASSIGNMENT, BINARY_OPERATOR, PREFIX_OPERATOR, POSTFIX_OPERATOR, ASSIGNMENT_EXPRESSION -> first = string();
+                    case FUNCTION_CALL -> {
+                        first = string();
+                        count = varInt();
+                    }
+                    default -> {}
+                }
+                int children = switch (tag) {
+                    case BLOCK, FUNCTION_CALL -> count;
+                    case IF -> 3 + 2 * count;
+                    case FOR -> 4;
+                    case WHILE, BINARY_OPERATOR -> 2;
+                    default -> 1;
+                };
+
+                if (m_depth == m_tags.length) {
+                    int length = m_depth * 2;
+                    m_tags = Arrays.copyOf(m_tags, length);
+                    m_counts = Arrays.copyOf(m_counts, length);
+                    m_childIndex = Arrays.copyOf(m_childIndex, length);
+                    m_childCounts = Arrays.copyOf(m_childCounts, length);
+                    m_valueBases = Arrays.copyOf(m_valueBases, length);
+                    m_firstStrings = Arrays.copyOf(m_firstStrings, length);
+                    m_secondStrings = Arrays.copyOf(m_secondStrings, length);
+                }
+                int entry = m_depth++;
+                m_tags[entry] = tag;
+                m_counts[entry] = count;
+                m_childIndex[entry] = 0;
+                m_childCounts[entry] = children;
+                m_valueBases[entry] = m_valueCount;
+                m_firstStrings[entry] = first;
+                m_secondStrings[entry] = second;
+                if (children == 0) {
+                    m_depth--;
+                    return build(entry);
+                }
+                return PENDING;
+            }
+
+            // what the child at index of a node with tag is read as
+            private static byte slot(int tag, int index, int count) {
+                return switch (tag) {
+                    case BLOCK -> STATEMENT_SLOT;
+                    case IF -> index % 2 == 0 && index < 2 + 2 * count ? EXPRESSION_SLOT : BLOCK_SLOT;
+                    case FOR -> index == 0 ? STATEMENT_SLOT : index == 3 ? BLOCK_SLOT : EXPRESSION_SLOT;
+                    case WHILE -> index == 0 ? EXPRESSION_SLOT : BLOCK_SLOT;
+                    default -> EXPRESSION_SLOT;
+                };
+            }
+
+            private static boolean fits(byte slot, int tag) {
+                return switch (slot) {
+                    case BLOCK_SLOT -> tag == BLOCK;
+                    case STATEMENT_SLOT -> tag >= VARIABLE_DECLARATION && tag <= EXPRESSION_STATEMENT;
+                    default -> tag >= VARIABLE && tag <= ASSIGNMENT_EXPRESSION;
+                };
+            }
+
+            private void pushValue(Object value) {
+                if (m_valueCount == m_values.length) {
+                    m_values = Arrays.copyOf(m_values, m_valueCount * 2);
+                }
+                m_values[m_valueCount++] = value;
+            }
+
+            // builds the node of the popped entry from its children on the value stack, and takes them off
+            private Object build(int entry) {
+                int base = m_valueBases[entry];
+                Object[] v = m_values;
+                String first = m_firstStrings[entry];
+                Object node = switch (m_tags[entry]) {
+                    case BLOCK -> {
+                        ParseTree.StatementNode[] statements = new ParseTree.StatementNode[m_childCounts[entry]];
+                        for (int i = 0; i < statements.length; i++) {
+                            statements[i] = (ParseTree.StatementNode) v[base + i];
+                        }
+                        yield new ParseTree.BlockNode(List.of(statements));
+                    }
+                    case VARIABLE_DECLARATION -> new ParseTree.VariableDeclarationNode(first, m_secondStrings[entry], (ParseTree.ExpressionNode) v[base]);
+                    case VARIABLE_ASSIGNMENT -> new ParseTree.VariableAssignmentNode(first, (ParseTree.ExpressionNode) v[base]);
+                    case IF -> {
+                        ParseTree.ElseIfNode[] elseIfs = new ParseTree.ElseIfNode[m_counts[entry]];
+                        for (int i = 0; i < elseIfs.length; i++) {
+                            elseIfs[i] = new ParseTree.ElseIfNode((ParseTree.ExpressionNode) v[base + 2 + 2 * i], (ParseTree.BlockNode) v[base + 3 + 2 * i]);
+                        }
+                        yield new ParseTree.IfNode((ParseTree.ExpressionNode) v[base], (ParseTree.BlockNode) v[base + 1], List.of(elseIfs),
+                                (ParseTree.BlockNode) v[base + 2 + 2 * elseIfs.length]);
+                    }
+                    case FOR -> new ParseTree.ForNode((ParseTree.StatementNode) v[base], (ParseTree.ExpressionNode) v[base + 1],
+                            (ParseTree.ExpressionNode) v[base + 2], (ParseTree.BlockNode) v[base + 3]);
+                    case WHILE -> new ParseTree.WhileNode((ParseTree.ExpressionNode) v[base], (ParseTree.BlockNode) v[base + 1]);
+                    case RETURN -> new ParseTree.ReturnNode((ParseTree.ExpressionNode) v[base]);
+                    case EXIT -> new ParseTree.ExitNode((ParseTree.ExpressionNode) v[base]);
+                    case EXPRESSION_STATEMENT -> new ParseTree.ExpressionStatementNode((ParseTree.ExpressionNode) v[base]);
+                    case BINARY_OPERATOR -> new ParseTree.BinaryOperatorNode((ParseTree.ExpressionNode) v[base], first, (ParseTree.ExpressionNode) v[base + 1]);
+                    case PREFIX_OPERATOR, POSTFIX_OPERATOR -> new ParseTree.UnaryOperatorNode(first, (ParseTree.ExpressionNode) v[base], m_tags[entry] == POSTFIX_OPERATOR);
+                    case FUNCTION_CALL -> {
+                        ParseTree.ExpressionNode[] arguments = new ParseTree.ExpressionNode[m_childCounts[entry]];
+                        for (int i = 0; i < arguments.length; i++) {
+                            arguments[i] = (ParseTree.ExpressionNode) v[base + i];
+                        }
+                        yield new ParseTree.FunctionCallNode(first, List.of(arguments));
+                    }
+                    default -> new ParseTree.AssignmentExpressionNode(first, (ParseTree.ExpressionNode) v[base]);
+                };
+                Arrays.fill(v, base, m_valueCount, null);
+                m_valueCount = base;
+                m_firstStrings[entry] = null;
+                m_secondStrings[entry] = null;
+                return node;
+            }
+
+            private void expectTag(int tag, int expected) {
+                if (tag != expected) {
+                    throw new RuntimeException("Malformed Stof parse tree: expected tag " + expected + ", found " + tag);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,496 @@
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+// writes a parse tree out as the indented text dump, or as json for tools. the tree is walked with an explicit
+// stack instead of recursion, so a program nested thousands of levels deep dumps like any other, and the output
+// goes through one large char buffer that is handed to the writer in big chunks. indentation is copied out of a
+// table of spaces instead of being built per line.
+//
+// a node is dumped by writing the lines that come before its first child straight away, then pushing what follows
+// (children, and the labels or json punctuation between them) onto the stack in reverse, so it pops in order
+public final class ParseTreeDumper {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // what a stack entry holds
+    private static final byte BLOCK = 0;
+    private static final byte STATEMENT = 1;
+    private static final byte EXPRESSION = 2;
+    private static final byte TEXT = 3; // a label line in text, a piece of punctuation in json
+
+    private final Writer m_out;
+    private final boolean m_json;
+    private final char[] m_buffer = new char[BUFFER_SIZE];
+    private int m_length;
+    private char[] m_spaces = new char[256];
+
+    private Object[] m_nodes = new Object[64];
+    private int[] m_indents = new int[64];
+    private byte[] m_kinds = new byte[64];
+    private int m_depth;
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    private ParseTreeDumper(Writer out, boolean json) {
+        this.m_out = out;
+        this.m_json = json;
+        Arrays.fill(m_spaces, ' ');
+    }
+
+    public enum Format {
+        TEXT, JSON
+    }
+
+    public static void dump(ParseTree.ProgramNode program, Path outputPath, Format format) throws IOException {
+        try (Writer out = new OutputStreamWriter(Files.newOutputStream(outputPath), StandardCharsets.UTF_8)) {
+            dump(program, out, format);
+        }
+    }
+
+    // writes the whole dump to out and flushes it, out is left open
+    public static void dump(ParseTree.ProgramNode program, Writer out, Format format) throws IOException {
+        ParseTreeDumper dumper = new ParseTreeDumper(out, format == Format.JSON);
+        if (dumper.m_json) {
+            dumper.json(program);
+        } else {
+            dumper.text(program);
+        }
+        dumper.flush();
+        out.flush();
+    }
+
+    //////////////
+    /// BUFFER ///
+    //////////////
+    private void write(String text) throws IOException {
+        int length = text.length();
+        if (m_length + length > m_buffer.length) {
+            flush();
+            if (length > m_buffer.length) {
+                m_out.write(text);
+                return;
+            }
+        }
+        text.getChars(0, length, m_buffer, m_length);
+        m_length += length;
+    }
+
+    private void write(char c) throws IOException {
+        if (m_length == m_buffer.length) {
+            flush();
+        }
+        m_buffer[m_length++] = c;
+    }
+
+    private void indent(int level) throws IOException {
+        int count = level * 2;
+        if (count > m_spaces.length) {
+            m_spaces = new char[Math.max(count, m_spaces.length * 2)];
+            Arrays.fill(m_spaces, ' ');
+        }
+        if (m_length + count > m_buffer.length) {
+            flush();
+            if (count > m_buffer.length) {
+                m_out.write(m_spaces, 0, count);
+                return;
+            }
+        }
+        System.arraycopy(m_spaces, 0, m_buffer, m_length, count);
+        m_length += count;
+    }
+
+    private void flush() throws IOException {
+        m_out.write(m_buffer, 0, m_length);
+        m_length = 0;
+    }
+
+    /////////////
+    /// STACK ///
+    /////////////
+    private void push(byte kind, Object node, int indent) {
+        if (m_depth == m_nodes.length) {
+            m_nodes = Arrays.copyOf(m_nodes, m_depth * 2);
+            m_indents = Arrays.copyOf(m_indents, m_depth * 2);
+            m_kinds = Arrays.copyOf(m_kinds, m_depth * 2);
+        }
+        m_nodes[m_depth] = node;
+        m_indents[m_depth] = indent;
+        m_kinds[m_depth] = kind;
+        m_depth++;
+    }
+
+    private void pushText(String text, int indent) {
+        push(TEXT, text, indent);
+    }
+
+    // pops and dumps entries until the stack is empty
+    private void drain() throws IOException {
+        while (m_depth > 0) {
+            m_depth--;
+            Object node = m_nodes[m_depth];
+            int indent = m_indents[m_depth];
+            m_nodes[m_depth] = null;
+            switch (m_kinds[m_depth]) {
+                case BLOCK -> {
+                    if (m_json) {
+                        jsonBlock((ParseTree.BlockNode) node);
+                    } else {
+                        textBlock((ParseTree.BlockNode) node, indent);
+                    }
+                }
+                case STATEMENT -> {
+                    if (m_json) {
+                        jsonStatement((ParseTree.StatementNode) node);
+                    } else {
+                        textStatement((ParseTree.StatementNode) node, indent);
+                    }
+                }
+                case EXPRESSION -> {
+                    if (m_json) {
+                        jsonExpression((ParseTree.ExpressionNode) node);
+                    } else {
+                        textExpression((ParseTree.ExpressionNode) node, indent);
+                    }
+                }
+                default -> {
+                    if (m_json) {
+                        write((String) node);
+                    } else {
+                        line(indent, (String) node);
+                    }
+                }
+            }
+        }
+    }
+
+    ////////////
+    /// TEXT ///
+    ////////////
+    private void line(int indent, String text) throws IOException {
+        indent(indent);
+        write(text);
+        write('\n');
+    }
+
+    private void text(ParseTree.ProgramNode program) throws IOException {
+        line(0, "Program");
+        for (ParseTree.ClassNode classNode : program.classes()) {
+            line(1, "Class: " + classNode.name());
+            for (ParseTree.FunctionNode function : classNode.functions()) {
+                line(2, "Function: " + function.returnType() + " " + function.name() + "()");
+                line(3, "Parameters:");
+                for (ParseTree.ParameterNode param : function.parameters()) {
+                    line(4, "- " + param.type() + " " + param.name());
+                }
+                line(3, "Body:");
+                push(BLOCK, function.body(), 4);
+                drain();
+            }
+        }
+    }
+
+    private void textBlock(ParseTree.BlockNode block, int indent) {
+        List<ParseTree.StatementNode> statements = block.statements();
+        for (int i = statements.size() - 1; i >= 0; i--) {
+            push(STATEMENT, statements.get(i), indent + 1);
+            pushText("- " + statements.get(i).getClass().getSimpleName(), indent);
+        }
+    }
+
+    private void textStatement(ParseTree.StatementNode statement, int indent) throws IOException {
+        switch (statement) {
+            case ParseTree.VariableDeclarationNode(String type, String name, ParseTree.ExpressionNode initializer) -> {
+                line(indent, "Type: " + type);
+                line(indent, "Name: " + name);
+                if (initializer != null) {
+                    line(indent, "Initializer:");
+                    push(EXPRESSION, initializer, indent + 1);
+                }
+            }
+            case ParseTree.ReturnNode(ParseTree.ExpressionNode value) -> {
+                if (value != null) {
+                    line(indent, "Value:");
+                    push(EXPRESSION, value, indent + 1);
+                }
+            }
+            case ParseTree.IfNode ifNode -> {
+                line(indent, "Condition:");
+                if (ifNode.elseBlock() != null) {
+                    push(BLOCK, ifNode.elseBlock(), indent + 1);
+                    pushText("Else:", indent);
+                }
+                for (int i = ifNode.elseIfClauses().size() - 1; i >= 0; i--) {
+                    ParseTree.ElseIfNode elseIf = ifNode.elseIfClauses().get(i);
+                    push(BLOCK, elseIf.block(), indent + 1);
+                    push(EXPRESSION, elseIf.condition(), indent + 1);
+                    pushText("Elif:", indent);
+                }
+                push(BLOCK, ifNode.thenBlock(), indent + 1);
+                pushText("Then:", indent);
+                push(EXPRESSION, ifNode.condition(), indent + 1);
+            }
+            case ParseTree.ForNode forNode -> {
+                line(indent, "Init:");
+                push(BLOCK, forNode.body(), indent + 1);
+                pushText("Body:", indent);
+                if (forNode.increment() != null) {
+                    push(EXPRESSION, forNode.increment(), indent + 1);
+                }
+                pushText("Increment:", indent);
+                if (forNode.condition() != null) {
+                    push(EXPRESSION, forNode.condition(), indent + 1);
+                }
+                pushText("Condition:", indent);
+                if (forNode.initialization() != null) {
+                    push(STATEMENT, forNode.initialization(), indent + 1);
+                }
+            }
+            case ParseTree.WhileNode(ParseTree.ExpressionNode condition, ParseTree.BlockNode body) -> {
+                line(indent, "Condition:");
+                push(BLOCK, body, indent + 1);
+                pushText("Body:", indent);
+                push(EXPRESSION, condition, indent + 1);
+            }
+            case ParseTree.ExpressionStatementNode(ParseTree.ExpressionNode expression) -> push(EXPRESSION, expression, indent);
+            case ParseTree.VariableAssignmentNode ignored -> {} // only the statement's name line, like exit
+            case ParseTree.ExitNode ignored -> {}
+        }
+    }
+
+    private void textExpression(ParseTree.ExpressionNode expression, int indent) throws IOException {
+        switch (expression) {
+            case ParseTree.IntLiteralNode(int value) -> line(indent, "IntLiteral: " + value);
+            case ParseTree.BooleanLiteralNode(boolean value) -> line(indent, "BooleanLiteral: " + value);
+            case ParseTree.VariableNode(String name) -> line(indent, "Variable: " + name);
+            case ParseTree.AssignmentExpressionNode(String variableName, ParseTree.ExpressionNode value) -> {
+                line(indent, "Assignment: " + variableName);
+                line(indent + 1, "Value:");
+                push(EXPRESSION, value, indent + 2);
+            }
+            case ParseTree.FunctionCallNode(String functionName, List<ParseTree.ExpressionNode> arguments) -> {
+                line(indent, "FunctionCall: " + functionName + "()");
+                if (!arguments.isEmpty()) {
+                    line(indent + 1, "Arguments:");
+                    for (int i = arguments.size() - 1; i >= 0; i--) {
+                        push(EXPRESSION, arguments.get(i), indent + 2);
+                    }
+                }
+            }
+            case ParseTree.BinaryOperatorNode(ParseTree.ExpressionNode left, String operator, ParseTree.ExpressionNode right) -> {
+                line(indent, "BinaryOperator: " + operator);
+                line(indent + 1, "Left:");
+                push(EXPRESSION, right, indent + 2);
+                pushText("Right:", indent + 1);
+                push(EXPRESSION, left, indent + 2);
+            }
+            case ParseTree.UnaryOperatorNode(String operator, ParseTree.ExpressionNode operand, boolean isPostfix) -> {
+                line(indent, "UnaryOperator: " + operator + (isPostfix ? " (postfix)" : " (prefix)"));
+                push(EXPRESSION, operand, indent + 1);
+            }
+        }
+    }
+
+    ////////////
+    /// JSON ///
+    ////////////
+    // one object per node with a "node" field naming its kind, absent children are null
+    private void json(ParseTree.ProgramNode program) throws IOException {
+        write("{\"node\":\"Program\",\"classes\":[");
+        for (int c = 0; c < program.classes().size(); c++) {
+            ParseTree.ClassNode classNode = program.classes().get(c);
+            write(c > 0 ? ",{\"node\":\"Class\",\"name\":" : "{\"node\":\"Class\",\"name\":");
+            string(classNode.name());
+            write(",\"functions\":[");
+            for (int f = 0; f < classNode.functions().size(); f++) {
+                ParseTree.FunctionNode function = classNode.functions().get(f);
+                write(f > 0 ? ",{\"node\":\"Function\",\"returnType\":" : "{\"node\":\"Function\",\"returnType\":");
+                string(function.returnType());
+                write(",\"name\":");
+                string(function.name());
+                write(",\"parameters\":[");
+                for (int p = 0; p < function.parameters().size(); p++) {
+                    ParseTree.ParameterNode parameter = function.parameters().get(p);
+                    write(p > 0 ? ",{\"type\":" : "{\"type\":");
+                    string(parameter.type());
+                    write(",\"name\":");
+                    string(parameter.name());
+                    write('}');
+                }
+                write("],\"body\":");
+                push(BLOCK, function.body(), 0);
+                drain();
+                write('}');
+            }
+            write("]}");
+        }
+        write("]}\n");
+    }
+
+    private void jsonBlock(ParseTree.BlockNode block) throws IOException {
+        if (block == null) {
+            write("null");
+            return;
+        }
+        write('[');
+        pushText("]", 0);
+        List<ParseTree.StatementNode> statements = block.statements();
+        for (int i = statements.size() - 1; i >= 0; i--) {
+            push(STATEMENT, statements.get(i), 0);
+            if (i > 0) {
+                pushText(",", 0);
+            }
+        }
+    }
+
+    private void jsonStatement(ParseTree.StatementNode statement) throws IOException {
+        switch (statement) {
+            case null -> write("null");
+            case ParseTree.VariableDeclarationNode declaration -> {
+                write("{\"node\":\"VariableDeclaration\",\"type\":");
+                string(declaration.type());
+                write(",\"name\":");
+                string(declaration.name());
+                write(",\"initializer\":");
+                pushText("}", 0);
+                push(EXPRESSION, declaration.initializer(), 0);
+            }
+            case ParseTree.VariableAssignmentNode assignment -> {
+                write("{\"node\":\"VariableAssignment\",\"name\":");
+                string(assignment.name());
+                write(",\"value\":");
+                pushText("}", 0);
+                push(EXPRESSION, assignment.value(), 0);
+            }
+            case ParseTree.IfNode ifNode -> {
+                write("{\"node\":\"If\",\"condition\":");
+                pushText("}", 0);
+                push(BLOCK, ifNode.elseBlock(), 0);
+                pushText("],\"else\":", 0);
+                for (int i = ifNode.elseIfClauses().size() - 1; i >= 0; i--) {
+                    ParseTree.ElseIfNode elseIf = ifNode.elseIfClauses().get(i);
+                    pushText("}", 0);
+                    push(BLOCK, elseIf.block(), 0);
+                    pushText(",\"block\":", 0);
+                    push(EXPRESSION, elseIf.condition(), 0);
+                    pushText(i > 0 ? ",{\"condition\":" : "{\"condition\":", 0);
+                }
+                pushText(",\"elseIfs\":[", 0);
+                push(BLOCK, ifNode.thenBlock(), 0);
+                pushText(",\"then\":", 0);
+                push(EXPRESSION, ifNode.condition(), 0);
+            }
+            case ParseTree.ForNode forNode -> {
+                write("{\"node\":\"For\",\"initialization\":");
+                pushText("}", 0);
+                push(BLOCK, forNode.body(), 0);
+                pushText(",\"body\":", 0);
+                push(EXPRESSION, forNode.increment(), 0);
+                pushText(",\"increment\":", 0);
+                push(EXPRESSION, forNode.condition(), 0);
+                pushText(",\"condition\":", 0);
+                push(STATEMENT, forNode.initialization(), 0);
+            }
+            case ParseTree.WhileNode whileNode -> {
+                write("{\"node\":\"While\",\"condition\":");
+                pushText("}", 0);
+                push(BLOCK, whileNode.body(), 0);
+                pushText(",\"body\":", 0);
+                push(EXPRESSION, whileNode.condition(), 0);
+            }
+            case ParseTree.ReturnNode returnNode -> {
+                write("{\"node\":\"Return\",\"value\":");
+                pushText("}", 0);
+                push(EXPRESSION, returnNode.value(), 0);
+            }
+            case ParseTree.ExitNode exitNode -> {
+                write("{\"node\":\"Exit\",\"exitCode\":");
+                pushText("}", 0);
+                push(EXPRESSION, exitNode.exitCode(), 0);
+            }
+            case ParseTree.ExpressionStatementNode expressionStatement -> {
+                write("{\"node\":\"ExpressionStatement\",\"expression\":");
+                pushText("}", 0);
+                push(EXPRESSION, expressionStatement.expression(), 0);
+            }
+        }
+    }
+
+    private void jsonExpression(ParseTree.ExpressionNode expression) throws IOException {
+        switch (expression) {
+            case null -> write("null");
+            case ParseTree.IntLiteralNode literal -> {
+                write("{\"node\":\"IntLiteral\",\"value\":");
+                write(Integer.toString(literal.value()));
+                write('}');
+            }
+            case ParseTree.BooleanLiteralNode literal -> write(literal.value()
+                    ? "{\"node\":\"BooleanLiteral\",\"value\":true}" : "{\"node\":\"BooleanLiteral\",\"value\":false}");
+            case ParseTree.VariableNode variable -> {
+                write("{\"node\":\"Variable\",\"name\":");
+                string(variable.name());
+                write('}');
+            }
+            case ParseTree.AssignmentExpressionNode assignment -> {
+                write("{\"node\":\"Assignment\",\"name\":");
+                string(assignment.variableName());
+                write(",\"value\":");
+                pushText("}", 0);
+                push(EXPRESSION, assignment.value(), 0);
+            }
+            case ParseTree.FunctionCallNode call -> {
+                write("{\"node\":\"FunctionCall\",\"name\":");
+                string(call.functionName());
+                write(",\"arguments\":[");
+                pushText("]}", 0);
+                for (int i = call.arguments().size() - 1; i >= 0; i--) {
+                    push(EXPRESSION, call.arguments().get(i), 0);
+                    if (i > 0) {
+                        pushText(",", 0);
+                    }
+                }
+            }
+            case ParseTree.BinaryOperatorNode binary -> {
+                write("{\"node\":\"BinaryOperator\",\"operator\":");
+                string(binary.operator());
+                write(",\"left\":");
+                pushText("}", 0);
+                push(EXPRESSION, binary.right(), 0);
+                pushText(",\"right\":", 0);
+                push(EXPRESSION, binary.left(), 0);
+            }
+            case ParseTree.UnaryOperatorNode unary -> {
+                write("{\"node\":\"UnaryOperator\",\"operator\":");
+                string(unary.operator());
+                write(unary.isPostfix() ? ",\"postfix\":true,\"operand\":" : ",\"postfix\":false,\"operand\":");
+                pushText("}", 0);
+                push(EXPRESSION, unary.operand(), 0);
+            }
+        }
+    }
+
+    // a json string literal. names are plain ascii, but anything else is escaped properly all the same
+    private void string(String value) throws IOException {
+        write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                write('\\');
+                write(c);
+            } else if (c < 0x20) {
+                write(String.format("\\u%04x", (int) c));
+            } else {
+                write(c);
+            }
+        }
+        write('"');
+    }
+}
@@ -1,63 +1,266 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Vector;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.file.Path;
 
 public class Parser {
-    private final Vector<Tokenizer.Token> tokens;
-    private int position;
+    // the binding precedence of every binary operator by TokenType ordinal, 0 for tokens that can't continue an
+    // expression. the operator stack stores these for binary operators and the negative kinds below for the rest
+    private static final int[] PRECEDENCE = new int[Tokenizer.TokenType.values().length];
+    private static final int ASSIGNMENT = 1;
+    private static final int PREFIX = -1;
+    private static final int PARENTHESIS = -2;
+    private static final int CALL = -3; // its arguments are the operands above its base
+
+    // the text of every operator by TokenType ordinal, so operator nodes share one String instead of cutting it out
+    // of the source each time
+    private static final String[] OPERATORS = new String[Tokenizer.TokenType.values().length];
+
+    private static final int INCREMENT = Tokenizer.TokenType.STOF_INCREMENT.ordinal();
+    private static final int DECREMENT = Tokenizer.TokenType.STOF_DECREMENT.ordinal();
+    private static final int INT_LITERAL = Tokenizer.TokenType.STOF_INT_LITERAL.ordinal();
+    private static final int BOOLEAN_LITERAL = Tokenizer.TokenType.STOF_BOOLEAN_LITERAL.ordinal();
+    private static final int IDENTIFIER = Tokenizer.TokenType.STOF_IDENTIFIER.ordinal();
+    private static final int OPEN_PARENTHESIS = Tokenizer.TokenType.STOF_OPEN_PARENTHESIS.ordinal();
+    private static final int CLOSE_PARENTHESIS = Tokenizer.TokenType.STOF_CLOSE_PARENTHESIS.ordinal();
+    private static final int COMMA = Tokenizer.TokenType.STOF_COMMA.ordinal();
+
+    static {
+        operator(Tokenizer.TokenType.STOF_EQUALS, "=", ASSIGNMENT);
+        operator(Tokenizer.TokenType.STOF_GREATER_THAN, ">", 2);
+        operator(Tokenizer.TokenType.STOF_LESS_THAN, "<", 2);
+        operator(Tokenizer.TokenType.STOF_GREATER_THAN_OR_EQUAL, ">=", 2);
+        operator(Tokenizer.TokenType.STOF_LESS_THAN_OR_EQUAL, "<=", 2);
+        operator(Tokenizer.TokenType.STOF_PLUS, "+", 3);
+        operator(Tokenizer.TokenType.STOF_MINUS, "-", 3);
+        operator(Tokenizer.TokenType.STOF_MULTIPLY, "*", 4);
+        operator(Tokenizer.TokenType.STOF_DIVIDE, "/", 4);
+        operator(Tokenizer.TokenType.STOF_MODULO, "%", 4);
+        operator(Tokenizer.TokenType.STOF_INCREMENT, "++", 0);
+        operator(Tokenizer.TokenType.STOF_DECREMENT, "--", 0);
+    }
 
-    public Parser(Vector<Tokenizer.Token> tokens) {
+    private static void operator(Tokenizer.TokenType type, String text, int precedence) {
+        OPERATORS[type.ordinal()] = text;
+        PRECEDENCE[type.ordinal()] = precedence;
+    }
+
+    // thrown to unwind from a syntax error to the nearest statement, function or class that can skip past it. one
+    // shared instance without a stack trace, so a file with hundreds of errors doesn't build hundreds of exceptions
+    private static final Recover RECOVER = new Recover();
+
+    private final TokenStream tokens;
+    private int position;
+    private final List<SyntaxError> errors = new ArrayList<>();
+    private int nodeCount;
+    private LineMap lines; // built for the first error, turns offsets into lines and columns
+    private TreeBuilder tree; // what the current parse builds, ParseTree records or a FlatTree
+
+    // parseExpression's operator stack, kept between expressions so it only grows once per parser. the operands are
+    // the nodes on top of the tree builder's stack
+    private int[] operatorKinds = new int[16];
+    private int[] operatorTokens = new int[16];
+    private int[] operatorBases = new int[16];
+    private int operatorCount;
+
+    public Parser(TokenStream tokens) {
         this.tokens = tokens;
         this.position = 0;
     }
 
+    public Parser(Vector<Tokenizer.Token> tokens) {
+        this(TokenStream.fromTokens(tokens));
+    }
+
+    // a syntax error at a char offset into the token stream's source
+    public record SyntaxError(int offset, int line, int column, String message) {
+        @Override
+        public String toString() {
+            return line + ":" + column + ": " + message;
+        }
+    }
+
+    @SuppressWarnings("serial") // control flow only, never serialized
+    private static final class Recover extends RuntimeException {
+        Recover() {
+            super(null, null, false, false);
+        }
+    }
+
+    // what the parser builds its tree with. nodes are built bottom up: every method pops the node's children off the
+    // builder's stack, where they were pushed in source order, and pushes the node in their place. a method that
+    // takes a token reads the node's name, type or operator from it. after a syntax error the parser truncates the
+    // stack back to where the broken statement, function or class started
+    interface TreeBuilder {
+        int depth();
+
+        void truncate(int depth);
+
+        void program(int classCount);
+
+        void classDeclaration(int nameToken, int functionCount);
+
+        void function(int returnTypeToken, int nameToken, int parameterCount); // the parameters, then the body
+
+        void parameter(int typeToken, int nameToken);
+
+        void block(int statementCount);
+
+        void variableDeclaration(int typeToken, int nameToken, boolean initialized);
+
+        void ifStatement(int elseIfCount, boolean hasElse); // condition, then block, else-ifs, else block
+
+        void elseIf(); // condition, block
+
+        void forStatement(boolean hasInitialization, boolean hasCondition, boolean hasIncrement); // the parts, then body
+
+        void whileStatement();
+
+        void returnStatement(boolean hasValue);
+
+        void expressionStatement();
+
+        void intLiteral(int token);
+
+        void booleanLiteral(int token);
+
+        void variable(int token);
+
+        void call(int nameToken, int argumentCount);
+
+        void unary(int operatorToken, boolean postfix);
+
+        void binary(int operatorToken);
+
+        // combines the two operands on top into an assignment when the left one is a variable. otherwise it drops
+        // the left one, keeps the assigned value and returns false
+        boolean assignment();
+
+        void startsAt(int token); // the function or statement on top starts at token
+    }
+
+    // the text of a binary or unary operator by its TokenType ordinal
+    static String operatorText(int typeOrdinal) {
+        return OPERATORS[typeOrdinal];
+    }
+
     ////////////////////////////
     /// Main Parsing Methods ///
     ////////////////////////////
 
+    // parses the whole stream. syntax errors don't stop the parse, they are collected in errors() and the statement,
+    // function or class they occur in is left out of the returned tree
     public ParseTree.ProgramNode parse() {
-        Vector<ParseTree.ClassNode> classes = new Vector<>();
+        return parse(null);
+    }
+
+    // like parse(), and the offset every function and statement starts at is kept in positions when it isn't null
+    public ParseTree.ProgramNode parse(SourcePositions positions) {
+        RecordBuilder records = new RecordBuilder(tokens, positions);
+        tree = records;
+        parseProgram();
+        nodeCount = records.nodeCount;
+        return (ParseTree.ProgramNode) records.pop();
+    }
+
+    // parses the whole stream into a FlatTree instead of ParseTree records, with the same recovery
+    public FlatTree parseFlat() {
+        FlatTree.Builder flat = new FlatTree.Builder(tokens);
+        tree = flat;
+        parseProgram();
+        return flat.build();
+    }
+
+    // parses a token stream that holds exactly one function definition, used to re-parse a single edited
+    // function without touching the rest of the file. null when it has syntax errors
+    public ParseTree.FunctionNode parseSingleFunction() {
+        RecordBuilder records = new RecordBuilder(tokens, null);
+        tree = records;
+        try {
+            parseFunction();
+            if (position != tokens.size()) {
+                throw error("Expected end of function");
+            }
+            // blocks recover on their own, so check for errors they hid
+            return errors.isEmpty() ? (ParseTree.FunctionNode) records.pop() : null;
+        } catch (Recover e) {
+            return null;
+        }
+    }
+
+    public List<SyntaxError> errors() {
+        return errors;
+    }
+
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+
+    // the nodes the last parse() built, counting those error recovery threw away again
+    public int nodeCount() {
+        return nodeCount;
+    }
 
+    private void parseProgram() {
+        int base = tree.depth();
         while (position < tokens.size()) {
             if (match(Tokenizer.TokenType.STOF_CLASS)) {
-                classes.add(parseClass());
+                int depth = tree.depth();
+                try {
+                    parseClass();
+                } catch (Recover e) {
+                    tree.truncate(depth);
+                    synchronize();
+                }
             } else {
                 position++;
             }
         }
 
-        return new ParseTree.ProgramNode(classes);
+        tree.program(tree.depth() - base);
     }
 
-    private ParseTree.ClassNode parseClass() {
+    private void parseClass() {
         expect(Tokenizer.TokenType.STOF_CLASS, "Expected 'class' keyword");
-        Tokenizer.Token className = expect(Tokenizer.TokenType.STOF_IDENTIFIER, "Expected class name");
+        int className = expect(Tokenizer.TokenType.STOF_IDENTIFIER, "Expected class name");
         expect(Tokenizer.TokenType.STOF_OPEN_CURLY_BRACKET, "Expected '{' after class name");
 
-        Vector<ParseTree.FunctionNode> functions = new Vector<>();
-        while (!match(Tokenizer.TokenType.STOF_CLOSE_CURLY_BRACKET)) {
-            functions.add(parseFunction());
+        int base = tree.depth();
+        while (!match(Tokenizer.TokenType.STOF_CLOSE_CURLY_BRACKET) && position < tokens.size()) {
+            int depth = tree.depth();
+            try {
+                parseFunction();
+            } catch (Recover e) {
+                tree.truncate(depth);
+                synchronize();
+            }
         }
 
-        expect(Tokenizer.TokenType.STOF_CLOSE_CURLY_BRACKET, "Expected '}' after class body");
+        // the functions that did parse are kept even when the class is never closed
+        if (match(Tokenizer.TokenType.STOF_CLOSE_CURLY_BRACKET)) {
+            position++;
+        } else {
+            missing("Expected '}' after class body");
+        }
 
-        return new ParseTree.ClassNode(className.value(), functions);
+        tree.classDeclaration(className, tree.depth() - base);
     }
 
-    private ParseTree.FunctionNode parseFunction() {
-        Tokenizer.Token returnType = consume();
-        String returnTypeString = returnType.type().toString();
+    private void parseFunction() {
+        int returnType = consume();
 
-        Tokenizer.Token functionName = expect(Tokenizer.TokenType.STOF_IDENTIFIER, "Expected function name");
+        int functionName = expect(Tokenizer.TokenType.STOF_IDENTIFIER, "Expected function name");
         expect(Tokenizer.TokenType.STOF_OPEN_PARENTHESIS, "Expected '(' after function name");
 
-        Vector<ParseTree.ParameterNode> parameters = new Vector<>();
+        int parameters = 0;
         if (!match(Tokenizer.TokenType.STOF_CLOSE_PARENTHESIS)) {
             do {
-                Tokenizer.Token parameterType = consume();
-                Tokenizer.Token parameterName = expect(Tokenizer.TokenType.STOF_IDENTIFIER, "Expected parameter name");
-                parameters.add(new ParseTree.ParameterNode(parameterType.type().toString(), parameterName.value()));
+                int parameterType = consume();
+                int parameterName = expect(Tokenizer.TokenType.STOF_IDENTIFIER, "Expected parameter name");
+                tree.parameter(parameterType, parameterName);
+                parameters++;
 
                 if (match(Tokenizer.TokenType.STOF_COMMA)) {
                     consume();
@@ -69,458 +272,584 @@ public class Parser {
 
         expect(Tokenizer.TokenType.STOF_CLOSE_PARENTHESIS, "Expected ')' after parameters");
 
-        ParseTree.BlockNode body = parseBlock();
+        parseBlock();
 
-        return new ParseTree.FunctionNode(returnTypeString, functionName.value(), parameters, body);
+        tree.function(returnType, functionName, parameters);
+        tree.startsAt(returnType);
     }
 
-    private ParseTree.BlockNode parseBlock() {
+    private void parseBlock() {
         expect(Tokenizer.TokenType.STOF_OPEN_CURLY_BRACKET, "Expected '{' to start block");
 
-        Vector<ParseTree.StatementNode> statements = new Vector<>();
-        while (!match(Tokenizer.TokenType.STOF_CLOSE_CURLY_BRACKET)) {
-            statements.add(parseStatement());
+        int base = tree.depth();
+        while (!match(Tokenizer.TokenType.STOF_CLOSE_CURLY_BRACKET) && position < tokens.size()) {
+            int depth = tree.depth();
+            int start = position;
+            try {
+                parseStatement();
+                tree.startsAt(start);
+            } catch (Recover e) {
+                tree.truncate(depth);
+                synchronize();
+            }
         }
 
         expect(Tokenizer.TokenType.STOF_CLOSE_CURLY_BRACKET, "Expected '}' to end block");
 
-        return new ParseTree.BlockNode(statements);
+        tree.block(tree.depth() - base);
     }
 
     /////////////////////////
     /// Statement Parsing ///
     /////////////////////////
 
-    private ParseTree.StatementNode parseStatement() {
+    private void parseStatement() {
         if (match(Tokenizer.TokenType.STOF_INT) ||
                 match(Tokenizer.TokenType.STOF_BOOLEAN) ||
                 match(Tokenizer.TokenType.STOF_LET) ||
                 match(Tokenizer.TokenType.STOF_VAR)) {
-            return parseVariableDeclaration();
+            parseVariableDeclaration();
+            return;
         }
 
         if (match(Tokenizer.TokenType.STOF_RETURN)) {
-            return parseReturn();
+            parseReturn();
+            return;
         }
 
         if (match(Tokenizer.TokenType.STOF_IF)) {
-            return parseIf();
+            parseIf();
+            return;
         }
 
         if (match(Tokenizer.TokenType.STOF_FOR)) {
-            return parseFor();
+            parseFor();
+            return;
         }
 
         if (match(Tokenizer.TokenType.STOF_WHILE)) {
-            return parseWhile();
+            parseWhile();
+            return;
         }
 
-        return parseExpressionStatement();
+        parseExpressionStatement();
     }
 
-    private ParseTree.VariableDeclarationNode parseVariableDeclaration() {
-        Tokenizer.Token typeToken = consume();
-        String type = typeToken.type().toString();
+    private void parseVariableDeclaration() {
+        int typeToken = consume();
 
-        Tokenizer.Token nameToken = expect(Tokenizer.TokenType.STOF_IDENTIFIER, "Expected variable name");
+        int nameToken = expect(Tokenizer.TokenType.STOF_IDENTIFIER, "Expected variable name");
 
-        ParseTree.ExpressionNode initializer = null;
-        if (match(Tokenizer.TokenType.STOF_EQUALS)) {
+        boolean initialized = match(Tokenizer.TokenType.STOF_EQUALS);
+        if (initialized) {
             consume();
-            initializer = parseExpression();
+            parseExpression();
         }
 
         expect(Tokenizer.TokenType.STOF_SEMICOLON, "Expected ';' after variable declaration");
 
-        return new ParseTree.VariableDeclarationNode(type, nameToken.value(), initializer);
+        tree.variableDeclaration(typeToken, nameToken, initialized);
     }
 
-    private ParseTree.ReturnNode parseReturn() {
+    private void parseReturn() {
         consume();
 
-        ParseTree.ExpressionNode value = null;
-        if (!match(Tokenizer.TokenType.STOF_SEMICOLON)) {
-            value = parseExpression();
+        boolean hasValue = !match(Tokenizer.TokenType.STOF_SEMICOLON);
+        if (hasValue) {
+            parseExpression();
         }
 
         expect(Tokenizer.TokenType.STOF_SEMICOLON, "Expected ';' after return statement");
 
-        return new ParseTree.ReturnNode(value);
+        tree.returnStatement(hasValue);
     }
 
-    private ParseTree.IfNode parseIf() {
+    private void parseIf() {
         consume();
 
         expect(Tokenizer.TokenType.STOF_OPEN_PARENTHESIS, "Expected '(' after 'if'");
-        ParseTree.ExpressionNode condition = parseExpression();
+        parseExpression();
         expect(Tokenizer.TokenType.STOF_CLOSE_PARENTHESIS, "Expected ')' after if condition");
 
-        ParseTree.BlockNode thenBlock = parseBlock();
+        parseBlock();
 
-        Vector<ParseTree.ElseIfNode> elseIfClauses = new Vector<>();
+        int elseIfClauses = 0;
         while (match(Tokenizer.TokenType.STOF_ELIF)) {
             consume();
 
             expect(Tokenizer.TokenType.STOF_OPEN_PARENTHESIS, "Expected '(' after 'elif'");
-            ParseTree.ExpressionNode elifCondition = parseExpression();
+            parseExpression();
             expect(Tokenizer.TokenType.STOF_CLOSE_PARENTHESIS, "Expected ')' after elif condition");
 
-            ParseTree.BlockNode elifBlock = parseBlock();
-            elseIfClauses.add(new ParseTree.ElseIfNode(elifCondition, elifBlock));
+            parseBlock();
+            tree.elseIf();
+            elseIfClauses++;
         }
 
-        ParseTree.BlockNode elseBlock = null;
-        if (match(Tokenizer.TokenType.STOF_ELSE)) {
+        boolean hasElse = match(Tokenizer.TokenType.STOF_ELSE);
+        if (hasElse) {
             consume();
-            elseBlock = parseBlock();
+            parseBlock();
         }
 
-        return new ParseTree.IfNode(condition, thenBlock, elseIfClauses, elseBlock);
+        tree.ifStatement(elseIfClauses, hasElse);
     }
 
-    private ParseTree.ForNode parseFor() {
+    private void parseFor() {
         consume();
 
         expect(Tokenizer.TokenType.STOF_OPEN_PARENTHESIS, "Expected '(' after 'for'");
 
-        ParseTree.StatementNode initialization = null;
-        if (!match(Tokenizer.TokenType.STOF_SEMICOLON)) {
+        boolean hasInitialization = !match(Tokenizer.TokenType.STOF_SEMICOLON);
+        if (hasInitialization) {
             if (match(Tokenizer.TokenType.STOF_INT) || match(Tokenizer.TokenType.STOF_BOOLEAN)) {
-                initialization = parseVariableDeclaration();
+                parseVariableDeclaration();
             } else {
-                initialization = parseExpressionStatement();
+                parseExpressionStatement();
             }
         } else {
             consume();
         }
 
-        ParseTree.ExpressionNode condition = null;
-        if (!match(Tokenizer.TokenType.STOF_SEMICOLON)) {
-            condition = parseExpression();
+        boolean hasCondition = !match(Tokenizer.TokenType.STOF_SEMICOLON);
+        if (hasCondition) {
+            parseExpression();
         }
         expect(Tokenizer.TokenType.STOF_SEMICOLON, "Expected ';' after for loop condition");
 
-        ParseTree.ExpressionNode increment = null;
-        if (!match(Tokenizer.TokenType.STOF_CLOSE_PARENTHESIS)) {
-            increment = parseExpression();
+        boolean hasIncrement = !match(Tokenizer.TokenType.STOF_CLOSE_PARENTHESIS);
+        if (hasIncrement) {
+            parseExpression();
         }
         expect(Tokenizer.TokenType.STOF_CLOSE_PARENTHESIS, "Expected ')' after for loop");
 
-        ParseTree.BlockNode body = parseBlock();
+        parseBlock();
 
-        return new ParseTree.ForNode(initialization, condition, increment, body);
+        tree.forStatement(hasInitialization, hasCondition, hasIncrement);
     }
 
-    private ParseTree.WhileNode parseWhile() {
+    private void parseWhile() {
         consume();
 
         expect(Tokenizer.TokenType.STOF_OPEN_PARENTHESIS, "Expected '(' after 'while'");
-        ParseTree.ExpressionNode condition = parseExpression();
+        parseExpression();
         expect(Tokenizer.TokenType.STOF_CLOSE_PARENTHESIS, "Expected ')' after while condition");
 
-        ParseTree.BlockNode body = parseBlock();
+        parseBlock();
 
-        return new ParseTree.WhileNode(condition, body);
+        tree.whileStatement();
     }
 
-    private ParseTree.ExpressionStatementNode parseExpressionStatement() {
-        ParseTree.ExpressionNode expression = parseExpression();
+    private void parseExpressionStatement() {
+        parseExpression();
         expect(Tokenizer.TokenType.STOF_SEMICOLON, "Expected ';' after expression");
-        return new ParseTree.ExpressionStatementNode(expression);
+        tree.expressionStatement();
     }
 
     //////////////////////////
     /// Expression Parsing ///
     //////////////////////////
 
-    private ParseTree.ExpressionNode parseExpression() {
-        return parseAssignment();
+    // an operator precedence parser over an explicit operator stack, with the operands on the tree builder's stack,
+    // instead of one method per precedence level, so a deeply nested expression grows arrays rather than the java
+    // stack. it builds the same trees as the grammar assignment < comparison < additive < multiplicative < prefix
+    // ++/-- < postfix ++/-- < primary, with assignment right associative, every binary operator left associative and
+    // at most one postfix per primary. the finished expression is left on top of the builder's stack
+    private void parseExpression() {
+        operatorCount = 0;
+
+        while (true) {
+            if (!parseOperand()) {
+                continue; // opened a '(' or a call, its first operand comes next
+            }
+
+            // the primary is complete, apply its unary operators, then either continue with a binary operator or
+            // close the sub-expression it ends
+            while (true) {
+                int type = peekOrdinal();
+                if (type == INCREMENT || type == DECREMENT) {
+                    tree.unary(position, true);
+                    type = peekOrdinal(++position);
+                }
+                while (operatorCount > 0 && operatorKinds[operatorCount - 1] == PREFIX) {
+                    tree.unary(operatorTokens[--operatorCount], false);
+                }
+
+                int precedence = type >= 0 ? PRECEDENCE[type] : 0;
+                if (precedence > 0) {
+                    // an assignment doesn't reduce the assignments before it, that is what makes it right associative
+                    reduce(precedence == ASSIGNMENT ? ASSIGNMENT + 1 : precedence);
+                    pushOperator(precedence, position++, 0);
+                    break;
+                }
+
+                reduce(ASSIGNMENT);
+                if (operatorCount == 0) {
+                    return;
+                }
+
+                if (operatorKinds[operatorCount - 1] == PARENTHESIS) {
+                    expect(Tokenizer.TokenType.STOF_CLOSE_PARENTHESIS, "Expected ')' after expression");
+                    operatorCount--;
+                    continue; // the parenthesized expression is a primary, a postfix operator may follow it
+                }
+
+                // the end of a call argument
+                if (type == COMMA) {
+                    position++;
+                    break;
+                }
+                expect(Tokenizer.TokenType.STOF_CLOSE_PARENTHESIS, "Expected ')' after function arguments");
+                int base = operatorBases[--operatorCount];
+                tree.call(operatorTokens[operatorCount], tree.depth() - base);
+            }
+        }
     }
 
-    private ParseTree.ExpressionNode parseAssignment() {
-        ParseTree.ExpressionNode expr = parseComparison();
+    // consumes any prefix operators and then a primary. returns whether it built the primary, false when it opened a
+    // parenthesized expression or a call with arguments, which stay open on the operator stack until their ')'
+    private boolean parseOperand() {
+        int type = peekOrdinal();
+        while (type == INCREMENT || type == DECREMENT) {
+            pushOperator(PREFIX, position, 0);
+            type = peekOrdinal(++position);
+        }
 
-        if (match(Tokenizer.TokenType.STOF_EQUALS)) {
-            consume();
-            ParseTree.ExpressionNode value = parseAssignment();
-            if (expr instanceof ParseTree.VariableNode(String name)) {
-                return new ParseTree.AssignmentExpressionNode(name, value);
+        if (type == INT_LITERAL) {
+            if (!tokens.isIntInRange(position)) {
+                throw error(tokens.start(position), "Integer literal out of range");
             }
-            throw new RuntimeException("Invalid assignment target");
+            tree.intLiteral(position++);
+            return true;
         }
 
-        return expr;
-    }
+        if (type == BOOLEAN_LITERAL) {
+            tree.booleanLiteral(position++);
+            return true;
+        }
 
-    private ParseTree.ExpressionNode parseComparison() {
-        ParseTree.ExpressionNode expr = parseAdditive();
+        if (type == IDENTIFIER) {
+            int token = position++;
 
-        while (match(Tokenizer.TokenType.STOF_GREATER_THAN) ||
-                match(Tokenizer.TokenType.STOF_LESS_THAN) ||
-                match(Tokenizer.TokenType.STOF_GREATER_THAN_OR_EQUAL) ||
-                match(Tokenizer.TokenType.STOF_LESS_THAN_OR_EQUAL)) {
-            Tokenizer.Token op = consume();
-            ParseTree.ExpressionNode right = parseAdditive();
-            expr = new ParseTree.BinaryOperatorNode(expr, op.toString(), right);
+            if (peekOrdinal() == OPEN_PARENTHESIS) {
+                if (peekOrdinal(++position) == CLOSE_PARENTHESIS) {
+                    position++;
+                    tree.call(token, 0);
+                    return true;
+                }
+                pushOperator(CALL, token, tree.depth());
+                return false;
+            }
+
+            tree.variable(token);
+            return true;
         }
 
-        return expr;
+        if (type == OPEN_PARENTHESIS) {
+            pushOperator(PARENTHESIS, position++, 0);
+            return false;
+        }
+
+        throw error("Unexpected token in expression");
+    }
+
+    // pops every binary operator of at least the given precedence off the operator stack, combining its operands
+    private void reduce(int precedence) {
+        while (operatorCount > 0 && operatorKinds[operatorCount - 1] >= precedence) {
+            operatorCount--;
+            if (operatorKinds[operatorCount] != ASSIGNMENT) {
+                tree.binary(operatorTokens[operatorCount]);
+            } else if (!tree.assignment()) {
+                // the expression is still well formed, so parsing goes on with just the assigned value
+                error(tokens.start(operatorTokens[operatorCount]), "Invalid assignment target");
+            }
+        }
     }
 
-    private ParseTree.ExpressionNode parseAdditive() {
-        ParseTree.ExpressionNode expr = parseMultiplicative();
+    private void pushOperator(int kind, int token, int base) {
+        if (operatorCount == operatorKinds.length) {
+            operatorKinds = Arrays.copyOf(operatorKinds, operatorCount * 2);
+            operatorTokens = Arrays.copyOf(operatorTokens, operatorCount * 2);
+            operatorBases = Arrays.copyOf(operatorBases, operatorCount * 2);
+        }
+        operatorKinds[operatorCount] = kind;
+        operatorTokens[operatorCount] = token;
+        operatorBases[operatorCount] = base;
+        operatorCount++;
+    }
 
-        while (match(Tokenizer.TokenType.STOF_PLUS) ||
-                match(Tokenizer.TokenType.STOF_MINUS)) {
-            Tokenizer.Token op = consume();
-            ParseTree.ExpressionNode right = parseMultiplicative();
-            expr = new ParseTree.BinaryOperatorNode(expr, op.toString(), right);
+    // the text dump of a tree, written by ParseTreeDumper
+    public static void writeParseTreeToFile(ParseTree.ProgramNode program, String outputPath) {
+        try {
+            ParseTreeDumper.dump(program, Path.of(outputPath), ParseTreeDumper.Format.TEXT);
+        } catch (IOException e) {
+            System.out.println("Error writing parse tree to file: " + e.getMessage());
         }
+    }
+
+    //////////////////////
+    /// Helper Methods ///
+    //////////////////////
 
-        return expr;
+    // the ordinal of the current token's type, -1 past the end
+    private int peekOrdinal() {
+        return peekOrdinal(position);
     }
 
-    private ParseTree.ExpressionNode parseMultiplicative() {
-        ParseTree.ExpressionNode expr = parseUnary();
+    private int peekOrdinal(int index) {
+        return index < tokens.size() ? tokens.typeOrdinal(index) : -1;
+    }
+
+    private Tokenizer.TokenType peek() {
+        if (position >= tokens.size()) {
+            return null;
+        }
+        return tokens.type(position);
+    }
 
-        while (match(Tokenizer.TokenType.STOF_MULTIPLY) ||
-                match(Tokenizer.TokenType.STOF_DIVIDE) ||
-                match(Tokenizer.TokenType.STOF_MODULO)) {
-            Tokenizer.Token op = consume();
-            ParseTree.ExpressionNode right = parseUnary();
-            expr = new ParseTree.BinaryOperatorNode(expr, op.toString(), right);
+    // returns the index of the consumed token in the stream
+    private int consume() {
+        if (position >= tokens.size()) {
+            throw error("Unexpected end of input");
         }
+        return position++;
+    }
 
-        return expr;
+    private boolean match(Tokenizer.TokenType type) {
+        return peek() == type;
     }
 
-    private ParseTree.ExpressionNode parseUnary() {
-        if (match(Tokenizer.TokenType.STOF_INCREMENT) ||
-                match(Tokenizer.TokenType.STOF_DECREMENT)) {
-            Tokenizer.Token op = consume();
-            ParseTree.ExpressionNode operand = parseUnary();
-            return new ParseTree.UnaryOperatorNode(op.toString(), operand, false);
+    private int expect(Tokenizer.TokenType type, String message) {
+        if (!match(type)) {
+            throw missing(message);
         }
+        return consume();
+    }
 
-        return parsePostfix();
+    //////////////////////
+    /// Error Recovery ///
+    //////////////////////
+
+    // records an error at the current token, or at the end of the source past the last one
+    private Recover error(String message) {
+        return error(position < tokens.size() ? tokens.start(position) : tokens.source().length(), message);
     }
 
-    private ParseTree.ExpressionNode parsePostfix() {
-        ParseTree.ExpressionNode expr = parsePrimary();
+    // a missing token is reported right after the token it should have followed, which for a forgotten ';' is the
+    // end of the line it belongs on rather than the start of the next one
+    private Recover missing(String message) {
+        return position > 0 ? error(tokens.start(position - 1) + tokens.length(position - 1), message) : error(message);
+    }
 
-        if (match(Tokenizer.TokenType.STOF_INCREMENT) ||
-                match(Tokenizer.TokenType.STOF_DECREMENT)) {
-            Tokenizer.Token op = consume();
-            return new ParseTree.UnaryOperatorNode(op.toString(), expr, true);
+    // a second error at the same offset is almost always the first one cascading out of nested blocks, so it is dropped
+    private Recover error(int offset, String message) {
+        if (errors.isEmpty() || errors.getLast().offset() != offset) {
+            if (lines == null) {
+                lines = new LineMap(tokens.source());
+            }
+            errors.add(new SyntaxError(offset, lines.line(offset), lines.column(offset), message));
         }
+        return RECOVER;
+    }
 
-        return expr;
+    // panic mode: skips to just past the next ';', or to the next '}' that closes the block the error was in.
+    // braces opened along the way are skipped as a whole, so a broken if or loop header drops its body with it
+    private void synchronize() {
+        int depth = 0;
+        while (position < tokens.size()) {
+            Tokenizer.TokenType type = tokens.type(position);
+            if (type == Tokenizer.TokenType.STOF_OPEN_CURLY_BRACKET) {
+                depth++;
+            } else if (type == Tokenizer.TokenType.STOF_CLOSE_CURLY_BRACKET) {
+                if (depth == 0) {
+                    return;
+                }
+                if (--depth == 0) {
+                    position++;
+                    return;
+                }
+            } else if (type == Tokenizer.TokenType.STOF_SEMICOLON && depth == 0) {
+                position++;
+                return;
+            }
+            position++;
+        }
     }
 
-    private ParseTree.ExpressionNode parsePrimary() {
-        if (match(Tokenizer.TokenType.STOF_INT_LITERAL)) {
-            Tokenizer.Token token = consume();
-            return new ParseTree.IntLiteralNode(Integer.parseInt(token.value()));
+    ///////////////////////
+    /// Record Building ///
+    ///////////////////////
+
+    // builds the ParseTree records, the stack holds the finished nodes that don't have a parent yet
+    private static final class RecordBuilder implements TreeBuilder {
+        private final TokenStream tokens;
+        private final SourcePositions positions;
+        private Object[] stack = new Object[64];
+        private int depth;
+        private int nodeCount;
+
+        RecordBuilder(TokenStream tokens, SourcePositions positions) {
+            this.tokens = tokens;
+            this.positions = positions;
         }
 
-        if (match(Tokenizer.TokenType.STOF_BOOLEAN_LITERAL)) {
-            Tokenizer.Token token = consume();
-            return new ParseTree.BooleanLiteralNode(token.value().equals("true"));
+        @Override
+        public int depth() {
+            return depth;
         }
 
-        if (match(Tokenizer.TokenType.STOF_IDENTIFIER)) {
-            Tokenizer.Token token = consume();
+        @Override
+        public void truncate(int depth) {
+            Arrays.fill(stack, depth, this.depth, null);
+            this.depth = depth;
+        }
 
-            if (match(Tokenizer.TokenType.STOF_OPEN_PARENTHESIS)) {
-                consume();
-                Vector<ParseTree.ExpressionNode> args = new Vector<>();
+        @Override
+        public void program(int classCount) {
+            push(new ParseTree.ProgramNode(popList(classCount)));
+        }
 
-                if (!match(Tokenizer.TokenType.STOF_CLOSE_PARENTHESIS)) {
-                    do {
-                        args.add(parseExpression());
-                        if (match(Tokenizer.TokenType.STOF_COMMA)) {
-                            consume();
-                        } else {
-                            break;
-                        }
-                    } while (true);
-                }
+        @Override
+        public void classDeclaration(int nameToken, int functionCount) {
+            push(new ParseTree.ClassNode(tokens.text(nameToken), popList(functionCount)));
+        }
 
-                expect(Tokenizer.TokenType.STOF_CLOSE_PARENTHESIS, "Expected ')' after function arguments");
-                return new ParseTree.FunctionCallNode(token.value(), args);
-            }
+        @Override
+        public void function(int returnTypeToken, int nameToken, int parameterCount) {
+            ParseTree.BlockNode body = (ParseTree.BlockNode) pop();
+            Vector<ParseTree.ParameterNode> parameters = popList(parameterCount);
+            push(new ParseTree.FunctionNode(tokens.type(returnTypeToken).toString(), tokens.text(nameToken), parameters, body));
+        }
 
-            return new ParseTree.VariableNode(token.value());
+        @Override
+        public void parameter(int typeToken, int nameToken) {
+            push(new ParseTree.ParameterNode(tokens.type(typeToken).toString(), tokens.text(nameToken)));
         }
 
-        if (match(Tokenizer.TokenType.STOF_OPEN_PARENTHESIS)) {
-            consume();
-            ParseTree.ExpressionNode expr = parseExpression();
-            expect(Tokenizer.TokenType.STOF_CLOSE_PARENTHESIS, "Expected ')' after expression");
-            return expr;
-        }
-
-        throw new RuntimeException("Unexpected token in expression at position " + position);
-    }
-
-    public void writeParseTreeToFile(ParseTree.ProgramNode program, String outputPath) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(outputPath))) {
-            writer.println("Program");
-            for (ParseTree.ClassNode classNode : program.classes()) {
-                writer.println("  Class: " + classNode.name());
-                for (ParseTree.FunctionNode function : classNode.functions()) {
-                    writer.println("    Function: " + function.returnType() + " " + function.name() + "()");
-                    writer.println("      Parameters:");
-                    for (ParseTree.ParameterNode param : function.parameters()) {
-                        writer.println("        - " + param.type() + " " + param.name());
-                    }
-                    writer.println("      Body:");
-                    writeBlock(writer, function.body(), 4);
-                }
-            }
-        } catch (IOException e) {
-            System.out.println("Error writing parse tree to file: " + e.getMessage());
+        @Override
+        public void block(int statementCount) {
+            push(new ParseTree.BlockNode(popList(statementCount)));
         }
-    }
 
-    private void writeBlock(PrintWriter writer, ParseTree.BlockNode block, int indent) {
-        String indentStr = "  ".repeat(indent);
-        for (ParseTree.StatementNode stmt : block.statements()) {
-            writer.println(indentStr + "- " + stmt.getClass().getSimpleName());
-            writeStatement(writer, stmt, indent + 1);
+        @Override
+        public void variableDeclaration(int typeToken, int nameToken, boolean initialized) {
+            ParseTree.ExpressionNode initializer = initialized ? (ParseTree.ExpressionNode) pop() : null;
+            push(new ParseTree.VariableDeclarationNode(tokens.type(typeToken).toString(), tokens.text(nameToken), initializer));
         }
-    }
 
-    private void writeStatement(PrintWriter writer, ParseTree.StatementNode stmt, int indent) {
-        String indentStr = "  ".repeat(indent);
+        @Override
+        public void ifStatement(int elseIfCount, boolean hasElse) {
+            ParseTree.BlockNode elseBlock = hasElse ? (ParseTree.BlockNode) pop() : null;
+            Vector<ParseTree.ElseIfNode> elseIfClauses = popList(elseIfCount);
+            ParseTree.BlockNode thenBlock = (ParseTree.BlockNode) pop();
+            push(new ParseTree.IfNode((ParseTree.ExpressionNode) pop(), thenBlock, elseIfClauses, elseBlock));
+        }
 
-        if (stmt instanceof ParseTree.VariableDeclarationNode(
-                String type, String name, ParseTree.ExpressionNode initializer
-        )) {
-            writer.println(indentStr + "Type: " + type);
-            writer.println(indentStr + "Name: " + name);
-            if (initializer != null) {
-                writer.println(indentStr + "Initializer:");
-                writeExpression(writer, initializer, indent + 1);
-            }
-        } else if (stmt instanceof ParseTree.ReturnNode(ParseTree.ExpressionNode value)) {
-            if (value != null) {
-                writer.println(indentStr + "Value:");
-                writeExpression(writer, value, indent + 1);
-            }
-        } else if (stmt instanceof ParseTree.IfNode(
-                ParseTree.ExpressionNode condition, ParseTree.BlockNode thenBlock,
-                java.util.List<ParseTree.ElseIfNode> elseIfClauses, ParseTree.BlockNode elseBlock
-        )) {
-            writer.println(indentStr + "Condition:");
-            writeExpression(writer, condition, indent + 1);
-            writer.println(indentStr + "Then:");
-            writeBlock(writer, thenBlock, indent + 1);
-            if (!elseIfClauses.isEmpty()) {
-                for (ParseTree.ElseIfNode elif : elseIfClauses) {
-                    writer.println(indentStr + "Elif:");
-                    writeExpression(writer, elif.condition(), indent + 1);
-                    writeBlock(writer, elif.block(), indent + 1);
-                }
-            }
-            if (elseBlock != null) {
-                writer.println(indentStr + "Else:");
-                writeBlock(writer, elseBlock, indent + 1);
-            }
-        } else if (stmt instanceof ParseTree.ForNode(
-                ParseTree.StatementNode initialization, ParseTree.ExpressionNode condition,
-                ParseTree.ExpressionNode increment, ParseTree.BlockNode body
-        )) {
-            writer.println(indentStr + "Init:");
-            if (initialization != null) {
-                writeStatement(writer, initialization, indent + 1);
-            }
-            writer.println(indentStr + "Condition:");
-            if (condition != null) {
-                writeExpression(writer, condition, indent + 1);
-            }
-            writer.println(indentStr + "Increment:");
-            if (increment != null) {
-                writeExpression(writer, increment, indent + 1);
-            }
-            writer.println(indentStr + "Body:");
-            writeBlock(writer, body, indent + 1);
-        } else if (stmt instanceof ParseTree.WhileNode(ParseTree.ExpressionNode condition, ParseTree.BlockNode body)) {
-            writer.println(indentStr + "Condition:");
-            writeExpression(writer, condition, indent + 1);
-            writer.println(indentStr + "Body:");
-            writeBlock(writer, body, indent + 1);
-        } else if (stmt instanceof ParseTree.ExpressionStatementNode(ParseTree.ExpressionNode expression)) {
-            writeExpression(writer, expression, indent);
-        }
-    }
-
-    private void writeExpression(PrintWriter writer, ParseTree.ExpressionNode expr, int indent) {
-        String indentStr = "  ".repeat(indent);
-
-        if (expr instanceof ParseTree.IntLiteralNode(int value)) {
-            writer.println(indentStr + "IntLiteral: " + value);
-        } else if (expr instanceof ParseTree.BooleanLiteralNode(boolean value)) {
-            writer.println(indentStr + "BooleanLiteral: " + value);
-        } else if (expr instanceof ParseTree.VariableNode(String name)) {
-            writer.println(indentStr + "Variable: " + name);
-        } else if (expr instanceof ParseTree.AssignmentExpressionNode(
-                String variableName, ParseTree.ExpressionNode value
-        )) {
-            writer.println(indentStr + "Assignment: " + variableName);
-            writer.println(indentStr + "  Value:");
-            writeExpression(writer, value, indent + 2);
-        } else if (expr instanceof ParseTree.FunctionCallNode(
-                String functionName, java.util.List<ParseTree.ExpressionNode> arguments
-        )) {
-            writer.println(indentStr + "FunctionCall: " + functionName + "()");
-            if (!arguments.isEmpty()) {
-                writer.println(indentStr + "  Arguments:");
-                for (ParseTree.ExpressionNode arg : arguments) {
-                    writeExpression(writer, arg, indent + 2);
-                }
-            }
-        } else if (expr instanceof ParseTree.BinaryOperatorNode(
-                ParseTree.ExpressionNode left, String operator, ParseTree.ExpressionNode right
-        )) {
-            writer.println(indentStr + "BinaryOperator: " + operator);
-            writer.println(indentStr + "  Left:");
-            writeExpression(writer, left, indent + 2);
-            writer.println(indentStr + "  Right:");
-            writeExpression(writer, right, indent + 2);
-        } else if (expr instanceof ParseTree.UnaryOperatorNode(
-                String operator, ParseTree.ExpressionNode operand, boolean isPostfix
-        )) {
-            writer.println(indentStr + "UnaryOperator: " + operator +
-                    (isPostfix ? " (postfix)" : " (prefix)"));
-            writeExpression(writer, operand, indent + 1);
+        @Override
+        public void elseIf() {
+            ParseTree.BlockNode block = (ParseTree.BlockNode) pop();
+            push(new ParseTree.ElseIfNode((ParseTree.ExpressionNode) pop(), block));
         }
-    }
 
-    //////////////////////
-    /// Helper Methods ///
-    //////////////////////
+        @Override
+        public void forStatement(boolean hasInitialization, boolean hasCondition, boolean hasIncrement) {
+            ParseTree.BlockNode body = (ParseTree.BlockNode) pop();
+            ParseTree.ExpressionNode increment = hasIncrement ? (ParseTree.ExpressionNode) pop() : null;
+            ParseTree.ExpressionNode condition = hasCondition ? (ParseTree.ExpressionNode) pop() : null;
+            ParseTree.StatementNode initialization = hasInitialization ? (ParseTree.StatementNode) pop() : null;
+            push(new ParseTree.ForNode(initialization, condition, increment, body));
+        }
 
-    private Tokenizer.Token peek() {
-        if (position >= tokens.size()) {
-            return null;
+        @Override
+        public void whileStatement() {
+            ParseTree.BlockNode body = (ParseTree.BlockNode) pop();
+            push(new ParseTree.WhileNode((ParseTree.ExpressionNode) pop(), body));
         }
-        return tokens.get(position);
-    }
 
-    private Tokenizer.Token consume() {
-        return tokens.get(position++);
-    }
+        @Override
+        public void returnStatement(boolean hasValue) {
+            push(new ParseTree.ReturnNode(hasValue ? (ParseTree.ExpressionNode) pop() : null));
+        }
 
-    private boolean match(Tokenizer.TokenType type) {
-        Tokenizer.Token token = peek();
-        return token != null && token.type() == type;
-    }
+        @Override
+        public void expressionStatement() {
+            push(new ParseTree.ExpressionStatementNode((ParseTree.ExpressionNode) pop()));
+        }
 
-    private Tokenizer.Token expect(Tokenizer.TokenType type, String message) {
-        if (!match(type)) {
-            throw new RuntimeException("Parse error at position " + position + ": " + message);
+        @Override
+        public void intLiteral(int token) {
+            push(new ParseTree.IntLiteralNode(tokens.intValue(token)));
+        }
+
+        @Override
+        public void booleanLiteral(int token) {
+            push(new ParseTree.BooleanLiteralNode(tokens.booleanValue(token)));
+        }
+
+        @Override
+        public void variable(int token) {
+            push(new ParseTree.VariableNode(tokens.text(token)));
+        }
+
+        @Override
+        public void call(int nameToken, int argumentCount) {
+            push(new ParseTree.FunctionCallNode(tokens.text(nameToken), popList(argumentCount)));
+        }
+
+        @Override
+        public void unary(int operatorToken, boolean postfix) {
+            push(new ParseTree.UnaryOperatorNode(OPERATORS[tokens.typeOrdinal(operatorToken)], (ParseTree.ExpressionNode) pop(), postfix));
+        }
+
+        @Override
+        public void binary(int operatorToken) {
+            ParseTree.ExpressionNode right = (ParseTree.ExpressionNode) pop();
+            ParseTree.ExpressionNode left = (ParseTree.ExpressionNode) pop();
+            push(new ParseTree.BinaryOperatorNode(left, OPERATORS[tokens.typeOrdinal(operatorToken)], right));
+        }
+
+        @Override
+        public boolean assignment() {
+            ParseTree.ExpressionNode value = (ParseTree.ExpressionNode) pop();
+            if (pop() instanceof ParseTree.VariableNode(String name)) {
+                push(new ParseTree.AssignmentExpressionNode(name, value));
+                return true;
+            }
+            push(value);
+            return false;
+        }
+
+        @Override
+        public void startsAt(int token) {
+            if (positions != null) {
+                positions.put(stack[depth - 1], tokens.start(token));
+            }
+        }
+
+        private void push(Object node) {
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, depth * 2);
+            }
+            stack[depth++] = node;
+            nodeCount++;
+        }
+
+        Object pop() {
+            Object node = stack[--depth];
+            stack[depth] = null;
+            return node;
+        }
+
+        // the top count nodes, in the order they were pushed
+        @SuppressWarnings("unchecked")
+        private <T> Vector<T> popList(int count) {
+            Vector<T> list = new Vector<>(count);
+            for (int i = depth - count; i < depth; i++) {
+                list.add((T) stack[i]);
+                stack[i] = null;
+            }
+            depth -= count;
+            return list;
         }
-        return consume();
     }
-}
\ No newline at end of file
+}
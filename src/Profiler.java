@@ -0,0 +1,323 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+// profiles a program the ClosureInterpreter runs. where the time goes is found by sampling: the program keeps a shadow
+// stack of the statement every call it is in is at, and a daemon thread reads it every interval. the program never
+// waits for or checks on the sampler and its frames stay its own, what it pays is a store per statement and a push
+// and pop per call. that still slows a run down by a fifth to a half, so it's a tool for finding hot spots, not for
+// leaving on. with timeCalls every call is also counted and timed. samples come out as collapsed stacks, one line per
+// distinct stack with its count, the input flame graph tools (flamegraph.pl, speedscope) take, and as a top-n summary
+public final class Profiler {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    public static final long DEFAULT_INTERVAL_NANOS = 1_000_000;
+    private static final int MAX_FRAMES = 128; // deeper stacks keep their innermost frames, so recursion can't blow up the stacks
+
+    private final SourcePositions m_positions; // null when statements have no known position
+    private final long m_intervalNanos;
+    private final boolean m_timeCalls;
+    private Thread m_sampler;
+
+    // functions and statements, registered while the interpreter compiles. statement ids start at 1. every function
+    // also gets an entry statement, a call is at it until its first statement starts, so the statement a call is at
+    // is all the shadow stack needs to know which function it is in
+    private final List<String> m_functionNames = new ArrayList<>();
+    private final List<Statement> m_statements = new ArrayList<>(List.of(new Statement(-1, 0, 0, 0)));
+
+    // per function
+    private long[] m_calls = new long[16];
+    private long[] m_callNanos = new long[16]; // only with timeCalls, recursive calls count once
+    private int[] m_activations = new int[16];
+    private long[] m_functionSelfSamples = new long[16];
+    private long[] m_functionTotalSamples = new long[16];
+    private long[] m_functionLastSample = new long[16];
+
+    // per statement
+    private long[] m_statementSelfSamples = new long[64];
+    private long[] m_statementTotalSamples = new long[64];
+    private long[] m_statementLastSample = new long[64];
+    private int[] m_statementParents = new int[64]; // -1 for an entry statement
+    private int[] m_statementFunctions = new int[64];
+
+    // the shadow stack, the statement of every call, only written by the program
+    private int[] m_statementStack = new int[64];
+    private long[] m_startNanos = new long[64]; // only with timeCalls
+    private int m_depth;
+
+    // the samples, only written by the sampler
+    private int[] m_sampledFunctions = new int[64];
+    private int[] m_sampledStatements = new int[64];
+    private long m_samples;
+    private final Map<String, Long> m_stacks = new HashMap<>();
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    public Profiler(SourcePositions positions, long intervalNanos, boolean timeCalls) {
+        this.m_positions = positions;
+        this.m_intervalNanos = intervalNanos;
+        this.m_timeCalls = timeCalls;
+    }
+
+    ///////////////////////
+    /// UTILITY CLASSES ///
+    ///////////////////////
+    // parent is the statement this one is nested in, 0 for a statement directly in the function body. line and
+    // column are 0 when the parse kept no positions
+    private record Statement(int function, int parent, int line, int column) {}
+
+    ////////////////////
+    /// REGISTRATION ///
+    ////////////////////
+    // returns the id of the function's entry statement, which enter() and statement() take for the function
+    int function(ParseTree.FunctionNode function) {
+        int id = m_functionNames.size();
+        m_functionNames.add(function.name());
+        if (id == m_calls.length) {
+            int length = id * 2;
+            m_calls = Arrays.copyOf(m_calls, length);
+            m_callNanos = Arrays.copyOf(m_callNanos, length);
+            m_activations = Arrays.copyOf(m_activations, length);
+            m_functionSelfSamples = Arrays.copyOf(m_functionSelfSamples, length);
+            m_functionTotalSamples = Arrays.copyOf(m_functionTotalSamples, length);
+            m_functionLastSample = Arrays.copyOf(m_functionLastSample, length);
+        }
+        return register(id, -1, 0, 0);
+    }
+
+    // a statement nested in parent (0 for none), whose samples then also count for parent, so a loop is as hot as its body
+    int statement(int function, int parent, ParseTree.StatementNode statement) {
+        int line = m_positions != null ? m_positions.line(statement) : 0;
+        int column = m_positions != null ? m_positions.column(statement) : 0;
+        return register(m_statementFunctions[function], parent, line, column);
+    }
+
+    private int register(int function, int parent, int line, int column) {
+        int id = m_statements.size();
+        m_statements.add(new Statement(function, parent, line, column));
+        if (id == m_statementSelfSamples.length) {
+            int length = id * 2;
+            m_statementSelfSamples = Arrays.copyOf(m_statementSelfSamples, length);
+            m_statementTotalSamples = Arrays.copyOf(m_statementTotalSamples, length);
+            m_statementLastSample = Arrays.copyOf(m_statementLastSample, length);
+            m_statementParents = Arrays.copyOf(m_statementParents, length);
+            m_statementFunctions = Arrays.copyOf(m_statementFunctions, length);
+        }
+        m_statementParents[id] = parent;
+        m_statementFunctions[id] = function;
+        return id;
+    }
+
+    ////////////////
+    /// SAMPLING ///
+    ////////////////
+    // samples the program every interval until finish()
+    void start() {
+        m_sampler = Thread.ofPlatform().daemon().name("stof-profiler").start(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                LockSupport.parkNanos(m_intervalNanos);
+                sample();
+            }
+        });
+    }
+
+    // stops sampling and ends the calls still on the stack, those an exit() or a runtime error left
+    void finish() {
+        m_sampler.interrupt();
+        try {
+            m_sampler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        while (m_depth > 0) {
+            exit();
+        }
+    }
+
+    // a call pushes the entry statement of its function and a return pops it, that's all sampling costs a call.
+    // counting and timing calls is left to timeCalls
+    void enter(int entry) {
+        int depth = m_depth;
+        if (depth == m_statementStack.length) {
+            m_statementStack = Arrays.copyOf(m_statementStack, depth * 2);
+            m_startNanos = Arrays.copyOf(m_startNanos, depth * 2);
+        }
+        m_statementStack[depth] = entry;
+        m_depth = depth + 1;
+        if (m_timeCalls) {
+            int function = m_statementFunctions[entry];
+            m_calls[function]++;
+            if (m_activations[function]++ == 0) {
+                m_startNanos[depth] = System.nanoTime();
+            }
+        }
+    }
+
+    void exit() {
+        int depth = --m_depth;
+        if (m_timeCalls) {
+            int function = m_statementFunctions[m_statementStack[depth]];
+            if (--m_activations[function] == 0) {
+                m_callNanos[function] += System.nanoTime() - m_startNanos[depth];
+            }
+        }
+    }
+
+    // the innermost call starts statement
+    void at(int statement) {
+        m_statementStack[m_depth - 1] = statement;
+    }
+
+    // runs on the sampler thread. it reads the shadow stack while the program goes on changing it, so the innermost
+    // call can be one that is just being pushed or popped and a call's statement can be the one that just ended.
+    // nothing the sampler reads is trusted, an entry that doesn't check out ends the stack
+    private void sample() {
+        int depth = snapshot();
+        if (depth == 0) {
+            return;
+        }
+        long sample = ++m_samples;
+        for (int i = 0; i < depth; i++) {
+            int function = m_sampledFunctions[i];
+            if (m_functionLastSample[function] != sample) {
+                m_functionLastSample[function] = sample;
+                m_functionTotalSamples[function]++;
+            }
+            for (int statement = m_sampledStatements[i]; statement > 0; statement = m_statementParents[statement]) {
+                if (m_statementLastSample[statement] != sample) {
+                    m_statementLastSample[statement] = sample;
+                    m_statementTotalSamples[statement]++;
+                }
+            }
+        }
+        m_functionSelfSamples[m_sampledFunctions[depth - 1]]++;
+        m_statementSelfSamples[m_sampledStatements[depth - 1]]++;
+
+        StringBuilder stack = new StringBuilder();
+        int first = Math.max(0, depth - MAX_FRAMES);
+        if (first > 0) {
+            stack.append("[").append(first).append(" frames]");
+        }
+        for (int i = first; i < depth; i++) {
+            if (i > 0) {
+                stack.append(';');
+            }
+            stack.append(frameName(m_sampledFunctions[i], m_sampledStatements[i]));
+        }
+        m_stacks.merge(stack.toString(), 1L, Long::sum);
+    }
+
+    // copies the statement of every call and the function it is in into m_sampledStatements and m_sampledFunctions,
+    // returns how many
+    private int snapshot() {
+        int[] statements = m_statementStack;
+        int depth = Math.min(m_depth, statements.length);
+        if (depth > m_sampledFunctions.length) {
+            m_sampledFunctions = new int[depth];
+            m_sampledStatements = new int[depth];
+        }
+        for (int i = 0; i < depth; i++) {
+            int statement = statements[i];
+            if (statement <= 0 || statement >= m_statements.size()) {
+                return i;
+            }
+            m_sampledFunctions[i] = m_statementFunctions[statement];
+            m_sampledStatements[i] = statement;
+        }
+        return depth;
+    }
+
+    // the function and the line and column of the statement it's at, "fib:12:9"
+    private String frameName(int function, int statement) {
+        String name = m_functionNames.get(function);
+        if (m_statements.get(statement).line() == 0) {
+            return name;
+        }
+        return name + ":" + m_statements.get(statement).line() + ":" + m_statements.get(statement).column();
+    }
+
+    ///////////////
+    /// RESULTS ///
+    ///////////////
+    public long samples() {
+        return m_samples;
+    }
+
+    // one line per distinct stack, frames from main inwards separated by ';', then the number of samples
+    public String collapsedStacks() {
+        List<Map.Entry<String, Long>> stacks = new ArrayList<>(m_stacks.entrySet());
+        stacks.sort(Map.Entry.comparingByKey());
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Long> stack : stacks) {
+            out.append(stack.getKey()).append(' ').append(stack.getValue()).append('\n');
+        }
+        return out.toString();
+    }
+
+    // the top functions by samples and calls, then the top statements by samples. self counts the samples taken
+    // in the function or at the statement itself, total also those in what it called. calls are only counted and
+    // shown with timeCalls. the first column is as wide as the longest function name or statement label in the tables
+    public String summary(int top) {
+        List<Integer> functions = new ArrayList<>();
+        for (int i = 0; i < m_functionNames.size(); i++) {
+            if (m_functionTotalSamples[i] > 0 || m_calls[i] > 0) {
+                functions.add(i);
+            }
+        }
+        functions.sort(Comparator.<Integer>comparingLong(i -> -m_functionTotalSamples[i]).thenComparingLong(i -> -m_calls[i]));
+        functions = functions.subList(0, Math.min(top, functions.size()));
+
+        List<Integer> statements = new ArrayList<>();
+        for (int i = 1; i < m_statements.size(); i++) {
+            if (m_statementTotalSamples[i] > 0 && m_statementParents[i] >= 0) {
+                statements.add(i);
+            }
+        }
+        statements.sort(Comparator.<Integer>comparingLong(i -> -m_statementSelfSamples[i]).thenComparingLong(i -> -m_statementTotalSamples[i]));
+        statements = statements.subList(0, Math.min(top, statements.size()));
+        List<String> labels = new ArrayList<>(statements.size());
+        for (int statement : statements) {
+            Statement position = m_statements.get(statement);
+            String where = position.line() > 0 ? position.line() + ":" + position.column() : "?";
+            labels.add(where + " in " + m_functionNames.get(position.function()));
+        }
+
+        int width = "statement".length();
+        for (int function : functions) {
+            width = Math.max(width, m_functionNames.get(function).length());
+        }
+        for (String label : labels) {
+            width = Math.max(width, label.length());
+        }
+        String row = "  %-" + width + "s %8s %8s%s%n";
+
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "  %d samples, one every %.1f ms%n", m_samples, m_intervalNanos / 1e6));
+        out.append(String.format(Locale.ROOT, row, "function", "self", "total", m_timeCalls ? "        calls        time" : ""));
+        for (int function : functions) {
+            out.append(String.format(Locale.ROOT, row, m_functionNames.get(function),
+                    percent(m_functionSelfSamples[function]), percent(m_functionTotalSamples[function]),
+                    m_timeCalls ? String.format(Locale.ROOT, " %12d %8.2f ms", m_calls[function], m_callNanos[function] / 1e6) : ""));
+        }
+        if (!statements.isEmpty()) {
+            out.append(String.format(Locale.ROOT, row, "statement", "self", "total", ""));
+            for (int i = 0; i < statements.size(); i++) {
+                int statement = statements.get(i);
+                out.append(String.format(Locale.ROOT, row, labels.get(i),
+                        percent(m_statementSelfSamples[statement]), percent(m_statementTotalSamples[statement]), ""));
+            }
+        }
+        return out.toString();
+    }
+
+    private String percent(long samples) {
+        return m_samples > 0 ? String.format(Locale.ROOT, "%.1f%%", 100.0 * samples / m_samples) : "-";
+    }
+}
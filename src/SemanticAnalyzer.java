@@ -0,0 +1,294 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// resolves and type-checks a program in one walk over the parse tree. every variable reference gets the slot of its
+// declaration from a SymbolTable, every call its target function, every expression its type, and all of it is
+// handed out as a SemanticModel so backends don't have to look names up again. int and boolean declarations must
+// get a value of their type, var and let take the type of their initializer (int without one). parameters and return
+// types must be int or boolean, and a class can't define a function twice. errors don't stop the walk, an expression
+// that already failed has no type and isn't reported a second time, and neither is a variable or call whose declared
+// type was unknown
+public final class SemanticAnalyzer {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private final Map<String, ParseTree.FunctionNode> m_functions = new HashMap<>();
+    private final IdentityHashMap<Object, SemanticModel.Symbol> m_symbols = new IdentityHashMap<>();
+    private final IdentityHashMap<ParseTree.FunctionCallNode, ParseTree.FunctionNode> m_targets = new IdentityHashMap<>();
+    private final IdentityHashMap<ParseTree.ExpressionNode, SemanticModel.Type> m_types = new IdentityHashMap<>();
+    private final IdentityHashMap<ParseTree.FunctionNode, Integer> m_frameSizes = new IdentityHashMap<>();
+    private final List<String> m_errors = new ArrayList<>();
+
+    private ParseTree.FunctionNode m_function;
+    private SymbolTable m_table;
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    private SemanticAnalyzer(ParseTree.ProgramNode program) {
+        // calls resolve like in every backend, the first function with a name wins
+        for (ParseTree.ClassNode classNode : program.classes()) {
+            for (ParseTree.FunctionNode function : classNode.functions()) {
+                m_functions.putIfAbsent(function.name(), function);
+            }
+        }
+    }
+
+    public static SemanticModel analyze(ParseTree.ProgramNode program) {
+        SemanticAnalyzer analyzer = new SemanticAnalyzer(program);
+        for (ParseTree.ClassNode classNode : program.classes()) {
+            Set<String> names = new HashSet<>();
+            for (ParseTree.FunctionNode function : classNode.functions()) {
+                analyzer.function(function, !names.add(function.name()));
+            }
+        }
+        return new SemanticModel(analyzer.m_symbols, analyzer.m_targets, analyzer.m_types, analyzer.m_frameSizes, analyzer.m_errors);
+    }
+
+    // duplicate is set for a function its class already defines, the one that isn't called
+    private void function(ParseTree.FunctionNode function, boolean duplicate) {
+        m_function = function;
+        m_table = new SymbolTable();
+        if (duplicate) {
+            error(function.name() + "() is already defined in this class");
+        }
+        if (SemanticModel.Type.of(function.returnType()) == null) {
+            error("unknown return type " + typeName(function.returnType()));
+        }
+        long mark = m_table.enterScope();
+        for (ParseTree.ParameterNode parameter : function.parameters()) {
+            SemanticModel.Type type = SemanticModel.Type.of(parameter.type());
+            if (type == null) {
+                error("unknown type " + typeName(parameter.type()) + " of parameter " + parameter.name());
+            }
+            declare(parameter, parameter.name(), type);
+        }
+        block(function.body());
+        m_table.exitScope(mark);
+        m_frameSizes.put(function, m_table.frameSize());
+    }
+
+    private void declare(Object node, String name, SemanticModel.Type type) {
+        SemanticModel.Symbol symbol = m_table.declare(name, type);
+        if (symbol == null) {
+            error(name + " is already declared in this scope");
+            symbol = m_table.resolve(name);
+        }
+        m_symbols.put(node, symbol);
+    }
+
+    private SemanticModel.Symbol resolve(Object node, String name) {
+        SemanticModel.Symbol symbol = m_table.resolve(name);
+        if (symbol == null) {
+            error("unknown variable " + name);
+            return null;
+        }
+        m_symbols.put(node, symbol);
+        return symbol;
+    }
+
+    private void error(String message) {
+        m_errors.add("Compile error in " + m_function.name() + "(): " + message);
+    }
+
+    //////////////////
+    /// STATEMENTS ///
+    //////////////////
+    private void block(ParseTree.BlockNode block) {
+        long mark = m_table.enterScope();
+        for (ParseTree.StatementNode statement : block.statements()) {
+            statement(statement);
+        }
+        m_table.exitScope(mark);
+    }
+
+    private void statement(ParseTree.StatementNode statement) {
+        switch (statement) {
+            case ParseTree.VariableDeclarationNode declaration -> {
+                SemanticModel.Type value = declaration.initializer() != null ? expression(declaration.initializer()) : null;
+                SemanticModel.Type type;
+                if (declaration.type().equals("STOF_INT") || declaration.type().equals("STOF_BOOLEAN")) {
+                    type = SemanticModel.Type.of(declaration.type());
+                    if (value != null && value != type) {
+                        error("cannot initialize " + type + " " + declaration.name() + " with " + article(value));
+                    }
+                } else {
+                    type = value != null ? value : SemanticModel.Type.INT; // var and let
+                }
+                declare(declaration, declaration.name(), type); // after the initializer, so `int x = x;` fails
+            }
+            case ParseTree.VariableAssignmentNode assignment -> assign(assignment, assignment.name(), assignment.value());
+            case ParseTree.IfNode ifNode -> {
+                condition(ifNode.condition(), "if");
+                block(ifNode.thenBlock());
+                for (ParseTree.ElseIfNode elseIf : ifNode.elseIfClauses()) {
+                    condition(elseIf.condition(), "elif");
+                    block(elseIf.block());
+                }
+                if (ifNode.elseBlock() != null) {
+                    block(ifNode.elseBlock());
+                }
+            }
+            case ParseTree.ForNode forNode -> {
+                long mark = m_table.enterScope();
+                if (forNode.initialization() != null) {
+                    statement(forNode.initialization());
+                }
+                if (forNode.condition() != null) {
+                    condition(forNode.condition(), "for");
+                }
+                if (forNode.increment() != null) {
+                    expression(forNode.increment());
+                }
+                block(forNode.body());
+                m_table.exitScope(mark);
+            }
+            case ParseTree.WhileNode whileNode -> {
+                condition(whileNode.condition(), "while");
+                block(whileNode.body());
+            }
+            case ParseTree.ReturnNode returnNode -> {
+                if (returnNode.value() != null) {
+                    SemanticModel.Type value = expression(returnNode.value());
+                    SemanticModel.Type expected = SemanticModel.Type.of(m_function.returnType());
+                    if (value != null && expected != null && value != expected) {
+                        error(m_function.name() + "() returns " + expected + ", not " + value);
+                    }
+                }
+            }
+            case ParseTree.ExitNode exitNode -> {
+                SemanticModel.Type code = expression(exitNode.exitCode());
+                if (code != null && code != SemanticModel.Type.INT) {
+                    error("exit code must be an int, not " + code);
+                }
+            }
+            case ParseTree.ExpressionStatementNode expressionStatement -> expression(expressionStatement.expression());
+        }
+    }
+
+    private void condition(ParseTree.ExpressionNode condition, String statement) {
+        SemanticModel.Type type = expression(condition);
+        if (type != null && type != SemanticModel.Type.BOOLEAN) {
+            error("condition of " + statement + " must be a boolean, not " + type);
+        }
+    }
+
+    private SemanticModel.Type assign(Object node, String name, ParseTree.ExpressionNode value) {
+        SemanticModel.Type type = expression(value);
+        SemanticModel.Symbol symbol = resolve(node, name);
+        if (symbol == null) {
+            return null;
+        }
+        if (type != null && symbol.type() != null && type != symbol.type()) {
+            error("cannot assign " + article(type) + " to " + symbol.type() + " " + name);
+        }
+        return symbol.type();
+    }
+
+    ///////////////////
+    /// EXPRESSIONS ///
+    ///////////////////
+    // returns the expression's type, null when it has an error that was already reported
+    private SemanticModel.Type expression(ParseTree.ExpressionNode expression) {
+        SemanticModel.Type type = switch (expression) {
+            case ParseTree.IntLiteralNode ignored -> SemanticModel.Type.INT;
+            case ParseTree.BooleanLiteralNode ignored -> SemanticModel.Type.BOOLEAN;
+            case ParseTree.VariableNode variable -> {
+                SemanticModel.Symbol symbol = resolve(variable, variable.name());
+                yield symbol != null ? symbol.type() : null;
+            }
+            case ParseTree.AssignmentExpressionNode assignment -> assign(assignment, assignment.variableName(), assignment.value());
+            case ParseTree.FunctionCallNode call -> call(call);
+            case ParseTree.BinaryOperatorNode binary -> binary(binary);
+            case ParseTree.UnaryOperatorNode unary -> unary(unary);
+        };
+        // literals and variables are most of the tree, the model works their types out itself instead of storing them
+        if (type != null && !(expression instanceof ParseTree.IntLiteralNode || expression instanceof ParseTree.BooleanLiteralNode
+                || expression instanceof ParseTree.VariableNode)) {
+            m_types.put(expression, type);
+        }
+        return type;
+    }
+
+    private SemanticModel.Type unary(ParseTree.UnaryOperatorNode unary) {
+        if (!(unary.operand() instanceof ParseTree.VariableNode variable)) {
+            error(unary.operator() + " needs a variable");
+            return null;
+        }
+        SemanticModel.Symbol symbol = resolve(variable, variable.name());
+        if (symbol == null) {
+            return null;
+        }
+        if (symbol.type() != null && symbol.type() != SemanticModel.Type.INT) {
+            error(unary.operator() + " needs an int variable, " + variable.name() + " is " + article(symbol.type()));
+        }
+        return SemanticModel.Type.INT;
+    }
+
+    private SemanticModel.Type binary(ParseTree.BinaryOperatorNode binary) {
+        SemanticModel.Type left = expression(binary.left());
+        SemanticModel.Type right = expression(binary.right());
+        SemanticModel.Type result = switch (binary.operator()) {
+            case "+", "-", "*", "/", "%" -> SemanticModel.Type.INT;
+            case ">", "<", ">=", "<=" -> SemanticModel.Type.BOOLEAN;
+            default -> null;
+        };
+        if (result == null) {
+            error("unknown operator " + binary.operator());
+            return null;
+        }
+        if (left == null || right == null) {
+            return result;
+        }
+        if (left != SemanticModel.Type.INT || right != SemanticModel.Type.INT) {
+            error(binary.operator() + " needs int operands, not " + left + " and " + right);
+        }
+        return result;
+    }
+
+    private SemanticModel.Type call(ParseTree.FunctionCallNode call) {
+        List<ParseTree.ExpressionNode> arguments = call.arguments();
+        SemanticModel.Type[] types = new SemanticModel.Type[arguments.size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = expression(arguments.get(i));
+        }
+
+        ParseTree.FunctionNode target = m_functions.get(call.functionName());
+        if (target == null) {
+            if (call.functionName().equals("print")) {
+                return SemanticModel.Type.INT;
+            }
+            error("unknown function " + call.functionName() + "()");
+            return null;
+        }
+        m_targets.put(call, target);
+
+        SemanticModel.Type returnType = SemanticModel.Type.of(target.returnType());
+        if (target.parameters().size() != types.length) {
+            error(call.functionName() + "() expects " + target.parameters().size() + " arguments");
+            return returnType;
+        }
+        for (int i = 0; i < types.length; i++) {
+            SemanticModel.Type expected = SemanticModel.Type.of(target.parameters().get(i).type());
+            if (types[i] != null && expected != null && types[i] != expected) {
+                error("argument " + (i + 1) + " of " + call.functionName() + "() must be " + article(expected) + ", not " + types[i]);
+            }
+        }
+        return returnType;
+    }
+
+    // a type token's name as it is written, "var" for STOF_VAR
+    private static String typeName(String stofType) {
+        return stofType.startsWith("STOF_") ? stofType.substring("STOF_".length()).toLowerCase(Locale.ROOT) : stofType;
+    }
+
+    private static String article(SemanticModel.Type type) {
+        return (type == SemanticModel.Type.INT ? "an " : "a ") + type;
+    }
+}
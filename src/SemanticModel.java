@@ -0,0 +1,116 @@
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// what SemanticAnalyzer found out about a program: the frame slot and type behind every variable reference, the
+// function behind every call, the static type of every expression and the frame size of every function. the parse
+// tree records can't carry this themselves, so it sits in side tables keyed by node identity, two `x` nodes are
+// equal records but can be different variables
+public final class SemanticModel {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private final Map<Object, Symbol> m_symbols;
+    private final Map<ParseTree.FunctionCallNode, ParseTree.FunctionNode> m_targets;
+    private final Map<ParseTree.ExpressionNode, Type> m_types;
+    private final Map<ParseTree.FunctionNode, Integer> m_frameSizes;
+    private final List<String> m_errors;
+
+    SemanticModel(IdentityHashMap<Object, Symbol> symbols, IdentityHashMap<ParseTree.FunctionCallNode, ParseTree.FunctionNode> targets,
+                  IdentityHashMap<ParseTree.ExpressionNode, Type> types, IdentityHashMap<ParseTree.FunctionNode, Integer> frameSizes,
+                  List<String> errors) {
+        this.m_symbols = symbols;
+        this.m_targets = targets;
+        this.m_types = types;
+        this.m_frameSizes = frameSizes;
+        this.m_errors = List.copyOf(errors);
+    }
+
+    ///////////////////////
+    /// UTILITY CLASSES ///
+    ///////////////////////
+    public enum Type {
+        INT, BOOLEAN;
+
+        // the type a parameter or return type names, null for anything that isn't int or boolean
+        public static Type of(String stofType) {
+            return switch (stofType) {
+                case "STOF_INT" -> INT;
+                case "STOF_BOOLEAN" -> BOOLEAN;
+                default -> null;
+            };
+        }
+
+        @Override
+        public String toString() {
+            return this == INT ? "int" : "boolean";
+        }
+    }
+
+    // a local variable or parameter. slot 0 of a frame is the return value, parameters start at slot 1. type is null
+    // for a parameter whose type was unknown, which is a reported error
+    public record Symbol(String name, Type type, int slot) {}
+
+    ///////////////
+    /// QUERIES ///
+    ///////////////
+    // the variable a VariableNode reads, or a declaration, parameter, assignment or ++/-- writes
+    public Symbol symbol(ParseTree.VariableNode node) {
+        return m_symbols.get(node);
+    }
+
+    public Symbol symbol(ParseTree.VariableDeclarationNode node) {
+        return m_symbols.get(node);
+    }
+
+    public Symbol symbol(ParseTree.ParameterNode node) {
+        return m_symbols.get(node);
+    }
+
+    public Symbol symbol(ParseTree.VariableAssignmentNode node) {
+        return m_symbols.get(node);
+    }
+
+    public Symbol symbol(ParseTree.AssignmentExpressionNode node) {
+        return m_symbols.get(node);
+    }
+
+    // the function a call runs, null for print()
+    public ParseTree.FunctionNode target(ParseTree.FunctionCallNode call) {
+        return m_targets.get(call);
+    }
+
+    // null when the expression didn't check out
+    public Type type(ParseTree.ExpressionNode expression) {
+        return switch (expression) {
+            case ParseTree.IntLiteralNode ignored -> Type.INT;
+            case ParseTree.BooleanLiteralNode ignored -> Type.BOOLEAN;
+            case ParseTree.VariableNode variable -> {
+                Symbol symbol = m_symbols.get(variable);
+                yield symbol != null ? symbol.type() : null;
+            }
+            default -> m_types.get(expression);
+        };
+    }
+
+    public int frameSize(ParseTree.FunctionNode function) {
+        return m_frameSizes.get(function);
+    }
+
+    // "Compile error in f(): ..." messages in source order, empty when the program checked out
+    public List<String> errors() {
+        return m_errors;
+    }
+
+    public boolean hasErrors() {
+        return !m_errors.isEmpty();
+    }
+
+    // for callers that can't go on with a broken program
+    public SemanticModel requireNoErrors() {
+        if (hasErrors()) {
+            throw new RuntimeException(m_errors.getFirst());
+        }
+        return this;
+    }
+}
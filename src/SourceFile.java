@@ -0,0 +1,165 @@
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+// a .stof source file read through NIO. large files are memory-mapped, small ones are read into a single buffer.
+// ascii sources (the common case) are exposed as a zero-copy CharSequence over the bytes, so the Tokenizer lexes
+// straight out of the buffer and char offsets are byte offsets. anything else is decoded once as utf-8.
+public final class SourceFile {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private static final long MAP_THRESHOLD = 64 * 1024; // below this, mapping costs more than a plain read
+
+    private final Path m_path;
+    private final CharSequence m_content;
+    private final long m_byteSize;
+    private LineMap m_lines; // built lazily, only needed when reporting positions
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    private SourceFile(Path path, CharSequence content, long byteSize) {
+        this.m_path = path;
+        this.m_content = content;
+        this.m_byteSize = byteSize;
+    }
+
+    public static SourceFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Source file too large: " + path);
+            }
+
+            ByteBuffer bytes;
+            if (size >= MAP_THRESHOLD) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                bytes = ByteBuffer.allocate((int) size);
+                while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                    // keep reading until the buffer is full or we hit end of file
+                }
+                bytes.flip();
+            }
+
+            return new SourceFile(path, decode(bytes), size);
+        }
+    }
+
+    // wraps in-memory text, used by tools that already hold the source text. its size is what it would take as utf-8
+    public static SourceFile of(Path path, CharSequence content) {
+        return new SourceFile(path, content, utf8Length(content));
+    }
+
+    // wraps in-memory bytes like open() wraps a file's, ascii ones without a copy
+    public static SourceFile of(Path path, byte[] bytes) throws CharacterCodingException {
+        return new SourceFile(path, decode(ByteBuffer.wrap(bytes)), bytes.length);
+    }
+
+    private static long utf8Length(CharSequence content) {
+        long length = 0;
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < content.length() && Character.isLowSurrogate(content.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static CharSequence decode(ByteBuffer bytes) throws CharacterCodingException {
+        for (int i = bytes.position(); i < bytes.limit(); i++) {
+            if (bytes.get(i) < 0) { // high bit set, not plain ascii
+                CharBuffer chars = StandardCharsets.UTF_8.newDecoder().decode(bytes.duplicate());
+                return chars;
+            }
+        }
+        return new AsciiCharSequence(bytes, bytes.position(), bytes.limit());
+    }
+
+    ///////////////
+    /// ACCESS ///
+    ///////////////
+    public Path path() {
+        return m_path;
+    }
+
+    public CharSequence content() {
+        return m_content;
+    }
+
+    // the file's bytes when it is plain ascii, so content() is a view over them, null otherwise
+    public ByteBuffer asciiBytes() {
+        if (m_content instanceof AsciiCharSequence ascii) {
+            return ascii.bytes().slice(ascii.from(), ascii.to() - ascii.from());
+        }
+        return null;
+    }
+
+    // the size of the source in bytes, not chars, also for a source that isn't ascii
+    public long byteSize() {
+        return m_byteSize;
+    }
+
+    // 1-based line number of a char offset
+    public int line(int offset) {
+        return lines().line(offset);
+    }
+
+    // 1-based column of a char offset
+    public int column(int offset) {
+        return lines().column(offset);
+    }
+
+    private LineMap lines() {
+        if (m_lines == null) {
+            m_lines = new LineMap(m_content);
+        }
+        return m_lines;
+    }
+
+    ///////////////////////
+    /// UTILITY CLASSES ///
+    ///////////////////////
+    // read-only view of ascii bytes as chars, sharing the underlying buffer for sub sequences
+    private record AsciiCharSequence(ByteBuffer bytes, int from, int to) implements CharSequence {
+        @Override
+        public int length() {
+            return to - from;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) bytes.get(from + Objects.checkIndex(index, to - from));
+        }
+
+        @Override
+        public @NotNull CharSequence subSequence(int start, int end) {
+            Objects.checkFromToIndex(start, end, to - from);
+            return new AsciiCharSequence(bytes, from + start, from + end);
+        }
+
+        @Override
+        public @NotNull String toString() {
+            byte[] copy = new byte[to - from];
+            bytes.get(from, copy);
+            return new String(copy, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
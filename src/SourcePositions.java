@@ -0,0 +1,49 @@
+import java.util.IdentityHashMap;
+
+// where the functions and statements of one parse tree start in their source. ParseTree records don't carry
+// positions, so equal subtrees stay equal and the cached binary form stays small. a parse that needs them, like a
+// profiled run, asks Parser.parse(positions) to keep the offset of every function's and statement's first token
+// here, keyed by node identity
+public final class SourcePositions {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private final SourceFile m_source;
+    private final IdentityHashMap<Object, Integer> m_offsets = new IdentityHashMap<>();
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    public SourcePositions(SourceFile source) {
+        this.m_source = source;
+    }
+
+    void put(Object node, int offset) {
+        m_offsets.put(node, offset);
+    }
+
+    /////////////////
+    /// POSITIONS ///
+    /////////////////
+    public SourceFile source() {
+        return m_source;
+    }
+
+    // the char offset node starts at, -1 for a node the parse didn't record
+    public int offset(Object node) {
+        Integer offset = m_offsets.get(node);
+        return offset != null ? offset : -1;
+    }
+
+    // 1-based, 0 for a node the parse didn't record
+    public int line(Object node) {
+        int offset = offset(node);
+        return offset >= 0 ? m_source.line(offset) : 0;
+    }
+
+    // 1-based, 0 for a node the parse didn't record
+    public int column(Object node) {
+        int offset = offset(node);
+        return offset >= 0 ? m_source.column(offset) : 0;
+    }
+}
@@ -0,0 +1,113 @@
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// replaces `i * k` inside a loop, where i is an induction variable and k doesn't change in the loop, with a new
+// induction variable that starts at init * k and adds step * k on every back edge. int arithmetic wraps the same
+// way on both sides, so the two agree even after overflow
+public class StrengthReduction implements IrOptimizer.Pass {
+    @Override
+    public String name() {
+        return "strength-reduction";
+    }
+
+    private record Product(LoopAnalysis.InductionVariable variable, Ir.Value factor) {}
+
+    @Override
+    public int run(Ir.Function function) {
+        int changes = 0;
+        for (int index = 0; ; index++) {
+            List<LoopAnalysis.Loop> loops = LoopAnalysis.find(function);
+            if (index >= loops.size()) {
+                break;
+            }
+            changes += reduce(function, loops.get(index));
+        }
+        return changes;
+    }
+
+    private static int reduce(Ir.Function function, LoopAnalysis.Loop loop) {
+        List<LoopAnalysis.InductionVariable> variables = LoopAnalysis.inductionVariables(loop);
+        if (variables.isEmpty()) {
+            return 0;
+        }
+
+        // found first, the new variables add instructions to blocks of the loop
+        Map<Ir.Value, Product> products = new LinkedHashMap<>();
+        for (Ir.Block block : LoopAnalysis.reversePostorder(function)) {
+            if (!loop.blocks().contains(block)) {
+                continue;
+            }
+            for (Ir.Value value : block.instructions) {
+                Product product = value.op == Ir.Op.MUL ? product(value, loop, variables) : null;
+                if (product != null) {
+                    products.put(value, product);
+                }
+            }
+        }
+
+        Map<Product, Ir.Value> reduced = new HashMap<>(); // i * k twice in one loop shares one new variable
+        Map<Ir.Value, Ir.Value> replacements = new HashMap<>();
+        for (Map.Entry<Ir.Value, Product> entry : products.entrySet()) {
+            replacements.put(entry.getKey(), reduced.computeIfAbsent(entry.getValue(),
+                    product -> newVariable(function, loop, product.variable(), product.factor())));
+        }
+        if (replacements.isEmpty()) {
+            return 0;
+        }
+
+        function.replaceAllUses(replacements);
+        for (Ir.Block block : loop.blocks()) {
+            block.instructions.removeIf(replacements::containsKey);
+        }
+        return replacements.size();
+    }
+
+    private static Product product(Ir.Value multiply, LoopAnalysis.Loop loop, List<LoopAnalysis.InductionVariable> variables) {
+        for (int i = 0; i < 2; i++) {
+            LoopAnalysis.InductionVariable variable = LoopAnalysis.inductionVariable(variables, multiply.operands[i]);
+            Ir.Value factor = multiply.operands[1 - i];
+            if (variable != null && variable.step() != 0 && !loop.contains(factor)) {
+                return new Product(variable, factor);
+            }
+        }
+        return null;
+    }
+
+    // j = phi(init * k from the preheader, j + step * k from the latch)
+    private static Ir.Value newVariable(Ir.Function function, LoopAnalysis.Loop loop, LoopAnalysis.InductionVariable variable, Ir.Value factor) {
+        Ir.Block header = loop.header();
+        Ir.Block preheader = loop.preheader();
+        Ir.Block latch = loop.latches().getFirst();
+
+        Ir.Value start = place(preheader, function.newValue(Ir.Op.MUL, Ir.Type.INT, variable.init(), factor));
+        Ir.Value step;
+        if (factor.isConstant()) {
+            step = constant(function, preheader, variable.step() * factor.constant);
+        } else {
+            step = place(preheader, function.newValue(Ir.Op.MUL, Ir.Type.INT,
+                    constant(function, preheader, variable.step()), factor));
+        }
+
+        Ir.Value phi = function.newValue(Ir.Op.PHI, Ir.Type.INT, new Ir.Value[2]);
+        phi.block = header;
+        header.instructions.addFirst(phi);
+        Ir.Value next = place(latch, function.newValue(Ir.Op.ADD, Ir.Type.INT, phi, step));
+        phi.operands[header.predecessors.indexOf(preheader)] = start;
+        phi.operands[header.predecessors.indexOf(latch)] = next;
+        return phi;
+    }
+
+    private static Ir.Value constant(Ir.Function function, Ir.Block block, int value) {
+        Ir.Value constant = function.newValue(Ir.Op.CONST, Ir.Type.INT);
+        constant.constant = value;
+        return place(block, constant);
+    }
+
+    private static Ir.Value place(Ir.Block block, Ir.Value value) {
+        value.block = block;
+        block.instructions.add(value);
+        return value;
+    }
+}
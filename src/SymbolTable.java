@@ -0,0 +1,92 @@
+import java.util.Arrays;
+
+// the scoped symbol table of one function body. symbols live on a stack, and a symbol's position on that stack is
+// its frame slot (plus one, slot 0 holds the return value), so a block's slots are free again for the blocks after
+// it. names are looked up by their Identifiers id, which picks the bucket and is all a lookup compares. the names of a
+// parse tree are already in the pool, so getting their ids takes no lock and files checked in parallel don't wait on
+// each other. buckets chain symbols newest first, so a lookup finds the innermost declaration first and leaving a
+// scope only has to unlink the newest symbols from the heads of their chains
+public final class SymbolTable {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private static final int BUCKETS = 64; // a power of two, functions rarely have more locals than this
+
+    private final int[] m_buckets = new int[BUCKETS]; // the newest symbol in that bucket, -1 when none
+    private SemanticModel.Symbol[] m_symbols = new SemanticModel.Symbol[16];
+    private int[] m_ids = new int[16];
+    private int[] m_next = new int[16]; // the next older symbol in the same bucket
+    private int m_size;
+    private int m_maxSize;
+    private int m_scopeStart;
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    public SymbolTable() {
+        Arrays.fill(m_buckets, -1);
+    }
+
+    //////////////
+    /// SCOPES ///
+    //////////////
+    // returns a mark to hand back to exitScope
+    public long enterScope() {
+        long mark = (long) m_scopeStart << 32 | m_size;
+        m_scopeStart = m_size;
+        return mark;
+    }
+
+    public void exitScope(long mark) {
+        int size = (int) mark;
+        while (m_size > size) {
+            m_size--;
+            m_buckets[m_ids[m_size] & BUCKETS - 1] = m_next[m_size];
+            m_symbols[m_size] = null;
+        }
+        m_scopeStart = (int) (mark >>> 32);
+    }
+
+    ///////////////
+    /// SYMBOLS ///
+    ///////////////
+    // declares name in the innermost scope, null when the scope already has it
+    public SemanticModel.Symbol declare(String name, SemanticModel.Type type) {
+        int id = Identifiers.GLOBAL.intern(name);
+        int bucket = id & BUCKETS - 1;
+        for (int symbol = m_buckets[bucket]; symbol >= m_scopeStart; symbol = m_next[symbol]) {
+            if (m_ids[symbol] == id) {
+                return null;
+            }
+        }
+        if (m_size == m_symbols.length) {
+            m_symbols = Arrays.copyOf(m_symbols, m_size * 2);
+            m_ids = Arrays.copyOf(m_ids, m_size * 2);
+            m_next = Arrays.copyOf(m_next, m_size * 2);
+        }
+        SemanticModel.Symbol declared = new SemanticModel.Symbol(name, type, m_size + 1);
+        m_symbols[m_size] = declared;
+        m_ids[m_size] = id;
+        m_next[m_size] = m_buckets[bucket];
+        m_buckets[bucket] = m_size;
+        m_size++;
+        m_maxSize = Math.max(m_maxSize, m_size);
+        return declared;
+    }
+
+    // the innermost declaration of name, null when there is none
+    public SemanticModel.Symbol resolve(String name) {
+        int id = Identifiers.GLOBAL.find(name);
+        for (int symbol = id < 0 ? -1 : m_buckets[id & BUCKETS - 1]; symbol >= 0; symbol = m_next[symbol]) {
+            if (m_ids[symbol] == id) {
+                return m_symbols[symbol];
+            }
+        }
+        return null;
+    }
+
+    // slot 0 and every slot that was ever in use at once
+    public int frameSize() {
+        return m_maxSize + 1;
+    }
+}
@@ -0,0 +1,185 @@
+import java.util.Arrays;
+import java.util.List;
+
+// dense token stream produced by Tokenizer.tokenizeToStream()
+// tokens are stored as parallel primitive arrays (type ordinal, start offset, length) that point back into the
+// original source, so lexing allocates nothing per token. token text is only materialized when text() is called.
+// identifiers are interned into Identifiers.GLOBAL as they are added, so text() hands back the pool's shared String
+// and identifier() the name's id
+public final class TokenStream {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private static final Tokenizer.TokenType[] TYPES = Tokenizer.TokenType.values();
+    private static final int RECENT_IDS = 256; // a power of two
+
+    private final CharSequence m_src;
+    private byte[] m_types;
+    private int[] m_starts;
+    private int[] m_lengths;
+    private int[] m_ids; // the identifier id of each token, -1 for everything else
+    private int m_size;
+
+    // the ids this stream interned last, by hash, so a name only goes to the shared pool once per file
+    private final int[] m_recentIds = new int[RECENT_IDS];
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    public TokenStream(CharSequence src, int expectedTokens) {
+        int capacity = Math.max(16, expectedTokens);
+        this.m_src = src;
+        this.m_types = new byte[capacity];
+        this.m_starts = new int[capacity];
+        this.m_lengths = new int[capacity];
+        this.m_ids = new int[capacity];
+        this.m_size = 0;
+        Arrays.fill(m_recentIds, -1);
+    }
+
+    // builds a stream from the legacy `Token` list by laying the token text out as a synthetic source
+    public static TokenStream fromTokens(List<Tokenizer.Token> tokens) {
+        StringBuilder src = new StringBuilder(tokens.size() * 4);
+        int[] starts = new int[tokens.size()];
+        for (int i = 0; i < tokens.size(); i++) {
+            Tokenizer.Token token = tokens.get(i);
+            starts[i] = src.length();
+            src.append(token.value() != null ? token.value() : token.toString()).append(' ');
+        }
+
+        TokenStream stream = new TokenStream(src.toString(), tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            int end = (i + 1 < tokens.size() ? starts[i + 1] : src.length()) - 1; // drop the separator
+            stream.add(tokens.get(i).type(), starts[i], end - starts[i]);
+        }
+        return stream;
+    }
+
+    ////////////////
+    /// BUILDING ///
+    ////////////////
+    public void add(Tokenizer.TokenType type, int start, int length) {
+        int id = type == Tokenizer.TokenType.STOF_IDENTIFIER ? intern(start, start + length, Identifiers.hash(m_src, start, start + length)) : -1;
+        append(type, start, length, id);
+    }
+
+    // adds an identifier whose Identifiers.hash the lexer already worked out while it scanned the name
+    void addIdentifier(int start, int length, int hash) {
+        append(Tokenizer.TokenType.STOF_IDENTIFIER, start, length, intern(start, start + length, hash));
+    }
+
+    private void append(Tokenizer.TokenType type, int start, int length, int id) {
+        if (m_size == m_types.length) {
+            int capacity = m_size + (m_size >> 1);
+            m_types = Arrays.copyOf(m_types, capacity);
+            m_starts = Arrays.copyOf(m_starts, capacity);
+            m_lengths = Arrays.copyOf(m_lengths, capacity);
+            m_ids = Arrays.copyOf(m_ids, capacity);
+        }
+        m_types[m_size] = (byte) type.ordinal();
+        m_starts[m_size] = start;
+        m_lengths[m_size] = length;
+        m_ids[m_size] = id;
+        m_size++;
+    }
+
+    private int intern(int start, int end, int hash) {
+        int slot = hash & RECENT_IDS - 1;
+        int id = m_recentIds[slot];
+        if (id >= 0 && Identifiers.matches(Identifiers.GLOBAL.name(id), m_src, start, end)) {
+            return id;
+        }
+        id = Identifiers.GLOBAL.intern(m_src, start, end, hash);
+        m_recentIds[slot] = id;
+        return id;
+    }
+
+    //////////////
+    /// ACCESS ///
+    //////////////
+    public int size() {
+        return m_size;
+    }
+
+    public CharSequence source() {
+        return m_src;
+    }
+
+    public Tokenizer.TokenType type(int index) {
+        return TYPES[m_types[index]];
+    }
+
+    public int typeOrdinal(int index) {
+        return m_types[index];
+    }
+
+    public int start(int index) {
+        return m_starts[index];
+    }
+
+    public int length(int index) {
+        return m_lengths[index];
+    }
+
+    public int end(int index) {
+        return m_starts[index] + m_lengths[index];
+    }
+
+    // the interned id of an identifier token, -1 for any other token
+    public int identifier(int index) {
+        return m_ids[index];
+    }
+
+    // materializes the source text of a token. identifiers come back as the pool's shared String
+    public String text(int index) {
+        if (m_ids[index] >= 0) {
+            return Identifiers.GLOBAL.name(m_ids[index]);
+        }
+        int start = m_starts[index];
+        return m_src.subSequence(start, start + m_lengths[index]).toString();
+    }
+
+    // parses an int literal straight out of the source without building a string. its digits are whatever the lexer
+    // took for decimal digits, so like Integer.parseInt any unicode digit counts. the parser checks isIntInRange
+    // first, a literal too big for an int reads as -1
+    public int intValue(int index) {
+        long value = literalValue(index);
+        return value <= Integer.MAX_VALUE ? (int) value : -1;
+    }
+
+    public boolean isIntInRange(int index) {
+        return literalValue(index) <= Integer.MAX_VALUE;
+    }
+
+    // the literal's value, or Long.MAX_VALUE as soon as it passes Integer.MAX_VALUE
+    private long literalValue(int index) {
+        int start = m_starts[index];
+        int end = start + m_lengths[index];
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + Character.digit(m_src.charAt(i), 10);
+            if (value > Integer.MAX_VALUE) {
+                return Long.MAX_VALUE;
+            }
+        }
+        return value;
+    }
+
+    // boolean literals are always either `true` or `false`, so the first character is enough
+    public boolean booleanValue(int index) {
+        return m_src.charAt(m_starts[index]) == 't';
+    }
+
+    // converts back to the legacy token list, mostly useful for debugging and comparisons
+    public List<Tokenizer.Token> toTokens() {
+        Tokenizer.Token[] tokens = new Tokenizer.Token[m_size];
+        for (int i = 0; i < m_size; i++) {
+            Tokenizer.TokenType type = type(i);
+            tokens[i] = switch (type) {
+                case STOF_INT_LITERAL, STOF_BOOLEAN_LITERAL, STOF_IDENTIFIER -> new Tokenizer.Token(type, text(i));
+                default -> new Tokenizer.Token(type);
+            };
+        }
+        return List.of(tokens);
+    }
+}
@@ -1,5 +1,6 @@
 import org.jetbrains.annotations.NotNull;
 
+import java.nio.ByteBuffer;
 import java.util.Vector;
 
 @SuppressWarnings("ClassCanBeRecord")
@@ -7,12 +8,12 @@ public class Tokenizer {
     /// //////////////////////
     /// INSTANCE VARIABLES ///
     //////////////////////////
-    private final String m_src;
+    private final CharSequence m_src; // a String, or a zero-copy view over a SourceFile buffer
 
     ///////////////////
     /// CONSTRUCTOR ///
     /// ///////////////
-    public Tokenizer(String src) {
+    public Tokenizer(CharSequence src) {
         this.m_src = src;
     }
 
@@ -195,7 +196,7 @@ public class Tokenizer {
                     case "class" -> tokens.add(new Token(TokenType.STOF_CLASS));
 
                     // variable or class names
-                    default -> tokens.add(new Token(TokenType.STOF_IDENTIFIER, word));
+                    default -> tokens.add(new Token(TokenType.STOF_IDENTIFIER, Identifiers.GLOBAL.name(Identifiers.GLOBAL.intern(word))));
                 }
                 continue;
             }
@@ -253,4 +254,124 @@ public class Tokenizer {
         }
         return tokens; // return list of tokens
     }
+
+    /// //////////////////////////
+    /// TOKENIZE INTO A STREAM ///
+    //////////////////////////////
+    // lexes a whole file. ascii files are lexed straight from their bytes by AsciiLexer, anything else by
+    // tokenizeToStream() over the decoded chars
+    public static TokenStream tokenizeToStream(SourceFile source) {
+        ByteBuffer ascii = source.asciiBytes();
+        return ascii != null ? AsciiLexer.lex(source.content(), ascii) : new Tokenizer(source.content()).tokenizeToStream();
+    }
+
+    // same lexing rules as tokenize(), but records (type, offset, length) into a TokenStream instead of
+    // allocating a Token and a String per lexeme
+    public TokenStream tokenizeToStream() {
+        int length = m_src.length();
+        TokenStream tokens = new TokenStream(m_src, length >> 3); // a rough guess, the stream grows as needed
+        int i = 0;
+        while (i < length) {
+            char c = m_src.charAt(i);
+
+            // skip whitespace
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+
+            if (Character.isAlphabetic(c)) { // identifier or keyword
+                int start = i++;
+                while (i < length && Character.isLetterOrDigit(m_src.charAt(i))) {
+                    i++;
+                }
+                tokens.add(keywordType(start, i - start), start, i - start);
+                continue;
+            }
+
+            if (Character.isDigit(c)) { // int literal
+                int start = i;
+                while (i < length && Character.isDigit(m_src.charAt(i))) {
+                    i++;
+                }
+                tokens.add(TokenType.STOF_INT_LITERAL, start, i - start);
+                continue;
+            }
+
+            TokenType type = switch (c) {
+                // basic syntax
+                case '(' -> TokenType.STOF_OPEN_PARENTHESIS;
+                case ')' -> TokenType.STOF_CLOSE_PARENTHESIS;
+                case '{' -> TokenType.STOF_OPEN_CURLY_BRACKET;
+                case '}' -> TokenType.STOF_CLOSE_CURLY_BRACKET;
+                case '[' -> TokenType.STOF_OPEN_SQUARE_BRACKET;
+                case ']' -> TokenType.STOF_CLOSE_SQUARE_BRACKET;
+                case ',' -> TokenType.STOF_COMMA;
+                case ';' -> TokenType.STOF_SEMICOLON;
+
+                // operators
+                case '=' -> TokenType.STOF_EQUALS;
+                case '+' -> i + 1 < length && m_src.charAt(i + 1) == '+' ? TokenType.STOF_INCREMENT : TokenType.STOF_PLUS;
+                case '-' -> i + 1 < length && m_src.charAt(i + 1) == '-' ? TokenType.STOF_DECREMENT : TokenType.STOF_MINUS;
+                case '*' -> TokenType.STOF_MULTIPLY;
+                case '/' -> TokenType.STOF_DIVIDE;
+                case '%' -> TokenType.STOF_MODULO;
+                case '<' -> TokenType.STOF_LESS_THAN;
+                case '>' -> TokenType.STOF_GREATER_THAN;
+
+                // unexpected characters are skipped, same as tokenize()
+                default -> null;
+            };
+
+            if (type != null) {
+                int width = type == TokenType.STOF_INCREMENT || type == TokenType.STOF_DECREMENT ? 2 : 1;
+                tokens.add(type, i, width);
+                i += width;
+            } else {
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    // resolves a keyword from its position in the source, without building a String for the word
+    private TokenType keywordType(int start, int length) {
+        return switch (length) {
+            case 2 -> matches(start, "if") ? TokenType.STOF_IF : TokenType.STOF_IDENTIFIER;
+            case 3 -> switch (m_src.charAt(start)) {
+                case 'i' -> matches(start, "int") ? TokenType.STOF_INT : TokenType.STOF_IDENTIFIER;
+                case 'l' -> matches(start, "let") ? TokenType.STOF_LET : TokenType.STOF_IDENTIFIER;
+                case 'v' -> matches(start, "var") ? TokenType.STOF_VAR : TokenType.STOF_IDENTIFIER;
+                case 'f' -> matches(start, "for") ? TokenType.STOF_FOR : TokenType.STOF_IDENTIFIER;
+                default -> TokenType.STOF_IDENTIFIER;
+            };
+            case 4 -> switch (m_src.charAt(start)) {
+                case 't' -> matches(start, "true") ? TokenType.STOF_BOOLEAN_LITERAL : TokenType.STOF_IDENTIFIER;
+                case 'e' -> matches(start, "exit") ? TokenType.STOF_EXIT
+                        : matches(start, "elif") ? TokenType.STOF_ELIF
+                        : matches(start, "else") ? TokenType.STOF_ELSE : TokenType.STOF_IDENTIFIER;
+                case 'c' -> matches(start, "case") ? TokenType.STOF_CASE : TokenType.STOF_IDENTIFIER;
+                default -> TokenType.STOF_IDENTIFIER;
+            };
+            case 5 -> switch (m_src.charAt(start)) {
+                case 'f' -> matches(start, "false") ? TokenType.STOF_BOOLEAN_LITERAL : TokenType.STOF_IDENTIFIER;
+                case 'w' -> matches(start, "while") ? TokenType.STOF_WHILE : TokenType.STOF_IDENTIFIER;
+                case 'c' -> matches(start, "class") ? TokenType.STOF_CLASS : TokenType.STOF_IDENTIFIER;
+                default -> TokenType.STOF_IDENTIFIER;
+            };
+            case 6 -> matches(start, "return") ? TokenType.STOF_RETURN
+                    : matches(start, "switch") ? TokenType.STOF_SWITCH : TokenType.STOF_IDENTIFIER;
+            case 7 -> matches(start, "boolean") ? TokenType.STOF_BOOLEAN : TokenType.STOF_IDENTIFIER;
+            default -> TokenType.STOF_IDENTIFIER;
+        };
+    }
+
+    private boolean matches(int start, String keyword) {
+        for (int k = 0; k < keyword.length(); k++) {
+            if (m_src.charAt(start + k) != keyword.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
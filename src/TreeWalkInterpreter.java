@@ -0,0 +1,239 @@
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// the straightforward way to run a Stof program: walk the ParseTree records directly, keep variables in
+// name-keyed maps and box every value. it is the reference the ClosureInterpreter is checked and measured against
+public class TreeWalkInterpreter {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private final Map<String, ParseTree.FunctionNode> m_functions = new HashMap<>();
+    private final PrintStream m_out;
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    public TreeWalkInterpreter(ParseTree.ProgramNode program, PrintStream out) {
+        for (ParseTree.ClassNode classNode : program.classes()) {
+            for (ParseTree.FunctionNode function : classNode.functions()) {
+                m_functions.putIfAbsent(function.name(), function);
+            }
+        }
+        this.m_out = out;
+    }
+
+    ///////////////////////
+    /// UTILITY CLASSES ///
+    ///////////////////////
+    // marks that a return statement ran, carrying its value out through the enclosing blocks
+    private record Returned(Object value) {}
+
+    ///////////////
+    /// RUNNING ///
+    ///////////////
+    // runs main() and returns its result as the exit code
+    public int run() {
+        try {
+            Object result = call("main", List.of());
+            return result instanceof Integer code ? code : 0;
+        } catch (ClosureInterpreter.ExitSignal exit) {
+            return exit.code();
+        } catch (StackOverflowError e) {
+            throw new RuntimeException("Runtime error: stack overflow");
+        }
+    }
+
+    private Object call(String name, List<Object> arguments) {
+        if (name.equals("print") && !m_functions.containsKey(name)) {
+            m_out.println(arguments.size() == 1 ? arguments.getFirst() : arguments);
+            return 0;
+        }
+
+        ParseTree.FunctionNode function = m_functions.get(name);
+        if (function == null) {
+            throw new RuntimeException("Runtime error: unknown function " + name + "()");
+        }
+        if (function.parameters().size() != arguments.size()) {
+            throw new RuntimeException("Runtime error: " + name + "() expects " + function.parameters().size() + " arguments");
+        }
+
+        Deque<Map<String, Object>> scopes = new ArrayDeque<>();
+        scopes.push(new HashMap<>());
+        for (int i = 0; i < arguments.size(); i++) {
+            scopes.peek().put(function.parameters().get(i).name(), arguments.get(i));
+        }
+
+        Object result = executeBlock(function.body(), scopes);
+        return result instanceof Returned(Object value) ? value : 0;
+    }
+
+    //////////////////
+    /// STATEMENTS ///
+    //////////////////
+    private Object executeBlock(ParseTree.BlockNode block, Deque<Map<String, Object>> scopes) {
+        scopes.push(new HashMap<>());
+        try {
+            for (ParseTree.StatementNode statement : block.statements()) {
+                Object result = execute(statement, scopes);
+                if (result != null) {
+                    return result;
+                }
+            }
+            return null;
+        } finally {
+            scopes.pop();
+        }
+    }
+
+    // returns a Returned when a return statement ran, null otherwise
+    private Object execute(ParseTree.StatementNode statement, Deque<Map<String, Object>> scopes) {
+        switch (statement) {
+            case ParseTree.VariableDeclarationNode(String type, String name, ParseTree.ExpressionNode initializer) -> {
+                Object value = initializer != null ? evaluate(initializer, scopes)
+                        : type.equals("STOF_BOOLEAN") ? Boolean.FALSE : Integer.valueOf(0);
+                scopes.peek().put(name, value);
+                return null;
+            }
+            case ParseTree.VariableAssignmentNode(String name, ParseTree.ExpressionNode value) -> {
+                assign(name, evaluate(value, scopes), scopes);
+                return null;
+            }
+            case ParseTree.IfNode(ParseTree.ExpressionNode condition, ParseTree.BlockNode thenBlock,
+                                  List<ParseTree.ElseIfNode> elseIfClauses, ParseTree.BlockNode elseBlock) -> {
+                if (isTrue(evaluate(condition, scopes))) {
+                    return executeBlock(thenBlock, scopes);
+                }
+                for (ParseTree.ElseIfNode elif : elseIfClauses) {
+                    if (isTrue(evaluate(elif.condition(), scopes))) {
+                        return executeBlock(elif.block(), scopes);
+                    }
+                }
+                return elseBlock != null ? executeBlock(elseBlock, scopes) : null;
+            }
+            case ParseTree.ForNode(ParseTree.StatementNode initialization, ParseTree.ExpressionNode condition,
+                                   ParseTree.ExpressionNode increment, ParseTree.BlockNode body) -> {
+                scopes.push(new HashMap<>());
+                try {
+                    if (initialization != null) {
+                        execute(initialization, scopes);
+                    }
+                    while (condition == null || isTrue(evaluate(condition, scopes))) {
+                        Object result = executeBlock(body, scopes);
+                        if (result != null) {
+                            return result;
+                        }
+                        if (increment != null) {
+                            evaluate(increment, scopes);
+                        }
+                    }
+                    return null;
+                } finally {
+                    scopes.pop();
+                }
+            }
+            case ParseTree.WhileNode(ParseTree.ExpressionNode condition, ParseTree.BlockNode body) -> {
+                while (isTrue(evaluate(condition, scopes))) {
+                    Object result = executeBlock(body, scopes);
+                    if (result != null) {
+                        return result;
+                    }
+                }
+                return null;
+            }
+            case ParseTree.ReturnNode(ParseTree.ExpressionNode value) -> {
+                return new Returned(value != null ? evaluate(value, scopes) : 0);
+            }
+            case ParseTree.ExitNode(ParseTree.ExpressionNode exitCode) -> {
+                throw new ClosureInterpreter.ExitSignal((Integer) evaluate(exitCode, scopes));
+            }
+            case ParseTree.ExpressionStatementNode(ParseTree.ExpressionNode expression) -> {
+                evaluate(expression, scopes);
+                return null;
+            }
+        }
+    }
+
+    ///////////////////
+    /// EXPRESSIONS ///
+    ///////////////////
+    private Object evaluate(ParseTree.ExpressionNode expression, Deque<Map<String, Object>> scopes) {
+        return switch (expression) {
+            case ParseTree.IntLiteralNode(int value) -> value;
+            case ParseTree.BooleanLiteralNode(boolean value) -> value;
+            case ParseTree.VariableNode(String name) -> lookup(name, scopes).get(name);
+            case ParseTree.AssignmentExpressionNode(String variableName, ParseTree.ExpressionNode value) -> {
+                Object result = evaluate(value, scopes);
+                assign(variableName, result, scopes);
+                yield result;
+            }
+            case ParseTree.FunctionCallNode(String functionName, List<ParseTree.ExpressionNode> arguments) -> {
+                Object[] values = new Object[arguments.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = evaluate(arguments.get(i), scopes);
+                }
+                yield call(functionName, List.of(values));
+            }
+            case ParseTree.BinaryOperatorNode(ParseTree.ExpressionNode left, String operator, ParseTree.ExpressionNode right) -> {
+                int l = (Integer) evaluate(left, scopes);
+                int r = (Integer) evaluate(right, scopes);
+                yield switch (operator) {
+                    case "+" -> l + r;
+                    case "-" -> l - r;
+                    case "*" -> l * r;
+                    case "/" -> divide(l, r);
+                    case "%" -> remainder(l, r);
+                    case ">" -> l > r;
+                    case "<" -> l < r;
+                    case ">=" -> l >= r;
+                    case "<=" -> l <= r;
+                    default -> throw new RuntimeException("Runtime error: unknown operator " + operator);
+                };
+            }
+            case ParseTree.UnaryOperatorNode(String operator, ParseTree.ExpressionNode operand, boolean isPostfix) -> {
+                if (!(operand instanceof ParseTree.VariableNode(String name))) {
+                    throw new RuntimeException("Runtime error: " + operator + " needs a variable");
+                }
+                Map<String, Object> scope = lookup(name, scopes);
+                int before = (Integer) scope.get(name);
+                int after = operator.equals("++") ? before + 1 : before - 1;
+                scope.put(name, after);
+                yield isPostfix ? before : after;
+            }
+        };
+    }
+
+    private static int divide(int l, int r) {
+        if (r == 0) {
+            throw new RuntimeException("Runtime error: division by zero");
+        }
+        return l / r;
+    }
+
+    private static int remainder(int l, int r) {
+        if (r == 0) {
+            throw new RuntimeException("Runtime error: division by zero");
+        }
+        return l % r;
+    }
+
+    private static boolean isTrue(Object value) {
+        return value instanceof Boolean b ? b : (Integer) value != 0;
+    }
+
+    private static Map<String, Object> lookup(String name, Deque<Map<String, Object>> scopes) {
+        for (Map<String, Object> scope : scopes) {
+            if (scope.containsKey(name)) {
+                return scope;
+            }
+        }
+        throw new RuntimeException("Runtime error: unknown variable " + name);
+    }
+
+    private static void assign(String name, Object value, Deque<Map<String, Object>> scopes) {
+        lookup(name, scopes).put(name, value);
+    }
+}
@@ -0,0 +1,98 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// `--watch` mode. parses every file once, then waits for changes on disk and re-parses through an IncrementalParser
+// per file, so an edit inside one function only costs that function
+public class WatchMode {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private final Map<Path, IncrementalParser> m_parsers = new LinkedHashMap<>();
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    public WatchMode(List<Path> sources) {
+        for (Path source : sources) {
+            m_parsers.put(source.toAbsolutePath().normalize(), new IncrementalParser());
+        }
+    }
+
+    ////////////////
+    /// WATCHING ///
+    ////////////////
+    public void run() throws IOException, InterruptedException {
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            Set<Path> directories = new HashSet<>();
+            for (Path source : m_parsers.keySet()) {
+                reparse(source);
+                if (directories.add(source.getParent())) {
+                    source.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                }
+            }
+            System.out.println("Watching " + m_parsers.size() + " file(s) for changes...");
+
+            while (true) {
+                WatchKey key;
+                try {
+                    key = watcher.take();
+                } catch (ClosedWatchServiceException e) {
+                    return;
+                }
+
+                // editors often fire several events per save, so collect the distinct files first
+                Set<Path> changed = new HashSet<>();
+                Path directory = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.context() instanceof Path name) {
+                        Path source = directory.resolve(name).normalize();
+                        if (m_parsers.containsKey(source)) {
+                            changed.add(source);
+                        }
+                    }
+                }
+                key.reset();
+
+                for (Path source : changed) {
+                    reparse(source);
+                }
+            }
+        }
+    }
+
+    private void reparse(Path source) {
+        String content;
+        try {
+            // read into an owned String, a mapped buffer would change underneath the parser's last snapshot
+            content = Files.readString(source);
+        } catch (IOException e) {
+            System.out.println(source + ": An error has occurred: " + e.getMessage());
+            return;
+        }
+
+        long start = System.nanoTime();
+        IncrementalParser.Update update = m_parsers.get(source).update(content);
+        double millis = (System.nanoTime() - start) / 1_000_000.0;
+        if (!update.errors().isEmpty()) {
+            for (Parser.SyntaxError error : update.errors()) {
+                System.out.println(source + ":" + error.line() + ":" + error.column() + ": Parse error: " + error.message());
+            }
+        } else if (!update.incremental()) {
+            System.out.printf("%s: parsed in %.3f ms%n", source, millis);
+        } else if (update.reparsedFunction() != null) {
+            System.out.printf("%s: re-parsed %s() in %.3f ms%n", source, update.reparsedFunction(), millis);
+        }
+    }
+}
@@ -0,0 +1,998 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// compiles a ParseTree to x86-64 assembly for Linux (System V abi, GNU as syntax). locals and parameters get
+// registers from a linear-scan allocator, expression temporaries go through %eax/%ecx and the machine stack.
+// the output carries its own tiny runtime on raw syscalls, so binaries need neither libc nor a JVM
+public class X86Backend {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private static final String[] ARGUMENT_REGISTERS = {"%edi", "%esi", "%edx", "%ecx", "%r8d", "%r9d"};
+
+    // survive calls, so any variable can live in them. they are saved in the prologue of functions that use them
+    private static final String[] CALLEE_SAVED = {"%rbx", "%r12", "%r13", "%r14", "%r15"};
+
+    // clobbered by calls, so only variables that are never live across a call get them. parameters arrive in
+    // %rdi, %rsi, %r8 and %r9, so they are only offered %r10 and %r11 to keep the entry moves conflict free
+    private static final String[] CALLER_SAVED = {"%rsi", "%rdi", "%r8", "%r9", "%r10", "%r11"};
+    private static final String[] CALLER_SAVED_FOR_PARAMETERS = {"%r10", "%r11"};
+
+    private final Map<String, ParseTree.FunctionNode> m_functions = new HashMap<>();
+    private final List<ParseTree.FunctionNode> m_order = new ArrayList<>();
+
+    ///////////////////
+    /// CONSTRUCTOR ///
+    /// ///////////////
+    public X86Backend(ParseTree.ProgramNode program) {
+        for (ParseTree.ClassNode classNode : program.classes()) {
+            for (ParseTree.FunctionNode function : classNode.functions()) {
+                if (m_functions.putIfAbsent(function.name(), function) == null) {
+                    m_order.add(function);
+                }
+            }
+        }
+    }
+
+    ///////////////////////
+    /// UTILITY CLASSES ///
+    ///////////////////////
+    // one declaration of a local or parameter. start and end are positions in the linear walk of the function,
+    // the live interval the allocator works on
+    private static final class Variable {
+        final String name;
+        final boolean isBoolean;
+        final int parameterIndex; // -1 for locals
+        final int start;
+        int end;
+        boolean crossesCall;
+        int spillSlot;            // 1-based stack slot below the saved registers, 0 when not spilled
+        String register;          // 64-bit register name, null when spilled
+        String location;          // operand for 32-bit instructions: a register or a stack slot
+
+        Variable(String name, boolean isBoolean, int parameterIndex, int start) {
+            this.name = name;
+            this.isBoolean = isBoolean;
+            this.parameterIndex = parameterIndex;
+            this.start = start;
+            this.end = start;
+        }
+
+        boolean isParameter() {
+            return parameterIndex >= 0;
+        }
+    }
+
+    private record Loop(int start, Set<Variable> touched) {}
+
+    /////////////////
+    /// COMPILING ///
+    /////////////////
+    // returns the whole program as GNU as source
+    public String compile() {
+        ParseTree.FunctionNode main = m_functions.get("main");
+        if (main == null || !main.parameters().isEmpty()) {
+            throw new RuntimeException("Compile error: no main() function");
+        }
+
+        StringBuilder out = new StringBuilder();
+        out.append("    .text\n");
+        out.append("    .globl _start\n");
+        out.append("_start:\n");
+        out.append("    call main\n");
+        out.append("    movl %eax, %edi\n");
+        out.append("    call __stof_exit\n");
+        for (ParseTree.FunctionNode function : m_order) {
+            out.append('\n').append(new FunctionCompiler(function).compile());
+        }
+        out.append('\n').append(RUNTIME);
+        return out.toString();
+    }
+
+    // assembles and links with the GNU toolchain on the PATH
+    public static void assemble(Path assembly, Path executable) throws IOException, InterruptedException {
+        Path object = executable.resolveSibling(executable.getFileName() + ".o");
+        try {
+            run("as", "--64", "-o", object.toString(), assembly.toString());
+            run("ld", "-static", "-o", executable.toString(), object.toString());
+        } finally {
+            Files.deleteIfExists(object);
+        }
+    }
+
+    private static void run(String... command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes());
+        if (process.waitFor() != 0) {
+            throw new IOException(command[0] + " failed:\n" + output);
+        }
+    }
+
+    /////////////////
+    /// FUNCTIONS ///
+    /////////////////
+    private final class FunctionCompiler {
+        private final ParseTree.FunctionNode m_function;
+        private final StringBuilder m_out = new StringBuilder();
+
+        // filled by the liveness walk
+        private final Map<Object, Variable> m_resolved = new IdentityHashMap<>(); // tree node -> variable it names
+        private final List<Variable> m_variables = new ArrayList<>();
+        private final List<Integer> m_callPositions = new ArrayList<>();
+        private final Deque<Map<String, Variable>> m_scopes = new ArrayDeque<>();
+        private final Deque<Loop> m_loops = new ArrayDeque<>();
+        private int m_position = 0;
+
+        // filled by the allocator
+        private final List<String> m_savedRegisters = new ArrayList<>();
+        private int m_spillSlots = 0;
+
+        // code generation state
+        private int m_depth = 0; // 8-byte words pushed since the prologue, to keep calls 16-byte aligned
+        private int m_labels = 0;
+
+        FunctionCompiler(ParseTree.FunctionNode function) {
+            this.m_function = function;
+        }
+
+        String compile() {
+            analyze();
+            allocate();
+
+            String name = m_function.name();
+            emitLabel(name);
+            emit("pushq %rbp");
+            emit("movq %rsp, %rbp");
+            for (String register : m_savedRegisters) {
+                emit("pushq " + register);
+            }
+            int frame = 8 * m_spillSlots;
+            if ((m_savedRegisters.size() + m_spillSlots) % 2 != 0) {
+                frame += 8; // keeps %rsp 16-byte aligned after the prologue
+            }
+            if (frame > 0) {
+                emit("subq $" + frame + ", %rsp");
+            }
+
+            // move register parameters to wherever the allocator put them
+            for (Variable variable : m_variables) {
+                if (!variable.isParameter()) {
+                    continue;
+                }
+                if (variable.parameterIndex < ARGUMENT_REGISTERS.length) {
+                    emit("movl " + ARGUMENT_REGISTERS[variable.parameterIndex] + ", " + variable.location);
+                } else if (variable.register != null) {
+                    emit("movl " + stackParameter(variable.parameterIndex) + ", " + variable.location);
+                }
+            }
+
+            block(m_function.body());
+
+            // falling off the end of a function returns 0
+            emit("xorl %eax, %eax");
+            emitLabel(".L" + name + "_return");
+            if (m_savedRegisters.isEmpty()) {
+                emit("leave");
+            } else {
+                emit("leaq -" + 8 * m_savedRegisters.size() + "(%rbp), %rsp");
+                for (int i = m_savedRegisters.size() - 1; i >= 0; i--) {
+                    emit("popq " + m_savedRegisters.get(i));
+                }
+                emit("popq %rbp");
+            }
+            emit("ret");
+            return m_out.toString();
+        }
+
+        ////////////////
+        /// LIVENESS ///
+        ////////////////
+        // walks the function in the same order code is emitted, numbering every definition, use and call.
+        // a variable used inside a loop it was declared outside of stays live until the end of that loop
+        private void analyze() {
+            m_scopes.push(new HashMap<>());
+            List<ParseTree.ParameterNode> parameters = m_function.parameters();
+            for (int i = 0; i < parameters.size(); i++) {
+                ParseTree.ParameterNode parameter = parameters.get(i);
+                Variable variable = new Variable(parameter.name(), ClosureInterpreter.isBooleanType(parameter.type()), i, 0);
+                m_variables.add(variable);
+                m_scopes.peek().put(parameter.name(), variable);
+            }
+            analyzeBlock(m_function.body());
+            m_scopes.clear();
+
+            for (Variable variable : m_variables) {
+                int next = Collections.binarySearch(m_callPositions, variable.start);
+                next = next >= 0 ? next + 1 : -next - 1;
+                variable.crossesCall = next < m_callPositions.size() && m_callPositions.get(next) < variable.end;
+            }
+        }
+
+        private void analyzeBlock(ParseTree.BlockNode block) {
+            m_scopes.push(new HashMap<>());
+            for (ParseTree.StatementNode statement : block.statements()) {
+                analyzeStatement(statement);
+            }
+            m_scopes.pop();
+        }
+
+        private void analyzeStatement(ParseTree.StatementNode statement) {
+            switch (statement) {
+                case ParseTree.VariableDeclarationNode(String type, String name, ParseTree.ExpressionNode initializer) -> {
+                    boolean isBoolean = ClosureInterpreter.isBooleanType(type);
+                    if (initializer != null) {
+                        analyzeExpression(initializer);
+                        if (!type.equals("STOF_INT") && !type.equals("STOF_BOOLEAN")) {
+                            isBoolean = isBoolean(initializer); // var and let take the type of their initializer
+                        }
+                    }
+                    Variable variable = new Variable(name, isBoolean, -1, ++m_position);
+                    m_variables.add(variable);
+                    m_scopes.peek().put(name, variable);
+                    m_resolved.put(statement, variable);
+                }
+                case ParseTree.VariableAssignmentNode(String name, ParseTree.ExpressionNode value) -> {
+                    analyzeExpression(value);
+                    m_resolved.put(statement, touch(name));
+                }
+                case ParseTree.IfNode(ParseTree.ExpressionNode condition, ParseTree.BlockNode thenBlock,
+                                      List<ParseTree.ElseIfNode> elseIfClauses, ParseTree.BlockNode elseBlock) -> {
+                    analyzeExpression(condition);
+                    analyzeBlock(thenBlock);
+                    for (ParseTree.ElseIfNode elif : elseIfClauses) {
+                        analyzeExpression(elif.condition());
+                        analyzeBlock(elif.block());
+                    }
+                    if (elseBlock != null) {
+                        analyzeBlock(elseBlock);
+                    }
+                }
+                case ParseTree.ForNode(ParseTree.StatementNode initialization, ParseTree.ExpressionNode condition,
+                                       ParseTree.ExpressionNode increment, ParseTree.BlockNode body) -> {
+                    m_scopes.push(new HashMap<>());
+                    if (initialization != null) {
+                        analyzeStatement(initialization);
+                    }
+                    beginLoop();
+                    if (condition != null) {
+                        analyzeExpression(condition);
+                    }
+                    analyzeBlock(body);
+                    if (increment != null) {
+                        analyzeExpression(increment);
+                    }
+                    endLoop();
+                    m_scopes.pop();
+                }
+                case ParseTree.WhileNode(ParseTree.ExpressionNode condition, ParseTree.BlockNode body) -> {
+                    beginLoop();
+                    analyzeExpression(condition);
+                    analyzeBlock(body);
+                    endLoop();
+                }
+                case ParseTree.ReturnNode(ParseTree.ExpressionNode value) -> {
+                    if (value != null) {
+                        analyzeExpression(value);
+                    }
+                }
+                case ParseTree.ExitNode(ParseTree.ExpressionNode exitCode) -> {
+                    analyzeExpression(exitCode);
+                    m_callPositions.add(++m_position);
+                }
+                case ParseTree.ExpressionStatementNode(ParseTree.ExpressionNode expression) -> analyzeExpression(expression);
+            }
+        }
+
+        private void analyzeExpression(ParseTree.ExpressionNode expression) {
+            switch (expression) {
+                case ParseTree.VariableNode(String name) -> m_resolved.put(expression, touch(name));
+                case ParseTree.AssignmentExpressionNode(String variableName, ParseTree.ExpressionNode value) -> {
+                    analyzeExpression(value);
+                    m_resolved.put(expression, touch(variableName));
+                }
+                case ParseTree.UnaryOperatorNode(String operator, ParseTree.ExpressionNode operand, boolean isPostfix) -> {
+                    if (!(operand instanceof ParseTree.VariableNode(String name))) {
+                        throw new RuntimeException("Compile error in " + m_function.name() + "(): " + operator + " needs a variable");
+                    }
+                    m_resolved.put(expression, touch(name));
+                }
+                case ParseTree.BinaryOperatorNode(ParseTree.ExpressionNode left, String operator, ParseTree.ExpressionNode right) -> {
+                    analyzeExpression(left);
+                    analyzeExpression(right);
+                }
+                case ParseTree.FunctionCallNode(String functionName, List<ParseTree.ExpressionNode> arguments) -> {
+                    for (ParseTree.ExpressionNode argument : arguments) {
+                        analyzeExpression(argument);
+                    }
+                    m_callPositions.add(++m_position); // print() calls into the runtime, which clobbers the same registers
+                }
+                case ParseTree.IntLiteralNode ignored -> {}
+                case ParseTree.BooleanLiteralNode ignored -> {}
+            }
+        }
+
+        private Variable touch(String name) {
+            Variable variable = resolve(name);
+            variable.end = ++m_position;
+            for (Loop loop : m_loops) {
+                loop.touched().add(variable);
+            }
+            return variable;
+        }
+
+        private Variable resolve(String name) {
+            for (Map<String, Variable> scope : m_scopes) {
+                Variable variable = scope.get(name);
+                if (variable != null) {
+                    return variable;
+                }
+            }
+            throw new RuntimeException("Compile error in " + m_function.name() + "(): unknown variable " + name);
+        }
+
+        private void beginLoop() {
+            m_loops.push(new Loop(++m_position, new HashSet<>()));
+        }
+
+        // the back edge makes everything the loop touches that was declared before it live across the whole loop
+        private void endLoop() {
+            Loop loop = m_loops.pop();
+            int end = ++m_position;
+            for (Variable variable : loop.touched()) {
+                if (variable.start < loop.start()) {
+                    variable.end = Math.max(variable.end, end);
+                }
+            }
+        }
+
+        ///////////////////////////
+        /// REGISTER ALLOCATION ///
+        ///////////////////////////
+        // linear scan over the live intervals. when registers run out the interval that ends last is spilled
+        private void allocate() {
+            List<Variable> active = new ArrayList<>();
+            Set<String> free = new HashSet<>(List.of(CALLEE_SAVED));
+            free.addAll(List.of(CALLER_SAVED));
+            Set<String> saved = new HashSet<>();
+
+            List<Variable> ordered = new ArrayList<>(m_variables);
+            ordered.sort(Comparator.comparingInt(variable -> variable.start));
+            for (Variable variable : ordered) {
+                for (int i = active.size() - 1; i >= 0; i--) {
+                    if (active.get(i).end < variable.start) {
+                        free.add(active.remove(i).register);
+                    }
+                }
+
+                String register = pick(variable, free);
+                if (register == null) {
+                    // steal the register of the active interval that lives longest, if it suits this one
+                    Variable victim = null;
+                    for (Variable candidate : active) {
+                        if (accepts(variable, candidate.register) && (victim == null || candidate.end > victim.end)) {
+                            victim = candidate;
+                        }
+                    }
+                    if (victim != null && victim.end > variable.end) {
+                        register = victim.register;
+                        active.remove(victim);
+                        spill(victim);
+                    }
+                }
+
+                if (register == null) {
+                    spill(variable);
+                    continue;
+                }
+                free.remove(register);
+                variable.register = register;
+                variable.location = register32(register);
+                active.add(variable);
+                if (List.of(CALLEE_SAVED).contains(register) && saved.add(register)) {
+                    m_savedRegisters.add(register);
+                }
+            }
+
+            // stack slots sit below the saved registers, so their offsets are only known once allocation is done
+            for (Variable variable : m_variables) {
+                if (variable.spillSlot > 0) {
+                    variable.location = "-" + 8 * (m_savedRegisters.size() + variable.spillSlot) + "(%rbp)";
+                }
+            }
+        }
+
+        private String pick(Variable variable, Set<String> free) {
+            if (!variable.crossesCall) {
+                for (String register : variable.isParameter() ? CALLER_SAVED_FOR_PARAMETERS : CALLER_SAVED) {
+                    if (free.contains(register)) {
+                        return register;
+                    }
+                }
+            }
+            for (String register : CALLEE_SAVED) {
+                if (free.contains(register)) {
+                    return register;
+                }
+            }
+            return null;
+        }
+
+        private static boolean accepts(Variable variable, String register) {
+            if (List.of(CALLEE_SAVED).contains(register)) {
+                return true;
+            }
+            if (variable.crossesCall) {
+                return false;
+            }
+            return !variable.isParameter() || List.of(CALLER_SAVED_FOR_PARAMETERS).contains(register);
+        }
+
+        private void spill(Variable variable) {
+            variable.register = null;
+            if (variable.parameterIndex >= ARGUMENT_REGISTERS.length) {
+                variable.location = stackParameter(variable.parameterIndex); // already has a home in the caller's frame
+            } else {
+                variable.spillSlot = ++m_spillSlots;
+            }
+        }
+
+        private static String stackParameter(int index) {
+            return 16 + 8 * (index - ARGUMENT_REGISTERS.length) + "(%rbp)";
+        }
+
+        private static String register32(String register) {
+            return switch (register) {
+                case "%rbx" -> "%ebx";
+                case "%rsi" -> "%esi";
+                case "%rdi" -> "%edi";
+                default -> register + "d"; // %r8 .. %r15
+            };
+        }
+
+        //////////////////
+        /// STATEMENTS ///
+        //////////////////
+        private void block(ParseTree.BlockNode block) {
+            for (ParseTree.StatementNode statement : block.statements()) {
+                statement(statement);
+            }
+        }
+
+        private void statement(ParseTree.StatementNode statement) {
+            switch (statement) {
+                case ParseTree.VariableDeclarationNode(String type, String name, ParseTree.ExpressionNode initializer) ->
+                        store(m_resolved.get(statement), initializer);
+                case ParseTree.VariableAssignmentNode(String name, ParseTree.ExpressionNode value) ->
+                        store(m_resolved.get(statement), value);
+                case ParseTree.IfNode(ParseTree.ExpressionNode condition, ParseTree.BlockNode thenBlock,
+                                      List<ParseTree.ElseIfNode> elseIfClauses, ParseTree.BlockNode elseBlock) -> {
+                    String end = newLabel();
+                    String next = newLabel();
+                    branchIfFalse(condition, next);
+                    block(thenBlock);
+                    emit("jmp " + end);
+                    for (ParseTree.ElseIfNode elif : elseIfClauses) {
+                        emitLabel(next);
+                        next = newLabel();
+                        branchIfFalse(elif.condition(), next);
+                        block(elif.block());
+                        emit("jmp " + end);
+                    }
+                    emitLabel(next);
+                    if (elseBlock != null) {
+                        block(elseBlock);
+                    }
+                    emitLabel(end);
+                }
+                case ParseTree.ForNode(ParseTree.StatementNode initialization, ParseTree.ExpressionNode condition,
+                                       ParseTree.ExpressionNode increment, ParseTree.BlockNode body) -> {
+                    if (initialization != null) {
+                        statement(initialization);
+                    }
+                    String top = newLabel();
+                    String exit = newLabel();
+                    emitLabel(top);
+                    if (condition != null) {
+                        branchIfFalse(condition, exit);
+                    }
+                    block(body);
+                    if (increment != null) {
+                        effect(increment);
+                    }
+                    emit("jmp " + top);
+                    emitLabel(exit);
+                }
+                case ParseTree.WhileNode(ParseTree.ExpressionNode condition, ParseTree.BlockNode body) -> {
+                    String top = newLabel();
+                    String exit = newLabel();
+                    emitLabel(top);
+                    branchIfFalse(condition, exit);
+                    block(body);
+                    emit("jmp " + top);
+                    emitLabel(exit);
+                }
+                case ParseTree.ReturnNode(ParseTree.ExpressionNode value) -> {
+                    if (value != null) {
+                        expression(value);
+                    } else {
+                        emit("xorl %eax, %eax");
+                    }
+                    emit("jmp .L" + m_function.name() + "_return");
+                }
+                case ParseTree.ExitNode(ParseTree.ExpressionNode exitCode) -> {
+                    expression(exitCode);
+                    emit("movl %eax, %edi");
+                    alignedCall("__stof_exit");
+                }
+                case ParseTree.ExpressionStatementNode(ParseTree.ExpressionNode expression) -> effect(expression);
+            }
+        }
+
+        private void store(Variable variable, ParseTree.ExpressionNode value) {
+            if (value == null) {
+                emit("movl $0, " + variable.location);
+            } else if (value instanceof ParseTree.IntLiteralNode || value instanceof ParseTree.BooleanLiteralNode) {
+                emit("movl " + operand(value) + ", " + variable.location);
+            } else if (value instanceof ParseTree.BinaryOperatorNode(ParseTree.ExpressionNode left, String operator, ParseTree.ExpressionNode right)
+                    && (operator.equals("+") || operator.equals("-")) && m_resolved.get(left) == variable
+                    && isSimple(right) && !(isMemory(variable.location) && isMemory(operand(right)))) {
+                // x = x + y updates x in place
+                emit((operator.equals("+") ? "addl " : "subl ") + operand(right) + ", " + variable.location);
+            } else {
+                expression(value);
+                emit("movl %eax, " + variable.location);
+            }
+        }
+
+        // compiles an expression whose value is thrown away
+        private void effect(ParseTree.ExpressionNode expression) {
+            if (expression instanceof ParseTree.UnaryOperatorNode(String operator, ParseTree.ExpressionNode ignored, boolean isPostfix)) {
+                emit((operator.equals("++") ? "incl " : "decl ") + m_resolved.get(expression).location);
+            } else if (expression instanceof ParseTree.AssignmentExpressionNode(String name, ParseTree.ExpressionNode value)) {
+                store(m_resolved.get(expression), value);
+            } else {
+                expression(expression);
+            }
+        }
+
+        // jumps to target when the condition is false. comparisons become one cmp and an inverted conditional jump
+        private void branchIfFalse(ParseTree.ExpressionNode condition, String target) {
+            if (condition instanceof ParseTree.BinaryOperatorNode(ParseTree.ExpressionNode left, String operator, ParseTree.ExpressionNode right)
+                    && isComparison(operator)) {
+                compare(left, right);
+                switch (operator) {
+                    case ">" -> emit("jle " + target);
+                    case "<" -> emit("jge " + target);
+                    case ">=" -> emit("jl " + target);
+                    default -> emit("jg " + target); // "<="
+                }
+                return;
+            }
+            if (condition instanceof ParseTree.BooleanLiteralNode(boolean value)) {
+                if (!value) {
+                    emit("jmp " + target);
+                }
+                return;
+            }
+            expression(condition);
+            emit("testl %eax, %eax");
+            emit("je " + target);
+        }
+
+        // sets the flags for left - right, comparing a register variable in place when it can
+        private void compare(ParseTree.ExpressionNode left, ParseTree.ExpressionNode right) {
+            Variable variable = left instanceof ParseTree.VariableNode ? m_resolved.get(left) : null;
+            if (variable != null && isSimple(right) && !(isMemory(variable.location) && isMemory(operand(right)))) {
+                emit("cmpl " + operand(right) + ", " + variable.location);
+                return;
+            }
+            expression(left);
+            if (isSimple(right)) {
+                emit("cmpl " + operand(right) + ", %eax");
+            } else {
+                push();
+                expression(right);
+                emit("movl %eax, %ecx");
+                pop("%rax");
+                emit("cmpl %ecx, %eax");
+            }
+        }
+
+        private static boolean isComparison(String operator) {
+            return operator.equals(">") || operator.equals("<") || operator.equals(">=") || operator.equals("<=");
+        }
+
+        ///////////////////
+        /// EXPRESSIONS ///
+        ///////////////////
+        // leaves the value in %eax
+        private void expression(ParseTree.ExpressionNode expression) {
+            switch (expression) {
+                case ParseTree.IntLiteralNode(int value) -> emit(value == 0 ? "xorl %eax, %eax" : "movl $" + value + ", %eax");
+                case ParseTree.BooleanLiteralNode(boolean value) -> emit(value ? "movl $1, %eax" : "xorl %eax, %eax");
+                case ParseTree.VariableNode ignored -> emit("movl " + m_resolved.get(expression).location + ", %eax");
+                case ParseTree.AssignmentExpressionNode(String variableName, ParseTree.ExpressionNode value) -> {
+                    expression(value);
+                    emit("movl %eax, " + m_resolved.get(expression).location);
+                }
+                case ParseTree.FunctionCallNode(String functionName, List<ParseTree.ExpressionNode> arguments) ->
+                        call(functionName, arguments);
+                case ParseTree.BinaryOperatorNode(ParseTree.ExpressionNode left, String operator, ParseTree.ExpressionNode right) -> {
+                    if (isComparison(operator)) {
+                        compare(left, right);
+                        String set = switch (operator) {
+                            case ">" -> "setg";
+                            case "<" -> "setl";
+                            case ">=" -> "setge";
+                            default -> "setle";
+                        };
+                        emit(set + " %al");
+                        emit("movzbl %al, %eax");
+                        return;
+                    }
+                    expression(left);
+                    String source;
+                    if (isSimple(right)) {
+                        source = operand(right);
+                    } else {
+                        push();
+                        expression(right);
+                        emit("movl %eax, %ecx");
+                        pop("%rax");
+                        source = "%ecx";
+                    }
+                    switch (operator) {
+                        case "+" -> emit("addl " + source + ", %eax");
+                        case "-" -> emit("subl " + source + ", %eax");
+                        case "*" -> emit("imull " + source + ", %eax");
+                        case "/", "%" -> divide(source, right, operator.equals("%"));
+                        default -> throw new RuntimeException("Compile error in " + m_function.name() + "(): unknown operator " + operator);
+                    }
+                }
+                case ParseTree.UnaryOperatorNode(String operator, ParseTree.ExpressionNode operand, boolean isPostfix) -> {
+                    String location = m_resolved.get(expression).location;
+                    String step = operator.equals("++") ? "incl " : "decl ";
+                    if (isPostfix) {
+                        emit("movl " + location + ", %eax");
+                        emit(step + location);
+                    } else {
+                        emit(step + location);
+                        emit("movl " + location + ", %eax");
+                    }
+                }
+            }
+        }
+
+        // %eax = %eax / source (or % source). stof follows java: x / 0 is a runtime error and MIN_VALUE / -1
+        // wraps instead of trapping like idiv does
+        private void divide(String source, ParseTree.ExpressionNode right, boolean remainder) {
+            if (!source.equals("%ecx")) {
+                emit("movl " + source + ", %ecx");
+            }
+            if (right instanceof ParseTree.IntLiteralNode(int value) && value != 0 && value != -1) {
+                emit("cltd");
+                emit("idivl %ecx");
+                if (remainder) {
+                    emit("movl %edx, %eax");
+                }
+                return;
+            }
+            String divide = newLabel();
+            String done = newLabel();
+            emit("testl %ecx, %ecx");
+            emit("je __stof_division_by_zero");
+            emit("cmpl $-1, %ecx");
+            emit("jne " + divide);
+            emit(remainder ? "xorl %eax, %eax" : "negl %eax");
+            emit("jmp " + done);
+            emitLabel(divide);
+            emit("cltd");
+            emit("idivl %ecx");
+            if (remainder) {
+                emit("movl %edx, %eax");
+            }
+            emitLabel(done);
+        }
+
+        // arguments are evaluated left to right onto the machine stack, so nested calls can't clobber them, then
+        // the first six are loaded into registers and the rest are pushed again in reverse as stack arguments
+        private void call(String functionName, List<ParseTree.ExpressionNode> arguments) {
+            ParseTree.FunctionNode target = m_functions.get(functionName);
+            if (target == null && functionName.equals("print")) {
+                print(arguments);
+                return;
+            }
+            if (target == null) {
+                throw new RuntimeException("Compile error in " + m_function.name() + "(): unknown function " + functionName + "()");
+            }
+            if (target.parameters().size() != arguments.size()) {
+                throw new RuntimeException("Compile error in " + m_function.name() + "(): " + functionName + "() expects "
+                        + target.parameters().size() + " arguments");
+            }
+
+            for (ParseTree.ExpressionNode argument : arguments) {
+                pushValue(argument);
+            }
+            int count = arguments.size();
+            int onStack = Math.max(0, count - ARGUMENT_REGISTERS.length);
+            int padding = (m_depth + onStack) % 2 != 0 ? 8 : 0;
+            if (padding != 0) {
+                emit("subq $8, %rsp");
+            }
+            for (int i = count - 1; i >= ARGUMENT_REGISTERS.length; i--) {
+                int pushed = count - 1 - i;
+                emit("pushq " + (8 * (count - 1 - i) + padding + 8 * pushed) + "(%rsp)");
+            }
+            for (int i = 0; i < Math.min(count, ARGUMENT_REGISTERS.length); i++) {
+                emit("movl " + (8 * (count - 1 - i) + padding + 8 * onStack) + "(%rsp), " + ARGUMENT_REGISTERS[i]);
+            }
+            emit("call " + functionName);
+            int words = count + onStack + padding / 8;
+            if (words > 0) {
+                emit("addq $" + 8 * words + ", %rsp");
+            }
+            m_depth -= count;
+        }
+
+        // print(x) prints one value, several arguments print as "[a, b]" like the interpreters do. arguments are
+        // all evaluated before anything is printed. the call itself evaluates to 0
+        private void print(List<ParseTree.ExpressionNode> arguments) {
+            for (ParseTree.ExpressionNode argument : arguments) {
+                pushValue(argument);
+            }
+            int count = arguments.size();
+            int padding = m_depth % 2 != 0 ? 8 : 0;
+            if (padding != 0) {
+                emit("subq $8, %rsp");
+            }
+            if (count != 1) {
+                emit("call __stof_put_open");
+            }
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    emit("call __stof_put_separator");
+                }
+                emit("movl " + (8 * (count - 1 - i) + padding) + "(%rsp), %edi");
+                emit(isBoolean(arguments.get(i)) ? "call __stof_put_boolean" : "call __stof_put_int");
+            }
+            emit(count != 1 ? "call __stof_put_close" : "call __stof_put_newline");
+            int words = count + padding / 8;
+            if (words > 0) {
+                emit("addq $" + 8 * words + ", %rsp");
+            }
+            m_depth -= count;
+            emit("xorl %eax, %eax");
+        }
+
+        private boolean isBoolean(ParseTree.ExpressionNode expression) {
+            return switch (expression) {
+                case ParseTree.BooleanLiteralNode ignored -> true;
+                case ParseTree.VariableNode ignored -> m_resolved.get(expression).isBoolean;
+                case ParseTree.AssignmentExpressionNode ignored -> m_resolved.get(expression).isBoolean;
+                case ParseTree.BinaryOperatorNode(ParseTree.ExpressionNode left, String operator, ParseTree.ExpressionNode right) ->
+                        isComparison(operator);
+                case ParseTree.FunctionCallNode(String functionName, List<ParseTree.ExpressionNode> arguments) ->
+                        m_functions.containsKey(functionName) && ClosureInterpreter.isBooleanType(m_functions.get(functionName).returnType());
+                default -> false;
+            };
+        }
+
+        // literals and variables can be used directly as instruction operands
+        private boolean isSimple(ParseTree.ExpressionNode expression) {
+            return expression instanceof ParseTree.IntLiteralNode || expression instanceof ParseTree.BooleanLiteralNode
+                    || expression instanceof ParseTree.VariableNode;
+        }
+
+        private String operand(ParseTree.ExpressionNode expression) {
+            return switch (expression) {
+                case ParseTree.IntLiteralNode(int value) -> "$" + value;
+                case ParseTree.BooleanLiteralNode(boolean value) -> value ? "$1" : "$0";
+                default -> m_resolved.get(expression).location;
+            };
+        }
+
+        private static boolean isMemory(String operand) {
+            return operand.endsWith(")");
+        }
+
+        //////////////
+        /// OUTPUT ///
+        //////////////
+        private void alignedCall(String function) {
+            if (m_depth % 2 != 0) {
+                emit("subq $8, %rsp");
+                emit("call " + function);
+                emit("addq $8, %rsp");
+            } else {
+                emit("call " + function);
+            }
+        }
+
+        // pushes the value of an expression, literals and variables without going through %eax. only the low 32 bits
+        // of a pushed word are ever read back
+        private void pushValue(ParseTree.ExpressionNode expression) {
+            if (isSimple(expression)) {
+                Variable variable = m_resolved.get(expression);
+                emit("pushq " + (variable != null && variable.register != null ? variable.register : operand(expression)));
+                m_depth++;
+            } else {
+                expression(expression);
+                push();
+            }
+        }
+
+        private void push() {
+            emit("pushq %rax");
+            m_depth++;
+        }
+
+        private void pop(String register) {
+            emit("popq " + register);
+            m_depth--;
+        }
+
+        private String newLabel() {
+            return ".L" + m_function.name() + "_" + m_labels++;
+        }
+
+        private void emit(String instruction) {
+            m_out.append("    ").append(instruction).append('\n');
+        }
+
+        private void emitLabel(String label) {
+            m_out.append(label).append(":\n");
+        }
+    }
+
+    ///////////////
+    /// RUNTIME ///
+    ///////////////
+    // output is collected in a 4 KiB buffer and written with one syscall when it fills up or the program exits.
+    // the put functions only touch caller-saved registers
+    private static final String RUNTIME = """
+            # ---- stof runtime ----
+            __stof_put_int:
+                movl %edi, %eax
+                leaq __stof_digits+16(%rip), %rsi
+                movl $10, %r8d
+                testl %eax, %eax
+                jns 1f
+                negl %eax
+            1:
+                xorl %edx, %edx
+                divl %r8d
+                addb $48, %dl          # '0'
+                decq %rsi
+                movb %dl, (%rsi)
+                testl %eax, %eax
+                jnz 1b
+                testl %edi, %edi
+                jns 2f
+                decq %rsi
+                movb $45, (%rsi)       # '-'
+            2:
+                leaq __stof_digits+16(%rip), %rdx
+                subq %rsi, %rdx
+                jmp __stof_put_bytes
+
+            __stof_put_boolean:
+                leaq __stof_true(%rip), %rsi
+                movl $4, %edx
+                testl %edi, %edi
+                jnz __stof_put_bytes
+                leaq __stof_false(%rip), %rsi
+                movl $5, %edx
+                jmp __stof_put_bytes
+
+            __stof_put_open:
+                leaq __stof_open(%rip), %rsi
+                movl $1, %edx
+                jmp __stof_put_bytes
+
+            __stof_put_separator:
+                leaq __stof_separator(%rip), %rsi
+                movl $2, %edx
+                jmp __stof_put_bytes
+
+            __stof_put_close:
+                leaq __stof_close(%rip), %rsi
+                movl $2, %edx
+                jmp __stof_put_bytes
+
+            __stof_put_newline:
+                leaq __stof_close+1(%rip), %rsi
+                movl $1, %edx
+                jmp __stof_put_bytes
+
+            # copies %rdx bytes from %rsi into the output buffer
+            __stof_put_bytes:
+                movq __stof_out_length(%rip), %rax
+                leaq (%rax,%rdx), %rcx
+                cmpq $4096, %rcx
+                jbe 1f
+                pushq %rsi
+                pushq %rdx
+                call __stof_flush
+                popq %rdx
+                popq %rsi
+                xorl %eax, %eax
+            1:
+                leaq __stof_out(%rip), %rdi
+                addq %rax, %rdi
+                addq %rdx, %rax
+                movq %rdx, %rcx
+                rep movsb
+                movq %rax, __stof_out_length(%rip)
+                ret
+
+            __stof_flush:
+                leaq __stof_out(%rip), %rsi
+                movq __stof_out_length(%rip), %rdx
+            1:
+                testq %rdx, %rdx
+                jz 2f
+                movl $1, %eax
+                movl $1, %edi
+                syscall
+                testq %rax, %rax
+                jle 2f
+                addq %rax, %rsi
+                subq %rax, %rdx
+                jmp 1b
+            2:
+                movq $0, __stof_out_length(%rip)
+                ret
+
+            __stof_exit:
+                pushq %rdi
+                call __stof_flush
+                popq %rdi
+                movl $60, %eax
+                syscall
+
+            __stof_division_by_zero:
+                call __stof_flush
+                movl $1, %eax
+                movl $2, %edi
+                leaq __stof_division_message(%rip), %rsi
+                movl $32, %edx
+                syscall
+                movl $60, %eax
+                movl $1, %edi
+                syscall
+
+                .section .rodata
+            __stof_true:
+                .ascii "true"
+            __stof_false:
+                .ascii "false"
+            __stof_open:
+                .ascii "["
+            __stof_separator:
+                .ascii ", "
+            __stof_close:
+                .ascii "]\\n"
+            __stof_division_message:
+                .ascii "Runtime error: division by zero\\n"
+
+                .bss
+            __stof_out_length:
+                .zero 8
+            __stof_digits:
+                .zero 16
+            __stof_out:
+                .zero 4096
+            """;
+}
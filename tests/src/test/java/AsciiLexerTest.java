@@ -0,0 +1,100 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+// AsciiLexer lexes ascii sources straight from their bytes, Tokenizer from the decoded chars. both have to produce
+// exactly the same tokens, so which one a file goes through never changes how it parses
+class AsciiLexerTest {
+    /////////////
+    /// TESTS ///
+    /////////////
+    @ParameterizedTest
+    @MethodSource("Corpus#sources")
+    void corpusLexesTheSame(Path source) throws IOException {
+        assertSameTokens(SourceFile.open(source));
+    }
+
+    @Test
+    void emptyAndBlankSourcesLexTheSame() throws IOException {
+        assertSameTokens("");
+        assertSameTokens(" ");
+        assertSameTokens(" \t\r\n".repeat(50));
+    }
+
+    @Test
+    void keywordsAndNamesCloseToThemLexTheSame() throws IOException {
+        assertSameTokens("int integer in i nt iint boolean booleans let lett var variable true truex false falsey "
+                + "exit exits return returned if iff elif elifx else elsewhere switch switches case cases for fort "
+                + "while whilst class classy tru fals x1 a1b2c3 abc123def");
+    }
+
+    @Test
+    void numbersAndOperatorsLexTheSame() throws IOException {
+        assertSameTokens("0 007 123 2147483647 12ab ab12 +++ --- ++ -- +-+- */% <> = ; , ( ) { } [ ] a++b c--d 1+2-3*4/5%6");
+        assertSameTokens("x=1;y=x++;z=--y;if(x>y){return(x);}else{return[y];}");
+    }
+
+    @Test
+    void charactersTheLanguageDoesNotUseLexTheSame() throws IOException {
+        assertSameTokens("a @ b # c $ d ! e ? f . g & h | i ^ j ~ k \" l ' m : n \\ o `");
+    }
+
+    @Test
+    void everyAsciiCharacterBetweenTwoTokensLexesTheSame() throws IOException {
+        for (char c = 0; c < 128; c++) {
+            assertSameTokens("a" + c + "b1" + c + "23" + c);
+        }
+    }
+
+    @Test
+    void tokensAcrossEveryBlockBoundaryLexTheSame() throws IOException {
+        // the lexer classifies 64 bytes at a time, move every kind of token across the edge of a block
+        String tokens = "name123 while 4567 ++ elif x;";
+        for (int padding = 0; padding <= 130; padding++) {
+            assertSameTokens(" ".repeat(padding) + tokens);
+            assertSameTokens("a".repeat(padding) + " " + tokens);
+            assertSameTokens("9".repeat(padding) + tokens);
+        }
+    }
+
+    @Test
+    void longRunsLexTheSame() throws IOException {
+        assertSameTokens("n".repeat(1000) + " " + "1".repeat(9) + "\n".repeat(1000) + "+".repeat(1001) + "end");
+    }
+
+    ///////////////
+    /// HELPERS ///
+    ///////////////
+    private static void assertSameTokens(String src) throws IOException {
+        assertSameTokens(SourceFile.of(null, src.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void assertSameTokens(SourceFile source) {
+        assertNotNull(source.asciiBytes(), "an ascii source is lexed by AsciiLexer");
+        TokenStream bytes = Tokenizer.tokenizeToStream(source);
+        TokenStream chars = new Tokenizer(source.content()).tokenizeToStream();
+        String where = "in \"" + source.content() + "\"";
+
+        assertEquals(chars.size(), bytes.size(), where);
+        for (int i = 0; i < chars.size(); i++) {
+            String token = where + " token " + i;
+            assertEquals(chars.type(i), bytes.type(i), token);
+            assertEquals(chars.start(i), bytes.start(i), token);
+            assertEquals(chars.length(i), bytes.length(i), token);
+            assertEquals(chars.identifier(i), bytes.identifier(i), token);
+            assertEquals(chars.text(i), bytes.text(i), token);
+        }
+
+        // and the same tokens as the legacy Token list
+        List<Tokenizer.Token> legacy = new Tokenizer(source.content()).tokenize();
+        assertEquals(legacy, bytes.toTokens(), where);
+    }
+}
@@ -0,0 +1,209 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// the cache keeps the most recently used entries under its limit, also across runs, and an entry file that isn't
+// what put wrote is a miss that drops it, never an exception or the wrong bytes
+class CompileCacheTest {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private static final int HEADER_BYTES = 12; // as in CompileCache
+    private static final int ENTRY_BYTES = 100; // what a 100 byte artifact takes with its header
+
+    @TempDir
+    Path m_directory;
+
+    /////////////
+    /// TESTS ///
+    /////////////
+    @Test
+    void entryReadsBackAndCountsAHit() throws IOException {
+        CompileCache cache = CompileCache.open(m_directory, 1 << 20);
+        assertNull(cache.get("a"));
+        cache.put("a", artifact(1));
+        assertArrayEquals(artifact(1), cache.get("a"));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(ENTRY_BYTES, cache.totalBytes());
+
+        // and in the next run
+        CompileCache reopened = CompileCache.open(m_directory, 1 << 20);
+        assertArrayEquals(artifact(1), reopened.get("a"));
+        assertEquals(ENTRY_BYTES, reopened.totalBytes());
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() throws IOException {
+        CompileCache cache = CompileCache.open(m_directory, 3 * ENTRY_BYTES);
+        cache.put("a", artifact(1));
+        cache.put("b", artifact(2));
+        cache.put("c", artifact(3));
+        cache.get("a"); // b is now the oldest
+        cache.put("d", artifact(4));
+
+        assertNull(cache.get("b"));
+        assertFalse(Files.exists(entryFile("b")));
+        assertArrayEquals(artifact(1), cache.get("a"));
+        assertArrayEquals(artifact(3), cache.get("c"));
+        assertArrayEquals(artifact(4), cache.get("d"));
+        assertEquals(3 * ENTRY_BYTES, cache.totalBytes());
+    }
+
+    @Test
+    void recencySurvivesAReopen() throws IOException {
+        CompileCache cache = CompileCache.open(m_directory, 3 * ENTRY_BYTES);
+        cache.put("a", artifact(1));
+        cache.put("b", artifact(2));
+        cache.put("c", artifact(3));
+        // a run lasts less than the timestamps' resolution, so the order the next run reads is set by hand, then
+        // a hit has to move its entry to the newest again
+        age("a", 3);
+        age("b", 2);
+        age("c", 1);
+        cache = CompileCache.open(m_directory, 3 * ENTRY_BYTES);
+        assertArrayEquals(artifact(1), cache.get("a"));
+        assertTrue(Files.getLastModifiedTime(entryFile("a")).compareTo(Files.getLastModifiedTime(entryFile("c"))) > 0);
+
+        cache = CompileCache.open(m_directory, 3 * ENTRY_BYTES);
+        cache.put("d", artifact(4));
+        assertFalse(Files.exists(entryFile("b")));
+        assertTrue(Files.exists(entryFile("a")));
+        assertTrue(Files.exists(entryFile("c")));
+    }
+
+    @Test
+    void reopeningWithASmallerLimitEvictsTheOldest() throws IOException {
+        CompileCache cache = CompileCache.open(m_directory, 1 << 20);
+        for (int i = 0; i < 5; i++) {
+            cache.put("k" + i, artifact(i));
+            age("k" + i, 5 - i);
+        }
+        cache = CompileCache.open(m_directory, 2 * ENTRY_BYTES);
+        assertEquals(2 * ENTRY_BYTES, cache.totalBytes());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i >= 3, Files.exists(entryFile("k" + i)), "k" + i);
+        }
+    }
+
+    @Test
+    void truncatedEntryIsAMissAndDropped() throws IOException {
+        CompileCache cache = CompileCache.open(m_directory, 1 << 20);
+        cache.put("a", artifact(1));
+        byte[] entry = Files.readAllBytes(entryFile("a"));
+        for (int length : new int[] {entry.length - 1, HEADER_BYTES, HEADER_BYTES - 1, 4, 0}) {
+            cache.put("a", artifact(1));
+            Files.write(entryFile("a"), Arrays.copyOf(entry, length));
+            assertMiss(cache, "a", "cut to " + length + " bytes");
+        }
+    }
+
+    @Test
+    void corruptedEntryIsAMissAndDropped() throws IOException {
+        CompileCache cache = CompileCache.open(m_directory, 1 << 20);
+        cache.put("a", artifact(1));
+        byte[] entry = Files.readAllBytes(entryFile("a"));
+
+        // a wrong magic or format, then lengths that don't fit the file: negative, too large, and one so large that
+        // reading it blindly would run out of memory
+        int[][] corruptions = {{0, 0x12345678}, {4, 99}, {8, -1}, {8, Integer.MIN_VALUE}, {8, entry.length - HEADER_BYTES + 1}, {8, Integer.MAX_VALUE}};
+        for (int[] corruption : corruptions) {
+            cache.put("a", artifact(1));
+            byte[] corrupted = entry.clone();
+            ByteBuffer.wrap(corrupted).putInt(corruption[0], corruption[1]);
+            Files.write(entryFile("a"), corrupted);
+            assertMiss(cache, "a", "int at " + corruption[0] + " set to " + corruption[1]);
+        }
+
+        // a length shorter than what follows reads just that much
+        cache.put("a", artifact(1));
+        byte[] shorter = entry.clone();
+        ByteBuffer.wrap(shorter).putInt(8, 10);
+        Files.write(entryFile("a"), shorter);
+        assertArrayEquals(Arrays.copyOf(artifact(1), 10), cache.get("a"));
+    }
+
+    @Test
+    void entryFileDeletedBehindTheCacheIsAMiss() throws IOException {
+        CompileCache cache = CompileCache.open(m_directory, 1 << 20);
+        cache.put("a", artifact(1));
+        Files.delete(entryFile("a"));
+        assertMiss(cache, "a", "deleted");
+    }
+
+    @Test
+    void partialEntriesAreDeletedOnOpen() throws IOException {
+        Files.createDirectories(m_directory);
+        Path partial = Files.createTempFile(m_directory, "partial", ".tmp");
+        Files.write(partial, artifact(1));
+        Path unrelated = Files.writeString(m_directory.resolve("notes.txt"), "kept");
+
+        CompileCache cache = CompileCache.open(m_directory, 1 << 20);
+        assertFalse(Files.exists(partial));
+        assertTrue(Files.exists(unrelated));
+        assertEquals(0, cache.totalBytes());
+    }
+
+    @Test
+    void keyIsTheDigestOfKindFormatAndSource() throws NoSuchAlgorithmException {
+        // non-ascii text and a lone surrogate, over more than one of the encoder's chunks
+        String source = "class main { // é中😀 \ud800 }\n".repeat(1000);
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update("bytecode\u00001\u0000".getBytes(StandardCharsets.UTF_8));
+        digest.update(source.getBytes(StandardCharsets.UTF_8));
+        String expected = HexFormat.of().formatHex(digest.digest());
+
+        assertEquals(expected, CompileCache.key("bytecode", source));
+        assertEquals(expected, CompileCache.key("bytecode", new StringBuilder(source)));
+        assertNotEquals(expected, CompileCache.key("parse-tree", source));
+        assertNotEquals(expected, CompileCache.key("bytecode", source + " "));
+    }
+
+    ///////////////
+    /// HELPERS ///
+    ///////////////
+    // what cache.put stores, its bytes start at seed so entries can be told apart
+    private static byte[] artifact(int seed) {
+        byte[] bytes = new byte[ENTRY_BYTES - HEADER_BYTES];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (seed + i);
+        }
+        return bytes;
+    }
+
+    private void assertMiss(CompileCache cache, String key, String what) throws IOException {
+        int misses = cache.misses();
+        assertNull(cache.get(key), what);
+        assertEquals(misses + 1, cache.misses(), what);
+        assertFalse(Files.exists(entryFile(key)), what);
+        assertEquals(0, cache.totalBytes(), what);
+        // and the entry can be stored again
+        cache.put(key, artifact(7));
+        assertArrayEquals(artifact(7), cache.get(key), what);
+    }
+
+    private void age(String key, int minutes) throws IOException {
+        Files.setLastModifiedTime(entryFile(key), FileTime.fromMillis(System.currentTimeMillis() - minutes * 60_000L));
+    }
+
+    private Path entryFile(String key) {
+        return m_directory.resolve(key + ".entry");
+    }
+}
@@ -0,0 +1,24 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// the .stof programs the tests run over: stof/ at the root of the repository plus the runnable programs kept with
+// the tests. paths are relative to this module, the directory the tests run in
+final class Corpus {
+    private Corpus() {}
+
+    static List<Path> sources() throws IOException {
+        return CompileDriver.collectSources(List.of("../stof", "src/test/resources/corpus"));
+    }
+
+    // the parser recovers from syntax errors, a corpus program that has any is a broken test rather than a failure
+    // of what is being tested
+    static ParseTree.ProgramNode parse(Path source) throws IOException {
+        Parser parser = new Parser(Tokenizer.tokenizeToStream(SourceFile.open(source)));
+        ParseTree.ProgramNode program = parser.parse();
+        assertEquals(List.of(), parser.errors(), source + " has syntax errors");
+        return program;
+    }
+}
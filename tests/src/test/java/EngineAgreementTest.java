@@ -0,0 +1,162 @@
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// runs every program of the Corpus through each engine and checks they all print the same lines and exit with
+// the same code. the closure interpreter behind --run is the reference the others are compared against
+class EngineAgreementTest {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    @TempDir
+    Path m_directory;
+
+    // what a program printed and the code it exited with
+    private record Outcome(String output, int exitCode) {}
+
+    /////////////
+    /// TESTS ///
+    /////////////
+    @ParameterizedTest
+    @MethodSource("Corpus#sources")
+    void bytecodeVmAgreesWithTheInterpreter(Path source) throws IOException {
+        assertEquals(run(source), vm(source), source + " with --vm");
+    }
+
+    @ParameterizedTest
+    @MethodSource("Corpus#sources")
+    void jvmClassesAgreeWithTheInterpreter(Path source) throws IOException {
+        assertEquals(run(source), jvm(source), source + " with --jvm");
+    }
+
+    @ParameterizedTest
+    @MethodSource("Corpus#sources")
+    void irInterpreterAgreesWithTheInterpreter(Path source) throws IOException {
+        assertEquals(run(source), ir(source), source + " with --ir");
+    }
+
+    @ParameterizedTest
+    @MethodSource("Corpus#sources")
+    void loopOptimizedIrAgreesWithTheInterpreter(Path source) throws IOException {
+        assertEquals(run(source), optimizedIr(source, false), source + " with --ir and the loop passes");
+    }
+
+    @ParameterizedTest
+    @MethodSource("Corpus#sources")
+    void optimizedIrAgreesWithTheInterpreter(Path source) throws IOException {
+        assertEquals(run(source), optimizedIr(source, true), source + " with --ir --optimize");
+    }
+
+    @ParameterizedTest
+    @MethodSource("Corpus#sources")
+    void nativeBinaryAgreesWithTheInterpreter(Path source) throws IOException, InterruptedException {
+        assumeTrue(onPath("as") && onPath("ld"), "--native needs as and ld from binutils");
+        // an x86 process only keeps the low byte of its exit code
+        Outcome expected = run(source);
+        assertEquals(new Outcome(expected.output(), expected.exitCode() & 0xFF), nativeBinary(source), source + " with --native");
+    }
+
+    ///////////////
+    /// ENGINES ///
+    ///////////////
+    // each engine is driven the way CompileCommand drives it for its option
+
+    // --run
+    private static Outcome run(Path source) throws IOException {
+        ParseTree.ProgramNode program = Corpus.parse(source);
+        return capture(out -> new ClosureInterpreter(program, out).run());
+    }
+
+    // --vm, through the same encoding the compile cache stores
+    private static Outcome vm(Path source) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Bytecode.write(new BytecodeCompiler(Corpus.parse(source)).compile(), bytes);
+        Bytecode.Program bytecode = Bytecode.read(new ByteArrayInputStream(bytes.toByteArray()));
+        return capture(out -> new BytecodeVM(bytecode, out).run());
+    }
+
+    // --jvm. generated classes print to System.out, which is swapped for the capture while they run
+    private static Outcome jvm(Path source) throws IOException {
+        JvmBackend backend = new JvmBackend(Corpus.parse(source));
+        return capture(out -> {
+            PrintStream console = System.out;
+            System.setOut(out);
+            try {
+                return backend.run();
+            } finally {
+                System.setOut(console);
+            }
+        });
+    }
+
+    // --ir
+    private static Outcome ir(Path source) throws IOException {
+        Ir.Program program = new IrBuilder(Corpus.parse(source)).build();
+        return capture(out -> new IrInterpreter(program, out).run());
+    }
+
+    // --ir --optimize, or with inlining left out just its scalar and loop passes
+    private static Outcome optimizedIr(Path source, boolean inlining) throws IOException {
+        ParseTree.ProgramNode tree = Corpus.parse(source);
+        Ir.Program program = new IrBuilder(tree).build();
+        (inlining ? IrOptimizer.standard(new CallGraph(tree)) : IrOptimizer.standard()).optimize(program);
+        return capture(out -> new IrInterpreter(program, out).run());
+    }
+
+    // --native, assembled and linked into the temporary directory and run as a process of its own
+    private Outcome nativeBinary(Path source) throws IOException, InterruptedException {
+        Path assembly = m_directory.resolve("program.s");
+        Path executable = m_directory.resolve("program");
+        Files.writeString(assembly, new X86Backend(Corpus.parse(source)).compile());
+        X86Backend.assemble(assembly, executable);
+
+        Process process = new ProcessBuilder(executable.toString()).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            throw new AssertionError(source + " didn't finish within 30 seconds");
+        }
+        return new Outcome(output, process.exitValue());
+    }
+
+    ///////////////
+    /// HELPERS ///
+    ///////////////
+    private interface Engine {
+        int run(PrintStream out);
+    }
+
+    private static Outcome capture(Engine engine) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+        int exitCode = engine.run(out);
+        out.flush();
+        return new Outcome(bytes.toString(StandardCharsets.UTF_8), exitCode);
+    }
+
+    private static boolean onPath(String command) {
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return false;
+        }
+        for (String directory : path.split(File.pathSeparator)) {
+            if (Files.isExecutable(Path.of(directory, command))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,116 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// parseFlat() runs the same parser as parse() into a FlatTree, so converted back to records it has to give the same
+// tree and the same errors, for programs that parse and just as much for the ones recovery has to patch up
+class FlatTreeTest {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private static final int DEPTH = 20_000; // deeper than the thread stack allows a recursive walk to go
+
+    /////////////
+    /// TESTS ///
+    /////////////
+    @ParameterizedTest
+    @MethodSource("Corpus#sources")
+    void corpusMatchesParse(Path source) throws IOException {
+        assertEquals(List.of(), assertSameTree(Files.readString(source)), source + " has syntax errors");
+    }
+
+    @ParameterizedTest
+    @MethodSource("Corpus#sources")
+    void corpusCutShortMatchesParse(Path source) throws IOException {
+        // every prefix of the file, most of them in the middle of a token, a statement or a block
+        String text = Files.readString(source);
+        for (int end = 0; end < text.length(); end++) {
+            assertSameTree(text.substring(0, end));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("Corpus#sources")
+    void corpusWithALineMissingMatchesParse(Path source) throws IOException {
+        List<String> lines = Files.readAllLines(source);
+        int broken = 0;
+        for (int line = 0; line < lines.size(); line++) {
+            String text = String.join("\n", lines.subList(0, line)) + "\n" + String.join("\n", lines.subList(line + 1, lines.size()));
+            broken += assertSameTree(text).isEmpty() ? 0 : 1;
+        }
+        assertTrue(broken > 0, source + " parsed without any of its lines");
+    }
+
+    @ParameterizedTest
+    @MethodSource("FlatTreeTest#malformed")
+    void malformedSourceMatchesParse(String source) throws IOException {
+        assertFalse(assertSameTree(source).isEmpty(), "no syntax errors in\n" + source);
+    }
+
+    @Test
+    void deeplyParenthesizedExpressionMatchesParse() throws IOException {
+        StringBuilder src = new StringBuilder("class main {\n    int main(int a, int b) {\n        return ");
+        src.append("(".repeat(DEPTH)).append('a');
+        for (int level = 0; level < DEPTH; level++) {
+            src.append(level % 2 == 0 ? " + " : " * b - ").append(level + 1).append(')');
+        }
+        src.append(";\n    }\n}\n");
+        assertEquals(List.of(), assertSameTree(src.toString()));
+    }
+
+    //////////////
+    /// INPUTS ///
+    //////////////
+    // programs broken in the ways recovery handles differently: a statement, a header that takes its body along,
+    // a function, a class header, a class or block never closed, tokens outside any class
+    static List<String> malformed() {
+        return List.of(
+                "class main { int main() { int a = ; return a; } }",
+                "class main { int main() { if (1 > ) { return 1; } else { return 2; } return 3; } }",
+                "class main { int main() { for (int i = 0; i < ; i++) { print(i); } while (true { } return 0; } }",
+                "class main { int main() { int a = 1 int b = 2; print(a) print(b); return 2147483648; } }",
+                "class main { int f(int x { return x; } int g() { return 1; } boolean (int y) { return true; } }",
+                "class { int f() { return 1; } } class other int g() { return 2; } } class main { int main() { return 0; } }",
+                "class main { int f() { return 1; } int main() { return f(); }",
+                "class main { int main() { int a = 1; return a;",
+                "int x = 1; } } class main { int main() { return ((1 + 2) * ; } } )) class",
+                "class main { int main() { return f(1, , 2) + (3; } int g() { x++ ++; return -; } }",
+                "}}}{{{ class main { int main() { { { return 1; } } } }");
+    }
+
+    ///////////////
+    /// HELPERS ///
+    ///////////////
+    // parses source both ways and checks they agree, returns the syntax errors
+    private static List<Parser.SyntaxError> assertSameTree(String source) throws IOException {
+        Parser records = parser(source);
+        ParseTree.ProgramNode program = records.parse();
+        Parser flat = parser(source);
+        FlatTree tree = flat.parseFlat();
+        assertEquals(records.errors(), flat.errors(), source);
+        assertEquals(json(program), json(tree.toProgramNode()), source);
+        return records.errors();
+    }
+
+    private static Parser parser(String source) throws IOException {
+        return new Parser(Tokenizer.tokenizeToStream(SourceFile.of(null, source.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    // compared through the json dump, record equals recurses and the deep tree would overflow it
+    private static String json(ParseTree.ProgramNode program) throws IOException {
+        StringWriter out = new StringWriter();
+        ParseTreeDumper.dump(program, out, ParseTreeDumper.Format.JSON);
+        return out.toString();
+    }
+}
@@ -0,0 +1,204 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// whatever IncrementalParser does with an edit, splice one function in or parse the whole file again, the tree it
+// ends up with has to be the tree a full parse of the edited source gives
+class IncrementalParserTest {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private static final String SOURCE = """
+            class main {
+                int main() {
+                    return square(3) + clamp(7);
+                }
+
+                int square(int x) {
+                    return x * x;
+                }
+
+                int max(int a, int b) {
+                    if (a > b) {
+                        return a;
+                    }
+                    return b;
+                }
+
+                int clamp(int x) {
+                    return max(0, x % 50 - 25);
+                }
+            }
+
+            class other {
+                boolean odd(int n) {
+                    return n % 2 > 0;
+                }
+            }
+            """;
+
+    /////////////
+    /// TESTS ///
+    /////////////
+    @ParameterizedTest
+    @MethodSource("Corpus#sources")
+    void statementsAddedOneAtATimeMatchAFullParse(Path source) throws IOException {
+        // a print after every '{' that starts a block, each one an edit of its own. those after a class's '{' don't
+        // parse and are left out
+        String text = Files.readString(source);
+        IncrementalParser parser = new IncrementalParser();
+        parser.update(text);
+        int incremental = 0;
+        for (int brace = text.indexOf('{'); brace >= 0; brace = text.indexOf('{', brace + 1)) {
+            String edited = text.substring(0, brace + 1) + " print(1);" + text.substring(brace + 1);
+            if (!fullParse(edited).errors().isEmpty()) {
+                continue;
+            }
+            IncrementalParser.Update update = parser.update(edited);
+            assertEquals(List.of(), update.errors(), source + " at " + brace);
+            assertEquals(fullParse(edited).program(), update.program(), source + " at " + brace);
+            incremental += update.reparsedFunction() != null ? 1 : 0;
+            text = edited;
+        }
+        assertTrue(incremental > 0, source + " was never parsed a function at a time");
+    }
+
+    @Test
+    void editInsideAFunctionReparsesOnlyIt() {
+        IncrementalParser parser = new IncrementalParser();
+        ParseTree.ProgramNode before = assertMatchesFullParse(parser, SOURCE).program();
+
+        String edited = SOURCE.replace("return x * x;", "int y = x * x;\n        return y + 1;");
+        IncrementalParser.Update update = assertMatchesFullParse(parser, edited);
+        assertTrue(update.incremental());
+        assertEquals("square", update.reparsedFunction());
+
+        // the functions and classes the edit didn't touch are the old nodes
+        List<ParseTree.FunctionNode> functions = update.program().classes().get(0).functions();
+        assertSame(before.classes().get(0).functions().get(0), functions.get(0));
+        assertSame(before.classes().get(0).functions().get(2), functions.get(2));
+        assertSame(before.classes().get(1), update.program().classes().get(1));
+    }
+
+    @Test
+    void editsInARowShiftTheFunctionsAfterThem() {
+        IncrementalParser parser = new IncrementalParser();
+        assertMatchesFullParse(parser, SOURCE);
+
+        // each edit changes the length of a function, the next one lands in a function after it, then before it
+        String edited = SOURCE.replace("return square(3) + clamp(7);", "return square(3) + clamp(7) + max(1, 2) + 100;");
+        assertEquals("main", assertMatchesFullParse(parser, edited).reparsedFunction());
+        edited = edited.replace("return b;", "b++;\n        return b;");
+        assertEquals("max", assertMatchesFullParse(parser, edited).reparsedFunction());
+        edited = edited.replace("x % 50 - 25", "x");
+        assertEquals("clamp", assertMatchesFullParse(parser, edited).reparsedFunction());
+        edited = edited.replace("n % 2 > 0", "n > 0");
+        assertEquals("odd", assertMatchesFullParse(parser, edited).reparsedFunction());
+        edited = edited.replace("return x * x;", "return x;");
+        assertEquals("square", assertMatchesFullParse(parser, edited).reparsedFunction());
+    }
+
+    @Test
+    void renamingAFunctionReparsesIt() {
+        IncrementalParser parser = new IncrementalParser();
+        assertMatchesFullParse(parser, SOURCE);
+
+        String edited = SOURCE.replace("int square(int x)", "int squared(int x, int y)");
+        assertEquals("squared", assertMatchesFullParse(parser, edited).reparsedFunction());
+    }
+
+    @Test
+    void editAcrossTwoFunctionsParsesTheWholeFile() {
+        IncrementalParser parser = new IncrementalParser();
+        assertMatchesFullParse(parser, SOURCE);
+
+        // from square's body into max's header
+        String edited = SOURCE.replace("x * x;\n    }\n\n    int max(int a,", "x;\n    }\n\n    int maximum(int a,");
+        assertNotEquals(SOURCE, edited);
+        IncrementalParser.Update update = assertMatchesFullParse(parser, edited);
+        assertFalse(update.incremental());
+
+        // the regions found by that full parse are what the next edit is placed by
+        edited = edited.replace("return max(0, x % 50 - 25);", "return maximum(0, x);");
+        assertEquals("clamp", assertMatchesFullParse(parser, edited).reparsedFunction());
+    }
+
+    @Test
+    void functionAddedBetweenFunctionsMatchesAFullParse() {
+        IncrementalParser parser = new IncrementalParser();
+        assertMatchesFullParse(parser, SOURCE);
+
+        String edited = SOURCE.replace("    int max(", "    int cube(int x) {\n        return x * x * x;\n    }\n\n    int max(");
+        assertNull(assertMatchesFullParse(parser, edited).reparsedFunction());
+
+        edited = edited.replace("return x * x * x;", "return square(x) * x;");
+        assertEquals("cube", assertMatchesFullParse(parser, edited).reparsedFunction());
+        edited = edited.replace("return b;", "return b + 0;");
+        assertEquals("max", assertMatchesFullParse(parser, edited).reparsedFunction());
+    }
+
+    @Test
+    void functionAndClassRemovedMatchAFullParse() {
+        IncrementalParser parser = new IncrementalParser();
+        assertMatchesFullParse(parser, SOURCE);
+
+        String edited = SOURCE.replace("    int square(int x) {\n        return x * x;\n    }\n\n", "");
+        assertMatchesFullParse(parser, edited);
+        edited = edited.substring(0, edited.indexOf("class other"));
+        assertMatchesFullParse(parser, edited);
+        edited = edited.replace("clamp(7)", "clamp(8)");
+        assertEquals("main", assertMatchesFullParse(parser, edited).reparsedFunction());
+    }
+
+    @Test
+    void syntaxErrorKeepsTheLastGoodTree() {
+        IncrementalParser parser = new IncrementalParser();
+        ParseTree.ProgramNode good = assertMatchesFullParse(parser, SOURCE).program();
+
+        // a body that doesn't parse, then a function that loses its closing brace
+        String broken = SOURCE.replace("return x * x;", "return x * ;");
+        IncrementalParser.Update update = parser.update(broken);
+        assertEquals(fullParse(broken).errors(), update.errors());
+        assertSame(good, update.program());
+        broken = SOURCE.replace("        return x * x;\n    }\n", "        return x * x;\n");
+        update = parser.update(broken);
+        assertFalse(update.errors().isEmpty());
+        assertSame(good, update.program());
+
+        // the next edit is still diffed against the last good source
+        String edited = SOURCE.replace("return x * x;", "return x * 2;");
+        assertEquals("square", assertMatchesFullParse(parser, edited).reparsedFunction());
+    }
+
+    ///////////////
+    /// HELPERS ///
+    ///////////////
+    private record Parsed(ParseTree.ProgramNode program, List<Parser.SyntaxError> errors) {}
+
+    private static Parsed fullParse(String source) {
+        Parser parser = new Parser(new Tokenizer(source).tokenizeToStream());
+        return new Parsed(parser.parse(), parser.errors());
+    }
+
+    private static IncrementalParser.Update assertMatchesFullParse(IncrementalParser parser, String source) {
+        Parsed expected = fullParse(source);
+        assertEquals(List.of(), expected.errors(), "the edited source has syntax errors");
+        IncrementalParser.Update update = parser.update(source);
+        assertEquals(List.of(), update.errors());
+        assertEquals(expected.program(), update.program());
+        assertSame(update.program(), parser.program());
+        return update;
+    }
+}
@@ -0,0 +1,38 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// what is particular to running generated classes inside the compiler's own JVM
+class JvmBackendTest {
+    /////////////
+    /// TESTS ///
+    /////////////
+    @Test
+    void exitEndsTheProgramAndNotTheJvm() {
+        // built by hand, the parser doesn't produce exit statements
+        ParseTree.BlockNode body = new ParseTree.BlockNode(List.of(
+                new ParseTree.ExitNode(new ParseTree.BinaryOperatorNode(new ParseTree.IntLiteralNode(40), "+", new ParseTree.IntLiteralNode(2))),
+                new ParseTree.ReturnNode(new ParseTree.IntLiteralNode(1))));
+        JvmBackend backend = new JvmBackend(program("main", body));
+        assertEquals(42, backend.run());
+        assertEquals(42, backend.run(), "every run loads the classes again");
+    }
+
+    @Test
+    void classesNamedLikeTheCompilersOwnAreTheProgramsClasses() {
+        for (String name : List.of("Main", "Parser", "Ir", "Profiler", "JvmBackend", "String")) {
+            ParseTree.BlockNode body = new ParseTree.BlockNode(List.of(new ParseTree.ReturnNode(new ParseTree.IntLiteralNode(7))));
+            assertEquals(7, new JvmBackend(program(name, body)).run(), "a program whose class is " + name);
+        }
+    }
+
+    ///////////////
+    /// HELPERS ///
+    ///////////////
+    private static ParseTree.ProgramNode program(String className, ParseTree.BlockNode body) {
+        ParseTree.FunctionNode main = new ParseTree.FunctionNode("STOF_INT", "main", List.of(), body);
+        return new ParseTree.ProgramNode(List.of(new ParseTree.ClassNode(className, List.of(main))));
+    }
+}
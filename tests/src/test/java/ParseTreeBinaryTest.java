@@ -0,0 +1,148 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// every tree written by ParseTreeBinary has to read back into the same tree, whole or a function at a time.
+// trees are compared through their json dump: record equals recurses, and the deep trees here would overflow it
+class ParseTreeBinaryTest {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private static final int DEPTH = 20_000; // deeper than the thread stack allows a recursive walk to go
+
+    @TempDir
+    Path m_directory;
+
+    /////////////
+    /// TESTS ///
+    /////////////
+    @ParameterizedTest
+    @MethodSource("Corpus#sources")
+    void corpusRoundTrips(Path source) throws IOException {
+        assertRoundTrips(Corpus.parse(source));
+    }
+
+    @Test
+    void everyNodeTypeRoundTrips() throws IOException {
+        // built by hand, the parser doesn't produce exit statements or negative literals
+        ParseTree.ExpressionNode x = new ParseTree.VariableNode("x");
+        ParseTree.BlockNode body = new ParseTree.BlockNode(List.of(
+                new ParseTree.VariableDeclarationNode("STOF_INT", "y", null),
+                new ParseTree.VariableDeclarationNode("STOF_BOOLEAN", "b", new ParseTree.BooleanLiteralNode(true)),
+                new ParseTree.VariableAssignmentNode("y", new ParseTree.IntLiteralNode(Integer.MIN_VALUE)),
+                new ParseTree.IfNode(new ParseTree.BinaryOperatorNode(x, ">", new ParseTree.IntLiteralNode(-1)),
+                        new ParseTree.BlockNode(List.of(new ParseTree.ExitNode(new ParseTree.IntLiteralNode(Integer.MAX_VALUE)))),
+                        List.of(new ParseTree.ElseIfNode(new ParseTree.BooleanLiteralNode(false), new ParseTree.BlockNode(List.of()))),
+                        new ParseTree.BlockNode(List.of(new ParseTree.ExpressionStatementNode(new ParseTree.UnaryOperatorNode("++", x, true))))),
+                new ParseTree.IfNode(x, new ParseTree.BlockNode(List.of()), List.of(), null),
+                new ParseTree.ForNode(null, null, null, new ParseTree.BlockNode(List.of())),
+                new ParseTree.ForNode(new ParseTree.VariableDeclarationNode("STOF_INT", "i", new ParseTree.IntLiteralNode(0)),
+                        new ParseTree.BinaryOperatorNode(new ParseTree.VariableNode("i"), "<", x),
+                        new ParseTree.UnaryOperatorNode("--", new ParseTree.VariableNode("i"), false),
+                        new ParseTree.BlockNode(List.of(new ParseTree.ExpressionStatementNode(
+                                new ParseTree.AssignmentExpressionNode("y", new ParseTree.FunctionCallNode("f", List.of(x, new ParseTree.IntLiteralNode(2)))))))),
+                new ParseTree.WhileNode(new ParseTree.BooleanLiteralNode(false), new ParseTree.BlockNode(List.of())),
+                new ParseTree.ExpressionStatementNode(new ParseTree.FunctionCallNode("print", List.of())),
+                new ParseTree.ReturnNode(null),
+                new ParseTree.ReturnNode(x)));
+        assertRoundTrips(program(List.of(new ParseTree.ParameterNode("STOF_INT", "x")), body));
+    }
+
+    @Test
+    void deeplyParenthesizedExpressionRoundTrips() throws IOException {
+        // ((((a + 1) * b - 2) + 3) ...), parsed from source like the NESTED_PARENS benchmark corpus
+        StringBuilder src = new StringBuilder("class main {\n    int main(int a, int b) {\n        return ");
+        src.append("(".repeat(DEPTH)).append('a');
+        for (int level = 0; level < DEPTH; level++) {
+            src.append(level % 2 == 0 ? " + " : " * b - ").append(level + 1).append(')');
+        }
+        src.append(";\n    }\n}\n");
+        assertRoundTrips(parse(src.toString()));
+    }
+
+    @Test
+    void deeplyNestedStatementsRoundTrip() throws IOException {
+        // while (x) { if (x) { while (x) { ... } } else { return x; } }, built by hand since the parser recurses on
+        // nested statements
+        ParseTree.ExpressionNode x = new ParseTree.VariableNode("x");
+        ParseTree.BlockNode returnX = new ParseTree.BlockNode(List.of(new ParseTree.ReturnNode(x)));
+        ParseTree.BlockNode block = returnX;
+        for (int level = 0; level < DEPTH; level++) {
+            ParseTree.StatementNode statement = level % 2 == 0
+                    ? new ParseTree.WhileNode(x, block)
+                    : new ParseTree.IfNode(x, block, List.of(), returnX);
+            block = new ParseTree.BlockNode(List.of(statement));
+        }
+        assertRoundTrips(program(List.of(new ParseTree.ParameterNode("STOF_BOOLEAN", "x")), block));
+    }
+
+    @Test
+    void deeplyNestedUnaryOperatorsRoundTrip() throws IOException {
+        ParseTree.ExpressionNode expression = new ParseTree.VariableNode("x");
+        for (int level = 0; level < DEPTH; level++) {
+            expression = new ParseTree.UnaryOperatorNode(level % 2 == 0 ? "++" : "--", expression, level % 3 == 0);
+        }
+        ParseTree.BlockNode body = new ParseTree.BlockNode(List.of(new ParseTree.ReturnNode(expression)));
+        assertRoundTrips(program(List.of(new ParseTree.ParameterNode("STOF_INT", "x")), body));
+    }
+
+    @ParameterizedTest
+    @MethodSource("Corpus#sources")
+    void readerDecodesEachFunctionOnItsOwn(Path source) throws IOException {
+        ParseTree.ProgramNode program = Corpus.parse(source);
+        Path file = m_directory.resolve("program.stpt");
+        Files.write(file, ParseTreeBinary.toBytes(program));
+
+        ParseTreeBinary.Reader reader = ParseTreeBinary.open(file);
+        assertEquals(program.classes().size(), reader.classCount());
+        for (int c = 0; c < program.classes().size(); c++) {
+            ParseTree.ClassNode classNode = program.classes().get(c);
+            assertEquals(classNode.name(), reader.className(c));
+            List<String> names = new ArrayList<>();
+            classNode.functions().forEach(function -> names.add(function.name()));
+            assertEquals(names, reader.functionNames(c));
+            // last to first, so no function is decoded on the way to another
+            for (int f = classNode.functions().size() - 1; f >= 0; f--) {
+                assertEquals(classNode.functions().get(f), reader.function(c, f));
+            }
+        }
+        assertEquals(json(program), json(reader.program()));
+    }
+
+    ///////////////
+    /// HELPERS ///
+    ///////////////
+    private static void assertRoundTrips(ParseTree.ProgramNode program) throws IOException {
+        assertEquals(json(program), json(ParseTreeBinary.read(ParseTreeBinary.toBytes(program))));
+    }
+
+    private static ParseTree.ProgramNode program(List<ParseTree.ParameterNode> parameters, ParseTree.BlockNode body) {
+        ParseTree.FunctionNode main = new ParseTree.FunctionNode("STOF_INT", "main", parameters, body);
+        return new ParseTree.ProgramNode(List.of(new ParseTree.ClassNode("main", List.of(main))));
+    }
+
+    private static ParseTree.ProgramNode parse(String src) throws CharacterCodingException {
+        Parser parser = new Parser(Tokenizer.tokenizeToStream(SourceFile.of(null, src.getBytes(StandardCharsets.UTF_8))));
+        ParseTree.ProgramNode program = parser.parse();
+        assertEquals(List.of(), parser.errors());
+        return program;
+    }
+
+    private static String json(ParseTree.ProgramNode program) throws IOException {
+        StringWriter out = new StringWriter();
+        ParseTreeDumper.dump(program, out, ParseTreeDumper.Format.JSON);
+        return out.toString();
+    }
+}
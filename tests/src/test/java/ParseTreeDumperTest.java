@@ -0,0 +1,591 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// the text dump has to stay byte for byte what the recursive dump in Parser wrote before ParseTreeDumper replaced it,
+// tools diff against it. the json dump has to be json a reader accepts and hold the whole tree: read back with the
+// small reader at the bottom it has to give the tree that was dumped
+class ParseTreeDumperTest {
+    /// //////////////////////
+    /// INSTANCE VARIABLES ///
+    //////////////////////////
+    private static final int DEPTH = 20_000; // deeper than the thread stack allows a recursive walk to go
+
+    /////////////
+    /// TESTS ///
+    /////////////
+    @Test
+    void textDumpIsWhatTheOldDumpWrote() throws IOException {
+        // main_parse_tree.txt was written by the recursive dump, from the main.stof next to it
+        Path source = Path.of("src/test/resources/dump/main.stof");
+        assertEquals(Files.readString(source.resolveSibling("main_parse_tree.txt")), dump(Corpus.parse(source), ParseTreeDumper.Format.TEXT));
+    }
+
+    @ParameterizedTest
+    @MethodSource("Corpus#sources")
+    void corpusTextDumpMatchesTheOldDump(Path source) throws IOException {
+        ParseTree.ProgramNode program = Corpus.parse(source);
+        assertEquals(OldDump.dump(program), dump(program, ParseTreeDumper.Format.TEXT), source.toString());
+    }
+
+    @Test
+    void everyNodeTypeDumpsLikeTheOldDump() throws IOException {
+        ParseTree.ProgramNode program = everyNodeType();
+        assertEquals(OldDump.dump(program), dump(program, ParseTreeDumper.Format.TEXT));
+    }
+
+    @ParameterizedTest
+    @MethodSource("Corpus#sources")
+    void corpusJsonReadsBackIntoTheTree(Path source) throws IOException {
+        ParseTree.ProgramNode program = Corpus.parse(source);
+        assertEquals(program, JsonTree.program(Json.parse(dump(program, ParseTreeDumper.Format.JSON))), source.toString());
+    }
+
+    @Test
+    void everyNodeTypeReadsBackFromJson() throws IOException {
+        ParseTree.ProgramNode program = everyNodeType();
+        assertEquals(program, JsonTree.program(Json.parse(dump(program, ParseTreeDumper.Format.JSON))));
+    }
+
+    @Test
+    void namesAreEscapedInJson() throws IOException {
+        // the parser only makes plain names, but the dump mustn't break on others
+        String name = "quote\" backslash\\ newline\n tab\t nul\u0000 é😀";
+        ParseTree.BlockNode body = new ParseTree.BlockNode(List.of(new ParseTree.ReturnNode(new ParseTree.VariableNode(name))));
+        ParseTree.ProgramNode program = new ParseTree.ProgramNode(List.of(new ParseTree.ClassNode(name,
+                List.of(new ParseTree.FunctionNode("STOF_INT", name, List.of(new ParseTree.ParameterNode("STOF_INT", name)), body)))));
+        assertEquals(program, JsonTree.program(Json.parse(dump(program, ParseTreeDumper.Format.JSON))));
+    }
+
+    @Test
+    void deepTreeDumpsInBothFormats() throws IOException {
+        // nested deeper than the old dump could go, so the text is checked line by line instead
+        ParseTree.ExpressionNode expression = new ParseTree.VariableNode("x");
+        for (int level = 0; level < DEPTH; level++) {
+            expression = new ParseTree.UnaryOperatorNode("++", expression, false);
+        }
+        ParseTree.BlockNode body = new ParseTree.BlockNode(List.of(new ParseTree.ReturnNode(expression)));
+        ParseTree.ProgramNode program = new ParseTree.ProgramNode(List.of(new ParseTree.ClassNode("main",
+                List.of(new ParseTree.FunctionNode("STOF_INT", "main", List.of(), body)))));
+
+        String[] lines = dump(program, ParseTreeDumper.Format.TEXT).split("\n");
+        assertEquals(7 + DEPTH + 1, lines.length);
+        for (int level = 0; level < DEPTH; level++) {
+            assertEquals("  ".repeat(6 + level) + "UnaryOperator: ++ (prefix)", lines[7 + level]);
+        }
+        assertEquals("  ".repeat(6 + DEPTH) + "Variable: x", lines[7 + DEPTH]);
+
+        Json.checkSyntax(dump(program, ParseTreeDumper.Format.JSON));
+    }
+
+    @Test
+    void jsonReaderRejectsWhatIsntJson() {
+        // the reader the dump is checked with has to catch broken json, or the checks above prove nothing
+        for (String broken : List.of("", "{", "{\"a\":1,}", "[1 2]", "{\"a\" 1}", "\"a\nb\"", "{\"a\":tru}", "[]]", "{'a':1}", "01")) {
+            assertThrows(IllegalArgumentException.class, () -> Json.parse(broken), broken);
+            assertThrows(IllegalArgumentException.class, () -> Json.checkSyntax(broken), broken);
+        }
+    }
+
+    ///////////////
+    /// HELPERS ///
+    ///////////////
+    private static String dump(ParseTree.ProgramNode program, ParseTreeDumper.Format format) throws IOException {
+        StringWriter out = new StringWriter();
+        ParseTreeDumper.dump(program, out, format);
+        return out.toString();
+    }
+
+    // one of every node, and every optional part both there and missing. built by hand, the parser doesn't produce
+    // exit statements, statement-level assignments or negative literals
+    private static ParseTree.ProgramNode everyNodeType() {
+        ParseTree.ExpressionNode x = new ParseTree.VariableNode("x");
+        ParseTree.BlockNode empty = new ParseTree.BlockNode(List.of());
+        ParseTree.BlockNode body = new ParseTree.BlockNode(List.of(
+                new ParseTree.VariableDeclarationNode("STOF_INT", "y", null),
+                new ParseTree.VariableDeclarationNode("STOF_BOOLEAN", "b", new ParseTree.BooleanLiteralNode(true)),
+                new ParseTree.VariableAssignmentNode("y", new ParseTree.IntLiteralNode(Integer.MIN_VALUE)),
+                new ParseTree.IfNode(new ParseTree.BinaryOperatorNode(x, ">", new ParseTree.IntLiteralNode(-1)),
+                        new ParseTree.BlockNode(List.of(new ParseTree.ExitNode(new ParseTree.IntLiteralNode(3)))),
+                        List.of(new ParseTree.ElseIfNode(new ParseTree.BooleanLiteralNode(false), empty),
+                                new ParseTree.ElseIfNode(x, new ParseTree.BlockNode(List.of(new ParseTree.ReturnNode(x))))),
+                        new ParseTree.BlockNode(List.of(new ParseTree.ExpressionStatementNode(new ParseTree.UnaryOperatorNode("++", x, true))))),
+                new ParseTree.IfNode(x, empty, List.of(), null),
+                new ParseTree.ForNode(null, null, null, empty),
+                new ParseTree.ForNode(new ParseTree.VariableDeclarationNode("STOF_INT", "i", new ParseTree.IntLiteralNode(0)),
+                        new ParseTree.BinaryOperatorNode(new ParseTree.VariableNode("i"), "<", x),
+                        new ParseTree.UnaryOperatorNode("--", new ParseTree.VariableNode("i"), false),
+                        new ParseTree.BlockNode(List.of(new ParseTree.ExpressionStatementNode(
+                                new ParseTree.AssignmentExpressionNode("y", new ParseTree.FunctionCallNode("f", List.of(x, new ParseTree.IntLiteralNode(2)))))))),
+                new ParseTree.WhileNode(new ParseTree.BooleanLiteralNode(false), empty),
+                new ParseTree.ExpressionStatementNode(new ParseTree.FunctionCallNode("print", List.of())),
+                new ParseTree.ReturnNode(null),
+                new ParseTree.ReturnNode(x)));
+        ParseTree.FunctionNode main = new ParseTree.FunctionNode("STOF_INT", "main",
+                List.of(new ParseTree.ParameterNode("STOF_INT", "x"), new ParseTree.ParameterNode("STOF_BOOLEAN", "z")), body);
+        ParseTree.FunctionNode f = new ParseTree.FunctionNode("STOF_BOOLEAN", "f", List.of(), empty);
+        return new ParseTree.ProgramNode(List.of(new ParseTree.ClassNode("main", List.of(main, f)), new ParseTree.ClassNode("empty", List.of())));
+    }
+
+    ////////////////
+    /// OLD DUMP ///
+    ////////////////
+    // Parser.writeParseTree as it was before ParseTreeDumper, recursion and all, writing '\n' where it wrote the
+    // platform's line separator
+    private static final class OldDump {
+        private final StringBuilder m_out = new StringBuilder();
+
+        static String dump(ParseTree.ProgramNode program) {
+            OldDump dump = new OldDump();
+            dump.println("Program");
+            for (ParseTree.ClassNode classNode : program.classes()) {
+                dump.println("  Class: " + classNode.name());
+                for (ParseTree.FunctionNode function : classNode.functions()) {
+                    dump.println("    Function: " + function.returnType() + " " + function.name() + "()");
+                    dump.println("      Parameters:");
+                    for (ParseTree.ParameterNode param : function.parameters()) {
+                        dump.println("        - " + param.type() + " " + param.name());
+                    }
+                    dump.println("      Body:");
+                    dump.block(function.body(), 4);
+                }
+            }
+            return dump.m_out.toString();
+        }
+
+        private void println(String line) {
+            m_out.append(line).append('\n');
+        }
+
+        private void block(ParseTree.BlockNode block, int indent) {
+            String indentStr = "  ".repeat(indent);
+            for (ParseTree.StatementNode stmt : block.statements()) {
+                println(indentStr + "- " + stmt.getClass().getSimpleName());
+                statement(stmt, indent + 1);
+            }
+        }
+
+        private void statement(ParseTree.StatementNode stmt, int indent) {
+            String indentStr = "  ".repeat(indent);
+            if (stmt instanceof ParseTree.VariableDeclarationNode(String type, String name, ParseTree.ExpressionNode initializer)) {
+                println(indentStr + "Type: " + type);
+                println(indentStr + "Name: " + name);
+                if (initializer != null) {
+                    println(indentStr + "Initializer:");
+                    expression(initializer, indent + 1);
+                }
+            } else if (stmt instanceof ParseTree.ReturnNode(ParseTree.ExpressionNode value)) {
+                if (value != null) {
+                    println(indentStr + "Value:");
+                    expression(value, indent + 1);
+                }
+            } else if (stmt instanceof ParseTree.IfNode(ParseTree.ExpressionNode condition, ParseTree.BlockNode thenBlock,
+                    List<ParseTree.ElseIfNode> elseIfClauses, ParseTree.BlockNode elseBlock)) {
+                println(indentStr + "Condition:");
+                expression(condition, indent + 1);
+                println(indentStr + "Then:");
+                block(thenBlock, indent + 1);
+                for (ParseTree.ElseIfNode elif : elseIfClauses) {
+                    println(indentStr + "Elif:");
+                    expression(elif.condition(), indent + 1);
+                    block(elif.block(), indent + 1);
+                }
+                if (elseBlock != null) {
+                    println(indentStr + "Else:");
+                    block(elseBlock, indent + 1);
+                }
+            } else if (stmt instanceof ParseTree.ForNode(ParseTree.StatementNode initialization, ParseTree.ExpressionNode condition,
+                    ParseTree.ExpressionNode increment, ParseTree.BlockNode body)) {
+                println(indentStr + "Init:");
+                if (initialization != null) {
+                    statement(initialization, indent + 1);
+                }
+                println(indentStr + "Condition:");
+                if (condition != null) {
+                    expression(condition, indent + 1);
+                }
+                println(indentStr + "Increment:");
+                if (increment != null) {
+                    expression(increment, indent + 1);
+                }
+                println(indentStr + "Body:");
+                block(body, indent + 1);
+            } else if (stmt instanceof ParseTree.WhileNode(ParseTree.ExpressionNode condition, ParseTree.BlockNode body)) {
+                println(indentStr + "Condition:");
+                expression(condition, indent + 1);
+                println(indentStr + "Body:");
+                block(body, indent + 1);
+            } else if (stmt instanceof ParseTree.ExpressionStatementNode(ParseTree.ExpressionNode expression)) {
+                expression(expression, indent);
+            }
+        }
+
+        private void expression(ParseTree.ExpressionNode expr, int indent) {
+            String indentStr = "  ".repeat(indent);
+            if (expr instanceof ParseTree.IntLiteralNode(int value)) {
+                println(indentStr + "IntLiteral: " + value);
+            } else if (expr instanceof ParseTree.BooleanLiteralNode(boolean value)) {
+                println(indentStr + "BooleanLiteral: " + value);
+            } else if (expr instanceof ParseTree.VariableNode(String name)) {
+                println(indentStr + "Variable: " + name);
+            } else if (expr instanceof ParseTree.AssignmentExpressionNode(String variableName, ParseTree.ExpressionNode value)) {
+                println(indentStr + "Assignment: " + variableName);
+                println(indentStr + "  Value:");
+                expression(value, indent + 2);
+            } else if (expr instanceof ParseTree.FunctionCallNode(String functionName, List<ParseTree.ExpressionNode> arguments)) {
+                println(indentStr + "FunctionCall: " + functionName + "()");
+                if (!arguments.isEmpty()) {
+                    println(indentStr + "  Arguments:");
+                    for (ParseTree.ExpressionNode arg : arguments) {
+                        expression(arg, indent + 2);
+                    }
+                }
+            } else if (expr instanceof ParseTree.BinaryOperatorNode(ParseTree.ExpressionNode left, String operator, ParseTree.ExpressionNode right)) {
+                println(indentStr + "BinaryOperator: " + operator);
+                println(indentStr + "  Left:");
+                expression(left, indent + 2);
+                println(indentStr + "  Right:");
+                expression(right, indent + 2);
+            } else if (expr instanceof ParseTree.UnaryOperatorNode(String operator, ParseTree.ExpressionNode operand, boolean isPostfix)) {
+                println(indentStr + "UnaryOperator: " + operator + (isPostfix ? " (postfix)" : " (prefix)"));
+                expression(operand, indent + 1);
+            }
+        }
+    }
+
+    ////////////
+    /// JSON ///
+    ////////////
+    // a strict reader for the json rfc 8259 allows: objects become maps in field order, arrays lists, numbers ints.
+    // it recurses, checkSyntax doesn't and takes trees of any depth. both throw IllegalArgumentException on bad json
+    private static final class Json {
+        private final String m_text;
+        private int m_position;
+
+        private Json(String text) {
+            this.m_text = text;
+        }
+
+        static Object parse(String text) {
+            Json json = new Json(text);
+            Object value = json.value();
+            json.end();
+            return value;
+        }
+
+        // the same grammar walked with a stack of the open containers, values aren't kept
+        static void checkSyntax(String text) {
+            Json json = new Json(text);
+            StringBuilder open = new StringBuilder(); // '{' or '[' per level
+            boolean expectValue = true;
+            while (true) {
+                json.space();
+                if (expectValue) {
+                    char c = json.peek();
+                    if (c == '{' || c == '[') {
+                        json.m_position++;
+                        open.append(c);
+                        json.space();
+                        if (json.peek() == (c == '{' ? '}' : ']')) {
+                            json.m_position++;
+                            open.setLength(open.length() - 1);
+                            expectValue = false;
+                            if (open.isEmpty()) {
+                                break;
+                            }
+                            continue;
+                        }
+                        if (c == '{') {
+                            json.key();
+                        }
+                        continue;
+                    }
+                    json.scalar();
+                    expectValue = false;
+                    if (open.isEmpty()) {
+                        break;
+                    }
+                    continue;
+                }
+                char container = open.charAt(open.length() - 1);
+                char c = json.next();
+                if (c == ',') {
+                    if (container == '{') {
+                        json.space();
+                        json.key();
+                    }
+                    expectValue = true;
+                } else if (c == (container == '{' ? '}' : ']')) {
+                    open.setLength(open.length() - 1);
+                    if (open.isEmpty()) {
+                        break;
+                    }
+                } else {
+                    throw json.error("expected ',' or the end of the " + (container == '{' ? "object" : "array"));
+                }
+            }
+            json.end();
+        }
+
+        private Object value() {
+            space();
+            return switch (peek()) {
+                case '{' -> {
+                    m_position++;
+                    Map<String, Object> object = new LinkedHashMap<>();
+                    space();
+                    if (peek() == '}') {
+                        m_position++;
+                        yield object;
+                    }
+                    do {
+                        space();
+                        String key = key();
+                        if (object.put(key, value()) != null) {
+                            throw error("duplicate field " + key);
+                        }
+                        space();
+                    } while (next() == ',');
+                    if (m_text.charAt(m_position - 1) != '}') {
+                        throw error("expected ',' or '}'");
+                    }
+                    yield object;
+                }
+                case '[' -> {
+                    m_position++;
+                    List<Object> array = new ArrayList<>();
+                    space();
+                    if (peek() == ']') {
+                        m_position++;
+                        yield array;
+                    }
+                    do {
+                        array.add(value());
+                        space();
+                    } while (next() == ',');
+                    if (m_text.charAt(m_position - 1) != ']') {
+                        throw error("expected ',' or ']'");
+                    }
+                    yield array;
+                }
+                default -> scalar();
+            };
+        }
+
+        // a string, a number, true, false or null
+        private Object scalar() {
+            char c = peek();
+            if (c == '"') {
+                return string();
+            }
+            for (String literal : List.of("true", "false", "null")) {
+                if (m_text.startsWith(literal, m_position)) {
+                    m_position += literal.length();
+                    return literal.equals("null") ? null : Boolean.valueOf(literal);
+                }
+            }
+            int start = m_position;
+            if (c == '-') {
+                m_position++;
+            }
+            if (peek() == '0') {
+                m_position++;
+            } else if (peek() >= '1' && peek() <= '9') {
+                while (m_position < m_text.length() && m_text.charAt(m_position) >= '0' && m_text.charAt(m_position) <= '9') {
+                    m_position++;
+                }
+            } else {
+                throw error("expected a value");
+            }
+            return Integer.parseInt(m_text.substring(start, m_position)); // the dump only writes ints
+        }
+
+        // a field name and its ':'
+        private String key() {
+            if (peek() != '"') {
+                throw error("expected a field name");
+            }
+            String key = string();
+            space();
+            if (next() != ':') {
+                throw error("expected ':'");
+            }
+            return key;
+        }
+
+        private String string() {
+            m_position++; // the opening quote
+            StringBuilder string = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return string.toString();
+                }
+                if (c < 0x20) {
+                    throw error("unescaped control character");
+                }
+                if (c != '\\') {
+                    string.append(c);
+                    continue;
+                }
+                char escape = next();
+                switch (escape) {
+                    case '"', '\\', '/' -> string.append(escape);
+                    case 'b' -> string.append('\b');
+                    case 'f' -> string.append('\f');
+                    case 'n' -> string.append('\n');
+                    case 'r' -> string.append('\r');
+                    case 't' -> string.append('\t');
+                    case 'u' -> {
+                        if (m_position + 4 > m_text.length()) {
+                            throw error("cut off \\u escape");
+                        }
+                        try {
+                            string.append((char) Integer.parseInt(m_text.substring(m_position, m_position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("bad \\u escape");
+                        }
+                        m_position += 4;
+                    }
+                    default -> throw error("bad escape \\" + escape);
+                }
+            }
+        }
+
+        private void space() {
+            while (m_position < m_text.length() && " \t\r\n".indexOf(m_text.charAt(m_position)) >= 0) {
+                m_position++;
+            }
+        }
+
+        private void end() {
+            space();
+            if (m_position != m_text.length()) {
+                throw error("text after the value");
+            }
+        }
+
+        private char peek() {
+            if (m_position >= m_text.length()) {
+                throw error("unexpected end");
+            }
+            return m_text.charAt(m_position);
+        }
+
+        private char next() {
+            char c = peek();
+            m_position++;
+            return c;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + m_position);
+        }
+    }
+
+    // the json dump read back into ParseTree records, one "node" kind at a time
+    @SuppressWarnings("unchecked")
+    private static final class JsonTree {
+        static ParseTree.ProgramNode program(Object json) {
+            Map<String, Object> program = node(json, "Program");
+            List<ParseTree.ClassNode> classes = new ArrayList<>();
+            for (Object classJson : (List<Object>) program.get("classes")) {
+                Map<String, Object> classNode = node(classJson, "Class");
+                List<ParseTree.FunctionNode> functions = new ArrayList<>();
+                for (Object functionJson : (List<Object>) classNode.get("functions")) {
+                    Map<String, Object> function = node(functionJson, "Function");
+                    List<ParseTree.ParameterNode> parameters = new ArrayList<>();
+                    for (Object parameterJson : (List<Object>) function.get("parameters")) {
+                        Map<String, Object> parameter = (Map<String, Object>) parameterJson;
+                        parameters.add(new ParseTree.ParameterNode((String) parameter.get("type"), (String) parameter.get("name")));
+                    }
+                    functions.add(new ParseTree.FunctionNode((String) function.get("returnType"), (String) function.get("name"),
+                            parameters, block(function.get("body"))));
+                }
+                classes.add(new ParseTree.ClassNode((String) classNode.get("name"), functions));
+            }
+            return new ParseTree.ProgramNode(classes);
+        }
+
+        private static ParseTree.BlockNode block(Object json) {
+            if (json == null) {
+                return null;
+            }
+            List<ParseTree.StatementNode> statements = new ArrayList<>();
+            for (Object statement : (List<Object>) json) {
+                statements.add(statement(statement));
+            }
+            return new ParseTree.BlockNode(statements);
+        }
+
+        private static ParseTree.StatementNode statement(Object json) {
+            if (json == null) {
+                return null;
+            }
+            Map<String, Object> node = (Map<String, Object>) json;
+            return switch ((String) node.get("node")) {
+                case "VariableDeclaration" -> new ParseTree.VariableDeclarationNode((String) node.get("type"), (String) node.get("name"),
+                        expression(node.get("initializer")));
+                case "VariableAssignment" -> new ParseTree.VariableAssignmentNode((String) node.get("name"), expression(node.get("value")));
+                case "If" -> {
+                    List<ParseTree.ElseIfNode> elseIfs = new ArrayList<>();
+                    for (Object elseIfJson : (List<Object>) node.get("elseIfs")) {
+                        Map<String, Object> elseIf = (Map<String, Object>) elseIfJson;
+                        elseIfs.add(new ParseTree.ElseIfNode(expression(elseIf.get("condition")), block(elseIf.get("block"))));
+                    }
+                    yield new ParseTree.IfNode(expression(node.get("condition")), block(node.get("then")), elseIfs, block(node.get("else")));
+                }
+                case "For" -> new ParseTree.ForNode(statement(node.get("initialization")), expression(node.get("condition")),
+                        expression(node.get("increment")), block(node.get("body")));
+                case "While" -> new ParseTree.WhileNode(expression(node.get("condition")), block(node.get("body")));
+                case "Return" -> new ParseTree.ReturnNode(expression(node.get("value")));
+                case "Exit" -> new ParseTree.ExitNode(expression(node.get("exitCode")));
+                case "ExpressionStatement" -> new ParseTree.ExpressionStatementNode(expression(node.get("expression")));
+                default -> throw new IllegalArgumentException("not a statement: " + node.get("node"));
+            };
+        }
+
+        private static ParseTree.ExpressionNode expression(Object json) {
+            if (json == null) {
+                return null;
+            }
+            Map<String, Object> node = (Map<String, Object>) json;
+            return switch ((String) node.get("node")) {
+                case "IntLiteral" -> new ParseTree.IntLiteralNode((Integer) node.get("value"));
+                case "BooleanLiteral" -> new ParseTree.BooleanLiteralNode((Boolean) node.get("value"));
+                case "Variable" -> new ParseTree.VariableNode((String) node.get("name"));
+                case "Assignment" -> new ParseTree.AssignmentExpressionNode((String) node.get("name"), expression(node.get("value")));
+                case "FunctionCall" -> {
+                    List<ParseTree.ExpressionNode> arguments = new ArrayList<>();
+                    for (Object argument : (List<Object>) node.get("arguments")) {
+                        arguments.add(expression(argument));
+                    }
+                    yield new ParseTree.FunctionCallNode((String) node.get("name"), arguments);
+                }
+                case "BinaryOperator" -> new ParseTree.BinaryOperatorNode(expression(node.get("left")), (String) node.get("operator"),
+                        expression(node.get("right")));
+                case "UnaryOperator" -> new ParseTree.UnaryOperatorNode((String) node.get("operator"), expression(node.get("operand")),
+                        (Boolean) node.get("postfix"));
+                default -> throw new IllegalArgumentException("not an expression: " + node.get("node"));
+            };
+        }
+
+        private static Map<String, Object> node(Object json, String kind) {
+            Map<String, Object> node = (Map<String, Object>) json;
+            assertEquals(kind, node.get("node"));
+            return node;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// a syntax error is reported with its line and column and the parse goes on after it, leaving out just the statement,
+// function or class it is in. every case checks parse() and parseFlat() alike: both report the same errors, and both
+// trees are the tree of the source with what was left out deleted by hand, so nothing of a broken part survives
+class ParserRecoveryTest {
+    /////////////
+    /// TESTS ///
+    /////////////
+    @Test
+    void everyBrokenStatementIsReportedAndLeftOut() throws IOException {
+        assertRecovers("""
+                class main {
+                    int main() {
+                        int a = 1;
+                        int b = ;
+                        a = a + 1;
+                        int c = 2 +* 3;
+                        return a;
+                    }
+                }
+                """, List.of("4:17: Unexpected token in expression", "6:20: Unexpected token in expression"), """
+                class main {
+                    int main() {
+                        int a = 1;
+                        a = a + 1;
+                        return a;
+                    }
+                }
+                """);
+    }
+
+    @Test
+    void brokenHeaderLeavesOutTheBodyWithIt() throws IOException {
+        assertRecovers("""
+                class main {
+                    int main() {
+                        int a = 1;
+                        if (a > ) {
+                            a = 2;
+                            a = 3;
+                        }
+                        while (a < 3 {
+                            a++;
+                        }
+                        return a;
+                    }
+                }
+                """, List.of("4:17: Unexpected token in expression", "8:21: Expected ')' after while condition"), """
+                class main {
+                    int main() {
+                        int a = 1;
+                        return a;
+                    }
+                }
+                """);
+    }
+
+    @Test
+    void missingSemicolonIsReportedAtTheEndOfItsLine() throws IOException {
+        assertRecovers("""
+                class main {
+                    int main() {
+                        int a = 1
+                        int b = 2;
+                        print(a)
+                        print(b);
+                        return b;
+                    }
+                }
+                """, List.of("3:18: Expected ';' after variable declaration", "5:17: Expected ';' after expression"), """
+                class main {
+                    int main() {
+                        return b;
+                    }
+                }
+                """);
+    }
+
+    @Test
+    void brokenFunctionIsLeftOutAndTheNextOneParses() throws IOException {
+        assertRecovers("""
+                class main {
+                    int f(int x {
+                        return x;
+                    }
+
+                    int g() {
+                        return 1;
+                    }
+
+                    boolean (int y) {
+                        return true;
+                    }
+
+                    int main() {
+                        return g();
+                    }
+                }
+                """, List.of("2:16: Expected ')' after parameters", "10:12: Expected function name"), """
+                class main {
+                    int g() {
+                        return 1;
+                    }
+
+                    int main() {
+                        return g();
+                    }
+                }
+                """);
+    }
+
+    @Test
+    void classWithoutClosingBraceKeepsItsFunctions() throws IOException {
+        assertRecovers("""
+                class main {
+                    int f() {
+                        return 1;
+                    }
+
+                    int main() {
+                        return f();
+                    }
+                """, List.of("8:6: Expected '}' after class body"), """
+                class main {
+                    int f() {
+                        return 1;
+                    }
+
+                    int main() {
+                        return f();
+                    }
+                }
+                """);
+    }
+
+    @Test
+    void unclosedBlockEndsWithTheSource() throws IOException {
+        assertRecovers("""
+                class main {
+                    int main() {
+                        int a = 1;
+                        return a;
+                """, List.of("4:18: Expected '}' to end block"), """
+                class main {
+                }
+                """);
+    }
+
+    @Test
+    void brokenClassHeaderLeavesOutTheClass() throws IOException {
+        assertRecovers("""
+                class {
+                    int f() {
+                        return 1;
+                    }
+                }
+
+                class other
+                    int g() {
+                        return 2;
+                    }
+                }
+
+                class main {
+                    int main() {
+                        return 0;
+                    }
+                }
+                """, List.of("1:6: Expected class name", "7:12: Expected '{' after class name"), """
+                class main {
+                    int main() {
+                        return 0;
+                    }
+                }
+                """);
+    }
+
+    @Test
+    void intLiteralOutOfRangeIsASyntaxError() throws IOException {
+        assertRecovers("""
+                class main {
+                    int main() {
+                        int a = 2147483647;
+                        int b = 2147483648;
+                        int c = 99999999999999999999;
+                        int d = 1 + 4294967296;
+                        return a;
+                    }
+                }
+                """, List.of("4:17: Integer literal out of range", "5:17: Integer literal out of range", "6:21: Integer literal out of range"), """
+                class main {
+                    int main() {
+                        int a = 2147483647;
+                        return a;
+                    }
+                }
+                """);
+    }
+
+    @Test
+    void digitsOfOtherScriptsReadAsTheirValue() throws IOException {
+        // arabic-indic and devanagari digits, and the two mixed with ascii ones
+        assertRecovers("""
+                class main {
+                    int main() {
+                        int a = ٣٤;
+                        int b = १२३;
+                        int c = 1٢३;
+                        return a;
+                    }
+                }
+                """, List.of(), """
+                class main {
+                    int main() {
+                        int a = 34;
+                        int b = 123;
+                        int c = 123;
+                        return a;
+                    }
+                }
+                """);
+    }
+
+    ///////////////
+    /// HELPERS ///
+    ///////////////
+    // parses source with parse() and with parseFlat(), checks both report errors, and that both trees are the one
+    // recovered parses to without any
+    private static void assertRecovers(String source, List<String> errors, String recovered) throws IOException {
+        Parser expected = parser(recovered);
+        String tree = json(expected.parse());
+        assertEquals(List.of(), messages(expected), "recovered source");
+
+        Parser records = parser(source);
+        ParseTree.ProgramNode program = records.parse();
+        assertEquals(errors, messages(records), "parse()");
+        assertEquals(tree, json(program), "parse()");
+
+        Parser flat = parser(source);
+        FlatTree flatTree = flat.parseFlat();
+        assertEquals(errors, messages(flat), "parseFlat()");
+        assertEquals(tree, json(flatTree.toProgramNode()), "parseFlat()");
+    }
+
+    private static Parser parser(String source) throws IOException {
+        return new Parser(Tokenizer.tokenizeToStream(SourceFile.of(null, source.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    // "line:column: message" of every error
+    private static List<String> messages(Parser parser) {
+        List<String> messages = new ArrayList<>();
+        parser.errors().forEach(error -> messages.add(error.toString()));
+        return messages;
+    }
+
+    private static String json(ParseTree.ProgramNode program) throws IOException {
+        StringWriter out = new StringWriter();
+        ParseTreeDumper.dump(program, out, ParseTreeDumper.Format.JSON);
+        return out.toString();
+    }
+}